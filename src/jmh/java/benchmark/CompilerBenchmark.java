@@ -0,0 +1,68 @@
+package benchmark;
+
+import bytecode.BytecodeFile;
+import com.github.javaparser.ast.CompilationUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import stream.LittleEndianOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The phases of compiling a file: parsing it, constructing the BytecodeFile, which resolves,
+ * compiles and optimizes all of its functions, and writing the bytecode with its annotations
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompilerBenchmark {
+
+	@Param({"corpus", "methods-100", "methods-1000", "branches-100", "branches-300"})
+	public String input;
+
+	private List<String> sources;
+	private final List<CompilationUnit> units = new ArrayList<>();
+	private final List<BytecodeFile> files = new ArrayList<>();
+
+	@Setup
+	public void setUp() throws Exception {
+		sources = Inputs.sources(input);
+		for(String source : sources) {
+			CompilationUnit cu = Inputs.parse(source);
+			units.add(cu);
+			files.add(Inputs.compile(cu));
+		}
+	}
+
+	@Benchmark
+	public void parse(Blackhole blackhole) {
+		for(String source : sources) {
+			blackhole.consume(Inputs.parse(source));
+		}
+	}
+
+	@Benchmark
+	public void bytecodeFile(Blackhole blackhole) throws Exception {
+		for(CompilationUnit cu : units) {
+			blackhole.consume(Inputs.compile(cu));
+		}
+	}
+
+	@Benchmark
+	public int writeToStream() throws IOException {
+		int size = 0;
+		for(BytecodeFile file : files) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			file.writeToStream(new LittleEndianOutputStream(out));
+			size += out.size();
+		}
+		return size;
+	}
+}
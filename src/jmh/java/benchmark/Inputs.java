@@ -0,0 +1,89 @@
+package benchmark;
+
+import bytecode.BytecodeFile;
+import bytecode.CompilerOptions;
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseProblemException;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParseStart;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.Providers;
+import com.github.javaparser.ast.CompilationUnit;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The sources the benchmarks compile
+ *
+ * An input is either "corpus", the files of the test corpus the compiler accepts, read from
+ * the directory in the benchmark.corpus property (src/test/data by default), or a synthetic
+ * file: "methods-n" has n methods with a loop each, calling one another, "branches-n" has one
+ * method with n ifs and loops in sequence.
+ */
+final class Inputs {
+
+	private Inputs() {
+	}
+
+	static List<String> sources(String input) throws IOException {
+		if(input.equals("corpus")) {
+			return corpus(new File(System.getProperty("benchmark.corpus", "src/test/data")));
+		}
+
+		String[] parts = input.split("-");
+		if(parts.length == 2 && parts[0].equals("methods")) {
+			return single(Synthetic.methods(Integer.parseInt(parts[1])));
+		}
+		if(parts.length == 2 && parts[0].equals("branches")) {
+			return single(Synthetic.branches(Integer.parseInt(parts[1])));
+		}
+		throw new IllegalArgumentException("Unknown input " + input + ", expected corpus, methods-n or branches-n");
+	}
+
+	static CompilationUnit parse(String source) {
+		JavaParser parser = new JavaParser(new ParserConfiguration());
+		ParseResult<CompilationUnit> parsed = parser.parse(ParseStart.COMPILATION_UNIT, Providers.provider(source));
+		return parsed.getResult().filter(result -> parsed.isSuccessful()).orElseThrow(() -> new ParseProblemException(parsed.getProblems()));
+	}
+
+	static BytecodeFile compile(CompilationUnit cu) throws Exception {
+		return new BytecodeFile(new File("benchmark.cij"), cu, new CompilerOptions());
+	}
+
+	private static List<String> single(String source) {
+		List<String> sources = new ArrayList<>();
+		sources.add(source);
+		return sources;
+	}
+
+	private static List<String> corpus(File directory) throws IOException {
+		List<Path> files;
+		try(Stream<Path> paths = Files.list(directory.toPath())) {
+			files = paths.filter(path -> path.toString().endsWith(".java")).sorted().collect(Collectors.toList());
+		}
+
+		List<String> sources = new ArrayList<>();
+		for(Path file : files) {
+			String source = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+			try {
+				compile(parse(source));
+				sources.add(source);
+			} catch(Exception e) {
+				// the corpus also has files the compiler rejects
+			}
+		}
+
+		if(sources.isEmpty()) {
+			throw new IOException("No source the compiler accepts in " + directory);
+		}
+		return sources;
+	}
+}
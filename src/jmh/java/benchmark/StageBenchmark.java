@@ -0,0 +1,140 @@
+package benchmark;
+
+import bytecode.BytecodeFile;
+import bytecode.Function;
+import bytecode.dom.CHKDominanceTree;
+import bytecode.dom.N2DominanceTree;
+import bytecode.frontier.DominanceFrontier;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import visitors.Resolution;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The stages of Function.compile(), each run on all functions of the input
+ *
+ * Every function is taken through the stages before the measured one on a copy that has not
+ * been compiled yet. The stages that change the function get fresh copies for each
+ * invocation, dominance is computed repeatedly on the control flow graph phi nodes are
+ * placed on.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StageBenchmark {
+
+	@State(Scope.Benchmark)
+	public static class Input {
+
+		@Param({"corpus", "methods-100", "methods-1000", "branches-100", "branches-300"})
+		public String input;
+
+		// the functions of the compiled input, which the copies are made from
+		private final List<Function> functions = new ArrayList<>();
+
+		@Setup
+		public void setUp() throws Exception {
+			for(String source : Inputs.sources(input)) {
+				BytecodeFile file = Inputs.compile(Inputs.parse(source));
+				functions.addAll(file.functions());
+			}
+		}
+
+		/**
+		 * @return copies of the functions that have been built and run through the stages
+		 * before the given one
+		 */
+		List<Function> before(Function.Stage stage) throws Exception {
+			List<Function> copies = new ArrayList<>();
+
+			try {
+				Resolution resolution = new Resolution();
+				for(Function f : functions) {
+					Function copy = f.uncompiledCopy();
+					copy.build(resolution);
+					for(Function.Stage earlier : Function.Stage.values()) {
+						if(earlier == stage) {
+							break;
+						}
+						copy.run(earlier);
+					}
+					copies.add(copy);
+				}
+			} finally {
+				Resolution.releaseAll();
+			}
+
+			return copies;
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class BeforeRedundantLoads {
+		List<Function> functions;
+
+		@Setup(Level.Invocation)
+		public void setUp(Input input) throws Exception {
+			functions = input.before(Function.Stage.REDUNDANT_LOADS);
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class ControlFlow {
+		List<Function> functions;
+
+		@Setup
+		public void setUp(Input input) throws Exception {
+			functions = input.before(Function.Stage.PHI_PLACEMENT);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class BeforePhiPlacement {
+		List<Function> functions;
+
+		@Setup(Level.Invocation)
+		public void setUp(Input input) throws Exception {
+			functions = input.before(Function.Stage.PHI_PLACEMENT);
+		}
+	}
+
+	@Benchmark
+	public void removeRedundantLoads(BeforeRedundantLoads state) throws Exception {
+		for(Function f : state.functions) {
+			f.run(Function.Stage.REDUNDANT_LOADS);
+		}
+	}
+
+	@Benchmark
+	public void n2DominanceTree(ControlFlow state, Blackhole blackhole) {
+		for(Function f : state.functions) {
+			blackhole.consume(new N2DominanceTree(f.initialBlock()));
+		}
+	}
+
+	@Benchmark
+	public void chkDominanceTree(ControlFlow state, Blackhole blackhole) {
+		for(Function f : state.functions) {
+			blackhole.consume(new CHKDominanceTree(f.initialBlock()));
+		}
+	}
+
+	@Benchmark
+	public void dominanceFrontier(ControlFlow state, Blackhole blackhole) throws Exception {
+		for(Function f : state.functions) {
+			blackhole.consume(new DominanceFrontier(f.blocks()));
+		}
+	}
+
+	@Benchmark
+	public void phiPlacement(BeforePhiPlacement state) throws Exception {
+		for(Function f : state.functions) {
+			f.run(Function.Stage.PHI_PLACEMENT);
+		}
+	}
+}
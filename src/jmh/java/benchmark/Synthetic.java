@@ -0,0 +1,79 @@
+package benchmark;
+
+/**
+ * Generates sources that scale one dimension of the input: the number of functions of a
+ * file, or the number of blocks of a single function
+ */
+final class Synthetic {
+
+	private Synthetic() {
+	}
+
+	/**
+	 * @return a class of n static methods with a loop and a branch each, every method calling
+	 * the one before it
+	 */
+	static String methods(int n) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("class Methods {\n");
+		sb.append("\tint f;\n");
+		sb.append("\tstatic int g;\n");
+		sb.append("\tMethods() { f = 1; }\n");
+
+		for(int i = 0; i < n; i++) {
+			sb.append("\tstatic int m").append(i).append("(int a, int b) {\n");
+			sb.append("\t\tint s = 0;\n");
+			sb.append("\t\tfor(int k = 0; k < a; k++) {\n");
+			sb.append("\t\t\tif(k % 3 == 0 && b > k || s < ").append(i).append(") { s = s + k * b; } else { s = s - 1; }\n");
+			sb.append("\t\t}\n");
+			sb.append("\t\tg = g + s;\n");
+			sb.append("\t\treturn s").append(i == 0 ? "" : " + m" + (i - 1) + "(a - 1, b) * 0").append(";\n");
+			sb.append("\t}\n");
+		}
+
+		sb.append("\tpublic static void main(String[] args) {\n");
+		sb.append("\t\tMethods o = new Methods();\n");
+		if(n > 0) {
+			sb.append("\t\tint r = m").append(n - 1).append("(5, 2);\n");
+		}
+		sb.append("\t}\n");
+		sb.append("}\n");
+		return sb.toString();
+	}
+
+	/**
+	 * @return a class with one method of n ifs and loops in sequence, all writing the same four
+	 * locals, so that blocks, dominance frontiers and phi nodes grow with n
+	 */
+	static String branches(int n) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("class Branches {\n");
+		sb.append("\tstatic int run(int x) {\n");
+		sb.append("\t\tint a = x;\n");
+		sb.append("\t\tint b = 1;\n");
+		sb.append("\t\tint c = 0;\n");
+		sb.append("\t\tint d = 2;\n");
+
+		for(int i = 0; i < n; i++) {
+			switch(i % 3) {
+				case 0:
+					sb.append("\t\tif(a % ").append(i % 7 + 2).append(" == 0) { a = a + b; } else { b = b - c; }\n");
+					break;
+				case 1:
+					sb.append("\t\twhile(c < ").append(i).append(") { c = c + a; d = d + c; }\n");
+					break;
+				case 2:
+					sb.append("\t\tif(d > b && c < ").append(i).append(") { d = d - 1; if(a > d) { a = a - d; } } else { c = c + 1; }\n");
+					break;
+			}
+		}
+
+		sb.append("\t\treturn a + b + c + d;\n");
+		sb.append("\t}\n");
+		sb.append("\tpublic static void main(String[] args) {\n");
+		sb.append("\t\tint r = run(3);\n");
+		sb.append("\t}\n");
+		sb.append("}\n");
+		return sb.toString();
+	}
+}
@@ -1,53 +1,247 @@
 import bytecode.BytecodeFile;
+import bytecode.CompilerOptions;
+import bytecode.FunctionCache;
+import bytecode.dom.DominanceTree;
+import bytecode.optimization.BlockProfile;
 import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseProblemException;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParseStart;
 import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.Providers;
 import com.github.javaparser.ast.CompilationUnit;
 import com.github.javaparser.ast.type.*;
-import com.github.javaparser.symbolsolver.JavaSymbolSolver;
-import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSolver;
-import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
 import exceptions.TypeNotSupportedException;
 import exceptions.UndefinedFunctionNameException;
 import stream.AnnotatedDataOutput;
 import stream.LittleEndianOutputStream;
+import visitors.Resolution;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 public class Compiler {
 
-	public static void usage() {
-		System.out.println("compiler");
-		System.out.println("Usage: compiler [-d] [--hashbang mode] file.java");
-		System.out.println();
-		System.out.println("\t--help              This help message");
-		System.out.println("\t--hashbang mode     The mode string will be passed to the vm");
-		System.out.println("\t-d                  Enable debug mode");
+	public static void usage(PrintStream out) {
+		out.println("compiler");
+		out.println("Usage: compiler [-d] [--hashbang mode] [--dominance algorithm] [--no-optimize] [--inline-size n] [--inline-limit n] [--unroll-size n] [--unroll-factor n] [--profile file] [--threads n] [--cache dir] [--cache-size mb] file.java [out.cij]");
+		out.println("       compiler [options] --out-dir dir file.java|dir ...");
+		out.println("       compiler --daemon port");
+		out.println("       compiler --connect port [options] file.java ...");
+		out.println();
+		out.println("\t--help              This help message");
+		out.println("\t--hashbang mode     The mode string will be passed to the vm");
+		out.println("\t--dominance alg     Dominance algorithm: chk (default) or n2");
+		out.println("\t--no-optimize       Emit the SSA form without optimizing it");
+		out.println("\t--inline-size n     Inline functions of at most n instructions (default 30, 0 disables)");
+		out.println("\t--inline-limit n    Stop inlining into functions of n instructions (default 1000)");
+		out.println("\t--unroll-size n     Unroll loops to at most n instructions (default 60, 0 disables)");
+		out.println("\t--unroll-factor n   Copies of the body of partially unrolled loops (default 4, 1 disables)");
+		out.println("\t--profile file      Lay out blocks by the block counts of a vm run of the file compiled without it");
+		out.println("\t--threads n         Compile the functions, and files with --out-dir, on n threads (default: one per processor)");
+		out.println("\t                    Names are resolved on one thread at a time, the optimizations run in parallel");
+		out.println("\t--cache dir         Reuse the functions of earlier compiles that are unchanged, kept in dir");
+		out.println("\t--cache-size mb     Remove the least recently used functions beyond mb megabytes (default 64)");
+		out.println("\t--out-dir dir       Compile all given files and the java files in given directories into dir");
+		out.println("\t--daemon port       Keep running and compile what clients on the loopback port send");
+		out.println("\t                    Only clients that can read its token in ~/.cij-compiler are served");
+		out.println("\t--connect port      Let the daemon on the port compile, with the other arguments");
+		out.println("\t-d                  Enable debug mode");
+	}
+
+	private static Integer parseCount(String s) {
+		try {
+			int n = Integer.parseInt(s);
+			return n < 0 ? null : n;
+		} catch(NumberFormatException e) {
+			return null;
+		}
 	}
 
 	public static void main(String[] args) throws IOException, TypeNotSupportedException, UndefinedFunctionNameException {
+		File workingDirectory = new File("").getAbsoluteFile();
+		int status;
+
+		if(args.length > 0 && args[0].equals("--daemon")) {
+			Integer port = args.length > 1 ? parseCount(args[1]) : null;
+			if(port == null || port > 65535) {
+				System.err.println("--daemon requires a port number");
+				System.exit(1);
+			}
+
+			CompilerDaemon daemon = new CompilerDaemon(port, CompilerDaemon.tokenDirectory(), System.out);
+			Runtime.getRuntime().addShutdownHook(new Thread(daemon::close));
+			daemon.serve();
+			return;
+		}
+
+		status = run(args, workingDirectory, System.out, System.err);
+
+		if(status != 0) {
+			System.exit(status);
+		}
+	}
+
+	/**
+	 * Compiles as told by the arguments, relative paths being relative to the working directory.
+	 * With --connect port first, the daemon on the port compiles as told by the other arguments.
+	 *
+	 * @return the exit status
+	 */
+	public static int run(String[] args, File workingDirectory, PrintStream out, PrintStream err) throws IOException, TypeNotSupportedException, UndefinedFunctionNameException {
+		if(args.length > 0 && args[0].equals("--connect")) {
+			Integer port = args.length > 1 ? parseCount(args[1]) : null;
+			if(port == null || port > 65535) {
+				err.println("--connect requires a port number");
+				return 1;
+			}
+			return CompilerDaemon.compile(port, CompilerDaemon.tokenDirectory(), Arrays.copyOfRange(args, 2, args.length), workingDirectory, out, err);
+		}
+
+		return run(args, workingDirectory, null, out, err);
+	}
+
+	/**
+	 * Compiles as told by the arguments, resolving names through the given resolution, which
+	 * the caller keeps across compiles and releases, or through resolutions of its own if null
+	 *
+	 * @return the exit status
+	 */
+	static int run(String[] args, File workingDirectory, Resolution resolution, PrintStream out, PrintStream err) throws IOException, TypeNotSupportedException, UndefinedFunctionNameException {
 		boolean debug = false;
 		String hashbang = null;
-		String filename = null;
-		File outfile = null;
+		List<String> positional = new ArrayList<>();
+		File outputDirectory = null;
+		File cacheDirectory = null;
+		int cacheSize = 64;
+		CompilerOptions options = new CompilerOptions();
+		options.setResolution(resolution);
 
 		for(int i = 0; i < args.length; i++) {
 			String argument = args[i];
 			// long options
 			if(argument.startsWith("--")) {
 				if(argument.equals("--help")) {
-					usage();
-					return;
+					usage(out);
+					return 0;
 				}
 				if(argument.equals("--hashbang")) {
 					if(i+1 >= args.length || args[i+1].startsWith("-")) {
-						System.err.println("--hashbang requires an argument for the vm");
-						return;
+						err.println("--hashbang requires an argument for the vm");
+						return 1;
 					} else {
 						hashbang = args[++i];
 						continue;
 					}
 				}
+				if(argument.equals("--no-optimize")) {
+					options.setOptimize(false);
+					continue;
+				}
+				if(argument.equals("--inline-size") || argument.equals("--inline-limit")) {
+					Integer n = i+1 < args.length ? parseCount(args[i+1]) : null;
+					if(n == null) {
+						err.println(argument + " requires a non-negative number");
+						return 1;
+					} else {
+						if(argument.equals("--inline-size")) {
+							options.setInlineCalleeSize(n);
+						} else {
+							options.setInlineCallerSize(n);
+						}
+						i++;
+						continue;
+					}
+				}
+				if(argument.equals("--unroll-size") || argument.equals("--unroll-factor")) {
+					Integer n = i+1 < args.length ? parseCount(args[i+1]) : null;
+					if(n == null || (argument.equals("--unroll-factor") && n == 0)) {
+						err.println(argument + (argument.equals("--unroll-size") ? " requires a non-negative number" : " requires a positive number"));
+						return 1;
+					} else {
+						if(argument.equals("--unroll-size")) {
+							options.setUnrollSize(n);
+						} else {
+							options.setUnrollFactor(n);
+						}
+						i++;
+						continue;
+					}
+				}
+				if(argument.equals("--profile")) {
+					if(i+1 >= args.length) {
+						err.println("--profile requires a file with block counts");
+						return 1;
+					}
+					try {
+						options.setBlockProfile(BlockProfile.read(file(workingDirectory, args[++i])));
+						continue;
+					} catch(IOException e) {
+						err.println("--profile: " + e.getMessage());
+						return 1;
+					}
+				}
+				if(argument.equals("--out-dir")) {
+					if(i+1 >= args.length) {
+						err.println("--out-dir requires a directory");
+						return 1;
+					}
+					outputDirectory = file(workingDirectory, args[++i]);
+					continue;
+				}
+				if(argument.equals("--cache")) {
+					if(i+1 >= args.length) {
+						err.println("--cache requires a directory");
+						return 1;
+					}
+					cacheDirectory = file(workingDirectory, args[++i]);
+					continue;
+				}
+				if(argument.equals("--cache-size")) {
+					Integer n = i+1 < args.length ? parseCount(args[i+1]) : null;
+					if(n == null) {
+						err.println("--cache-size requires a non-negative number of megabytes");
+						return 1;
+					} else {
+						cacheSize = n;
+						i++;
+						continue;
+					}
+				}
+				if(argument.equals("--threads")) {
+					Integer n = i+1 < args.length ? parseCount(args[i+1]) : null;
+					if(n == null || n == 0) {
+						err.println("--threads requires a positive number");
+						return 1;
+					} else {
+						options.setThreads(n);
+						i++;
+						continue;
+					}
+				}
+				if(argument.equals("--dominance")) {
+					DominanceTree.Algorithm algorithm = i+1 < args.length ? DominanceTree.Algorithm.fromString(args[i+1]) : null;
+					if(algorithm == null) {
+						err.println("--dominance requires one of: chk, n2");
+						return 1;
+					} else {
+						options.setDominanceAlgorithm(algorithm);
+						i++;
+						continue;
+					}
+				}
 			}
 			// short options
 			else if(argument.startsWith("-") && argument.length() > 1) {
@@ -55,8 +249,8 @@ public class Compiler {
 					char c = argument.charAt(j);
 					switch(c) {
 						case 'h':
-							usage();
-							return;
+							usage(out);
+							return 0;
 						case 'd':
 							debug = true;
 							break;
@@ -65,37 +259,148 @@ public class Compiler {
 			}
 			// positional argument
 			else {
-				if(filename == null) {
-					filename = argument;
-				} else if(outfile == null) {
-					outfile = new File(argument);
-				} else {
-					System.err.println("Only one file is supported at the moment");
-					usage();
-					return;
+				positional.add(argument);
+			}
+		}
+
+		if(cacheDirectory != null) {
+			options.setFunctionCache(new FunctionCache(cacheDirectory, cacheSize * 1024L * 1024L));
+		}
+
+		if(outputDirectory != null) {
+			if(options.blockProfile() != null) {
+				err.println("--profile refers to a single file and cannot be used with --out-dir");
+				return 1;
+			}
+			return compileAll(positional, workingDirectory, outputDirectory, options, hashbang, debug, err);
+		}
+
+		if(positional.size() > 2) {
+			err.println("Only one file is supported without --out-dir");
+			usage(err);
+			return 1;
+		}
+
+		if(positional.isEmpty()) {
+			err.println("No file given. Aborting.");
+			return 1;
+		}
+
+		File source = file(workingDirectory, positional.get(0));
+		File outfile = file(workingDirectory, positional.size() > 1 ? positional.get(1) : source.getName() + ".cij");
+		compile(parse(source), outfile, options, hashbang, debug);
+		return 0;
+	}
+
+	private static File file(File workingDirectory, String path) {
+		File file = new File(path);
+		return file.isAbsolute() ? file : new File(workingDirectory, path);
+	}
+
+	/**
+	 * Compiles the given files and the java files in the given directories into the output
+	 * directory, each into a file named like the source with .cij appended. The files are
+	 * parsed and compiled in parallel in one vm, on one pool of as many threads as the options
+	 * allow that the functions of the files share, while one function at a time is resolved.
+	 * A file that fails is reported and the others are still compiled, the exit status tells
+	 * whether all of them succeeded.
+	 */
+	private static int compileAll(List<String> inputs, File workingDirectory, File outputDirectory, CompilerOptions options, String hashbang, boolean debug, PrintStream err) throws IOException {
+		List<File> sources = new ArrayList<>();
+		for(String input : inputs) {
+			File file = file(workingDirectory, input);
+			if(file.isDirectory()) {
+				try(Stream<Path> paths = Files.walk(file.toPath())) {
+					paths.filter(path -> path.toString().endsWith(".java") && Files.isRegularFile(path))
+					     .sorted()
+					     .forEach(path -> sources.add(path.toFile()));
 				}
+			} else if(file.isFile()) {
+				sources.add(file);
+			} else {
+				err.println(input + ": no such file or directory");
+				return 1;
 			}
 		}
 
-		if(filename == null) {
-			System.err.println("No file given. Aborting.");
-			return;
+		if(sources.isEmpty()) {
+			err.println("No file given. Aborting.");
+			return 1;
 		}
 
-		if(outfile == null) {
-			outfile = new File(new File(filename).getName() + ".cij");
+		Map<String, File> byName = new HashMap<>();
+		for(File source : sources) {
+			File other = byName.put(source.getName(), source);
+			if(other != null) {
+				err.println(source + " and " + other + " would both be compiled to " + source.getName() + ".cij");
+				return 1;
+			}
 		}
 
-		FileOutputStream out = new FileOutputStream(outfile);
-		AnnotatedDataOutput dos = new LittleEndianOutputStream(out);
+		if(!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+			err.println("--out-dir: cannot create " + outputDirectory);
+			return 1;
+		}
 
-		ParserConfiguration parserConfiguration = new ParserConfiguration();
-		parserConfiguration.setSymbolResolver(new JavaSymbolSolver(new ReflectionTypeSolver()));
-		JavaParser.setStaticConfiguration(parserConfiguration);
-		CompilationUnit cu = JavaParser.parse(new FileInputStream(filename));
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for(File source : sources) {
+			tasks.add(() -> {
+				compile(parse(source), new File(outputDirectory, source.getName() + ".cij"), options, hashbang, debug);
+				return null;
+			});
+		}
 
+		// the files share one resolution, which keeps the facades until all of them are done,
+		// unless the caller keeps one across compiles
+		boolean ownResolution = options.resolution() == null;
+		if(ownResolution) {
+			options.setResolution(new Resolution());
+		}
 
-		BytecodeFile bytecode = new BytecodeFile(outfile, cu);
+		int failed = 0;
+		ForkJoinPool pool = new ForkJoinPool(options.threads());
+		try {
+			List<Future<Void>> results = pool.invokeAll(tasks);
+			for(int i = 0; i < sources.size(); i++) {
+				try {
+					results.get(i).get();
+				} catch(ExecutionException e) {
+					err.println(sources.get(i) + ": " + e.getCause());
+					failed++;
+				}
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		} finally {
+			pool.shutdownNow();
+			if(ownResolution) {
+				options.setResolution(null);
+				Resolution.releaseAll();
+			}
+		}
+
+		if(failed > 0) {
+			err.println(failed + " of " + sources.size() + " files failed to compile");
+			return 1;
+		}
+		return 0;
+	}
+
+	private static CompilationUnit parse(File source) throws IOException {
+		// a parser per file and no static configuration, the names are resolved through visitors.Resolution
+		JavaParser parser = new JavaParser(new ParserConfiguration());
+		try(InputStream in = new FileInputStream(source)) {
+			ParseResult<CompilationUnit> parsed = parser.parse(ParseStart.COMPILATION_UNIT, Providers.provider(in));
+			return parsed.getResult().filter(result -> parsed.isSuccessful()).orElseThrow(() -> new ParseProblemException(parsed.getProblems()));
+		}
+	}
+
+	private static void compile(CompilationUnit cu, File outfile, CompilerOptions options, String hashbang, boolean debug) throws IOException, TypeNotSupportedException, UndefinedFunctionNameException {
+		BytecodeFile bytecode = new BytecodeFile(outfile, cu, options);
+
+		FileOutputStream out = new FileOutputStream(outfile);
+		AnnotatedDataOutput dos = new LittleEndianOutputStream(out);
 
 		if(hashbang != null) {
 			bytecode.setHashbang(hashbang);
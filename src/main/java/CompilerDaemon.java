@@ -0,0 +1,289 @@
+import visitors.Resolution;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps a compiler running, so that compiles are done by a vm that has loaded and compiled the
+ * parser, the symbol solver and the compiler already
+ *
+ * The daemon only listens on the loopback interface. A client sends the arguments it was given
+ * together with its working directory, relative to which the daemon reads the sources and
+ * writes the output, just as the compiler run by the client would. Each connection carries one
+ * compile, in the byte order of DataOutput:
+ *
+ * request:  MAGIC, the token (UTF), the working directory (UTF), the number of arguments (int),
+ *           the arguments (UTF)
+ * response: the exit status (int), the output and the error output (int length, UTF-8 bytes)
+ *
+ * Any local user can connect to a loopback port, so the daemon writes a random token to a file
+ * only its owner can read, named after the port in the token directory, and serves only the
+ * clients that send it. Java 8 has no Unix domain sockets, which could be restricted instead.
+ *
+ * Connections are served concurrently, only resolving names is done for one file at a time.
+ * They share one resolution, which is released whenever no compile is running. A client that
+ * does not send its request in time is dropped, and connections beyond MAX_CONNECTIONS are
+ * closed right away, so connections that never authenticate cannot use up the threads.
+ */
+public class CompilerDaemon implements Closeable {
+
+	private static final int MAGIC = 0x636a7632;
+	private static final int MAX_CONNECTIONS = 16;
+	private static final int REQUEST_TIMEOUT = 10_000;
+
+	private final ServerSocket server;
+	private final File tokenFile;
+	private final byte[] token;
+	private final PrintStream log;
+	private final int requestTimeout;
+
+	private final Resolution resolution = new Resolution();
+	private final AtomicInteger running = new AtomicInteger();
+	private final ThreadPoolExecutor connections = new ThreadPoolExecutor(0, MAX_CONNECTIONS, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), task -> {
+		Thread thread = new Thread(task);
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Listens on the port, a free one if 0, and writes the token for it to the directory
+	 */
+	public CompilerDaemon(int port, File tokenDirectory, PrintStream log) throws IOException {
+		this(port, tokenDirectory, log, REQUEST_TIMEOUT);
+	}
+
+	/**
+	 * @param requestTimeout the milliseconds a client has to send its request
+	 */
+	CompilerDaemon(int port, File tokenDirectory, PrintStream log, int requestTimeout) throws IOException {
+		this.server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+		this.tokenFile = tokenFile(tokenDirectory, server.getLocalPort());
+		this.log = log;
+		this.requestTimeout = requestTimeout;
+
+		byte[] random = new byte[32];
+		new SecureRandom().nextBytes(random);
+		StringBuilder hex = new StringBuilder();
+		for(byte b : random) {
+			hex.append(String.format("%02x", b));
+		}
+		this.token = hex.toString().getBytes(StandardCharsets.UTF_8);
+
+		try {
+			writeToken(tokenFile, token);
+		} catch(IOException e) {
+			server.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the directory of the token files, in the home directory of the user
+	 */
+	public static File tokenDirectory() {
+		return new File(System.getProperty("user.home"), ".cij-compiler");
+	}
+
+	private static File tokenFile(File tokenDirectory, int port) {
+		return new File(tokenDirectory, "daemon-" + port);
+	}
+
+	/**
+	 * Creates the file readable and writable by its owner only, replacing one left behind
+	 */
+	private static void writeToken(File file, byte[] token) throws IOException {
+		Path directory = file.getParentFile().toPath();
+		Path path = file.toPath();
+		boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+		if(!Files.isDirectory(directory)) {
+			if(posix) {
+				Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+			} else {
+				Files.createDirectories(directory);
+			}
+		}
+
+		Files.deleteIfExists(path);
+		if(posix) {
+			Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+		} else {
+			Files.createFile(path);
+			if(!(file.setReadable(false, false) && file.setReadable(true, true) &&
+			     file.setWritable(false, false) && file.setWritable(true, true))) {
+				Files.delete(path);
+				throw new IOException("cannot restrict " + file + " to its owner");
+			}
+		}
+		Files.write(path, token);
+	}
+
+	public int port() {
+		return server.getLocalPort();
+	}
+
+	/**
+	 * Serves connections until closed
+	 */
+	public void serve() throws IOException {
+		log.println("compiler daemon listening on port " + port() + ", token in " + tokenFile);
+
+		while(true) {
+			Socket socket;
+			try {
+				socket = server.accept();
+			} catch(SocketException e) {
+				if(server.isClosed()) {
+					return;
+				}
+				throw e;
+			}
+			try {
+				connections.execute(() -> serve(socket));
+			} catch(RejectedExecutionException e) {
+				log.println("refusing a connection, " + MAX_CONNECTIONS + " are open already");
+				socket.close();
+			}
+		}
+	}
+
+	/**
+	 * Stops listening and removes the token file, compiles still running are completed
+	 */
+	@Override
+	public void close() {
+		try {
+			server.close();
+		} catch(IOException e) {
+			log.println("cannot close the server socket: " + e.getMessage());
+		}
+		connections.shutdown();
+		if(!tokenFile.delete() && tokenFile.exists()) {
+			log.println("cannot remove " + tokenFile);
+		}
+	}
+
+	private void serve(Socket socket) {
+		try(Socket s = socket) {
+			s.setSoTimeout(requestTimeout);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+			if(in.readInt() != MAGIC) {
+				log.println("ignoring a connection that is not from a compiler client");
+				return;
+			}
+			if(!MessageDigest.isEqual(token, in.readUTF().getBytes(StandardCharsets.UTF_8))) {
+				log.println("ignoring a connection without the token");
+				return;
+			}
+
+			File workingDirectory = new File(in.readUTF());
+			String[] args = new String[in.readInt()];
+			for(int i = 0; i < args.length; i++) {
+				args[i] = in.readUTF();
+			}
+			s.setSoTimeout(0);
+
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			ByteArrayOutputStream errorOutput = new ByteArrayOutputStream();
+			PrintStream out = new PrintStream(output, true, "UTF-8");
+			PrintStream err = new PrintStream(errorOutput, true, "UTF-8");
+
+			int status;
+			running.incrementAndGet();
+			try {
+				status = Compiler.run(args, workingDirectory, resolution, out, err);
+			} catch(Exception | StackOverflowError e) {
+				e.printStackTrace(err);
+				status = 1;
+			} finally {
+				if(running.decrementAndGet() == 0) {
+					resolution.release();
+				}
+			}
+
+			DataOutputStream response = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+			response.writeInt(status);
+			write(response, output.toByteArray());
+			write(response, errorOutput.toByteArray());
+			response.flush();
+		} catch(IOException e) {
+			log.println("lost a connection: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Lets the daemon on the port compile as told by the arguments and prints what it reports
+	 *
+	 * @return the exit status
+	 */
+	public static int compile(int port, File tokenDirectory, String[] args, File workingDirectory, PrintStream out, PrintStream err) throws IOException {
+		File tokenFile = tokenFile(tokenDirectory, port);
+		String token;
+		try {
+			token = new String(Files.readAllBytes(tokenFile.toPath()), StandardCharsets.UTF_8);
+		} catch(IOException e) {
+			err.println("--connect: no token of a compiler daemon on port " + port + " in " + tokenFile);
+			return 1;
+		}
+
+		Socket socket;
+		try {
+			socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		} catch(IOException e) {
+			err.println("--connect: no compiler daemon on port " + port + " (" + e.getMessage() + ")");
+			return 1;
+		}
+
+		try(Socket s = socket) {
+			DataOutputStream request = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+			request.writeInt(MAGIC);
+			request.writeUTF(token);
+			request.writeUTF(workingDirectory.getPath());
+			request.writeInt(args.length);
+			for(String argument : args) {
+				request.writeUTF(argument);
+			}
+			request.flush();
+
+			DataInputStream response = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+			int status;
+			try {
+				status = response.readInt();
+			} catch(EOFException e) {
+				err.println("--connect: the daemon on port " + port + " did not accept the request, its token in " + tokenFile + " may be stale");
+				return 1;
+			}
+			out.print(new String(read(response), StandardCharsets.UTF_8));
+			err.print(new String(read(response), StandardCharsets.UTF_8));
+			out.flush();
+			err.flush();
+			return status;
+		}
+	}
+
+	private static void write(DataOutputStream out, byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static byte[] read(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return bytes;
+	}
+}
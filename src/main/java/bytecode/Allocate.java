@@ -4,6 +4,8 @@ import bytecode.type.ObjectType;
 import stream.AnnotatedDataOutput;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public class Allocate implements Instruction {
@@ -26,6 +28,11 @@ public class Allocate implements Instruction {
 		return ptr;
 	}
 
+	@Override
+	public List<Temporary> operands() {
+		return Collections.emptyList();
+	}
+
 	@Override
 	public void writeToStream(AnnotatedDataOutput dos) throws IOException {
 		dos.writeByte(Opcodes.ALLOCATE);
@@ -38,4 +45,9 @@ public class Allocate implements Instruction {
 		// todo implement
 //		throw new UnsupportedOperationException();
 	}
+
+	@Override
+	public Instruction copy(Map<Temporary, Temporary> temporaries, Map<Block, Block> blocks) {
+		return new Allocate(temporaries.getOrDefault(ptr, ptr), objectType);
+	}
 }
@@ -3,6 +3,8 @@ package bytecode;
 import stream.AnnotatedDataOutput;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public class ArrayLength implements Instruction {
@@ -33,8 +35,18 @@ public class ArrayLength implements Instruction {
 		return result;
 	}
 
+	@Override
+	public List<Temporary> operands() {
+		return Collections.singletonList(array);
+	}
+
 	@Override
 	public void substituteTemporaries(Map<Temporary, Temporary> useActual) {
 		array = useActual.getOrDefault(array, array);
 	}
+
+	@Override
+	public Instruction copy(Map<Temporary, Temporary> temporaries, Map<Block, Block> blocks) {
+		return new ArrayLength(temporaries.getOrDefault(result, result), temporaries.getOrDefault(array, array));
+	}
 }
@@ -1,9 +1,13 @@
 package bytecode;
 
+import bytecode.type.PrimitiveType;
+import bytecode.type.Type;
 import com.github.javaparser.ast.expr.BinaryExpr;
 import stream.AnnotatedDataOutput;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 
@@ -87,6 +91,135 @@ public class BinaryOperation implements Instruction {
 			}
 		}
 
+		public boolean isComparison() {
+			switch(this) {
+				case gt:
+				case gte:
+				case eq:
+				case neq:
+				case lte:
+				case lt:
+					return true;
+				default:
+					return false;
+			}
+		}
+
+		public boolean isCommutative() {
+			switch(this) {
+				case add:
+				case mul:
+				case eq:
+				case neq:
+				case bitwiseAnd:
+				case bitwiseOr:
+					return true;
+				default:
+					return false;
+			}
+		}
+
+		/**
+		 * @param operandType the type of both operands
+		 * @return the type of the result
+		 */
+		public Type resultType(Type operandType) {
+			return isComparison() ? PrimitiveType.BOOL : operandType;
+		}
+
+		/**
+		 * Evaluates the operation at compile time. Both operands must be of the given type.
+		 *
+		 * @return the result or null if the operation can not be evaluated at compile time,
+		 * e.g. because the vm would trap or because its semantics are up to the vm
+		 */
+		public Object evaluate(Type type, Object l, Object r) {
+			if(type == PrimitiveType.BOOL) {
+				boolean a = (Boolean) l, b = (Boolean) r;
+				switch(this) {
+					case eq: return a == b;
+					case neq: return a != b;
+					case bitwiseAnd: return a & b;
+					case bitwiseOr: return a | b;
+					default: return null;
+				}
+			} else if(type == PrimitiveType.VOID) {
+				// both are null literals
+				switch(this) {
+					case eq: return true;
+					case neq: return false;
+					default: return null;
+				}
+			} else if(type == PrimitiveType.FLOAT || type == PrimitiveType.DOUBLE) {
+				double a = ((Number) l).doubleValue(), b = ((Number) r).doubleValue();
+				switch(this) {
+					case gt: return a > b;
+					case gte: return a >= b;
+					case eq: return a == b;
+					case neq: return a != b;
+					case lte: return a <= b;
+					case lt: return a < b;
+				}
+
+				if(type == PrimitiveType.FLOAT) {
+					float x = (Float) l, y = (Float) r;
+					switch(this) {
+						case add: return x + y;
+						case sub: return x - y;
+						case mul: return x * y;
+						case div: return x / y;
+						case mod: return x % y;
+						default: return null;
+					}
+				}
+
+				switch(this) {
+					case add: return a + b;
+					case sub: return a - b;
+					case mul: return a * b;
+					case div: return a / b;
+					case mod: return a % b;
+					default: return null;
+				}
+			} else if(type == PrimitiveType.INT || type == PrimitiveType.LONG || type == PrimitiveType.SHORT ||
+			          type == PrimitiveType.BYTE || type == PrimitiveType.CHAR) {
+				long a = l instanceof Character ? (Character) l : ((Number) l).longValue();
+				long b = r instanceof Character ? (Character) r : ((Number) r).longValue();
+				switch(this) {
+					case gt: return a > b;
+					case gte: return a >= b;
+					case eq: return a == b;
+					case neq: return a != b;
+					case lte: return a <= b;
+					case lt: return a < b;
+				}
+
+				if(type == PrimitiveType.INT) {
+					int x = (Integer) l, y = (Integer) r;
+					switch(this) {
+						case add: return x + y;
+						case sub: return x - y;
+						case mul: return x * y;
+						case div: return y == 0 || (x == Integer.MIN_VALUE && y == -1) ? null : x / y;
+						case mod: return y == 0 || (x == Integer.MIN_VALUE && y == -1) ? null : x % y;
+						default: return null;
+					}
+				} else if(type == PrimitiveType.LONG) {
+					switch(this) {
+						case add: return a + b;
+						case sub: return a - b;
+						case mul: return a * b;
+						case div: return b == 0 || (a == Long.MIN_VALUE && b == -1) ? null : a / b;
+						case mod: return b == 0 || (a == Long.MIN_VALUE && b == -1) ? null : a % b;
+						default: return null;
+					}
+				}
+			}
+
+			// arithmetic on byte, short and char as well as all other types is up to the vm
+			return null;
+		}
+
 		@Override
 		public String toString() {
 			return symbol;
@@ -111,9 +244,23 @@ public class BinaryOperation implements Instruction {
 		return result;
 	}
 
+	public Operator operator() {
+		return operator;
+	}
+
+	@Override
+	public List<Temporary> operands() {
+		return Arrays.asList(tmpL, tmpR);
+	}
+
 	@Override
 	public void substituteTemporaries(Map<Temporary, Temporary> substitute) {
 		tmpL = substitute.getOrDefault(tmpL, tmpL);
 		tmpR = substitute.getOrDefault(tmpR, tmpR);
 	}
+
+	@Override
+	public Instruction copy(Map<Temporary, Temporary> temporaries, Map<Block, Block> blocks) {
+		return new BinaryOperation(temporaries.getOrDefault(result, result), operator, temporaries.getOrDefault(tmpL, tmpL), temporaries.getOrDefault(tmpR, tmpR));
+	}
 }
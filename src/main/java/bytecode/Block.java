@@ -21,7 +21,6 @@ public class Block implements Compileable, Node {
 	private int index = -1;
 	private Set<Node> dom;
 	private Node idom;
-	private Set<Node> df = new HashSet<>();
 	private PhiManager phiManager = new PhiManager(this);
 
 	/**
@@ -67,9 +66,8 @@ public class Block implements Compileable, Node {
 	}
 
 	/**
-	 * Returns a temporary if this constant was already initialized
-	 * in this scope. Otherwise it initializes the constant and returns the new
-	 * temporary
+	 * Initializes the constant and returns the new temporary. Duplicates
+	 * are merged per function by the ConstantPool optimization
 	 *
 	 * @param type
 	 * @param value
@@ -77,7 +75,6 @@ public class Block implements Compileable, Node {
 	 * @return
 	 */
 	public <T> Temporary getTemporaryForConstant(Type type, T value) {
-		// todo optimize only once initialization
 		Const<T> c = new Const<>(new Temporary(this), type, value);
 		instructions.add(c);
 		return c.result();
@@ -368,6 +365,109 @@ public class Block implements Compileable, Node {
 		return localManager;
 	}
 
+	/**
+	 * Removes the control flow edge to the given successor together with the arguments
+	 * the phi nodes of the successor take from this block
+	 *
+	 * @param successor
+	 * @throws InvalidCompileOrderException if phi nodes have not been computed yet
+	 */
+	public void removeSuccessor(Block successor) throws InvalidCompileOrderException {
+		children.remove(successor);
+		successor.parents().remove(this);
+
+		for(PhiNode phiNode : successor.phiManager().computedPhiNodes()) {
+			phiNode.edges().remove(this);
+		}
+	}
+
+	public void addSuccessor(Block successor) {
+		children.add(successor);
+		successor.parents().add(this);
+	}
+
+	/**
+	 * Moves all control flow edges out of this block to the given block, which takes the
+	 * place of this block in the parents and phi nodes of the successors
+	 *
+	 * @param block
+	 * @throws InvalidCompileOrderException if phi nodes have not been computed yet
+	 */
+	public void transferSuccessors(Block block) throws InvalidCompileOrderException {
+		for(Block child : children) {
+			child.parents().replaceAll(p -> p == this ? block : p);
+
+			for(PhiNode phiNode : child.phiManager().computedPhiNodes()) {
+				Temporary temporary = phiNode.edges().remove(this);
+				if(temporary != null) {
+					phiNode.edges().put(block, temporary);
+				}
+			}
+
+			block.children.add(child);
+		}
+
+		children.clear();
+	}
+
+	/**
+	 * Redirects the control flow edges to the given successor, including the jumps in this
+	 * block, to another block. The phi node arguments are left to the caller
+	 *
+	 * @param successor
+	 * @param replacement
+	 */
+	public void replaceSuccessor(Block successor, Block replacement) {
+		for(ListIterator<Block> it = children.listIterator(); it.hasNext(); ) {
+			if(it.next() == successor) {
+				it.set(replacement);
+				successor.parents().remove(this);
+				replacement.parents().add(this);
+			}
+		}
+
+		for(Compileable c : instructions) {
+			if(c instanceof Goto && ((Goto) c).label() == successor) {
+				((Goto) c).setLabel(replacement);
+			} else if(c instanceof ConditionalGoto && ((ConditionalGoto) c).label() == successor) {
+				((ConditionalGoto) c).setThen(replacement);
+			}
+		}
+	}
+
+	/**
+	 * @return whether execution can continue with the next block in the layout
+	 */
+	public boolean fallsThrough() {
+		for(int i = instructions.size() - 1; i >= 0; i--) {
+			Compileable c = instructions.get(i);
+			if(c instanceof Goto || c instanceof Return) {
+				return false;
+			}
+			if(c instanceof Instruction) {
+				return true;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the position in front of the jump or return ending this block, where
+	 * instructions can be appended
+	 */
+	public int endOfInstructions() {
+		for(int i = instructions.size() - 1; i >= 0; i--) {
+			Compileable c = instructions.get(i);
+			if(c instanceof Goto || c instanceof ConditionalGoto || c instanceof Return) {
+				return i;
+			}
+			if(c instanceof Instruction) {
+				break;
+			}
+		}
+		return instructions.size();
+	}
+
 	public void createCycle(Block additionalParent) {
 		this.parents().add(0, additionalParent);
 		additionalParent.addChild(this);
@@ -442,10 +542,6 @@ public class Block implements Compileable, Node {
 		this.idom = idom;
 	}
 
-	public Set<Node> DF() {
-		return df;
-	}
-
 	public PhiManager phiManager() {
 		return this.phiManager;
 	}
@@ -1,5 +1,10 @@
 package bytecode;
 
+import bytecode.optimization.BlockLayout;
+import bytecode.optimization.BranchFusion;
+import bytecode.optimization.ClassHierarchyAnalysis;
+import bytecode.optimization.Inlining;
+import bytecode.optimization.TailCalls;
 import bytecode.type.InvalidTypeException;
 import bytecode.type.ObjectType;
 import bytecode.type.PrimitiveType;
@@ -11,20 +16,37 @@ import com.github.javaparser.ast.type.ClassOrInterfaceType;
 import exceptions.TypeNotSupportedException;
 import exceptions.UndefinedFunctionNameException;
 import stream.AnnotatedDataOutput;
+import stream.RecordingOutput;
+import visitors.Resolution;
 
 import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
 
 public class BytecodeFile implements Compileable {
 
 	private TypeSystem typeSystem = new TypeSystem();
+	private final CompilerOptions options;
 
 	private List<Function> functions = new ArrayList<>();
+	private List<Function> compiledFunctions;
+	// the output of the functions of the file, if it is compiled with a cache
+	private final Map<Function, RecordingOutput> recordings = new HashMap<>();
 	private String hashbang = null;
 
-	public BytecodeFile(File output, CompilationUnit cu) throws TypeNotSupportedException, UndefinedFunctionNameException, InvalidCompileOrderException {
+	public BytecodeFile(File output, CompilationUnit cu) throws TypeNotSupportedException, UndefinedFunctionNameException, InvalidCompileOrderException, IOException {
+		this(output, cu, new CompilerOptions());
+	}
+
+	public BytecodeFile(File output, CompilationUnit cu, CompilerOptions options) throws TypeNotSupportedException, UndefinedFunctionNameException, InvalidCompileOrderException, IOException {
+		this.options = options;
+
 		// register all types
 		for(TypeDeclaration<?> typeDeclaration : cu.getTypes()) {
 			if(typeDeclaration.isClassOrInterfaceDeclaration() && !typeDeclaration.asClassOrInterfaceDeclaration().isInterface()) {
@@ -104,17 +126,203 @@ public class BytecodeFile implements Compileable {
 		// freeze type system
 		typeSystem().toTypeTable();
 
+		FunctionCache cache = options.functionCache();
+		FunctionCache.Lookup cached = cache == null ? null : cache.lookup(this);
+		if(cached != null) {
+			for(Function f : functions) {
+				RecordingOutput recording = cached.recording(f);
+				if(recording != null) {
+					recordings.put(f, recording);
+				}
+			}
+		}
+
+		compiledFunctions = uncachedFunctions();
+		compileFunctions(compiledFunctions);
+
+		boolean inline = options.optimize() && options.inlineCalleeSize() > 0;
+		Map<Function, List<Function>> calls = new HashMap<>();
+		Map<Function, Integer> inlineSizes = new HashMap<>();
+
+		if(options.optimize()) {
+			ClassHierarchyAnalysis classHierarchyAnalysis = new ClassHierarchyAnalysis(this);
+			classHierarchyAnalysis.run();
+
+			if(inline) {
+				calls = calls(classHierarchyAnalysis);
+
+				// cached callees small enough to be inlined are compiled again for their callers
+				while(cached != null) {
+					Set<Function> called = new HashSet<>();
+					calls.values().forEach(called::addAll);
+
+					List<Function> callees = new ArrayList<>();
+					for(Function f : functions) {
+						if(recordings.containsKey(f) && called.contains(f) &&
+						   cached.inlineSize(f) >= 0 && cached.inlineSize(f) <= options.inlineCalleeSize()) {
+							callees.add(f);
+						}
+					}
+					if(callees.isEmpty()) {
+						break;
+					}
+
+					recordings.keySet().removeAll(callees);
+					compiledFunctions = uncachedFunctions();
+					compileFunctions(callees);
+					classHierarchyAnalysis.run();
+					calls = calls(classHierarchyAnalysis);
+				}
+			}
+
+			// inlined constructors and factories show receivers not to be null, which makes
+			// more calls bound statically and inlineable
+			Inlining inlining = new Inlining(this);
+			if(inlining.run() && classHierarchyAnalysis.run()) {
+				Inlining again = new Inlining(this);
+				again.run();
+				merge(calls, again.inlined());
+			}
+			merge(calls, inlining.inlined());
+
+			if(inline) {
+				for(Function f : compiledFunctions) {
+					inlineSizes.put(f, Inlining.isInlineable(f) ? f.size() : -1);
+				}
+			}
+
+			for(Function f : compiledFunctions) {
+				new BlockLayout(f).run();
+				new BranchFusion(f).run();
+				new TailCalls(f).run();
+			}
+		}
+
+		for(Function f : compiledFunctions) {
+			f.number();
+		}
+
+		if(cached != null) {
+			for(Function f : compiledFunctions) {
+				RecordingOutput recording = new RecordingOutput();
+				f.writeToStream(recording);
+				recordings.put(f, recording);
+				calls.putIfAbsent(f, Collections.emptyList());
+			}
+			cached.store(calls, inlineSizes, recordings);
+		}
+	}
+
+	/**
+	 * @return the functions not taken from the cache, in the order of the file
+	 */
+	private List<Function> uncachedFunctions() {
+		List<Function> uncached = new ArrayList<>();
 		for(Function f : functions) {
-			if(f.isMain()) {
-				f.compile(typeSystem().toTypeTable().getStaticInitializers());
-			} else if(f.isConstructor()) {
-				f.compile(f.type().getOwnFieldInitializers());
-			} else {
-				f.compile(new HashMap<>());
+			if(!recordings.containsKey(f)) {
+				uncached.add(f);
 			}
 		}
+		return uncached;
 	}
 
+	/**
+	 * @return the functions each compiled function calls which Inlining may inline, including
+	 * the targets of member calls ClassHierarchyAnalysis binds once their receivers are known
+	 * not to be null
+	 */
+	private Map<Function, List<Function>> calls(ClassHierarchyAnalysis classHierarchyAnalysis) {
+		Map<Function, List<Function>> calls = new HashMap<>();
+		for(Function f : compiledFunctions) {
+			List<Function> targets = new ArrayList<>();
+			for(Block b : f.blocks()) {
+				for(Compileable c : b.instructions) {
+					Function target = Inlining.target(c);
+					if(target == null) {
+						target = classHierarchyAnalysis.target(c);
+					}
+					if(target != null) {
+						targets.add(target);
+					}
+				}
+			}
+			calls.put(f, targets);
+		}
+		return calls;
+	}
+
+	/**
+	 * Adds the functions Inlining copied into each function to its callees, in case they were
+	 * not foreseen
+	 */
+	private static void merge(Map<Function, List<Function>> calls, Map<Function, Set<Function>> inlined) {
+		for(Map.Entry<Function, Set<Function>> entry : inlined.entrySet()) {
+			List<Function> callees = calls.computeIfAbsent(entry.getKey(), f -> new ArrayList<>());
+			for(Function callee : entry.getValue()) {
+				if(!callees.contains(callee)) {
+					callees.add(callee);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Compiles the functions, on a ForkJoin pool if more than one thread is allowed. A file
+	 * compiled by a task of a pool, like the files of a batch, shares that pool with its
+	 * functions instead of starting threads of its own. Each function only looks up the others
+	 * while compiling, so the result does not depend on the order they finish in. If several
+	 * fail, the failure of the first in the file is thrown.
+	 */
+	private void compileFunctions(List<Function> functions) throws InvalidCompileOrderException {
+		int threads = Math.min(options.threads(), functions.size());
+		Resolution resolution = options.resolution() != null ? options.resolution() : new Resolution();
+
+		try {
+			if(threads <= 1) {
+				for(Function f : functions) {
+					f.compile(resolution);
+				}
+				return;
+			}
+
+			List<Callable<Void>> tasks = new ArrayList<>();
+			for(Function f : functions) {
+				tasks.add(() -> {
+					f.compile(resolution);
+					return null;
+				});
+			}
+
+			boolean shared = ForkJoinTask.inForkJoinPool();
+			ForkJoinPool pool = shared ? ForkJoinTask.getPool() : new ForkJoinPool(threads);
+			try {
+				for(Future<Void> result : pool.invokeAll(tasks)) {
+					result.get();
+				}
+			} catch(ExecutionException e) {
+				Throwable cause = e.getCause();
+				if(cause instanceof InvalidCompileOrderException) {
+					throw (InvalidCompileOrderException) cause;
+				} else if(cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				} else if(cause instanceof Error) {
+					throw (Error) cause;
+				}
+				throw new RuntimeException(cause);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			} finally {
+				if(!shared) {
+					pool.shutdownNow();
+				}
+			}
+		} finally {
+			if(options.resolution() == null) {
+				Resolution.releaseAll();
+			}
+		}
+	}
 
 	@Override
 	public String toString() {
@@ -134,14 +342,19 @@ public class BytecodeFile implements Compileable {
 
 		}
 
-		dos.writeShort(1706, "magic");
+		dos.writeShort(Opcodes.MAGIC, "magic");
+		dos.writeShort(Opcodes.FORMAT_VERSION, "format version " + Opcodes.FORMAT_VERSION);
 
 		typeSystem().toTypeTable().writeToStream(dos);
 		dos.hr();
 		dos.writeShort(functions.size(), functions.size() + " functions");
 		dos.hr();
 		for(Function f : functions) {
-			f.writeToStream(dos);
+			if(recordings.containsKey(f)) {
+				recordings.get(f).replay(dos);
+			} else {
+				f.writeToStream(dos);
+			}
 			dos.hr();
 		}
 	}
@@ -174,4 +387,20 @@ public class BytecodeFile implements Compileable {
 	public TypeSystem typeSystem() {
 		return typeSystem;
 	}
+
+	public CompilerOptions options() {
+		return options;
+	}
+
+	public List<Function> functions() {
+		return functions;
+	}
+
+	/**
+	 * @return the functions that have been compiled rather than taken from the cache, in the
+	 * order of the file
+	 */
+	public List<Function> compiledFunctions() {
+		return compiledFunctions;
+	}
 }
@@ -4,12 +4,14 @@ import stream.AnnotatedDataOutput;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 public class Call implements Instruction {
 	public final Temporary result;
 	private final Temporary[] args;
 	private Function function = null;
+	private boolean tailCall = false;
 
 	public Call(Temporary result, Function function, Temporary ...args) {
 		super();
@@ -21,7 +23,7 @@ public class Call implements Instruction {
 	@Override
 	public String toString() {
 		String argString = Arrays.toString(args).replaceAll("\\[|\\]", "");
-		return String.format("%s = call %s(%s) [function index %s]", result, function.name(), argString, function.index());
+		return String.format("%s = %s %s(%s) [function index %s]", result, tailCall ? "tail call" : "call", function.name(), argString, function.index());
 	}
 
 	@Override
@@ -30,7 +32,7 @@ public class Call implements Instruction {
 			throw new InvalidCompileOrderException("Need to link functions first");
 		}
 
-		dos.writeByte(Opcodes.CALL);
+		dos.writeByte(tailCall ? Opcodes.TAIL_CALL : Opcodes.CALL);
 
 		dos.writeShort(function.index());
 
@@ -52,6 +54,29 @@ public class Call implements Instruction {
 		return result;
 	}
 
+	/**
+	 * Marks the call as the last thing the function does before returning its result
+	 */
+	public void markTailCall() {
+		tailCall = true;
+	}
+
+	public boolean isTailCall() {
+		return tailCall;
+	}
+
+	/**
+	 * @return the called function; for member calls the function the call dispatches from
+	 */
+	public Function function() {
+		return function;
+	}
+
+	@Override
+	public List<Temporary> operands() {
+		return Arrays.asList(args);
+	}
+
 	public void setFunction(Function function) {
 		this.function = function;
 	}
@@ -62,4 +87,17 @@ public class Call implements Instruction {
 			args[i] = substitute.getOrDefault(args[i], args[i]);
 		}
 	}
+
+	@Override
+	public Instruction copy(Map<Temporary, Temporary> temporaries, Map<Block, Block> blocks) {
+		return new Call(temporaries.getOrDefault(result, result), function, copyArgs(temporaries));
+	}
+
+	private Temporary[] copyArgs(Map<Temporary, Temporary> temporaries) {
+		Temporary[] copy = new Temporary[args.length];
+		for(int i = 0; i < args.length; i++) {
+			copy[i] = temporaries.getOrDefault(args[i], args[i]);
+		}
+		return copy;
+	}
 }
@@ -0,0 +1,120 @@
+package bytecode;
+
+import stream.AnnotatedDataOutput;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A conditional jump on the comparison of two temporaries, which takes the place of a
+ * comparison only used by a ConditionalGoto
+ */
+public class ComparisonGoto implements Instruction {
+	private final BinaryOperation.Operator operator;
+	private final boolean negated;
+	private Temporary left;
+	private Temporary right;
+	private Block then;
+
+	/**
+	 * @param negated whether to jump if the comparison does not hold
+	 */
+	public ComparisonGoto(BinaryOperation.Operator operator, boolean negated, Temporary left, Temporary right, Block then) {
+		if(!operator.isComparison()) {
+			throw new IllegalArgumentException("Cannot jump on " + operator);
+		}
+
+		// unlike the others, these two are each other's negation even for NaN
+		if(negated && (operator == BinaryOperation.Operator.eq || operator == BinaryOperation.Operator.neq)) {
+			operator = operator == BinaryOperation.Operator.eq ? BinaryOperation.Operator.neq : BinaryOperation.Operator.eq;
+			negated = false;
+		}
+
+		this.operator = operator;
+		this.negated = negated;
+		this.left = left;
+		this.right = right;
+		this.then = then;
+	}
+
+	@Override
+	public String toString() {
+		try {
+			return String.format(negated ? "if !(%s %s %s) goto block %s" : "if %s %s %s goto block %s",
+			                     left, operator, right, then.index());
+		} catch(InvalidCompileOrderException e) {
+			e.printStackTrace();
+			return e.getMessage();
+		}
+	}
+
+	@Override
+	public void writeToStream(AnnotatedDataOutput dos) throws IOException {
+		dos.writeByte(opcode());
+		dos.writeShort(left.index());
+		dos.writeShort(right.index());
+		dos.writeShort(then.index());
+		dos.annotate(toString());
+	}
+
+	private int opcode() {
+		switch(operator) {
+			case gt:
+				return negated ? Opcodes.IF_NOT_GT : Opcodes.IF_GT;
+			case gte:
+				return negated ? Opcodes.IF_NOT_GTE : Opcodes.IF_GTE;
+			case eq:
+				return Opcodes.IF_EQ;
+			case neq:
+				return Opcodes.IF_NEQ;
+			case lte:
+				return negated ? Opcodes.IF_NOT_LTE : Opcodes.IF_LTE;
+			case lt:
+				return negated ? Opcodes.IF_NOT_LT : Opcodes.IF_LT;
+			default:
+				throw new UnsupportedOperationException();
+		}
+	}
+
+	@Override
+	public Temporary result() {
+		return null;
+	}
+
+	@Override
+	public List<Temporary> operands() {
+		return Arrays.asList(left, right);
+	}
+
+	public Block label() {
+		return then;
+	}
+
+	public BinaryOperation.Operator operator() {
+		return operator;
+	}
+
+	/**
+	 * @return whether the jump is taken if the comparison does not hold
+	 */
+	public boolean isNegated() {
+		return negated;
+	}
+
+	@Override
+	public void substituteTemporaries(Map<Temporary, Temporary> substitute) {
+		left = substitute.getOrDefault(left, left);
+		right = substitute.getOrDefault(right, right);
+	}
+
+	@Override
+	public Instruction copy(Map<Temporary, Temporary> temporaries, Map<Block, Block> blocks) {
+		return new ComparisonGoto(operator,
+		                          negated,
+		                          temporaries.getOrDefault(left, left),
+		                          temporaries.getOrDefault(right, right),
+		                          blocks.getOrDefault(then, then));
+	}
+}
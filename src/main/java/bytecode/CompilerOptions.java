@@ -0,0 +1,134 @@
+package bytecode;
+
+import bytecode.dom.DominanceTree;
+import bytecode.optimization.BlockProfile;
+import visitors.Resolution;
+
+/**
+ * Settings that influence how functions are compiled. A single instance is shared
+ * by all functions of a BytecodeFile.
+ */
+public class CompilerOptions {
+
+	private DominanceTree.Algorithm dominanceAlgorithm = DominanceTree.Algorithm.COOPER_HARVEY_KENNEDY;
+	private boolean optimize = true;
+	private int inlineCalleeSize = 30;
+	private int inlineCallerSize = 1000;
+	private int unrollSize = 60;
+	private int unrollFactor = 4;
+	private BlockProfile blockProfile = null;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private FunctionCache functionCache = null;
+	private Resolution resolution = null;
+
+	public DominanceTree.Algorithm dominanceAlgorithm() {
+		return dominanceAlgorithm;
+	}
+
+	public void setDominanceAlgorithm(DominanceTree.Algorithm dominanceAlgorithm) {
+		this.dominanceAlgorithm = dominanceAlgorithm;
+	}
+
+	/**
+	 * @return whether the optimizations on the SSA form run
+	 */
+	public boolean optimize() {
+		return optimize;
+	}
+
+	public void setOptimize(boolean optimize) {
+		this.optimize = optimize;
+	}
+
+	/**
+	 * @return the maximum number of instructions of a function to be inlined, 0 disables inlining
+	 */
+	public int inlineCalleeSize() {
+		return inlineCalleeSize;
+	}
+
+	public void setInlineCalleeSize(int inlineCalleeSize) {
+		this.inlineCalleeSize = inlineCalleeSize;
+	}
+
+	/**
+	 * @return the number of instructions up to which a function may grow by inlining
+	 */
+	public int inlineCallerSize() {
+		return inlineCallerSize;
+	}
+
+	public void setInlineCallerSize(int inlineCallerSize) {
+		this.inlineCallerSize = inlineCallerSize;
+	}
+
+	/**
+	 * @return the maximum number of instructions a loop may have once unrolled, 0 disables unrolling
+	 */
+	public int unrollSize() {
+		return unrollSize;
+	}
+
+	public void setUnrollSize(int unrollSize) {
+		this.unrollSize = unrollSize;
+	}
+
+	/**
+	 * @return how many copies of the body a loop too long to be unrolled completely gets, 1 disables it
+	 */
+	public int unrollFactor() {
+		return unrollFactor;
+	}
+
+	public void setUnrollFactor(int unrollFactor) {
+		this.unrollFactor = unrollFactor;
+	}
+
+	/**
+	 * @return the block counts of a profiling run the blocks are laid out by, null to rely on
+	 * heuristics only
+	 */
+	public BlockProfile blockProfile() {
+		return blockProfile;
+	}
+
+	public void setBlockProfile(BlockProfile blockProfile) {
+		this.blockProfile = blockProfile;
+	}
+
+	/**
+	 * @return the number of threads the functions of a file are compiled on. Only one of them
+	 * at a time resolves names, see visitors.Resolution.
+	 */
+	public int threads() {
+		return threads;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	/**
+	 * @return the cache unchanged functions are taken from instead of compiling them, null to
+	 * compile all functions
+	 */
+	public FunctionCache functionCache() {
+		return functionCache;
+	}
+
+	public void setFunctionCache(FunctionCache functionCache) {
+		this.functionCache = functionCache;
+	}
+
+	/**
+	 * @return the resolution shared by the files of a batch or the compiles of a daemon, which
+	 * release it themselves, null to give each file a resolution of its own
+	 */
+	public Resolution resolution() {
+		return resolution;
+	}
+
+	public void setResolution(Resolution resolution) {
+		this.resolution = resolution;
+	}
+}
@@ -3,6 +3,8 @@ package bytecode;
 import stream.AnnotatedDataOutput;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public class ConditionalGoto implements Instruction {
@@ -48,10 +50,19 @@ public class ConditionalGoto implements Instruction {
 		return null;
 	}
 
+	@Override
+	public List<Temporary> operands() {
+		return Collections.singletonList(condition);
+	}
+
 	public Block label() {
 		return then;
 	}
 
+	public Temporary condition() {
+		return condition;
+	}
+
 	@Override
 	public void substituteTemporaries(Map<Temporary, Temporary> substitute) {
 		condition = substitute.getOrDefault(condition, condition);
@@ -65,4 +76,12 @@ public class ConditionalGoto implements Instruction {
 		elze = blocksToRemove.getOrDefault(elze, elze);
 		then = blocksToRemove.getOrDefault(then, then);
 	}
+
+	@Override
+	public Instruction copy(Map<Temporary, Temporary> temporaries, Map<Block, Block> blocks) {
+		return new ConditionalGoto(temporaries.getOrDefault(condition, condition),
+		                           blocks.getOrDefault(context, context),
+		                           blocks.getOrDefault(elze, elze),
+		                           blocks.getOrDefault(then, then));
+	}
 }
@@ -7,6 +7,8 @@ import exceptions.TypeNotSupportedException;
 import stream.AnnotatedDataOutput;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public class Const<T> implements Instruction {
@@ -61,6 +63,11 @@ public class Const<T> implements Instruction {
 		return result;
 	}
 
+	@Override
+	public List<Temporary> operands() {
+		return Collections.emptyList();
+	}
+
 	@Override
 	public int hashCode() {
 		return type.hashCode();
@@ -73,4 +80,9 @@ public class Const<T> implements Instruction {
 
 	@Override
 	public void substituteTemporaries(Map<Temporary, Temporary> substitute) {}
+
+	@Override
+	public Instruction copy(Map<Temporary, Temporary> temporaries, Map<Block, Block> blocks) {
+		return new Const<>(temporaries.getOrDefault(result, result), type, value);
+	}
 }
@@ -1,18 +1,31 @@
 package bytecode;
 
 import bytecode.dom.DominanceTree;
-import bytecode.dom.N2DominanceTree;
-import bytecode.dom.Node;
 import bytecode.frontier.DominanceFrontier;
+import bytecode.optimization.BoundsCheckElimination;
+import bytecode.optimization.ConstantPool;
+import bytecode.optimization.ControlFlowSimplification;
+import bytecode.optimization.CopyPropagation;
+import bytecode.optimization.DeadCodeElimination;
+import bytecode.optimization.GlobalValueNumbering;
+import bytecode.optimization.LoopInvariantCodeMotion;
+import bytecode.optimization.LoopUnrolling;
+import bytecode.optimization.ScalarReplacement;
+import bytecode.optimization.SlotAllocation;
+import bytecode.optimization.SparseConditionalConstantPropagation;
+import bytecode.optimization.StrengthReduction;
+import bytecode.optimization.TailRecursionElimination;
 import bytecode.type.ObjectType;
 import bytecode.type.PrimitiveType;
 import bytecode.type.Type;
+import com.github.javaparser.TokenRange;
+import com.github.javaparser.ast.Modifier;
+import com.github.javaparser.ast.Node;
 import com.github.javaparser.ast.NodeList;
 import com.github.javaparser.ast.body.CallableDeclaration;
 import com.github.javaparser.ast.body.Parameter;
 import com.github.javaparser.ast.expr.Expression;
 import com.github.javaparser.ast.expr.SuperExpr;
-import com.github.javaparser.ast.nodeTypes.NodeWithBlockStmt;
 import com.github.javaparser.ast.nodeTypes.NodeWithSimpleName;
 import com.github.javaparser.ast.stmt.BlockStmt;
 import exceptions.NoDefaultConstructorException;
@@ -21,6 +34,7 @@ import exceptions.UndefinedFunctionNameException;
 import stream.AnnotatedDataOutput;
 import visitors.ExpressionResult;
 import visitors.ExpressionVisitor;
+import visitors.Resolution;
 
 import java.io.IOException;
 import java.util.*;
@@ -35,25 +49,32 @@ public class Function {
 
 	private final ObjectType type;
 	private final BlockStmt blockStatement;
-	private NodeWithBlockStmt<?> m;
+	private CallableDeclaration<?> declaration;
 
 	private Type returntype;
 	public List<Variable> parameters = new ArrayList<>();
+	private List<Temporary> parameterTemporaries = new ArrayList<>();
 	public List<Variable> _locals = new ArrayList<>();
 	public List<Temporary> temporaries = new ArrayList<>();
 	public HashMap<String, Temporary> nameToTemporary = new HashMap<>();
 
-	private HashMap<Boolean, Const<Boolean>> constBoolean = new HashMap<>();
-	private HashMap<Integer, Const<Integer>> constInteger = new HashMap<>();
-	private HashMap<Long, Const<Long>> constLong = new HashMap<>();
+	private List<Block> blocks = new ArrayList<>();
+	private DominanceTree dominanceTree;
+	private DominanceFrontier dominanceFrontier;
+	private Resolution resolution;
+
+	private boolean isFinal = false;
 
 	private int index;
 	private byte localIndex;
 	private int instructionCount;
+	private int slotCount;
 
 	public
 	Function(BytecodeFile file, ObjectType type, Type returntype, BlockStmt blockStatement, CallableDeclaration<?> m) throws TypeNotSupportedException {
 		this(file, type, returntype, blockStatement, m.getNameAsString(), m.isStatic(), m.getParameters());
+		this.declaration = m;
+		this.isFinal = m.getModifiers().contains(Modifier.FINAL) || type.getDeclaration().isFinal();
 	}
 
 	private
@@ -86,6 +107,7 @@ public class Function {
 				Temporary temporary = new Temporary(initialBlock);
 				temporary.setIndex(index++);
 				initialBlock.localManager().declare(variable, temporary);
+				parameterTemporaries.add(temporary);
 			}
 
 			for(Parameter parameter : parameters) {
@@ -94,13 +116,53 @@ public class Function {
 				Temporary temporary = new Temporary(initialBlock);
 				temporary.setIndex(index++);
 				initialBlock.localManager().declare(variable, temporary);
+				parameterTemporaries.add(temporary);
 			}
 		}
 
 	}
 
 
-	public void compile(Map<ObjectType.Field, Expression> initializers) throws InvalidCompileOrderException {
+	/**
+	 * The stages compile() runs after building the blocks, in order
+	 */
+	public enum Stage {
+		REDUNDANT_LOADS,
+		DOMINANCE,
+		PHI_PLACEMENT,
+		PHI_RESOLUTION,
+		OPTIMIZATION
+	}
+
+	/**
+	 * Builds the SSA form of the function and optimizes it. Functions may compile concurrently,
+	 * sharing the resolution, since only building resolves names and this only looks up other
+	 * functions.
+	 */
+	public void compile(Resolution resolution) throws InvalidCompileOrderException {
+		build(resolution);
+		for(Stage stage : Stage.values()) {
+			run(stage);
+		}
+	}
+
+	/**
+	 * Builds the blocks of the function from its syntax tree, the part of compile() that
+	 * resolves names and therefore holds the lock of Resolution. The stages are run separately
+	 * by run(), which lets them be measured.
+	 */
+	public void build(Resolution resolution) throws InvalidCompileOrderException {
+		synchronized(Resolution.class) {
+			this.resolution = resolution;
+			try {
+				build();
+			} finally {
+				this.resolution = null;
+			}
+		}
+	}
+
+	private void build() throws InvalidCompileOrderException {
 		Block context = initialBlock;
 
 		if(isConstructor()) {
@@ -118,7 +180,7 @@ public class Function {
 			}
 		}
 
-		for(Map.Entry<ObjectType.Field, Expression> init : initializers.entrySet()) {
+		for(Map.Entry<ObjectType.Field, Expression> init : initializers().entrySet()) {
 			ExpressionResult expressionResult = init.getValue().accept(new ExpressionVisitor(), context);
 			context = expressionResult.block;
 
@@ -139,20 +201,171 @@ public class Function {
 		}
 
 		removeRedundantBlocks();
-		removeRedundantLoads();
+	}
 
-		numberBlocks();
-		computeDominance();
-		computePhiNodePlacement();
+	/**
+	 * Runs one stage of compile(), after build() and the stages before it
+	 */
+	public void run(Stage stage) throws InvalidCompileOrderException {
+		switch(stage) {
+			case REDUNDANT_LOADS:
+				removeRedundantLoads();
+				break;
+			case DOMINANCE:
+				numberBlocks();
+				computeDominance();
+				break;
+			case PHI_PLACEMENT:
+				computePhiNodePlacement();
+				break;
+			case PHI_RESOLUTION:
+				resolvePhiNodeUsages();
+				computeUncomputedPhiNodes();
+				break;
+			case OPTIMIZATION:
+				if(file.options().optimize()) {
+					optimize();
+				}
+				break;
+		}
+	}
 
-		resolvePhiNodeUsages();
-		computeUncomputedPhiNodes();
+	/**
+	 * @return the field initializers the function runs before its body: all static ones for
+	 * main, the ones of its own class for constructors
+	 */
+	public Map<ObjectType.Field, Expression> initializers() throws InvalidCompileOrderException {
+		if(isMain()) {
+			return file.typeSystem().toTypeTable().getStaticInitializers();
+		} else if(isConstructor()) {
+			return type.getOwnFieldInitializers();
+		} else {
+			return new HashMap<>();
+		}
+	}
 
+	/**
+	 * @return a function of the same file that has not been compiled yet, built from the same
+	 * declaration and with the same indices
+	 */
+	public Function uncompiledCopy() throws TypeNotSupportedException {
+		Function copy = declaration != null ?
+				new Function(file, type, returntype, blockStatement, declaration) :
+				createEmptyFunction(file, type, name);
+		copy.setIndex(index);
+		copy.setLocalIndex(localIndex);
+		return copy;
+	}
+
+	/**
+	 * Assigns the final indices to parameters, locals, temporaries and instructions. Must
+	 * run after all optimizations, including the ones across functions.
+	 */
+	public void number() throws InvalidCompileOrderException {
 		numberParamsLocals();
 		numberTemporaries();
 		numberInstructions();
 	}
 
+	/**
+	 * Runs the optimizations on the SSA form. From here on the block list is the authoritative
+	 * layout: a block that does not end in a jump falls through to the next block in the list.
+	 */
+	public void optimize() throws InvalidCompileOrderException {
+		if(new TailRecursionElimination(this).run()) {
+			computeDominance();
+		}
+
+		simplify();
+
+		// the copies of unrolled loops are cleaned up like the rest of the function
+		if(new LoopUnrolling(this).run()) {
+			simplify();
+		}
+
+		new BoundsCheckElimination(this).run();
+		if(new ControlFlowSimplification(this).run()) {
+			computeDominance();
+		}
+	}
+
+	private void simplify() throws InvalidCompileOrderException {
+		if(new SparseConditionalConstantPropagation(this).run()) {
+			computeDominance();
+		}
+
+		new ScalarReplacement(this).run();
+		new CopyPropagation(this).run();
+		new ConstantPool(this).run();
+		new GlobalValueNumbering(this).run();
+		new LoopInvariantCodeMotion(this).run();
+		new StrengthReduction(this).run();
+		new DeadCodeElimination(this).run();
+	}
+
+	/**
+	 * Removes the given blocks together with all their edges and renumbers the remaining
+	 * blocks. No remaining block may jump or fall through into a removed one.
+	 *
+	 * @param dead
+	 * @throws InvalidCompileOrderException
+	 */
+	public void removeBlocks(Set<Block> dead) throws InvalidCompileOrderException {
+		if(dead.isEmpty()) {
+			return;
+		}
+
+		if(dead.contains(initialBlock)) {
+			throw new UnsupportedOperationException("Cannot remove the initial block");
+		}
+
+		for(Block b : dead) {
+			for(Block child : new ArrayList<>(b.children())) {
+				b.removeSuccessor(child);
+			}
+
+			for(Block parent : new ArrayList<>(b.parents())) {
+				parent.removeSuccessor(b);
+			}
+		}
+
+		blocks.removeAll(dead);
+
+		for(int i = 0; i < blocks.size(); i++) {
+			blocks.get(i).setIndex(i);
+		}
+	}
+
+	/**
+	 * Inserts the blocks into the layout at the given index and renumbers the blocks after
+	 * them. The block following the last one in the layout is where it falls through to.
+	 *
+	 * @param index
+	 * @param inserted
+	 */
+	public void insertBlocks(int index, List<Block> inserted) {
+		blocks.addAll(index, inserted);
+
+		for(int i = index; i < blocks.size(); i++) {
+			blocks.get(i).setIndex(i);
+		}
+	}
+
+	/**
+	 * Replaces the layout by the given order of the same blocks and renumbers them. Jumps are
+	 * not adjusted, a block that does not end in a jump falls through to its new next block.
+	 *
+	 * @param layout
+	 */
+	public void reorderBlocks(List<Block> layout) {
+		blocks.clear();
+		blocks.addAll(layout);
+
+		for(int i = 0; i < blocks.size(); i++) {
+			blocks.get(i).setIndex(i);
+		}
+	}
+
 	private void resolvePhiNodeUsages() {
 		for(ListIterator<Block> it = initialBlock.blockIterator(); it.hasNext(); ) {
 			Block b = it.next();
@@ -165,108 +378,99 @@ public class Function {
 
 	/**
 	 * An Efficient Method of Computing Static Single Assignment Form: Figure 4
+	 *
+	 * Variables are interned to dense ids and the per-variable sets of the paper are
+	 * replaced by the HasAlready/Work arrays stamped with the iteration count, so no
+	 * set is allocated per variable.
 	 */
-	private void computePhiNodePlacement() {
-		Map<String, Set<Block>> A_of_V = new HashMap<>();
-		for(ListIterator<Block> it = initialBlock.blockIterator(); it.hasNext(); ) {
-			Block b = it.next();
-
-			Map<String, Temporary> written = b.localManager().written();
-			for(String variable : written.keySet()) {
-				if(!A_of_V.containsKey(variable)) {
-					A_of_V.put(variable, new HashSet<>());
+	private void computePhiNodePlacement() throws InvalidCompileOrderException {
+		int blockCount = blocks.size();
+
+		// intern variable names and count the assignments A(V) of each variable
+		Map<String, Integer> variableIds = new HashMap<>();
+		List<String> variables = new ArrayList<>();
+		int assignmentCount = 0;
+		for(Block b : blocks) {
+			for(String variable : b.localManager().written().keySet()) {
+				if(!variableIds.containsKey(variable)) {
+					variableIds.put(variable, variables.size());
+					variables.add(variable);
 				}
-
-				A_of_V.get(variable).add(b);
+				assignmentCount++;
 			}
+		}
 
-//			try {
-//				System.out.println("Block " + b.index() + " contains those variables: " + b.localManager().getAllAlive());
-//			} catch(InvalidCompileOrderException e) {
-//				e.printStackTrace();
-//			}
-
+		// A(V) for all variables in one array: the blocks assigning variable v are
+		// assignments[assignmentStart[v]] until (excluding) assignments[assignmentStart[v + 1]]
+		int[] assignmentStart = new int[variables.size() + 1];
+		for(Block b : blocks) {
+			for(String variable : b.localManager().written().keySet()) {
+				assignmentStart[variableIds.get(variable) + 1]++;
+			}
+		}
+		for(int v = 0; v < variables.size(); v++) {
+			assignmentStart[v + 1] += assignmentStart[v];
 		}
 
-//		for(Map.Entry<String, Set<Block>> writes : A_of_V.entrySet()) {
-//			System.out.print("Assignments to " + writes.getKey() + ": ");
-//			for(Block b : writes.getValue()) {
-//				try {
-//					System.out.print(b.index() + " ");
-//				} catch(InvalidCompileOrderException e) {
-//					e.printStackTrace();
-//				}
-//			}
-//			System.out.println();
-//		}
+		int[] assignments = new int[assignmentCount];
+		int[] fill = Arrays.copyOf(assignmentStart, variables.size());
+		for(Block b : blocks) {
+			for(String variable : b.localManager().written().keySet()) {
+				assignments[fill[variableIds.get(variable)]++] = b.index();
+			}
+		}
 
+		int[] hasAlready = new int[blockCount];
+		int[] work = new int[blockCount];
+		int[] w = new int[blockCount];
 
-		for(String variable : A_of_V.keySet()) {
-			Set<Block> domFronPlus = new HashSet<>();
-			Queue<Block> w = new ArrayDeque<>();
-			Set<Block> work = new HashSet<>();
+		for(int v = 0; v < variables.size(); v++) {
+			String variable = variables.get(v);
+			int iterCount = v + 1;
+			int top = 0;
 
 			// for each X in A(V) do
-			for(Block x : A_of_V.get(variable)) {
-				work.add(x);
-				w.add(x);
+			for(int i = assignmentStart[v]; i < assignmentStart[v + 1]; i++) {
+				int x = assignments[i];
+				work[x] = iterCount;
+				w[top++] = x;
 			}
 
-			Block x;
 			// while W != empty set do take X from W
-			while((x = w.poll()) != null) {
+			while(top > 0) {
+				int x = w[--top];
 				// for each Y in DF(X) do
-				for(Node y : x.DF()) {
-					// if DomFronPlus(Y) = 0 then do
-					if(domFronPlus.contains(y) == false) {
-						((Block) y).phiManager().placePhiNode(variable, x);
-						domFronPlus.add((Block)y);
-
-						// if Work(Y) = 0 then do
-						if(work.contains(y) == false) {
-							work.add((Block)y);
-							w.offer((Block) y);
+				for(int y : dominanceFrontier.of(x)) {
+					// if HasAlready(Y) < IterCount then do
+					if(hasAlready[y] < iterCount) {
+						blocks.get(y).phiManager().placePhiNode(variable, blocks.get(x));
+						hasAlready[y] = iterCount;
+
+						// if Work(Y) < IterCount then do
+						if(work[y] < iterCount) {
+							work[y] = iterCount;
+							w[top++] = y;
 						}
 					}
 				}
 			}
 		}
-
 	}
 
-	private void computeDominance() {
-		DominanceTree dominanceTree = new N2DominanceTree(initialBlock);
-		new DominanceFrontier(initialBlock);
-
-//		System.out.println(name + "---");
-//		for(ListIterator<Block> it = initialBlock.blockIterator(); it.hasNext(); ) {
-//			Node n = it.next();
-//			try {
-//				System.out.println(((Block)n).index());
-//				for(Node x : n.DOM()) {
-//					System.out.println("> dominated by " + ((Block)x).index());
-//				}
-//
-//				Node x = n.IDOM();
-//				if(x != null) {
-//					System.out.println(">> idom " + ((Block) x).index());
-//				}
-//
-//				for(Node f : n.DF()) {
-//					System.out.println("> frontier: " + ((Block)f).index());
-//				}
-//
-//			} catch(InvalidCompileOrderException e) {
-//				e.printStackTrace();
-//			}
-//		}
+	/**
+	 * Computes dominance and dominance frontiers of the current control flow graph
+	 */
+	public void computeDominance() throws InvalidCompileOrderException {
+		dominanceTree = file.options().dominanceAlgorithm().compute(initialBlock);
+		dominanceFrontier = new DominanceFrontier(blocks);
 	}
 
 	private void numberBlocks() {
-		int blockCount = 0;
+		blocks.clear();
 		for(ListIterator<Block> it = initialBlock.blockIterator(); it.hasNext(); ) {
 			Block b = it.next();
-			b.setIndex(blockCount++);
+			b.setIndex(blocks.size());
+			blocks.add(b);
 		}
 	}
 
@@ -278,7 +482,8 @@ public class Function {
 			Block b = it.next();
 			if(b.instructions.stream().noneMatch(Opcodes::hasOpcode)) {
 				if(b.children().size() != 1) {
-					throw new UnsupportedOperationException("Cannot remove blocks with more than one kid");
+					// left to the control flow simplification on the SSA form
+					continue;
 				}
 
 				blocksToRemove.put(b, b.children().get(0));
@@ -399,10 +604,13 @@ public class Function {
 	}
 
 	private void numberTemporaries() throws InvalidCompileOrderException {
-		int index = parameters.size();
-		for(ListIterator<Block> it = initialBlock.blockIterator(); it.hasNext(); ) {
-			Block b = it.next();
+		if(file.options().optimize()) {
+			slotCount = new SlotAllocation(this).run();
+			return;
+		}
 
+		int index = parameters.size();
+		for(Block b : blocks) {
 			index = b.phiManager().numberPhiNodes(index);
 
 			for(Compileable c : b.instructions) {
@@ -414,13 +622,13 @@ public class Function {
 				}
 			}
 		}
+
+		slotCount = index;
 	}
 
 	private void numberInstructions() throws InvalidCompileOrderException {
 		int index = 0;
-		for(ListIterator<Block> it = initialBlock.blockIterator(); it.hasNext(); ) {
-			Block b = it.next();
-
+		for(Block b : blocks) {
 			index =  b.phiManager().numberPhiInstructions(index);
 
 			for(Compileable c : b.instructions) {
@@ -523,16 +731,10 @@ public class Function {
 		dos.writeByte(returntype.getRepresentation(), "returns " + returntype.toString());
 
 		// blocks
-		int blockCount = 0;
-		for(ListIterator<Block> it = initialBlock.blockIterator(); it.hasNext(); ) {
-			Block b = it.next();
-			blockCount++;
-		}
-
+		int blockCount = blocks.size();
 		dos.writeShort(blockCount, blockCount + " blocks in total: ");
 
-		for(ListIterator<Block> it = initialBlock.blockIterator(); it.hasNext(); ) {
-			Block b = it.next();
+		for(Block b : blocks) {
 			dos.writeShort(b.countCompiledInstructions(), " " + b.countCompiledInstructions() + " instructions      (block " + b.index() + ")");
 			dos.writeShort(b.children().size(), "  " + b.children().size() + " successors");
 			for(Block successor : b.children()) {
@@ -540,12 +742,29 @@ public class Function {
 			}
 		}
 
+		// the slot each result is written to, in the order of the instructions
+		List<Temporary> results = new ArrayList<>();
+		for(Block b : blocks) {
+			for(PhiNode phiNode : b.phiManager().computedPhiNodes()) {
+				results.add(phiNode.result());
+			}
+			for(Compileable c : b.instructions) {
+				if(c instanceof Instruction && ((Instruction) c).result() != null) {
+					results.add(((Instruction) c).result());
+				}
+			}
+		}
+
+		dos.writeShort(slotCount, slotCount + " slots");
+		dos.writeShort(results.size(), results.size() + " results");
+		for(Temporary result : results) {
+			dos.writeShort(result.index(), "  " + result);
+		}
+
 		dos.writeShort(instructionCount, instructionCount + " instructions in total");
 
 		int instructionCounter = 0;
-		for(ListIterator<Block> it = initialBlock.blockIterator(); it.hasNext(); ) {
-			Block b = it.next();
-
+		for(Block b : blocks) {
 			dos.section("Block " + b.index());
 
 			for(PhiNode phiNode : b.phiManager().computedPhiNodes()) {
@@ -605,20 +824,6 @@ public class Function {
 		return null;
 	}
 
-//	@Override
-//	public <T> Temporary getTemporaryForConstant(DeprecatedType type, T value) {
-//		Map.Entry<DeprecatedType, Object> key = new AbstractMap.SimpleEntry<DeprecatedType, Object>(type, value);
-//
-//		if(constants.get(key) != null) {
-//			return constants.get(key).result();
-//		} else {
-//			Const<T> c = new Const<>(new Temporary(value + "", this), type, value);
-//			constants.put(key, c);
-//			instructions.add(c);
-//			return c.result();
-//		}
-//	}
-
 	public List<Variable> locals() {
 		return _locals;
 	}
@@ -649,6 +854,14 @@ public class Function {
 		return localIndex;
 	}
 
+	/**
+	 * @return the source text the function is compiled from, without the field initializers
+	 */
+	public String source() {
+		Node node = declaration != null ? declaration : blockStatement;
+		return node.getTokenRange().map(TokenRange::toString).orElseGet(node::toString);
+	}
+
 	public String name() {
 		return name;
 	}
@@ -657,10 +870,71 @@ public class Function {
 		return type;
 	}
 
+	public Type returnType() {
+		return returntype;
+	}
+
 	public int instructionCount() {
 		return instructionCount;
 	}
 
+	public Block initialBlock() {
+		return initialBlock;
+	}
+
+	/**
+	 * @return the resolution of names and types of the syntax tree, only while compiling
+	 */
+	public Resolution resolution() {
+		return resolution;
+	}
+
+	/**
+	 * @return the temporaries holding the parameters on entry, `this` first
+	 */
+	public List<Temporary> parameterTemporaries() {
+		return parameterTemporaries;
+	}
+
+	/**
+	 * @return whether calls to this function can only ever reach this function
+	 */
+	public boolean isFinal() {
+		return isStatic || isFinal;
+	}
+
+	/**
+	 * @return the number of instructions the function compiles to
+	 */
+	public int size() throws InvalidCompileOrderException {
+		int size = 0;
+		for(Block b : blocks) {
+			size += b.countCompiledInstructions();
+		}
+		return size;
+	}
+
+	/**
+	 * @return the dominance tree of the current control flow graph
+	 */
+	public DominanceTree dominanceTree() {
+		return dominanceTree;
+	}
+
+	/**
+	 * @return the dominance frontiers of the current control flow graph
+	 */
+	public DominanceFrontier dominanceFrontier() {
+		return dominanceFrontier;
+	}
+
+	/**
+	 * @return all blocks, each one stored at its block index
+	 */
+	public List<Block> blocks() {
+		return blocks;
+	}
+
 	public void substituteTemporaries(Map<Temporary, Temporary> substitute) {
 		for(Compileable c : initialBlock.instructions()) {
 			c.substituteTemporaries(substitute);
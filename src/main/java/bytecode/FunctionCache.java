@@ -0,0 +1,401 @@
+package bytecode;
+
+import bytecode.optimization.BlockProfile;
+import bytecode.type.ObjectType;
+import com.github.javaparser.ast.expr.Expression;
+import stream.RecordingOutput;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Keeps compiled functions on disk, so that functions that have not changed are not compiled
+ * again
+ *
+ * A function is stored under a hash of its declaration and the field initializers it runs,
+ * the options, and the layout of the type table as sortFields() and sortFunctions() left it:
+ * the fields and their indices, the vtable slots and the indices of all functions. A change
+ * to the layout, such as a new field or method, therefore invalidates all functions of the
+ * file. The hash also covers the classes of the compiler, so a new compiler does not pick up
+ * functions compiled by an old one.
+ *
+ * Inlining copies the optimized bodies of callees into their callers, so an entry also lists
+ * the callees that may be inlined with their keys, which hash their own declaration and the
+ * keys of their callees in turn. These include the targets of member calls that are only bound
+ * statically once inlining shows their receivers not to be null. An entry is only used if all of its callees are unchanged.
+ * Within a cycle of the call graph, which calls get inlined depends on where the cycle is
+ * entered first, so functions that can reach one are never stored. An entry further tells
+ * the size callers see when inlining the function, callees too large to be inlined need not
+ * be compiled for a changed caller.
+ *
+ * Entries are files named by the hash of the function. Using an entry updates its
+ * modification time, and once the directory grows beyond its size limit, the least recently
+ * used entries are removed.
+ */
+public class FunctionCache {
+
+	private static final int MAGIC = 0x636a6663;
+	private static final String SUFFIX = ".fn";
+
+	private static String compilerVersion;
+
+	private final File directory;
+	private final long maxSize;
+
+	public FunctionCache(File directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+	}
+
+	private static class Entry {
+		final int inlineSize;
+		final int[] callees;
+		final String[] calleeKeys;
+		final RecordingOutput recording;
+
+		Entry(int inlineSize, int[] callees, String[] calleeKeys, RecordingOutput recording) {
+			this.inlineSize = inlineSize;
+			this.callees = callees;
+			this.calleeKeys = calleeKeys;
+			this.recording = recording;
+		}
+	}
+
+	/**
+	 * The entries of the functions of one file
+	 */
+	public class Lookup {
+
+		private final List<Function> functions;
+		// hash of the function itself and the key that also covers its callees
+		private final Map<Function, String> hashes = new HashMap<>();
+		private final Map<Function, String> keys = new HashMap<>();
+		private final Map<Function, Entry> entries = new HashMap<>();
+		private final Map<Function, Boolean> valid = new HashMap<>();
+
+		private Lookup(BytecodeFile file) throws IOException {
+			this.functions = file.functions();
+
+			String common = hash(compilerVersion() + '\n' + options(file.options()) + '\n' + layout(file));
+			BlockProfile profile = file.options().blockProfile();
+
+			for(Function f : functions) {
+				StringBuilder source = new StringBuilder(common);
+				source.append("\nfn ").append(f.index()).append('\n').append(f.source());
+
+				for(Map.Entry<ObjectType.Field, Expression> init : f.initializers().entrySet()) {
+					source.append('\n').append(init.getKey().name).append(" = ").append(init.getValue());
+				}
+
+				Map<Integer, Long> counts = profile == null ? null : profile.counts(f);
+				if(counts != null) {
+					source.append('\n').append(new TreeMap<>(counts));
+				}
+
+				hashes.put(f, hash(source.toString()));
+			}
+		}
+
+		/**
+		 * @return the stored function if neither it nor its callees changed, otherwise null
+		 */
+		public RecordingOutput recording(Function f) {
+			return isValid(f) ? entries.get(f).recording : null;
+		}
+
+		/**
+		 * @return the size of a stored function as seen by its callers when inlining, -1 if
+		 * it cannot be inlined
+		 */
+		public int inlineSize(Function f) {
+			return entries.get(f).inlineSize;
+		}
+
+		private boolean isValid(Function f) {
+			Boolean known = valid.get(f);
+			if(known != null) {
+				return known;
+			}
+
+			// a cycle of entries can only be left from an older compile, don't follow it
+			valid.put(f, false);
+
+			Entry entry = load(hashes.get(f));
+			if(entry == null) {
+				return false;
+			}
+			for(int i = 0; i < entry.callees.length; i++) {
+				int callee = entry.callees[i];
+				if(callee < 0 || callee >= functions.size() || !isValid(functions.get(callee)) ||
+				   !entry.calleeKeys[i].equals(keys.get(functions.get(callee)))) {
+					return false;
+				}
+			}
+
+			entries.put(f, entry);
+			keys.put(f, hash(hashes.get(f) + String.join(",", entry.calleeKeys)));
+			valid.put(f, true);
+			return true;
+		}
+
+		/**
+		 * Stores the compiled functions that are not stored already, unless they can reach a
+		 * cycle of calls
+		 *
+		 * @param calls the callees of each compiled function which may be inlined
+		 * @param inlineSizes the size of each compiled function as seen when inlining it
+		 */
+		public void store(Map<Function, List<Function>> calls, Map<Function, Integer> inlineSizes, Map<Function, RecordingOutput> recordings) throws IOException {
+			Set<Function> stored = new HashSet<>(keys.keySet());
+			Set<Function> inProgress = new HashSet<>();
+
+			for(Function f : functions) {
+				if(calls.containsKey(f) && !stored.contains(f) && key(f, calls, inProgress) != null) {
+					List<Function> callees = callees(f, calls);
+					int[] indices = new int[callees.size()];
+					String[] calleeKeys = new String[callees.size()];
+					for(int i = 0; i < callees.size(); i++) {
+						indices[i] = callees.get(i).index();
+						calleeKeys[i] = keys.get(callees.get(i));
+					}
+
+					write(hashes.get(f), new Entry(inlineSizes.getOrDefault(f, -1), indices, calleeKeys, recordings.get(f)));
+				}
+			}
+
+			evict();
+		}
+
+		/**
+		 * @return the key of the function, null if it can reach a cycle of calls
+		 */
+		private String key(Function f, Map<Function, List<Function>> calls, Set<Function> inProgress) {
+			if(keys.containsKey(f) || !calls.containsKey(f)) {
+				return keys.get(f);
+			}
+			if(!inProgress.add(f)) {
+				return null;
+			}
+
+			StringBuilder calleeKeys = new StringBuilder();
+			String key = null;
+			boolean reachesCycle = false;
+			for(Function callee : callees(f, calls)) {
+				String calleeKey = key(callee, calls, inProgress);
+				if(calleeKey == null) {
+					reachesCycle = true;
+					break;
+				}
+				calleeKeys.append(calleeKeys.length() == 0 ? "" : ",").append(calleeKey);
+			}
+			if(!reachesCycle) {
+				key = hash(hashes.get(f) + calleeKeys);
+			}
+
+			inProgress.remove(f);
+			keys.put(f, key);
+			return key;
+		}
+
+		/**
+		 * @return the distinct callees of a function other than itself, since a function is
+		 * never inlined into itself
+		 */
+		private List<Function> callees(Function f, Map<Function, List<Function>> calls) {
+			List<Function> callees = new ArrayList<>(new LinkedHashSet<>(calls.get(f)));
+			callees.remove(f);
+			return callees;
+		}
+	}
+
+	/**
+	 * @return the entries of the functions of the file
+	 */
+	public Lookup lookup(BytecodeFile file) throws IOException {
+		return new Lookup(file);
+	}
+
+	private Entry load(String hash) {
+		File file = new File(directory, hash + SUFFIX);
+		if(!file.isFile()) {
+			return null;
+		}
+
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if(in.readInt() != MAGIC) {
+				return null;
+			}
+
+			int inlineSize = in.readInt();
+			int count = in.readInt();
+			if(count < 0) {
+				return null;
+			}
+
+			int[] callees = new int[count];
+			String[] calleeKeys = new String[callees.length];
+			for(int i = 0; i < callees.length; i++) {
+				callees[i] = in.readInt();
+				calleeKeys[i] = in.readUTF();
+			}
+			Entry entry = new Entry(inlineSize, callees, calleeKeys, RecordingOutput.read(in));
+
+			file.setLastModified(System.currentTimeMillis());
+			return entry;
+		} catch(IOException e) {
+			// removed or being replaced concurrently, or damaged
+			return null;
+		}
+	}
+
+	private void write(String hash, Entry entry) throws IOException {
+		if(!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create the cache directory " + directory);
+		}
+
+		File temporary = File.createTempFile(hash, ".tmp", directory);
+		try {
+			try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+				out.writeInt(MAGIC);
+				out.writeInt(entry.inlineSize);
+				out.writeInt(entry.callees.length);
+				for(int i = 0; i < entry.callees.length; i++) {
+					out.writeInt(entry.callees[i]);
+					out.writeUTF(entry.calleeKeys[i]);
+				}
+				entry.recording.save(out);
+			}
+
+			Files.move(temporary.toPath(), new File(directory, hash + SUFFIX).toPath(),
+			           StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temporary.toPath());
+		}
+	}
+
+	/**
+	 * Removes the least recently used entries until the entries fit into the size limit
+	 */
+	private synchronized void evict() {
+		File[] entries = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+		if(entries == null) {
+			return;
+		}
+
+		long size = 0;
+		Map<File, Long> used = new HashMap<>();
+		for(File entry : entries) {
+			size += entry.length();
+			used.put(entry, entry.lastModified());
+		}
+
+		Arrays.sort(entries, Comparator.comparingLong(used::get));
+		for(int i = 0; i < entries.length && size > maxSize; i++) {
+			long length = entries[i].length();
+			if(entries[i].delete()) {
+				size -= length;
+			}
+		}
+	}
+
+	private static String options(CompilerOptions options) {
+		return "optimize " + options.optimize() +
+		       " dominance " + options.dominanceAlgorithm() +
+		       " inline " + options.inlineCalleeSize() + " " + options.inlineCallerSize() +
+		       " unroll " + options.unrollSize() + " " + options.unrollFactor();
+	}
+
+	private static String layout(BytecodeFile file) throws InvalidCompileOrderException {
+		StringBuilder sb = new StringBuilder();
+
+		TypeTable typeTable = file.typeSystem().toTypeTable();
+		for(ObjectType t : typeTable.types) {
+			sb.append("type ").append(t.name).append(' ').append(t.getId());
+			sb.append(" extends ").append(t.hasParent() ? t.parent().name : "-").append('\n');
+			for(ObjectType.Field field : t.getFields()) {
+				sb.append(" field ").append(field.index).append(' ').append(field.type).append(' ').append(field.name).append('\n');
+			}
+			for(Function f : t.getVirtualFunctions()) {
+				sb.append(" slot ").append(f.localIndex()).append(" fn ").append(f.index()).append('\n');
+			}
+		}
+		for(ObjectType.Field field : typeTable.staticFields) {
+			sb.append("global ").append(field.index).append(' ').append(field.type).append(' ').append(field.name).append('\n');
+		}
+
+		for(Function f : file.functions()) {
+			sb.append("fn ").append(f.index()).append(' ').append(f.type().name).append('.').append(f.name());
+			sb.append(f.parameters.stream().map(p -> p.type + " " + p.name).collect(Collectors.joining(", ", "(", ")")));
+			sb.append(" => ").append(f.returnType());
+			sb.append(f.isStatic ? " static" : "").append(f.isFinal() ? " final" : "");
+			sb.append(" slot ").append(f.localIndex()).append('\n');
+		}
+
+		return sb.toString();
+	}
+
+	private static String hash(String s) {
+		try {
+			return hash(MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8)));
+		} catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String hash(byte[] digest) {
+		StringBuilder sb = new StringBuilder();
+		for(byte b : digest) {
+			sb.append(String.format("%02x", b));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return a hash of the classes of the compiler, the jar or the class files
+	 */
+	private static synchronized String compilerVersion() throws IOException {
+		if(compilerVersion != null) {
+			return compilerVersion;
+		}
+
+		Path classes;
+		try {
+			classes = Paths.get(FunctionCache.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+		} catch(URISyntaxException e) {
+			throw new IOException(e);
+		}
+
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch(NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+
+		if(Files.isDirectory(classes)) {
+			List<Path> files;
+			try(Stream<Path> paths = Files.walk(classes)) {
+				files = paths.filter(path -> path.toString().endsWith(".class")).sorted().collect(Collectors.toList());
+			}
+			for(Path file : files) {
+				digest.update(classes.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+				digest.update(Files.readAllBytes(file));
+			}
+		} else {
+			digest.update(Files.readAllBytes(classes));
+		}
+
+		compilerVersion = hash(digest.digest());
+		return compilerVersion;
+	}
+}
@@ -3,6 +3,8 @@ package bytecode;
 import stream.AnnotatedDataOutput;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public class Goto implements Instruction {
@@ -36,6 +38,11 @@ public class Goto implements Instruction {
 		return null;
 	}
 
+	@Override
+	public List<Temporary> operands() {
+		return Collections.emptyList();
+	}
+
 	public Block label() {
 		return label;
 	}
@@ -46,4 +53,9 @@ public class Goto implements Instruction {
 
 	@Override
 	public void substituteTemporaries(Map<Temporary, Temporary> substitute) {}
+
+	@Override
+	public Instruction copy(Map<Temporary, Temporary> temporaries, Map<Block, Block> blocks) {
+		return new Goto(blocks.getOrDefault(label, label));
+	}
 }
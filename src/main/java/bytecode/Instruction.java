@@ -1,5 +1,22 @@
 package bytecode;
 
+import java.util.List;
+import java.util.Map;
+
 public interface Instruction extends Compileable {
 	Temporary result();
+
+	/**
+	 * @return the temporaries read by this instruction. Must not be modified, use
+	 * substituteTemporaries instead
+	 */
+	List<Temporary> operands();
+
+	/**
+	 * Creates a copy of this instruction, e.g. to duplicate code when inlining
+	 *
+	 * @param temporaries replacements for the temporaries of the copy, including its result
+	 * @param blocks replacements for the blocks referenced by the copy
+	 */
+	Instruction copy(Map<Temporary, Temporary> temporaries, Map<Block, Block> blocks);
 }
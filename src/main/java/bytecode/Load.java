@@ -3,6 +3,8 @@ package bytecode;
 import stream.AnnotatedDataOutput;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public class Load implements Instruction {
@@ -36,6 +38,16 @@ public class Load implements Instruction {
 		return result;
 	}
 
+	@Override
+	public List<Temporary> operands() {
+		return Collections.emptyList();
+	}
+
 	@Override
 	public void substituteTemporaries(Map<Temporary, Temporary> substitute) {}
+
+	@Override
+	public Instruction copy(Map<Temporary, Temporary> temporaries, Map<Block, Block> blocks) {
+		return new Load(temporaries.getOrDefault(result, result), variable);
+	}
 }
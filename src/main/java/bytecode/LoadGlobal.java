@@ -4,6 +4,8 @@ import bytecode.type.ObjectType;
 import stream.AnnotatedDataOutput;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public class LoadGlobal implements Instruction {
@@ -24,6 +26,18 @@ public class LoadGlobal implements Instruction {
 		return result;
 	}
 
+	/**
+	 * @return the global index of the loaded static field
+	 */
+	public short index() throws InvalidCompileOrderException {
+		return objectType.getStaticFieldIndex(field);
+	}
+
+	@Override
+	public List<Temporary> operands() {
+		return Collections.emptyList();
+	}
+
 	@Override
 	public void writeToStream(AnnotatedDataOutput dos) throws IOException {
 		dos.writeByte(Opcodes.LOAD_GLOBAL);
@@ -36,4 +50,9 @@ public class LoadGlobal implements Instruction {
 	public void substituteTemporaries(Map<Temporary, Temporary> substitute) {
 
 	}
+
+	@Override
+	public Instruction copy(Map<Temporary, Temporary> temporaries, Map<Block, Block> blocks) {
+		return new LoadGlobal(objectType, field, temporaries.getOrDefault(result, result));
+	}
 }
@@ -3,6 +3,8 @@ package bytecode;
 import stream.AnnotatedDataOutput;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 public class LoadIndex implements Instruction {
@@ -10,6 +12,7 @@ public class LoadIndex implements Instruction {
 	private final Temporary result;
 	public Temporary index;
 	private Temporary memory;
+	private boolean boundsChecked = true;
 
 	public LoadIndex(Temporary result, Temporary index, Temporary memory) {
 		this.result = result;
@@ -19,12 +22,23 @@ public class LoadIndex implements Instruction {
 
 	@Override
 	public String toString() {
-		return String.format("%s = loadidx %s[%s]", result, memory, index);
+		return String.format("%s = loadidx%s %s[%s]", result, boundsChecked ? "" : " unchecked", memory, index);
+	}
+
+	/**
+	 * Emits the access without bounds check. Only valid if the index is known to be in bounds
+	 */
+	public void removeBoundsCheck() {
+		boundsChecked = false;
+	}
+
+	public boolean isBoundsChecked() {
+		return boundsChecked;
 	}
 
 	@Override
 	public void writeToStream(AnnotatedDataOutput dos) throws IOException {
-		dos.writeByte(Opcodes.LOAD_INDEX);
+		dos.writeByte(boundsChecked ? Opcodes.LOAD_INDEX : Opcodes.LOAD_INDEX_UNCHECKED);
 
 		dos.writeShort(memory.index());
 		dos.writeShort(index.index());
@@ -36,9 +50,21 @@ public class LoadIndex implements Instruction {
 		return result;
 	}
 
+	@Override
+	public List<Temporary> operands() {
+		return Arrays.asList(memory, index);
+	}
+
 	@Override
 	public void substituteTemporaries(Map<Temporary, Temporary> substitute) {
 		index = substitute.getOrDefault(index, index);
 		memory = substitute.getOrDefault(memory, memory);
 	}
+
+	@Override
+	public Instruction copy(Map<Temporary, Temporary> temporaries, Map<Block, Block> blocks) {
+		LoadIndex copy = new LoadIndex(temporaries.getOrDefault(result, result), temporaries.getOrDefault(index, index), temporaries.getOrDefault(memory, memory));
+		copy.boundsChecked = boundsChecked;
+		return copy;
+	}
 }
@@ -4,6 +4,8 @@ import bytecode.type.ArrayType;
 import stream.AnnotatedDataOutput;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public class New implements Instruction {
@@ -44,9 +46,19 @@ public class New implements Instruction {
 		return reference;
 	}
 
+	@Override
+	public List<Temporary> operands() {
+		return Collections.singletonList(size);
+	}
+
 	@Override
 	public void substituteTemporaries(Map<Temporary, Temporary> substitute) {
 		size = substitute.getOrDefault(size, size);
 		reference = substitute.getOrDefault(reference, reference);
 	}
+
+	@Override
+	public Instruction copy(Map<Temporary, Temporary> temporaries, Map<Block, Block> blocks) {
+		return new New(temporaries.getOrDefault(reference, reference), type, temporaries.getOrDefault(size, size));
+	}
 }
@@ -4,6 +4,8 @@ import bytecode.type.ObjectType;
 import stream.AnnotatedDataOutput;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public class ObjectLoad implements Instruction {
@@ -31,6 +33,22 @@ public class ObjectLoad implements Instruction {
 		return result;
 	}
 
+	/**
+	 * @return the static type of the object the field belongs to
+	 */
+	public ObjectType objectType() {
+		return objectType;
+	}
+
+	public String field() {
+		return field;
+	}
+
+	@Override
+	public List<Temporary> operands() {
+		return Collections.singletonList(ptr);
+	}
+
 	@Override
 	public void writeToStream(AnnotatedDataOutput dos) throws IOException {
 		dos.writeByte(Opcodes.LOAD_OBJ);
@@ -45,4 +63,9 @@ public class ObjectLoad implements Instruction {
 	public void substituteTemporaries(Map<Temporary, Temporary> substitute) {
 		ptr = substitute.getOrDefault(ptr, ptr);
 	}
+
+	@Override
+	public Instruction copy(Map<Temporary, Temporary> temporaries, Map<Block, Block> blocks) {
+		return new ObjectLoad(temporaries.getOrDefault(ptr, ptr), objectType, field, temporaries.getOrDefault(result, result));
+	}
 }
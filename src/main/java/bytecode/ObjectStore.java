@@ -4,6 +4,8 @@ import bytecode.type.ObjectType;
 import stream.AnnotatedDataOutput;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 public class ObjectStore implements Instruction {
@@ -31,6 +33,22 @@ public class ObjectStore implements Instruction {
 		return null;
 	}
 
+	/**
+	 * @return the static type of the object the field belongs to
+	 */
+	public ObjectType objectType() {
+		return objectType;
+	}
+
+	public String field() {
+		return field;
+	}
+
+	@Override
+	public List<Temporary> operands() {
+		return Arrays.asList(ptr, value);
+	}
+
 	@Override
 	public void writeToStream(AnnotatedDataOutput dos) throws IOException {
 		dos.writeByte(Opcodes.STORE_OBJ);
@@ -47,4 +65,9 @@ public class ObjectStore implements Instruction {
 		ptr = substitute.getOrDefault(ptr, ptr);
 		value = substitute.getOrDefault(value, value);
 	}
+
+	@Override
+	public Instruction copy(Map<Temporary, Temporary> temporaries, Map<Block, Block> blocks) {
+		return new ObjectStore(temporaries.getOrDefault(ptr, ptr), objectType, field, temporaries.getOrDefault(value, value));
+	}
 }
@@ -1,7 +1,36 @@
 package bytecode;
 
+/**
+ * The opcodes of the instructions and the layout of the file they are written to
+ *
+ * Numbers are little endian, a string is its length as a short followed by its UTF-8 bytes.
+ * A file may start with a #! line, then follow:
+ *
+ * <pre>
+ * short MAGIC
+ * short FORMAT_VERSION
+ * type table:  short globals, each: byte type, string name
+ *              short types, each: byte id, string name, short fields (byte type, string name),
+ *                                 short virtual functions (short function index)
+ * short functions, each:
+ *   string name
+ *   short parameters, each: byte type, string name
+ *   byte return type
+ *   short blocks, each: short instructions, short successors (short block index)
+ *   short slots, the size of the frame
+ *   short results, the slot of each instruction with a result, in instruction order
+ *   short instructions, each: its opcode followed by its operands
+ * </pre>
+ */
 public class Opcodes {
 
+	public static final int MAGIC = 1706;
+	/**
+	 * Version 1 had no version field and numbered the slots of the results by the order of the
+	 * instructions. Version 2 added the frame size and the table of result slots.
+	 */
+	public static final int FORMAT_VERSION = 2;
+
 	public static final byte LOAD = 1;
 	public static final byte STORE = 2;
 	public static final byte CONST = 3;
@@ -46,6 +75,27 @@ public class Opcodes {
 
 	public static final int RETURN_VOID = 32;
 	public static final int RETURN = 33;
+	/**
+	 * Like CALL and VOID_CALL, returns what the callee returns instead of continuing. The
+	 * frame of the caller is not needed anymore and may be reused by the callee.
+	 */
+	public static final int TAIL_CALL = 34;
+	public static final int VOID_TAIL_CALL = 35;
+	/**
+	 * Compare two temporaries and jump to the block like CONDITIONAL_GOTO if the comparison
+	 * holds. The IF_NOT variants jump if it does not hold, which is not the same as the
+	 * opposite comparison for NaN.
+	 */
+	public static final int IF_GT = 36;
+	public static final int IF_GTE = 37;
+	public static final int IF_EQ = 38;
+	public static final int IF_NEQ = 39;
+	public static final int IF_LTE = 40;
+	public static final int IF_LT = 41;
+	public static final int IF_NOT_GT = 42;
+	public static final int IF_NOT_GTE = 43;
+	public static final int IF_NOT_LTE = 44;
+	public static final int IF_NOT_LT = 45;
 
 	public static final byte ALLOCATE = 100;
 	public static final byte LOAD_OBJ = 101;
@@ -57,6 +107,12 @@ public class Opcodes {
 	public static final byte VOID_MEMBER_CALL = 105;
 	public static final byte MEMBER_CALL = 106;
 
+	/**
+	 * Like LOAD_INDEX and STORE_INDEX, for accesses the compiler has proven to be in bounds.
+	 * Not in the high bit family, where the low bits are the opcode without the high bit.
+	 */
+	public static final byte LOAD_INDEX_UNCHECKED = 107;
+	public static final byte STORE_INDEX_UNCHECKED = 108;
 
 	public static final int LOAD_INDEX = 129; // high bit | load
 	public static final int STORE_INDEX = 130; // high bit | store
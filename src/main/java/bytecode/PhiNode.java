@@ -21,6 +21,18 @@ public class PhiNode implements Instruction {
 		return result;
 	}
 
+	/**
+	 * @return the incoming temporary for each predecessor block
+	 */
+	public Map<Block, Temporary> edges() {
+		return temporaries;
+	}
+
+	@Override
+	public List<Temporary> operands() {
+		return new ArrayList<>(temporaries.values());
+	}
+
 	@Override
 	public void writeToStream(AnnotatedDataOutput dos) throws IOException {
 		dos.writeByte(Opcodes.PHI);
@@ -51,7 +63,7 @@ public class PhiNode implements Instruction {
 
 	@Override
 	public void substituteTemporaries(Map<Temporary, Temporary> substitute) {
-		// todo stub
+		temporaries.replaceAll((block, temporary) -> substitute.getOrDefault(temporary, temporary));
 	}
 
 	@Override
@@ -70,4 +82,14 @@ public class PhiNode implements Instruction {
 	public int hashCode() {
 		return result.hashCode() + temporaries.hashCode();
 	}
+
+	@Override
+	public PhiNode copy(Map<Temporary, Temporary> temporaries, Map<Block, Block> blocks) {
+		Map<Block, Temporary> edges = new HashMap<>();
+		for(Map.Entry<Block, Temporary> edge : this.temporaries.entrySet()) {
+			edges.put(blocks.getOrDefault(edge.getKey(), edge.getKey()),
+			          temporaries.getOrDefault(edge.getValue(), edge.getValue()));
+		}
+		return new PhiNode(temporaries.getOrDefault(result, result), edges);
+	}
 }
@@ -3,6 +3,8 @@ package bytecode;
 import stream.AnnotatedDataOutput;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public class Return implements Instruction {
@@ -42,10 +44,24 @@ public class Return implements Instruction {
 		return null;
 	}
 
+	@Override
+	public List<Temporary> operands() {
+		if(value == null) {
+			return Collections.emptyList();
+		}
+
+		return Collections.singletonList(value);
+	}
+
 	@Override
 	public void substituteTemporaries(Map<Temporary, Temporary> substitute) {
 		if(value != null) {
 			value = substitute.getOrDefault(value, value);
 		}
 	}
+
+	@Override
+	public Instruction copy(Map<Temporary, Temporary> temporaries, Map<Block, Block> blocks) {
+		return value == null ? new Return() : new Return(temporaries.getOrDefault(value, value));
+	}
 }
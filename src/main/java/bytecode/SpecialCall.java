@@ -74,6 +74,11 @@ public class SpecialCall implements Instruction {
 		return null;
 	}
 
+	@Override
+	public List<Temporary> operands() {
+		return Collections.unmodifiableList(args);
+	}
+
 	@Override
 	public void substituteTemporaries(Map<Temporary, Temporary> substitute) {
 		ListIterator<Temporary> listIterator = args.listIterator();
@@ -82,4 +87,17 @@ public class SpecialCall implements Instruction {
 			listIterator.set(substitute.getOrDefault(t, t));
 		}
 	}
+
+	@Override
+	public Instruction copy(Map<Temporary, Temporary> temporaries, Map<Block, Block> blocks) {
+		return new SpecialCall(function, copyArgs(temporaries));
+	}
+
+	private List<Temporary> copyArgs(Map<Temporary, Temporary> temporaries) {
+		List<Temporary> copy = new ArrayList<>(args.size());
+		for(Temporary t : args) {
+			copy.add(temporaries.getOrDefault(t, t));
+		}
+		return copy;
+	}
 }
@@ -3,6 +3,8 @@ package bytecode;
 import stream.AnnotatedDataOutput;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public class Store implements Instruction {
@@ -35,6 +37,11 @@ public class Store implements Instruction {
 		return null;
 	}
 
+	@Override
+	public List<Temporary> operands() {
+		return Collections.singletonList(value);
+	}
+
 	public Temporary value() {
 		return value;
 	}
@@ -47,4 +54,9 @@ public class Store implements Instruction {
 	public void substituteTemporaries(Map<Temporary, Temporary> substitute) {
 		value = substitute.getOrDefault(value, value);
 	}
+
+	@Override
+	public Instruction copy(Map<Temporary, Temporary> temporaries, Map<Block, Block> blocks) {
+		return new Store(temporaries.getOrDefault(value, value), variable);
+	}
 }
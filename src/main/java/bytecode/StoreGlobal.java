@@ -4,12 +4,14 @@ import bytecode.type.ObjectType;
 import stream.AnnotatedDataOutput;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public class StoreGlobal implements Instruction {
 
 	private final ObjectType.Field field;
-	private final Temporary value;
+	private Temporary value;
 
 	public StoreGlobal(ObjectType.Field field, Temporary value) {
 		this.field = field;
@@ -21,6 +23,15 @@ public class StoreGlobal implements Instruction {
 		return null;
 	}
 
+	public ObjectType.Field field() {
+		return field;
+	}
+
+	@Override
+	public List<Temporary> operands() {
+		return Collections.singletonList(value);
+	}
+
 	@Override
 	public void writeToStream(AnnotatedDataOutput dos) throws IOException {
 		dos.writeByte(Opcodes.STORE_GLOBAL);
@@ -32,6 +43,11 @@ public class StoreGlobal implements Instruction {
 
 	@Override
 	public void substituteTemporaries(Map<Temporary, Temporary> substitute) {
+		value = substitute.getOrDefault(value, value);
+	}
 
+	@Override
+	public Instruction copy(Map<Temporary, Temporary> temporaries, Map<Block, Block> blocks) {
+		return new StoreGlobal(field, temporaries.getOrDefault(value, value));
 	}
 }
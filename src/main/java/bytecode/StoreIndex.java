@@ -3,6 +3,8 @@ package bytecode;
 import stream.AnnotatedDataOutput;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 public class StoreIndex implements Instruction {
@@ -10,6 +12,7 @@ public class StoreIndex implements Instruction {
 	public Temporary value;
 	public Temporary index;
 	private Temporary memory;
+	private boolean boundsChecked = true;
 
 	public StoreIndex(Temporary value, Temporary index, Temporary memory) {
 		this.value = value;
@@ -19,12 +22,23 @@ public class StoreIndex implements Instruction {
 
 	@Override
 	public String toString() {
-		return String.format("storeidx %s[%s], %s", memory, index, value);
+		return String.format("storeidx%s %s[%s], %s", boundsChecked ? "" : " unchecked", memory, index, value);
+	}
+
+	/**
+	 * Emits the access without bounds check. Only valid if the index is known to be in bounds
+	 */
+	public void removeBoundsCheck() {
+		boundsChecked = false;
+	}
+
+	public boolean isBoundsChecked() {
+		return boundsChecked;
 	}
 
 	@Override
 	public void writeToStream(AnnotatedDataOutput dos) throws IOException {
-		dos.writeByte(Opcodes.STORE_INDEX);
+		dos.writeByte(boundsChecked ? Opcodes.STORE_INDEX : Opcodes.STORE_INDEX_UNCHECKED);
 
 		dos.writeShort(memory.index());
 		dos.writeShort(index.index());
@@ -38,10 +52,22 @@ public class StoreIndex implements Instruction {
 		return null;
 	}
 
+	@Override
+	public List<Temporary> operands() {
+		return Arrays.asList(memory, index, value);
+	}
+
 	@Override
 	public void substituteTemporaries(Map<Temporary, Temporary> substitute) {
 		value = substitute.getOrDefault(value, value);
 		index = substitute.getOrDefault(index, index);
 		memory = substitute.getOrDefault(memory, memory);
 	}
+
+	@Override
+	public Instruction copy(Map<Temporary, Temporary> temporaries, Map<Block, Block> blocks) {
+		StoreIndex copy = new StoreIndex(temporaries.getOrDefault(value, value), temporaries.getOrDefault(index, index), temporaries.getOrDefault(memory, memory));
+		copy.boundsChecked = boundsChecked;
+		return copy;
+	}
 }
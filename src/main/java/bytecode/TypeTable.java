@@ -5,7 +5,6 @@ import com.github.javaparser.ast.expr.Expression;
 import stream.AnnotatedDataOutput;
 import java.io.IOException;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class TypeTable implements Compileable {
 
@@ -83,13 +82,11 @@ public class TypeTable implements Compileable {
 	}
 
 	public Map<ObjectType.Field, Expression> getStaticInitializers() throws InvalidCompileOrderException {
-		HashMap<ObjectType.Field, Expression> initializers = new HashMap<>();
+		Map<ObjectType.Field, Expression> initializers = new LinkedHashMap<>();
 		for(ObjectType objectType : types) {
-			initializers.putAll(objectType.getStaticFields().stream().collect(Collectors.toMap(
-					java.util.function.Function.identity(),
-					f -> f.initializer
-			))
-			);
+			for(ObjectType.Field f : objectType.getStaticFields()) {
+				initializers.put(f, f.initializer);
+			}
 		}
 		return initializers;
 	}
@@ -1,9 +1,13 @@
 package bytecode;
 
+import bytecode.type.PrimitiveType;
+import bytecode.type.Type;
 import com.github.javaparser.ast.expr.UnaryExpr;
 import stream.AnnotatedDataOutput;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public class UnaryOperation implements Instruction {
@@ -49,6 +53,29 @@ public class UnaryOperation implements Instruction {
 				return false;
 			}
 		}
+
+		/**
+		 * Evaluates the operation at compile time. The result has the same type as the operand.
+		 *
+		 * @return the result or null if the operation can not be evaluated at compile time
+		 */
+		public Object evaluate(Type type, Object value) {
+			if(this == not) {
+				return type == PrimitiveType.BOOL ? !(Boolean) value : null;
+			}
+
+			if(type == PrimitiveType.INT) {
+				return (Integer) value == Integer.MIN_VALUE ? null : -(Integer) value;
+			} else if(type == PrimitiveType.LONG) {
+				return (Long) value == Long.MIN_VALUE ? null : -(Long) value;
+			} else if(type == PrimitiveType.FLOAT) {
+				return -(Float) value;
+			} else if(type == PrimitiveType.DOUBLE) {
+				return -(Double) value;
+			}
+
+			return null;
+		}
 	}
 
 	@Override
@@ -69,8 +96,22 @@ public class UnaryOperation implements Instruction {
 		return result;
 	}
 
+	public Operator operator() {
+		return operator;
+	}
+
+	@Override
+	public List<Temporary> operands() {
+		return Collections.singletonList(tmp);
+	}
+
 	@Override
 	public void substituteTemporaries(Map<Temporary, Temporary> substitute) {
 		tmp = substitute.getOrDefault(tmp, tmp);
 	}
+
+	@Override
+	public Instruction copy(Map<Temporary, Temporary> temporaries, Map<Block, Block> blocks) {
+		return new UnaryOperation(temporaries.getOrDefault(result, result), operator, temporaries.getOrDefault(tmp, tmp));
+	}
 }
@@ -1,11 +1,12 @@
 package bytecode;
 
-import stream.AnnotatedDataOutput;
-
-import java.io.IOException;
 import java.util.*;
 
-public class UncomputedPhiNode implements Instruction {
+/**
+ * A phi node placed for a variable before the temporaries reaching it are known. It is
+ * replaced by a PhiNode once they are, so it is neither an instruction nor ever written.
+ */
+public class UncomputedPhiNode {
 	public final String varName;
 	Temporary result;
 	private final Block context;
@@ -37,22 +38,10 @@ public class UncomputedPhiNode implements Instruction {
 		return new PhiNode(result, incoming);
 	}
 
-	@Override
 	public Temporary result() {
 		return result;
 	}
 
-	@Override
-	public void writeToStream(AnnotatedDataOutput dos) throws IOException {
-		// todo stub
-		throw new InvalidCompileOrderException("Must compute uncomputed phi nodes before streaming");
-	}
-
-	@Override
-	public void substituteTemporaries(Map<Temporary, Temporary> substitute) {
-		// todo stub
-	}
-
 	@Override
 	public String toString() {
 		return result + " = φ(tbd)";
@@ -69,4 +58,4 @@ public class UncomputedPhiNode implements Instruction {
 		}
 		edges.put(incomingEdge, temporary);
 	}
-}
\ No newline at end of file
+}
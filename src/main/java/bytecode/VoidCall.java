@@ -4,11 +4,13 @@ import stream.AnnotatedDataOutput;
 
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 public class VoidCall implements Instruction {
 	private final Temporary[] args;
 	private final Function function;
+	private boolean tailCall = false;
 
 	public VoidCall(Function function, Temporary ...args) {
 		super();
@@ -19,7 +21,7 @@ public class VoidCall implements Instruction {
 	@Override
 	public String toString() {
 		String argString = Arrays.toString(args).replaceAll("\\[|\\]", "");
-		return String.format("call void %s(%s) [function index %s]", function.name(), argString, function.index());
+		return String.format("%s void %s(%s) [function index %s]", tailCall ? "tail call" : "call", function.name(), argString, function.index());
 	}
 
 	@Override
@@ -28,7 +30,7 @@ public class VoidCall implements Instruction {
 			throw new InvalidCompileOrderException("Need to link functions first");
 		}
 
-		dos.writeByte(Opcodes.VOID_CALL);
+		dos.writeByte(tailCall ? Opcodes.VOID_TAIL_CALL : Opcodes.VOID_CALL);
 
 		dos.writeShort(function.index());
 
@@ -46,10 +48,46 @@ public class VoidCall implements Instruction {
 		return null;
 	}
 
+	/**
+	 * Marks the call as the last thing the function does before returning
+	 */
+	public void markTailCall() {
+		tailCall = true;
+	}
+
+	public boolean isTailCall() {
+		return tailCall;
+	}
+
+	/**
+	 * @return the called function; for member calls the function the call dispatches from
+	 */
+	public Function function() {
+		return function;
+	}
+
+	@Override
+	public List<Temporary> operands() {
+		return Arrays.asList(args);
+	}
+
 	@Override
 	public void substituteTemporaries(Map<Temporary, Temporary> substitute) {
 		for(int i = 0; i < args.length; i++) {
 			args[i] = substitute.getOrDefault(args[i], args[i]);
 		}
 	}
+
+	@Override
+	public Instruction copy(Map<Temporary, Temporary> temporaries, Map<Block, Block> blocks) {
+		return new VoidCall(function, copyArgs(temporaries));
+	}
+
+	private Temporary[] copyArgs(Map<Temporary, Temporary> temporaries) {
+		Temporary[] copy = new Temporary[args.length];
+		for(int i = 0; i < args.length; i++) {
+			copy[i] = temporaries.getOrDefault(args[i], args[i]);
+		}
+		return copy;
+	}
 }
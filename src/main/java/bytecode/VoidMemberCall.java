@@ -4,7 +4,9 @@ import bytecode.type.ObjectType;
 import stream.AnnotatedDataOutput;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
@@ -32,6 +34,25 @@ public class VoidMemberCall implements Instruction {
 		return null;
 	}
 
+	/**
+	 * @return the static type of the receiver
+	 */
+	public ObjectType objectType() {
+		return objectType;
+	}
+
+	/**
+	 * @return the called function; for member calls the function the call dispatches from
+	 */
+	public Function function() {
+		return function;
+	}
+
+	@Override
+	public List<Temporary> operands() {
+		return Collections.unmodifiableList(args);
+	}
+
 	@Override
 	public void writeToStream(AnnotatedDataOutput dos) throws IOException {
 		dos.writeByte(Opcodes.VOID_MEMBER_CALL);
@@ -53,4 +74,17 @@ public class VoidMemberCall implements Instruction {
 			listIterator.set(substitute.getOrDefault(t, t));
 		}
 	}
+
+	@Override
+	public Instruction copy(Map<Temporary, Temporary> temporaries, Map<Block, Block> blocks) {
+		return new VoidMemberCall(objectType, function, copyArgs(temporaries));
+	}
+
+	private List<Temporary> copyArgs(Map<Temporary, Temporary> temporaries) {
+		List<Temporary> copy = new ArrayList<>(args.size());
+		for(Temporary t : args) {
+			copy.add(temporaries.getOrDefault(t, t));
+		}
+		return copy;
+	}
 }
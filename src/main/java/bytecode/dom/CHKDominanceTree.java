@@ -0,0 +1,153 @@
+package bytecode.dom;
+
+import java.util.*;
+
+/**
+ * A Simple, Fast Dominance Algorithm (Cooper, Harvey, Kennedy)
+ *
+ * Nodes are numbered in postorder (the root receives the highest number) and all
+ * per-node state is kept in int arrays indexed by that number. Unlike the
+ * N2DominanceTree no dominator sets are materialized: only IDOM is set on the nodes.
+ */
+public class CHKDominanceTree implements DominanceTree {
+
+	private static final int UNDEFINED = -1;
+
+	public List<Node> blocksInPostorder = new ArrayList<>();
+	private final Map<Node, Integer> postorderNumber = new HashMap<>();
+
+	// immediate dominator of each node (by postorder number)
+	private final int[] idom;
+
+	// preorder interval of each node in the dominator tree, used for dominance queries
+	private final int[] enter;
+	private final int[] exit;
+
+	public CHKDominanceTree(Node root) {
+		root.putInPostOrder(new HashSet<>(), blocksInPostorder);
+
+		int size = blocksInPostorder.size();
+		for(int i = 0; i < size; i++) {
+			postorderNumber.put(blocksInPostorder.get(i), i);
+		}
+
+		// predecessors by postorder number; predecessors unreachable from the root are dropped
+		int[][] predecessors = new int[size][];
+		for(int i = 0; i < size; i++) {
+			Collection<? extends Node> parents = blocksInPostorder.get(i).getParents();
+			int[] p = new int[parents.size()];
+			int count = 0;
+			for(Node parent : parents) {
+				Integer number = postorderNumber.get(parent);
+				if(number != null) {
+					p[count++] = number;
+				}
+			}
+			predecessors[i] = count == p.length ? p : Arrays.copyOf(p, count);
+		}
+
+		idom = new int[size];
+		Arrays.fill(idom, UNDEFINED);
+
+		int rootNumber = size - 1;
+		idom[rootNumber] = rootNumber;
+
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+
+			// for all nodes except the root in reverse postorder
+			for(int b = rootNumber - 1; b >= 0; b--) {
+				int newIdom = UNDEFINED;
+
+				for(int p : predecessors[b]) {
+					if(idom[p] == UNDEFINED) {
+						// not yet processed
+						continue;
+					}
+
+					newIdom = newIdom == UNDEFINED ? p : intersect(p, newIdom);
+				}
+
+				if(idom[b] != newIdom) {
+					idom[b] = newIdom;
+					changed = true;
+				}
+			}
+		}
+
+		for(int i = 0; i < size; i++) {
+			blocksInPostorder.get(i).setIDOM(i == rootNumber ? null : blocksInPostorder.get(idom[i]));
+		}
+
+		enter = new int[size];
+		exit = new int[size];
+		numberDominatorTree(rootNumber);
+	}
+
+	private int intersect(int finger1, int finger2) {
+		while(finger1 != finger2) {
+			while(finger1 < finger2) {
+				finger1 = idom[finger1];
+			}
+			while(finger2 < finger1) {
+				finger2 = idom[finger2];
+			}
+		}
+		return finger1;
+	}
+
+	/**
+	 * Assigns every node an interval [enter, exit] in a preorder walk of the dominator
+	 * tree so that a dominates b iff b's interval is nested in a's
+	 */
+	private void numberDominatorTree(int rootNumber) {
+		int size = idom.length;
+
+		// children lists of the dominator tree as a linked list in two int arrays
+		int[] firstChild = new int[size];
+		int[] nextSibling = new int[size];
+		Arrays.fill(firstChild, UNDEFINED);
+		for(int i = 0; i < size; i++) {
+			if(i != rootNumber) {
+				nextSibling[i] = firstChild[idom[i]];
+				firstChild[idom[i]] = i;
+			}
+		}
+
+		int[] stack = new int[size];
+		int[] cursor = new int[size];
+		int top = 0;
+		int counter = 0;
+
+		stack[top] = rootNumber;
+		cursor[top] = firstChild[rootNumber];
+		enter[rootNumber] = counter++;
+
+		while(top >= 0) {
+			int child = cursor[top];
+			if(child == UNDEFINED) {
+				exit[stack[top]] = counter - 1;
+				top--;
+			} else {
+				cursor[top] = nextSibling[child];
+				top++;
+				stack[top] = child;
+				cursor[top] = firstChild[child];
+				enter[child] = counter++;
+			}
+		}
+	}
+
+	@Override
+	public boolean dominates(Node dominator, Node node) {
+		Integer a = postorderNumber.get(dominator);
+		Integer b = postorderNumber.get(node);
+
+		if(a == null || b == null) {
+			return false;
+		}
+
+		return enter[a] <= enter[b] && enter[b] <= exit[a];
+	}
+}
@@ -1,4 +1,53 @@
 package bytecode.dom;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public interface DominanceTree {
+
+	/**
+	 * @return true if every path from the root to `node` passes through `dominator`
+	 */
+	boolean dominates(Node dominator, Node node);
+
+	enum Algorithm {
+		N2("n2"),
+		COOPER_HARVEY_KENNEDY("chk");
+
+		private final String name;
+
+		Algorithm(String name) {
+			this.name = name;
+		}
+
+		public DominanceTree compute(Node root) {
+			switch(this) {
+				case N2:
+					return new N2DominanceTree(root);
+				case COOPER_HARVEY_KENNEDY:
+					return new CHKDominanceTree(root);
+				default:
+					throw new UnsupportedOperationException();
+			}
+		}
+
+		private static Map<String, Algorithm> all() {
+			HashMap<String, Algorithm> x = new HashMap<>();
+
+			for(Algorithm a : Algorithm.class.getEnumConstants()) {
+				x.put(a.name, a);
+			}
+
+			return x;
+		}
+
+		public static Algorithm fromString(String name) {
+			return all().get(name);
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
 }
@@ -54,4 +54,9 @@ public class N2DominanceTree implements DominanceTree {
 			}
 		}
 	}
+
+	@Override
+	public boolean dominates(Node dominator, Node node) {
+		return node.DOM() != null && node.DOM().contains(dominator);
+	}
 }
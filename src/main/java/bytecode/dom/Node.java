@@ -17,6 +17,4 @@ public interface Node {
 	void putInPostOrder(Set<Node> visited, List<Node> list);
 
 	Collection<? extends Node> getParents();
-
-	Set<Node> DF();
 }
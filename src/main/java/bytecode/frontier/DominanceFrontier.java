@@ -1,24 +1,83 @@
 package bytecode.frontier;
 
 import bytecode.Block;
-import bytecode.dom.Node;
+import bytecode.InvalidCompileOrderException;
 
-import java.util.ListIterator;
+import java.util.Arrays;
+import java.util.List;
 
+/**
+ * Dominance frontiers of all blocks of a function, one sorted array of block indices per block
+ *
+ * Most frontiers hold a handful of blocks, so they are kept sparse: memory grows with the total
+ * size of the frontiers rather than with the square of the number of blocks, and blocks with an
+ * empty frontier share one empty array.
+ */
 public class DominanceFrontier {
-	public DominanceFrontier(Block root) {
-		for(ListIterator<Block> it = root.blockIterator(); it.hasNext(); ) {
-			Block b = it.next();
-
-			if(b.parents().size() > 1) {
-				for(Block p : b.parents()) {
-					Node runner = p;
-					while(runner != b.IDOM()) {
-						runner.DF().add(b);
-						runner = runner.IDOM();
+
+	private static final int NONE = -1;
+	private static final int[] EMPTY = new int[0];
+
+	private final int[][] frontiers;
+	private final int[] sizes;
+
+	/**
+	 * @param blocks all blocks of the function, each one stored at its block index
+	 */
+	public DominanceFrontier(List<Block> blocks) throws InvalidCompileOrderException {
+		int size = blocks.size();
+
+		int[] idom = new int[size];
+		frontiers = new int[size][];
+		sizes = new int[size];
+		for(int i = 0; i < size; i++) {
+			Block b = blocks.get(i);
+			idom[i] = b.IDOM() == null ? NONE : ((Block) b.IDOM()).index();
+			frontiers[i] = EMPTY;
+		}
+
+		// the block last added to each frontier: the runners of different parents of a join
+		// block may meet, and blocks are visited in ascending order, which keeps the arrays sorted
+		int[] last = new int[size];
+		Arrays.fill(last, NONE);
+
+		for(int b = 0; b < size; b++) {
+			List<Block> parents = blocks.get(b).parents();
+
+			if(parents.size() > 1) {
+				for(Block p : parents) {
+					int runner = p.index();
+					while(runner != idom[b]) {
+						if(last[runner] != b) {
+							add(runner, b);
+							last[runner] = b;
+						}
+						runner = idom[runner];
 					}
 				}
 			}
 		}
+
+		for(int i = 0; i < size; i++) {
+			if(sizes[i] != frontiers[i].length) {
+				frontiers[i] = Arrays.copyOf(frontiers[i], sizes[i]);
+			}
+		}
+	}
+
+	private void add(int block, int member) {
+		int[] frontier = frontiers[block];
+		if(sizes[block] == frontier.length) {
+			frontier = frontiers[block] = Arrays.copyOf(frontier, Math.max(4, frontier.length * 2));
+		}
+		frontier[sizes[block]++] = member;
+	}
+
+	/**
+	 * @return the block indices in the dominance frontier of the given block in ascending order.
+	 * Must not be modified
+	 */
+	public int[] of(int blockIndex) {
+		return frontiers[blockIndex];
 	}
 }
@@ -0,0 +1,327 @@
+package bytecode.optimization;
+
+import bytecode.*;
+
+import java.util.*;
+
+/**
+ * Orders the blocks of a function so that each block is followed by the successor it most
+ * likely continues with
+ *
+ * As in Pettis and Hansen's "Profile guided code positioning", the edges between blocks are
+ * visited from the most to the least frequently taken one, and each edge joins the chain
+ * ending in its source to the chain starting with its target. A block that ends in a
+ * conditional jump on a negated condition can also fall through to the target of the jump,
+ * by inverting it. The chains are then laid out starting with the one of the initial block,
+ * each followed by the most frequent chain reachable from the blocks placed, which leaves
+ * rarely executed blocks at the end. Where frequencies are equal, blocks that fall through
+ * to each other stay together.
+ *
+ * Without a profile, a block is taken to run LOOP_WEIGHT times as often as the loop around
+ * it, and a block leaving the function half as often as the other blocks of its loop, since
+ * returns in the middle of a function mostly handle special cases. With a profile, the
+ * layout found this way is ordered again by the block counts of the profile, which refer to
+ * it.
+ *
+ * Afterwards, a jump is added where a block no longer falls through to its successor, and
+ * jumps to the block following are removed.
+ */
+public class BlockLayout {
+
+	private static final int LOOP_WEIGHT = 8;
+	private static final int MAX_LOOP_DEPTH = 8;
+
+	private final Function function;
+	private final List<Block> blocks;
+
+	public BlockLayout(Function function) {
+		this.function = function;
+		this.blocks = function.blocks();
+	}
+
+	/**
+	 * @return whether the function has been changed
+	 */
+	public boolean run() throws InvalidCompileOrderException {
+		boolean changed = layout(estimate());
+
+		BlockProfile profile = function.file.options().blockProfile();
+		Map<Integer, Long> counts = profile == null ? null : profile.counts(function);
+		if(counts != null) {
+			Map<Block, Long> weights = new HashMap<>();
+			for(Block b : blocks) {
+				weights.put(b, counts.getOrDefault(b.index(), 0L));
+			}
+			changed |= layout(weights);
+		}
+
+		if(changed) {
+			function.computeDominance();
+		}
+		return changed;
+	}
+
+	private Map<Block, Long> estimate() throws InvalidCompileOrderException {
+		int[] depth = new int[blocks.size()];
+		for(Loops.Loop loop : new Loops(function).loops()) {
+			for(int i = loop.body.nextSetBit(0); i >= 0; i = loop.body.nextSetBit(i + 1)) {
+				depth[i]++;
+			}
+		}
+
+		Map<Block, Long> weights = new HashMap<>();
+		for(Block b : blocks) {
+			long weight = 2;
+			for(int i = 0; i < Math.min(depth[b.index()], MAX_LOOP_DEPTH); i++) {
+				weight *= LOOP_WEIGHT;
+			}
+			if(b.children().isEmpty()) {
+				weight /= 2;
+			}
+			weights.put(b, weight);
+		}
+		return weights;
+	}
+
+	private boolean layout(Map<Block, Long> weights) throws InvalidCompileOrderException {
+		// where each block continues if it does not jump, before anything moves
+		Map<Block, Block> continuation = new HashMap<>();
+		for(Block b : blocks) {
+			continuation.put(b, continuation(b));
+		}
+
+		Map<Temporary, UnaryOperation> negations = new HashMap<>();
+		for(Block b : blocks) {
+			for(Compileable c : b.instructions) {
+				if(c instanceof UnaryOperation && ((UnaryOperation) c).operator() == UnaryOperation.Operator.not) {
+					negations.put(((UnaryOperation) c).result(), (UnaryOperation) c);
+				}
+			}
+		}
+
+		// the edges that can become a fall through, the ones falling through already first on ties
+		List<Edge> edges = new ArrayList<>();
+		for(Block b : blocks) {
+			Block otherwise = continuation.get(b);
+			if(otherwise != null) {
+				edges.add(new Edge(b, otherwise, false, frequency(b, otherwise, weights)));
+			}
+
+			ConditionalGoto branch = branch(b);
+			if(branch != null && negations.containsKey(branch.condition()) && branch.label() != otherwise) {
+				edges.add(new Edge(b, branch.label(), true, frequency(b, branch.label(), weights)));
+			}
+		}
+		edges.sort(Comparator.comparingLong((Edge e) -> -e.frequency)
+		                     .thenComparing(e -> !fallsThrough(e))
+		                     .thenComparingInt(e -> blocks.indexOf(e.from)));
+
+		Map<Block, Block> next = new HashMap<>();
+		Map<Block, Block> previous = new HashMap<>();
+		Set<Block> inverted = new HashSet<>();
+		for(Edge e : edges) {
+			if(next.containsKey(e.from) || previous.containsKey(e.to) || e.to == function.initialBlock() ||
+			   head(e.from, previous) == e.to) {
+				continue;
+			}
+
+			next.put(e.from, e.to);
+			previous.put(e.to, e.from);
+			if(e.inverts) {
+				inverted.add(e.from);
+			}
+		}
+
+		List<Block> order = new ArrayList<>();
+		Set<Block> placed = new HashSet<>();
+		Block head = function.initialBlock();
+		while(head != null) {
+			for(Block b = head; b != null; b = next.get(b)) {
+				order.add(b);
+				placed.add(b);
+			}
+			head = mostFrequentReachable(placed, previous, weights);
+		}
+
+		if(order.equals(blocks) && inverted.isEmpty()) {
+			return false;
+		}
+
+		Set<UnaryOperation> folded = new HashSet<>();
+		for(int i = 0; i < order.size(); i++) {
+			Block b = order.get(i);
+			Block following = i + 1 < order.size() ? order.get(i + 1) : null;
+			Block otherwise = continuation.get(b);
+
+			if(inverted.contains(b)) {
+				// if !x goto then, otherwise  becomes  if x goto otherwise, then
+				ConditionalGoto branch = branch(b);
+				UnaryOperation negation = negations.get(branch.condition());
+				branch.substituteTemporaries(Collections.singletonMap(negation.result(), negation.operands().get(0)));
+				Block then = branch.label();
+				branch.setThen(otherwise);
+				otherwise = then;
+				folded.add(negation);
+			}
+
+			Goto jump = trailingGoto(b);
+			if(otherwise == null || otherwise == following) {
+				if(jump != null) {
+					b.instructions.remove(jump);
+				}
+			} else if(jump != null) {
+				jump.setLabel(otherwise);
+			} else {
+				b.instructions.add(new Goto(otherwise));
+			}
+		}
+
+		removeUnused(folded);
+		function.reorderBlocks(order);
+		return true;
+	}
+
+	private static class Edge {
+		final Block from;
+		final Block to;
+
+		// whether the conditional jump ending the block has to be inverted to fall through
+		final boolean inverts;
+		final long frequency;
+
+		Edge(Block from, Block to, boolean inverts, long frequency) {
+			this.from = from;
+			this.to = to;
+			this.inverts = inverts;
+			this.frequency = frequency;
+		}
+	}
+
+	private boolean fallsThrough(Edge e) {
+		int index = blocks.indexOf(e.from);
+		return !e.inverts && index + 1 < blocks.size() && blocks.get(index + 1) == e.to;
+	}
+
+	/**
+	 * Estimates how often the edge is taken from how often the blocks run. An edge runs as often
+	 * as its source if that has no other successor and as often as its target if that has no
+	 * other predecessor. Otherwise, the target runs as often as its predecessors continuing
+	 * with nothing else leave it to.
+	 */
+	private static long frequency(Block from, Block to, Map<Block, Long> weights) {
+		long frequency = Math.min(weights.get(from), weights.get(to));
+		if(from.children().size() == 1 || to.parents().size() == 1) {
+			return frequency;
+		}
+
+		long rest = weights.get(to);
+		for(Block parent : to.parents()) {
+			if(parent != from && parent.children().size() == 1) {
+				rest -= weights.get(parent);
+			}
+		}
+		return Math.max(0, Math.min(frequency, rest));
+	}
+
+	private static Block head(Block b, Map<Block, Block> previous) {
+		while(previous.containsKey(b)) {
+			b = previous.get(b);
+		}
+		return b;
+	}
+
+	/**
+	 * @return the block this block continues with unless it takes a conditional jump, null if it returns
+	 */
+	private Block continuation(Block b) throws InvalidCompileOrderException {
+		for(int i = b.instructions.size() - 1; i >= 0; i--) {
+			Compileable c = b.instructions.get(i);
+			if(c instanceof Goto) {
+				return ((Goto) c).label();
+			}
+			if(c instanceof Return) {
+				return null;
+			}
+			if(c instanceof Instruction) {
+				break;
+			}
+		}
+		return b.index() + 1 < blocks.size() ? blocks.get(b.index() + 1) : null;
+	}
+
+	/**
+	 * @return the conditional jump ending the block, possibly followed by a jump, or null
+	 */
+	private static ConditionalGoto branch(Block b) {
+		boolean jump = false;
+		for(int i = b.instructions.size() - 1; i >= 0; i--) {
+			Compileable c = b.instructions.get(i);
+			if(c instanceof Goto && !jump) {
+				jump = true;
+			} else if(c instanceof ConditionalGoto) {
+				return (ConditionalGoto) c;
+			} else if(c instanceof Instruction) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	private static Goto trailingGoto(Block b) {
+		for(int i = b.instructions.size() - 1; i >= 0; i--) {
+			Compileable c = b.instructions.get(i);
+			if(c instanceof Instruction) {
+				return c instanceof Goto ? (Goto) c : null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return the first block of the chain to place next, the one with the highest weight
+	 * among those with a placed predecessor, the earliest one in the current layout if there
+	 * are several. If no such chain exists, the first unplaced one, null once all blocks are
+	 * placed.
+	 */
+	private Block mostFrequentReachable(Set<Block> placed, Map<Block, Block> previous, Map<Block, Long> weights) {
+		Block best = null;
+		Block unreachable = null;
+		for(Block b : blocks) {
+			if(placed.contains(b) || previous.containsKey(b)) {
+				continue;
+			}
+			if(unreachable == null) {
+				unreachable = b;
+			}
+			if(b.parents().stream().anyMatch(placed::contains) && (best == null || weights.get(b) > weights.get(best))) {
+				best = b;
+			}
+		}
+		return best != null ? best : unreachable;
+	}
+
+	/**
+	 * Removes the negations no longer used after inverting the jumps on them
+	 */
+	private void removeUnused(Set<UnaryOperation> negations) throws InvalidCompileOrderException {
+		if(negations.isEmpty()) {
+			return;
+		}
+
+		Set<Temporary> used = new HashSet<>();
+		for(Block b : blocks) {
+			for(PhiNode phiNode : b.phiManager().computedPhiNodes()) {
+				used.addAll(phiNode.edges().values());
+			}
+			for(Compileable c : b.instructions) {
+				if(c instanceof Instruction) {
+					used.addAll(((Instruction) c).operands());
+				}
+			}
+		}
+
+		for(Block b : blocks) {
+			b.instructions.removeIf(c -> negations.contains(c) && !used.contains(((UnaryOperation) c).result()));
+		}
+	}
+}
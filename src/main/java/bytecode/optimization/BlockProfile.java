@@ -0,0 +1,68 @@
+package bytecode.optimization;
+
+import bytecode.Function;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * How often each block has been entered in a run of the vm
+ *
+ * Each line of a profile holds the index of a function, the index of one of its blocks and
+ * the number of times the block has been entered, separated by whitespace. Empty lines and
+ * lines starting with # are ignored. The indices refer to the file the profile has been
+ * recorded with, which must have been compiled from the same source with the same options,
+ * but without a profile.
+ */
+public class BlockProfile {
+
+	// function index -> block index -> count
+	private final Map<Integer, Map<Integer, Long>> counts = new HashMap<>();
+
+	public static BlockProfile read(File file) throws IOException {
+		BlockProfile profile = new BlockProfile();
+
+		try(BufferedReader reader = new BufferedReader(new FileReader(file))) {
+			String line;
+			int lineNumber = 0;
+			while((line = reader.readLine()) != null) {
+				lineNumber++;
+				line = line.trim();
+				if(line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+
+				String[] fields = line.split("\\s+");
+				try {
+					if(fields.length != 3) {
+						throw new NumberFormatException();
+					}
+					int function = Integer.parseInt(fields[0]);
+					int block = Integer.parseInt(fields[1]);
+					long count = Long.parseLong(fields[2]);
+					if(function < 0 || block < 0 || count < 0) {
+						throw new NumberFormatException();
+					}
+
+					profile.counts.computeIfAbsent(function, k -> new HashMap<>()).merge(block, count, Long::sum);
+				} catch(NumberFormatException e) {
+					throw new IOException(file + ":" + lineNumber + ": expected function, block and count");
+				}
+			}
+		}
+
+		return profile;
+	}
+
+	/**
+	 * @return the counts of the blocks of the function by block index, or null if the function
+	 * has not been profiled
+	 */
+	public Map<Integer, Long> counts(Function function) {
+		return counts.get(function.index());
+	}
+}
@@ -0,0 +1,468 @@
+package bytecode.optimization;
+
+import bytecode.*;
+import bytecode.type.PrimitiveType;
+
+import java.util.*;
+
+/**
+ * Removes the bounds check from array accesses whose index is provably in bounds
+ *
+ * The branches of a conditional goto establish facts of the form a < b or a <= b about
+ * the operands of the comparison, which hold in all blocks dominated by the branch target
+ * as long as that target is only reached through the branch. An index is below the length
+ * of the array if a chain of such facts, constant offsets and phi nodes leads from it to an
+ * array length of the same array or to the size the array has been created with. Phi nodes
+ * are handled by induction: all incoming values must be below the length, assuming the phi
+ * node itself is.
+ *
+ * An index is non-negative if it is a non-negative constant or length, bounded from below
+ * by a fact, or an induction variable whose start values are non-negative and which is only
+ * ever incremented by constants without overflowing.
+ */
+public class BoundsCheckElimination {
+
+	/**
+	 * How many definitions are followed when proving an index non-negative
+	 */
+	private static final int MAX_DEPTH = 8;
+
+	private final List<Block> blocks;
+
+	private final Map<Temporary, Instruction> definitions = new HashMap<>();
+	private final Map<Temporary, Block> definingBlocks = new HashMap<>();
+	private final Map<Temporary, List<Temporary>> lengths = new HashMap<>();
+
+	// facts by block index, each one a list of whether it is strict, left and right operand
+	private final List<Set<List<Object>>> facts = new ArrayList<>();
+
+	public BoundsCheckElimination(Function function) {
+		this.blocks = function.blocks();
+	}
+
+	/**
+	 * @return whether the function has been changed
+	 */
+	public boolean run() throws InvalidCompileOrderException {
+		for(Block b : blocks) {
+			for(PhiNode phiNode : b.phiManager().computedPhiNodes()) {
+				definitions.put(phiNode.result(), phiNode);
+				definingBlocks.put(phiNode.result(), b);
+			}
+
+			for(Compileable c : b.instructions) {
+				if(c instanceof Instruction && ((Instruction) c).result() != null) {
+					definitions.put(((Instruction) c).result(), (Instruction) c);
+					definingBlocks.put(((Instruction) c).result(), b);
+				}
+
+				if(c instanceof ArrayLength) {
+					Temporary array = ((ArrayLength) c).operands().get(0);
+					lengths.computeIfAbsent(array, t -> new ArrayList<>()).add(((ArrayLength) c).result());
+				}
+			}
+		}
+
+		computeFacts();
+
+		boolean changed = false;
+		for(Block b : blocks) {
+			for(Compileable c : b.instructions) {
+				if(c instanceof LoadIndex && ((LoadIndex) c).isBoundsChecked()) {
+					List<Temporary> operands = ((LoadIndex) c).operands();
+					if(isInBounds(operands.get(0), operands.get(1), b)) {
+						((LoadIndex) c).removeBoundsCheck();
+						changed = true;
+					}
+				} else if(c instanceof StoreIndex && ((StoreIndex) c).isBoundsChecked()) {
+					List<Temporary> operands = ((StoreIndex) c).operands();
+					if(isInBounds(operands.get(0), operands.get(1), b)) {
+						((StoreIndex) c).removeBoundsCheck();
+						changed = true;
+					}
+				}
+			}
+		}
+
+		return changed;
+	}
+
+	/**
+	 * Collects the facts of each block, visiting the dominator tree in preorder
+	 */
+	private void computeFacts() throws InvalidCompileOrderException {
+		List<List<Block>> dominatorChildren = new ArrayList<>();
+		for(int i = 0; i < blocks.size(); i++) {
+			dominatorChildren.add(new ArrayList<>());
+			facts.add(null);
+		}
+		for(Block b : blocks) {
+			if(b.IDOM() != null) {
+				dominatorChildren.get(((Block) b.IDOM()).index()).add(b);
+			}
+		}
+
+		Deque<Block> stack = new ArrayDeque<>();
+		stack.push(blocks.get(0));
+		while(!stack.isEmpty()) {
+			Block b = stack.pop();
+
+			Block dominator = (Block) b.IDOM();
+			Set<List<Object>> known = dominator == null ? new HashSet<>() : new HashSet<>(facts.get(dominator.index()));
+
+			if(b.parents().size() == 1) {
+				Block parent = b.parents().get(0);
+				ConditionalGoto branch = conditionalGoto(parent);
+
+				if(branch != null && new HashSet<>(parent.children()).size() == 2) {
+					addFacts(known, branch.condition(), branch.label() == b);
+				}
+			}
+
+			facts.set(b.index(), known);
+			dominatorChildren.get(b.index()).forEach(stack::push);
+		}
+	}
+
+	private static ConditionalGoto conditionalGoto(Block b) {
+		for(Compileable c : b.instructions) {
+			if(c instanceof ConditionalGoto) {
+				return (ConditionalGoto) c;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Adds the facts that hold if the condition has the given value
+	 */
+	private void addFacts(Set<List<Object>> known, Temporary condition, boolean value) {
+		Instruction definition = definitions.get(condition);
+
+		if(definition instanceof UnaryOperation && ((UnaryOperation) definition).operator() == UnaryOperation.Operator.not) {
+			addFacts(known, definition.operands().get(0), !value);
+			return;
+		}
+
+		if(!(definition instanceof BinaryOperation)) {
+			return;
+		}
+
+		Temporary l = definition.operands().get(0), r = definition.operands().get(1);
+		switch(((BinaryOperation) definition).operator()) {
+			case lt:
+				known.add(value ? fact(true, l, r) : fact(false, r, l));
+				break;
+			case lte:
+				known.add(value ? fact(false, l, r) : fact(true, r, l));
+				break;
+			case gt:
+				known.add(value ? fact(true, r, l) : fact(false, l, r));
+				break;
+			case gte:
+				known.add(value ? fact(false, r, l) : fact(true, l, r));
+				break;
+			case eq:
+			case neq:
+				if(value == (((BinaryOperation) definition).operator() == BinaryOperation.Operator.eq)) {
+					known.add(fact(false, l, r));
+					known.add(fact(false, r, l));
+				}
+				break;
+			case bitwiseAnd:
+				if(value) {
+					addFacts(known, l, true);
+					addFacts(known, r, true);
+				}
+				break;
+			case bitwiseOr:
+				if(!value) {
+					addFacts(known, l, false);
+					addFacts(known, r, false);
+				}
+				break;
+			default:
+				break;
+		}
+	}
+
+	/**
+	 * @return the facts holding in the block, none if it is unreachable
+	 */
+	private Set<List<Object>> facts(Block b) throws InvalidCompileOrderException {
+		Set<List<Object>> known = facts.get(b.index());
+		return known == null ? Collections.emptySet() : known;
+	}
+
+	private static List<Object> fact(boolean strict, Temporary l, Temporary r) {
+		return Arrays.asList(strict, l, r);
+	}
+
+	private boolean isInBounds(Temporary array, Temporary index, Block b) throws InvalidCompileOrderException {
+		return isBelowLength(array, index, b) && isNonNegative(index, b, new HashSet<>(), 0);
+	}
+
+	private boolean isBelowLength(Temporary array, Temporary index, Block b) throws InvalidCompileOrderException {
+		Set<Temporary> arrayLengths = new HashSet<>(lengths.getOrDefault(array, Collections.emptyList()));
+
+		Instruction allocation = definitions.get(array);
+		if(allocation instanceof New) {
+			arrayLengths.add(allocation.operands().get(0));
+		}
+
+		return !arrayLengths.isEmpty() && isBelow(index, 0, arrayLengths, b, new HashMap<>(), 0);
+	}
+
+	/**
+	 * @param offset added to t, without wrapping around
+	 * @param arrayLengths temporaries holding the length of the array
+	 * @param assumed induction variables assumed to be below the length, with the offset assumed
+	 * @return whether t plus the offset is below the length of the array
+	 */
+	private boolean isBelow(Temporary t, long offset, Set<Temporary> arrayLengths, Block b, Map<Temporary, Long> assumed, int depth) throws InvalidCompileOrderException {
+		if(depth > MAX_DEPTH) {
+			return false;
+		}
+
+		if(arrayLengths.contains(t)) {
+			return offset < 0;
+		}
+
+		Long constant = intConstant(t);
+		if(constant != null) {
+			for(Temporary length : arrayLengths) {
+				Long size = intConstant(length);
+				if(size != null && constant + offset < size) {
+					return true;
+				}
+			}
+		}
+
+		for(List<Object> fact : facts(b)) {
+			long boundOffset = (Boolean) fact.get(0) ? offset - 1 : offset;
+
+			// a fact about t + c, which does not wrap around, bounds t as well
+			Long increment = fact.get(1) == t ? Long.valueOf(0) : increment((Temporary) fact.get(1), t);
+			if(increment != null && isBelow((Temporary) fact.get(2), boundOffset - increment, arrayLengths, b, assumed, depth + 1)) {
+				return true;
+			}
+		}
+
+		Instruction definition = definitions.get(t);
+
+		if(definition instanceof PhiNode) {
+			Long assumedOffset = assumed.get(t);
+			if(assumedOffset != null) {
+				return offset <= assumedOffset;
+			}
+
+			assumed.put(t, offset);
+			boolean below = true;
+			for(Map.Entry<Block, Temporary> edge : ((PhiNode) definition).edges().entrySet()) {
+				if(!isBelow(edge.getValue(), offset, arrayLengths, edge.getKey(), assumed, depth + 1)) {
+					below = false;
+					break;
+				}
+			}
+			// only proven if everything assumed along the way holds, which the caller decides
+			assumed.remove(t);
+			return below;
+		}
+
+		if(definition instanceof BinaryOperation) {
+			BinaryOperation.Operator operator = ((BinaryOperation) definition).operator();
+			Temporary l = definition.operands().get(0), r = definition.operands().get(1);
+
+			if(operator == BinaryOperation.Operator.add && intConstant(l) != null) {
+				Temporary swap = l;
+				l = r;
+				r = swap;
+			}
+
+			Long increment = intConstant(r);
+			if(increment == null || (operator != BinaryOperation.Operator.add && operator != BinaryOperation.Operator.sub)) {
+				return false;
+			}
+			if(operator == BinaryOperation.Operator.sub) {
+				increment = -increment;
+			}
+
+			// an increment cannot wrap around if the sum ends up below a length, a decrement must be checked
+			Block definingBlock = definingBlocks.get(t);
+			return (increment >= 0 || !mayUnderflow(l, increment, definingBlock))
+				&& isBelow(l, offset + increment, arrayLengths, definingBlock, assumed, depth + 1);
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return whether adding the negative increment to t may fall below the int range
+	 */
+	private boolean mayUnderflow(Temporary t, long increment, Block b) throws InvalidCompileOrderException {
+		if(isNonNegative(t, b, new HashSet<>(), 0)) {
+			return false;
+		}
+
+		for(List<Object> fact : facts(b)) {
+			Long bound = fact.get(2) == t ? intConstant((Temporary) fact.get(1)) : null;
+			if(bound != null && bound + increment >= Integer.MIN_VALUE) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * @param assumed induction variables assumed to be non-negative while proving it
+	 */
+	private boolean isNonNegative(Temporary t, Block b, Set<Temporary> assumed, int depth) throws InvalidCompileOrderException {
+		if(depth > MAX_DEPTH) {
+			return false;
+		}
+
+		Long constant = intConstant(t);
+		if(constant != null) {
+			return constant >= 0;
+		}
+
+		for(List<Object> fact : facts(b)) {
+			Long bound = fact.get(2) == t ? intConstant((Temporary) fact.get(1)) : null;
+			if(bound != null && bound >= ((Boolean) fact.get(0) ? -1 : 0)) {
+				return true;
+			}
+		}
+
+		Instruction definition = definitions.get(t);
+
+		if(definition instanceof ArrayLength) {
+			return true;
+		}
+
+		if(definition instanceof PhiNode) {
+			if(!assumed.add(t)) {
+				return true;
+			}
+
+			for(Map.Entry<Block, Temporary> edge : ((PhiNode) definition).edges().entrySet()) {
+				if(!isNonNegative(edge.getValue(), edge.getKey(), assumed, depth + 1)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		if(definition instanceof BinaryOperation && ((BinaryOperation) definition).operator() == BinaryOperation.Operator.add) {
+			Temporary l = definition.operands().get(0), r = definition.operands().get(1);
+			if(intConstant(l) != null) {
+				Temporary swap = l;
+				l = r;
+				r = swap;
+			}
+
+			Long increment = intConstant(r);
+			Block definingBlock = definingBlocks.get(t);
+			return increment != null && increment >= 0
+				&& isNonNegative(l, definingBlock, assumed, depth + 1)
+				&& !mayOverflow(l, increment, definingBlock);
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return the non-negative constant c if u is defined as t + c and cannot wrap around,
+	 * otherwise null
+	 */
+	private Long increment(Temporary u, Temporary t) throws InvalidCompileOrderException {
+		Instruction definition = definitions.get(u);
+		if(!(definition instanceof BinaryOperation) || ((BinaryOperation) definition).operator() != BinaryOperation.Operator.add) {
+			return null;
+		}
+
+		Temporary l = definition.operands().get(0), r = definition.operands().get(1);
+		Long increment = l == t ? intConstant(r) : r == t ? intConstant(l) : null;
+		if(increment == null || increment < 0 || mayOverflow(t, increment, definingBlocks.get(u))) {
+			return null;
+		}
+		return increment;
+	}
+
+	/**
+	 * @return whether adding the non-negative increment to t may exceed the int range
+	 */
+	private boolean mayOverflow(Temporary t, long increment, Block b) throws InvalidCompileOrderException {
+		return mayOverflow(t, increment, b, new HashSet<>(), 0);
+	}
+
+	/**
+	 * @param assumed induction variables assumed not to overflow while proving it
+	 */
+	private boolean mayOverflow(Temporary t, long increment, Block b, Set<Temporary> assumed, int depth) throws InvalidCompileOrderException {
+		if(increment == 0) {
+			return false;
+		}
+		if(depth > MAX_DEPTH) {
+			return true;
+		}
+
+		Long constant = intConstant(t);
+		if(constant != null) {
+			return constant + increment > Integer.MAX_VALUE;
+		}
+
+		for(List<Object> fact : facts(b)) {
+			if(fact.get(1) != t || !((Boolean) fact.get(0))) {
+				continue;
+			}
+
+			// t < bound, so t + 1 cannot overflow whatever the bound is
+			if(increment == 1) {
+				return false;
+			}
+
+			Long bound = intConstant((Temporary) fact.get(2));
+			if(bound != null && bound - 1 + increment <= Integer.MAX_VALUE) {
+				return false;
+			}
+		}
+
+		// an induction variable only takes the values coming in, e.g. a start value and a
+		// counter bounded by the loop condition
+		Instruction definition = definitions.get(t);
+		if(definition instanceof PhiNode) {
+			if(!assumed.add(t)) {
+				return false;
+			}
+
+			for(Map.Entry<Block, Temporary> edge : ((PhiNode) definition).edges().entrySet()) {
+				if(mayOverflow(edge.getValue(), increment, edge.getKey(), assumed, depth + 1)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return the value of an integral constant or null if t is not one
+	 */
+	private Long intConstant(Temporary t) {
+		Instruction definition = definitions.get(t);
+		if(!(definition instanceof Const)) {
+			return null;
+		}
+
+		Const<?> constant = (Const<?>) definition;
+		if(constant.type == PrimitiveType.INT || constant.type == PrimitiveType.SHORT || constant.type == PrimitiveType.BYTE) {
+			return ((Number) constant.value).longValue();
+		}
+		if(constant.type == PrimitiveType.CHAR) {
+			return (long) (Character) constant.value;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,182 @@
+package bytecode.optimization;
+
+import bytecode.*;
+
+import bytecode.type.PrimitiveType;
+import bytecode.type.Type;
+
+import java.util.*;
+
+/**
+ * Replaces each comparison that is only used by the conditional jump following it in its
+ * block by a ComparisonGoto, which saves the vm a dispatch per jump. A negation of the
+ * comparison in between is folded into the jump as well. On integers it becomes the
+ * opposite comparison. Operands that may be floating point keep the negated jump, since
+ * the opposite comparison differs for NaN.
+ *
+ * This runs once the layout of the blocks is final, since none of the other optimizations
+ * know about the fused jumps.
+ */
+public class BranchFusion {
+
+	private final Function function;
+
+	private final Map<Temporary, Instruction> definitions = new HashMap<>();
+	private final Set<Temporary> integers = new HashSet<>();
+
+	public BranchFusion(Function function) {
+		this.function = function;
+	}
+
+	/**
+	 * @return whether any jump has been fused
+	 */
+	public boolean run() throws InvalidCompileOrderException {
+		Map<Temporary, Integer> uses = new HashMap<>();
+		for(Block b : function.blocks()) {
+			for(PhiNode phiNode : b.phiManager().computedPhiNodes()) {
+				definitions.put(phiNode.result(), phiNode);
+				for(Temporary t : phiNode.edges().values()) {
+					uses.merge(t, 1, Integer::sum);
+				}
+			}
+			for(Compileable c : b.instructions) {
+				if(c instanceof Instruction) {
+					Instruction instruction = (Instruction) c;
+					if(instruction.result() != null) {
+						definitions.put(instruction.result(), instruction);
+					}
+					for(Temporary t : instruction.operands()) {
+						uses.merge(t, 1, Integer::sum);
+					}
+				}
+			}
+		}
+		inferIntegers();
+
+		boolean changed = false;
+		for(Block b : function.blocks()) {
+			Set<Instruction> fused = Collections.newSetFromMap(new IdentityHashMap<>());
+
+			for(int i = 0; i < b.instructions.size(); i++) {
+				if(!(b.instructions.get(i) instanceof ConditionalGoto)) {
+					continue;
+				}
+
+				ConditionalGoto branch = (ConditionalGoto) b.instructions.get(i);
+				Instruction definition = definition(b, i, branch.condition());
+				UnaryOperation negation = null;
+				if(definition instanceof UnaryOperation && ((UnaryOperation) definition).operator() == UnaryOperation.Operator.not &&
+				   uses.get(definition.result()) == 1) {
+					negation = (UnaryOperation) definition;
+					definition = definition(b, b.instructions.indexOf(negation), negation.operands().get(0));
+				}
+
+				if(!(definition instanceof BinaryOperation) || !((BinaryOperation) definition).operator().isComparison() ||
+				   uses.get(definition.result()) != 1) {
+					continue;
+				}
+
+				BinaryOperation comparison = (BinaryOperation) definition;
+				BinaryOperation.Operator operator = comparison.operator();
+				boolean negated = negation != null;
+				if(negated && integers.containsAll(comparison.operands())) {
+					operator = opposite(operator);
+					negated = false;
+				}
+				b.instructions.set(i, new ComparisonGoto(operator,
+				                                         negated,
+				                                         comparison.operands().get(0),
+				                                         comparison.operands().get(1),
+				                                         branch.label()));
+				fused.add(comparison);
+				if(negation != null) {
+					fused.add(negation);
+				}
+			}
+
+			if(!fused.isEmpty()) {
+				b.instructions.removeIf(fused::contains);
+				changed = true;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Finds the temporaries holding integers: integer constants and parameters, lengths, calls
+	 * returning integers and the arithmetic on and phi nodes of only those
+	 */
+	private void inferIntegers() {
+		for(int i = 0; i < function.parameters.size(); i++) {
+			if(isInteger(function.parameters.get(i).type)) {
+				integers.add(function.parameterTemporaries().get(i));
+			}
+		}
+
+		// start optimistically with all candidates, since phi nodes and increments depend on each other
+		for(Instruction definition : definitions.values()) {
+			if((definition instanceof Const && isInteger(((Const<?>) definition).type))
+				|| (definition instanceof Call && isInteger(((Call) definition).function().returnType()))
+				|| definition instanceof ArrayLength
+				|| definition instanceof PhiNode
+				|| isArithmetic(definition)) {
+				integers.add(definition.result());
+			}
+		}
+
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+			for(Instruction definition : definitions.values()) {
+				if((definition instanceof PhiNode || isArithmetic(definition))
+					&& integers.contains(definition.result())
+					&& !integers.containsAll(definition.operands())) {
+					integers.remove(definition.result());
+					changed = true;
+				}
+			}
+		}
+	}
+
+	private static boolean isInteger(Type type) {
+		return type == PrimitiveType.BYTE || type == PrimitiveType.CHAR || type == PrimitiveType.SHORT
+			|| type == PrimitiveType.INT || type == PrimitiveType.LONG;
+	}
+
+	private static boolean isArithmetic(Instruction instruction) {
+		if(instruction instanceof BinaryOperation) {
+			return !((BinaryOperation) instruction).operator().isComparison();
+		}
+		return instruction instanceof UnaryOperation && ((UnaryOperation) instruction).operator() == UnaryOperation.Operator.neg;
+	}
+
+	/**
+	 * @return the comparison that holds exactly when the given one does not, on integers
+	 */
+	private static BinaryOperation.Operator opposite(BinaryOperation.Operator operator) {
+		switch(operator) {
+			case gt: return BinaryOperation.Operator.lte;
+			case gte: return BinaryOperation.Operator.lt;
+			case lte: return BinaryOperation.Operator.gt;
+			case lt: return BinaryOperation.Operator.gte;
+			case eq: return BinaryOperation.Operator.neq;
+			case neq: return BinaryOperation.Operator.eq;
+			default: throw new IllegalArgumentException("Cannot negate " + operator);
+		}
+	}
+
+	/**
+	 * @return the instruction of the block defining the temporary in front of the given
+	 * position, null if it is defined elsewhere
+	 */
+	private static Instruction definition(Block b, int position, Temporary t) {
+		for(int i = position - 1; i >= 0; i--) {
+			Compileable c = b.instructions.get(i);
+			if(c instanceof Instruction && ((Instruction) c).result() == t) {
+				return (Instruction) c;
+			}
+		}
+		return null;
+	}
+}
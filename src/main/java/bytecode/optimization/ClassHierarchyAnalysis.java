@@ -0,0 +1,117 @@
+package bytecode.optimization;
+
+import bytecode.*;
+import bytecode.type.ObjectType;
+import bytecode.type.system.TypeSystem;
+
+import java.util.*;
+
+/**
+ * Turns member calls that can only reach one function into direct calls
+ *
+ * A member call dispatches through the vtable slot of the called function on the runtime
+ * type of the receiver, which is the static type of the receiver or one of its subclasses.
+ * Since the whole program is known, the slot can be looked up in all of them. If they all
+ * agree, the call is monomorphic and is replaced by a call of that function, which the vm
+ * does not need to dispatch and which can be inlined. A direct call does not trap on a null
+ * receiver, so only calls on receivers that cannot be null are replaced (see NonNullReferences).
+ */
+public class ClassHierarchyAnalysis {
+
+	private final BytecodeFile file;
+	private final TypeSystem typeSystem;
+
+	// the only function a slot of a type dispatches to or null if there is more than one
+	private final Map<ObjectType, Map<Integer, Optional<Function>>> targets = new HashMap<>();
+
+	public ClassHierarchyAnalysis(BytecodeFile file) {
+		this.file = file;
+		this.typeSystem = file.typeSystem();
+	}
+
+	/**
+	 * @return whether any function has been changed
+	 */
+	public boolean run() throws InvalidCompileOrderException {
+		boolean changed = false;
+
+		for(Function f : file.compiledFunctions()) {
+			NonNullReferences nonNull = null;
+
+			for(Block b : f.blocks()) {
+				for(ListIterator<Compileable> it = b.instructions.listIterator(); it.hasNext(); ) {
+					Compileable c = it.next();
+
+					if(c instanceof MemberCall || c instanceof VoidMemberCall) {
+						if(nonNull == null) {
+							nonNull = new NonNullReferences(f);
+						}
+						if(nonNull.hasNullableReceiver(b, it.previousIndex())) {
+							continue;
+						}
+					}
+
+					if(c instanceof MemberCall) {
+						MemberCall call = (MemberCall) c;
+						Function target = target(call.objectType(), call.function());
+						if(target != null) {
+							it.set(new Call(call.result(), target, call.operands().toArray(new Temporary[]{})));
+							changed = true;
+						}
+					} else if(c instanceof VoidMemberCall) {
+						VoidMemberCall call = (VoidMemberCall) c;
+						Function target = target(call.objectType(), call.function());
+						if(target != null) {
+							it.set(new VoidCall(target, call.operands().toArray(new Temporary[]{})));
+							changed = true;
+						}
+					}
+				}
+			}
+		}
+
+		return changed;
+	}
+
+	/**
+	 * @return the function a member call is replaced by once its receiver is known not to be
+	 * null, which inlining a constructor or factory may show later, otherwise null
+	 */
+	public Function target(Compileable c) {
+		if(c instanceof MemberCall) {
+			return target(((MemberCall) c).objectType(), ((MemberCall) c).function());
+		}
+		if(c instanceof VoidMemberCall) {
+			return target(((VoidMemberCall) c).objectType(), ((VoidMemberCall) c).function());
+		}
+		return null;
+	}
+
+	/**
+	 * @return the only function a call of the given function on a receiver of the given type
+	 * can dispatch to or null if there are several
+	 */
+	private Function target(ObjectType objectType, Function function) {
+		int slot = function.localIndex();
+
+		return targets.computeIfAbsent(objectType, t -> new HashMap<>()).computeIfAbsent(slot, s -> {
+			Function target = null;
+
+			for(ObjectType type : typeSystem.getTypes()) {
+				if(!type.isSpecialOf(objectType)) {
+					continue;
+				}
+
+				List<Function> virtualFunctions = type.getVirtualFunctions();
+				Function implementation = slot < virtualFunctions.size() ? virtualFunctions.get(slot) : null;
+
+				if(implementation == null || (target != null && target != implementation)) {
+					return Optional.empty();
+				}
+				target = implementation;
+			}
+
+			return Optional.ofNullable(target);
+		}).orElse(null);
+	}
+}
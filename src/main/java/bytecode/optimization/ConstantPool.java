@@ -0,0 +1,174 @@
+package bytecode.optimization;
+
+import bytecode.*;
+
+import java.util.*;
+
+/**
+ * Materializes every distinct constant of a function only once
+ *
+ * All consts with the same type and value are replaced by a single one at the start of
+ * the nearest block dominating all their uses. If that block lies in loops using the const,
+ * it moves further up the dominator tree until it is outside of them. A const without
+ * duplicates that is used in a single block outside of such loops stays where it is.
+ */
+public class ConstantPool {
+
+	private final Function function;
+	private final List<Block> blocks;
+
+	// immediate dominator and depth in the dominator tree by block index
+	private final int[] idom;
+	private final int[] depth;
+
+	public ConstantPool(Function function) throws InvalidCompileOrderException {
+		this.function = function;
+		this.blocks = function.blocks();
+
+		int size = blocks.size();
+		idom = new int[size];
+		depth = new int[size];
+		Arrays.fill(depth, -1);
+
+		for(int i = 0; i < size; i++) {
+			Block dominator = (Block) blocks.get(i).IDOM();
+			idom[i] = dominator == null ? i : dominator.index();
+		}
+		for(int i = 0; i < size; i++) {
+			depth(i);
+		}
+	}
+
+	private int depth(int b) {
+		if(depth[b] < 0) {
+			depth[b] = idom[b] == b ? 0 : depth(idom[b]) + 1;
+		}
+		return depth[b];
+	}
+
+	private int commonDominator(int a, int b) {
+		while(a != b) {
+			if(depth[a] >= depth[b]) {
+				a = idom[a];
+			} else {
+				b = idom[b];
+			}
+		}
+		return a;
+	}
+
+	/**
+	 * @return whether the function has been changed
+	 */
+	public boolean run() throws InvalidCompileOrderException {
+		// consts keyed by type and value in order of appearance
+		Map<List<Object>, List<Const<?>>> pool = new LinkedHashMap<>();
+		Map<Const<?>, Block> containingBlock = new IdentityHashMap<>();
+		Map<Temporary, BitSet> usingBlocks = new HashMap<>();
+
+		for(Block b : blocks) {
+			// a phi node uses its argument at the end of the predecessor
+			for(PhiNode phiNode : b.phiManager().computedPhiNodes()) {
+				for(Map.Entry<Block, Temporary> edge : phiNode.edges().entrySet()) {
+					usingBlocks.computeIfAbsent(edge.getValue(), t -> new BitSet()).set(edge.getKey().index());
+				}
+			}
+
+			for(Compileable c : b.instructions) {
+				if(c instanceof Const) {
+					Const<?> constant = (Const<?>) c;
+					pool.computeIfAbsent(Arrays.asList(constant.type, constant.value), k -> new ArrayList<>()).add(constant);
+					containingBlock.put(constant, b);
+				}
+
+				if(c instanceof Instruction) {
+					for(Temporary operand : ((Instruction) c).operands()) {
+						usingBlocks.computeIfAbsent(operand, t -> new BitSet()).set(b.index());
+					}
+				}
+			}
+		}
+
+		Loops loops = new Loops(function);
+
+		Map<Temporary, Temporary> substitute = new HashMap<>();
+		Map<Block, List<Compileable>> placed = new LinkedHashMap<>();
+
+		for(List<Const<?>> consts : pool.values()) {
+			BitSet uses = new BitSet();
+			for(Const<?> constant : consts) {
+				uses.or(usingBlocks.getOrDefault(constant.result(), new BitSet()));
+			}
+
+			if(uses.isEmpty()) {
+				// never used
+				continue;
+			}
+
+			int target = -1;
+			for(int b = uses.nextSetBit(0); b >= 0; b = uses.nextSetBit(b + 1)) {
+				target = target < 0 ? b : commonDominator(target, b);
+			}
+
+			// leave the loops around the target that use the constant, which are left
+			// outermost first, the loops not using it are not worth the longer live range
+			boolean hoisted = false;
+			for(boolean moved = true; moved; ) {
+				moved = false;
+				for(Loops.Loop loop : loops.loops()) {
+					int header = loop.header.index();
+					if(loop.body.get(target) && loop.body.intersects(uses) && idom[header] != header) {
+						target = idom[header];
+						hoisted = moved = true;
+						break;
+					}
+				}
+			}
+
+			if(!hoisted && uses.cardinality() == 1 && consts.size() == 1) {
+				// used in a single block outside of loops, there is nothing to share
+				continue;
+			}
+
+			Block block = blocks.get(target);
+			Const<?> kept = consts.get(0);
+
+			if(consts.size() == 1 && containingBlock.get(kept) == block) {
+				continue;
+			}
+
+			for(Const<?> constant : consts) {
+				removeInstruction(containingBlock.get(constant), constant);
+				if(constant != kept) {
+					substitute.put(constant.result(), kept.result());
+				}
+			}
+			placed.computeIfAbsent(block, k -> new ArrayList<>()).add(kept);
+		}
+
+		for(Map.Entry<Block, List<Compileable>> entry : placed.entrySet()) {
+			entry.getKey().instructions.addAll(0, entry.getValue());
+		}
+
+		if(!substitute.isEmpty()) {
+			for(Block b : blocks) {
+				for(PhiNode phiNode : b.phiManager().computedPhiNodes()) {
+					phiNode.substituteTemporaries(substitute);
+				}
+				b.substituteTemporaries(substitute);
+			}
+		}
+
+		return !placed.isEmpty();
+	}
+
+	private static void removeInstruction(Block b, Instruction instruction) {
+		// by identity, Const overrides equals
+		for(Iterator<Compileable> it = b.instructions.iterator(); it.hasNext(); ) {
+			if(it.next() == instruction) {
+				it.remove();
+				return;
+			}
+		}
+	}
+}
@@ -0,0 +1,265 @@
+package bytecode.optimization;
+
+import bytecode.*;
+import bytecode.type.PrimitiveType;
+
+import java.util.*;
+
+/**
+ * Simplifies the control flow graph until nothing changes
+ *
+ * - conditional jumps on a constant, or with both targets the same, become unconditional,
+ *   and the blocks only the dropped edge led to are removed
+ * - edges into blocks that do nothing but continue with another block are threaded
+ *   through to that block
+ * - a block with a single successor that has no other predecessor is merged with it
+ * - jumps to the block laid out next are removed
+ *
+ * This runs last, since the loop optimizations rely on preheaders that may be empty.
+ */
+public class ControlFlowSimplification {
+
+	private final Function function;
+	private final List<Block> blocks;
+
+	public ControlFlowSimplification(Function function) {
+		this.function = function;
+		this.blocks = function.blocks();
+	}
+
+	/**
+	 * @return whether the function has been changed
+	 */
+	public boolean run() throws InvalidCompileOrderException {
+		boolean changed = false;
+
+		boolean progress = true;
+		while(progress) {
+			progress = foldBranches();
+			if(progress) {
+				removeUnreachable();
+			}
+			progress |= threadJumps();
+			progress |= mergeBlocks();
+			progress |= removeJumpsToNext();
+			changed |= progress;
+		}
+
+		return changed;
+	}
+
+	private boolean foldBranches() throws InvalidCompileOrderException {
+		Map<Temporary, Boolean> constants = new HashMap<>();
+		for(Block b : blocks) {
+			for(Compileable c : b.instructions) {
+				if(c instanceof Const && ((Const<?>) c).type == PrimitiveType.BOOL) {
+					constants.put(((Const<?>) c).result(), (Boolean) ((Const<?>) c).value);
+				}
+			}
+		}
+
+		boolean changed = false;
+		for(Block b : blocks) {
+			for(int i = 0; i < b.instructions.size(); i++) {
+				if(!(b.instructions.get(i) instanceof ConditionalGoto)) {
+					continue;
+				}
+
+				ConditionalGoto branch = (ConditionalGoto) b.instructions.get(i);
+				Block then = branch.label();
+				Block elze = otherwise(b, i);
+				Boolean value = constants.get(branch.condition());
+
+				if(then == elze) {
+					b.instructions.remove(i);
+					removeEdge(b, then);
+				} else if(value == null) {
+					continue;
+				} else if(value) {
+					b.instructions.subList(i, b.instructions.size()).removeIf(c -> c instanceof Instruction);
+					b.instructions.add(new Goto(then));
+					b.removeSuccessor(elze);
+				} else {
+					b.instructions.remove(i);
+					b.removeSuccessor(then);
+				}
+
+				changed = true;
+				break;
+			}
+		}
+
+		return changed;
+	}
+
+	/**
+	 * Removes the blocks that cannot be reached from the initial block anymore, including loops
+	 * whose entry has been cut off
+	 */
+	private void removeUnreachable() throws InvalidCompileOrderException {
+		Set<Block> reachable = new HashSet<>();
+		Deque<Block> worklist = new ArrayDeque<>();
+		worklist.push(function.initialBlock());
+		while(!worklist.isEmpty()) {
+			Block b = worklist.pop();
+			if(reachable.add(b)) {
+				worklist.addAll(b.children());
+			}
+		}
+
+		Set<Block> unreachable = new HashSet<>(blocks);
+		unreachable.removeAll(reachable);
+		function.removeBlocks(unreachable);
+	}
+
+	/**
+	 * @return where the block continues if the conditional jump at the given position is not taken
+	 */
+	private Block otherwise(Block b, int position) throws InvalidCompileOrderException {
+		for(int i = position + 1; i < b.instructions.size(); i++) {
+			if(b.instructions.get(i) instanceof Goto) {
+				return ((Goto) b.instructions.get(i)).label();
+			}
+		}
+		return b.index() + 1 < blocks.size() ? blocks.get(b.index() + 1) : null;
+	}
+
+	/**
+	 * Removes one of two edges between the same blocks, the phi node arguments stay
+	 */
+	private static void removeEdge(Block b, Block successor) {
+		b.children().remove(successor);
+		successor.parents().remove(b);
+	}
+
+	private boolean threadJumps() throws InvalidCompileOrderException {
+		Set<Block> threaded = new HashSet<>();
+
+		for(Block b : blocks) {
+			if(b == function.initialBlock() || !isEmpty(b) || b.children().size() != 1) {
+				continue;
+			}
+
+			// chains of empty blocks are threaded from their end, cycles of them never
+			Block target = b.children().get(0);
+			if(target == b || isEmpty(target)) {
+				continue;
+			}
+
+			for(Block parent : new ArrayList<>(b.parents())) {
+				// the phi nodes of the target could not tell the two edges from the parent apart
+				if(parent == b || (target.parents().contains(parent) && !target.phiManager().computedPhiNodes().isEmpty())) {
+					continue;
+				}
+
+				boolean fallsInto = parent.index() + 1 == b.index() && parent.fallsThrough();
+				parent.replaceSuccessor(b, target);
+				if(fallsInto) {
+					parent.instructions.add(new Goto(target));
+				}
+
+				for(PhiNode phiNode : target.phiManager().computedPhiNodes()) {
+					phiNode.edges().put(parent, phiNode.edges().get(b));
+				}
+			}
+
+			if(b.parents().isEmpty()) {
+				threaded.add(b);
+			}
+		}
+
+		function.removeBlocks(threaded);
+		return !threaded.isEmpty();
+	}
+
+	/**
+	 * @return whether the block has no phi nodes and no instructions besides a jump
+	 */
+	private static boolean isEmpty(Block b) throws InvalidCompileOrderException {
+		if(!b.phiManager().computedPhiNodes().isEmpty()) {
+			return false;
+		}
+		for(Compileable c : b.instructions) {
+			if(c instanceof Instruction && !(c instanceof Goto)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private boolean mergeBlocks() throws InvalidCompileOrderException {
+		Map<Temporary, Temporary> substitute = new HashMap<>();
+		Set<Block> merged = new HashSet<>();
+
+		for(Block b : blocks) {
+			if(merged.contains(b) || b.children().size() != 1) {
+				continue;
+			}
+
+			Block successor = b.children().get(0);
+			if(successor == b || successor.parents().size() != 1 || merged.contains(successor)) {
+				continue;
+			}
+
+			// with a single predecessor all phi nodes have one argument
+			for(PhiNode phiNode : successor.phiManager().computedPhiNodes()) {
+				substitute.put(phiNode.result(), phiNode.edges().get(b));
+			}
+			successor.phiManager().computedPhiNodes().clear();
+
+			Block following = successor.index() + 1 < blocks.size() ? blocks.get(successor.index() + 1) : null;
+			boolean jumpToFollowing = successor.fallsThrough() && following != null && b.index() + 1 != successor.index();
+
+			b.instructions.removeIf(c -> c instanceof Goto);
+			b.removeSuccessor(successor);
+			b.instructions.addAll(successor.instructions);
+			successor.instructions.clear();
+			successor.transferSuccessors(b);
+			if(jumpToFollowing) {
+				b.instructions.add(new Goto(following));
+			}
+
+			merged.add(successor);
+		}
+
+		if(merged.isEmpty()) {
+			return false;
+		}
+
+		for(Map.Entry<Temporary, Temporary> entry : substitute.entrySet()) {
+			Temporary t = entry.getValue();
+			while(substitute.containsKey(t)) {
+				t = substitute.get(t);
+			}
+			entry.setValue(t);
+		}
+
+		function.removeBlocks(merged);
+		for(Block b : blocks) {
+			for(PhiNode phiNode : b.phiManager().computedPhiNodes()) {
+				phiNode.substituteTemporaries(substitute);
+			}
+			b.substituteTemporaries(substitute);
+		}
+		return true;
+	}
+
+	private boolean removeJumpsToNext() throws InvalidCompileOrderException {
+		boolean changed = false;
+		for(int i = 0; i + 1 < blocks.size(); i++) {
+			Block b = blocks.get(i);
+
+			for(int j = b.instructions.size() - 1; j >= 0; j--) {
+				Compileable c = b.instructions.get(j);
+				if(c instanceof Goto && ((Goto) c).label() == blocks.get(i + 1)) {
+					b.instructions.remove(j);
+					changed = true;
+				}
+				if(c instanceof Instruction) {
+					break;
+				}
+			}
+		}
+		return changed;
+	}
+}
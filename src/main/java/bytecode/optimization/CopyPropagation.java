@@ -0,0 +1,100 @@
+package bytecode.optimization;
+
+import bytecode.*;
+
+import java.util.*;
+
+/**
+ * Removes phi nodes that are only aliases of another temporary
+ *
+ * A phi node whose arguments are all the same temporary, apart from references to its own
+ * result, is that temporary. This is the case for variables a loop never changes and for
+ * the phi nodes left behind when other optimizations remove edges or merge values. Two phi
+ * nodes of the same block with the same arguments on every edge are the same value too.
+ * Removing a phi node can make the phi nodes using it trivial, as in the simple SSA
+ * construction of Braun et al., so this is repeated until nothing changes.
+ *
+ * A replaced argument can name the result of another phi node of the same block, meaning
+ * its value from the predecessor. SlotAllocation orders the phi nodes so that such results
+ * are read before they are written.
+ */
+public class CopyPropagation {
+
+	private final Function function;
+	private final Map<Temporary, Temporary> substitute = new HashMap<>();
+
+	public CopyPropagation(Function function) {
+		this.function = function;
+	}
+
+	/**
+	 * @return whether the function has been changed
+	 */
+	public boolean run() throws InvalidCompileOrderException {
+		boolean progress = true;
+		while(progress) {
+			progress = false;
+
+			for(Block b : function.blocks()) {
+				List<PhiNode> phiNodes = b.phiManager().computedPhiNodes();
+				for(PhiNode phiNode : phiNodes) {
+					phiNode.edges().replaceAll((block, t) -> resolve(t));
+				}
+
+				for(Iterator<PhiNode> it = phiNodes.iterator(); it.hasNext(); ) {
+					PhiNode phiNode = it.next();
+					Temporary alias = alias(phiNode, phiNodes);
+					if(alias != null) {
+						substitute.put(phiNode.result(), alias);
+						it.remove();
+						progress = true;
+					}
+				}
+			}
+		}
+
+		if(substitute.isEmpty()) {
+			return false;
+		}
+
+		for(Map.Entry<Temporary, Temporary> entry : substitute.entrySet()) {
+			entry.setValue(resolve(entry.getValue()));
+		}
+		for(Block b : function.blocks()) {
+			for(PhiNode phiNode : b.phiManager().computedPhiNodes()) {
+				phiNode.substituteTemporaries(substitute);
+			}
+			b.substituteTemporaries(substitute);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the temporary the phi node always has the value of, or null if there is none
+	 */
+	private static Temporary alias(PhiNode phiNode, List<PhiNode> phiNodes) {
+		Set<Temporary> arguments = new HashSet<>(phiNode.edges().values());
+		arguments.remove(phiNode.result());
+		if(arguments.size() == 1) {
+			return arguments.iterator().next();
+		}
+
+		// an earlier phi node of the block merging the same values
+		for(PhiNode other : phiNodes) {
+			if(other == phiNode) {
+				break;
+			}
+			if(other.edges().equals(phiNode.edges())) {
+				return other.result();
+			}
+		}
+		return null;
+	}
+
+	private Temporary resolve(Temporary t) {
+		while(substitute.containsKey(t)) {
+			t = substitute.get(t);
+		}
+		return t;
+	}
+}
@@ -0,0 +1,99 @@
+package bytecode.optimization;
+
+import bytecode.*;
+
+import java.util.*;
+
+/**
+ * Mark and sweep dead code elimination
+ *
+ * Blocks that cannot be reached from the entry are removed first. Then every instruction
+ * that has an effect besides its result (writes, calls, jumps, returns and instructions
+ * that may trap) is marked live, and so is, transitively, every instruction and phi node
+ * defining one of the operands of a live instruction. Everything else is removed.
+ */
+public class DeadCodeElimination {
+
+	private final Function function;
+
+	public DeadCodeElimination(Function function) {
+		this.function = function;
+	}
+
+	/**
+	 * @return whether the function has been changed
+	 */
+	public boolean run() throws InvalidCompileOrderException {
+		boolean changed = removeUnreachableBlocks();
+
+		Map<Temporary, Instruction> definitions = new HashMap<>();
+		Set<Instruction> live = Collections.newSetFromMap(new IdentityHashMap<>());
+		Deque<Instruction> worklist = new ArrayDeque<>();
+
+		for(Block b : function.blocks()) {
+			for(PhiNode phiNode : b.phiManager().computedPhiNodes()) {
+				definitions.put(phiNode.result(), phiNode);
+			}
+			for(Compileable c : b.instructions) {
+				if(c instanceof Instruction) {
+					Instruction instruction = (Instruction) c;
+					if(instruction.result() != null) {
+						definitions.put(instruction.result(), instruction);
+					}
+					if(!isRemovable(instruction)) {
+						live.add(instruction);
+						worklist.add(instruction);
+					}
+				}
+			}
+		}
+
+		while(!worklist.isEmpty()) {
+			for(Temporary operand : worklist.poll().operands()) {
+				Instruction definition = definitions.get(operand);
+				if(definition != null && live.add(definition)) {
+					worklist.add(definition);
+				}
+			}
+		}
+
+		for(Block b : function.blocks()) {
+			changed |= b.phiManager().computedPhiNodes().removeIf(phiNode -> !live.contains(phiNode));
+			changed |= b.instructions.removeIf(c -> c instanceof Instruction && !live.contains(c));
+		}
+
+		return changed;
+	}
+
+	private static boolean isRemovable(Instruction instruction) {
+		return instruction.result() != null
+			&& SideEffects.writes(instruction) == null
+			&& !SideEffects.mayTrap(instruction)
+			&& !(instruction instanceof SpecialCall);
+	}
+
+	private boolean removeUnreachableBlocks() throws InvalidCompileOrderException {
+		List<Block> blocks = function.blocks();
+
+		BitSet reachable = new BitSet(blocks.size());
+		Deque<Block> worklist = new ArrayDeque<>();
+		worklist.add(blocks.get(0));
+		while(!worklist.isEmpty()) {
+			Block b = worklist.poll();
+			if(!reachable.get(b.index())) {
+				reachable.set(b.index());
+				worklist.addAll(b.children());
+			}
+		}
+
+		Set<Block> unreachable = new HashSet<>();
+		for(Block b : blocks) {
+			if(!reachable.get(b.index())) {
+				unreachable.add(b);
+			}
+		}
+		function.removeBlocks(unreachable);
+
+		return !unreachable.isEmpty();
+	}
+}
@@ -0,0 +1,190 @@
+package bytecode.optimization;
+
+import bytecode.*;
+
+import java.util.*;
+
+/**
+ * Dominator-based value numbering
+ *
+ * The dominator tree is walked in preorder with a scoped table from instruction keys
+ * (opcode, details and operands) to the temporary that first computed them. An
+ * instruction whose key is available in a dominator is removed and its result replaced.
+ *
+ * Loads additionally carry the version of the memory location they read. Writes to a
+ * location (see SideEffects) bump its version, and so does entering a block with more
+ * than one predecessor, since any path leading to it might have written memory.
+ */
+public class GlobalValueNumbering {
+
+	/**
+	 * Versions of the memory locations at a point in the function
+	 */
+	private static class Memory {
+		int any;
+		final Map<SideEffects.Location, Integer> locations = new HashMap<>();
+
+		Memory copy() {
+			Memory memory = new Memory();
+			memory.any = any;
+			memory.locations.putAll(locations);
+			return memory;
+		}
+	}
+
+	private final List<Block> blocks;
+	private final List<List<Block>> dominatorChildren = new ArrayList<>();
+
+	private final Map<List<Object>, Temporary> available = new HashMap<>();
+	private final Map<Temporary, Temporary> substitute = new HashMap<>();
+	private final Memory[] memoryAtEnd;
+	private int version = 0;
+
+	public GlobalValueNumbering(Function function) throws InvalidCompileOrderException {
+		this.blocks = function.blocks();
+		this.memoryAtEnd = new Memory[blocks.size()];
+
+		for(int i = 0; i < blocks.size(); i++) {
+			dominatorChildren.add(new ArrayList<>());
+		}
+		for(Block b : blocks) {
+			if(b.IDOM() != null) {
+				dominatorChildren.get(((Block) b.IDOM()).index()).add(b);
+			}
+		}
+	}
+
+	/**
+	 * @return whether the function has been changed
+	 */
+	public boolean run() throws InvalidCompileOrderException {
+		visit(blocks.get(0));
+
+		if(substitute.isEmpty()) {
+			return false;
+		}
+
+		for(Block b : blocks) {
+			for(PhiNode phiNode : b.phiManager().computedPhiNodes()) {
+				phiNode.substituteTemporaries(substitute);
+			}
+			b.substituteTemporaries(substitute);
+		}
+		return true;
+	}
+
+	private void visit(Block root) throws InvalidCompileOrderException {
+		Deque<List<List<Object>>> scopes = new ArrayDeque<>();
+		Deque<Iterator<Block>> children = new ArrayDeque<>();
+
+		scopes.push(number(root));
+		children.push(dominatorChildren.get(root.index()).iterator());
+
+		while(!children.isEmpty()) {
+			if(children.peek().hasNext()) {
+				Block child = children.peek().next();
+				scopes.push(number(child));
+				children.push(dominatorChildren.get(child.index()).iterator());
+			} else {
+				children.pop();
+				for(List<Object> key : scopes.pop()) {
+					available.remove(key);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Numbers the instructions of the block
+	 *
+	 * @return the keys added to the table, to be removed once the dominator subtree is done
+	 */
+	private List<List<Object>> number(Block b) throws InvalidCompileOrderException {
+		Memory memory;
+		if(b.parents().size() == 1) {
+			// the only predecessor is the immediate dominator, which has already been numbered
+			memory = memoryAtEnd[b.parents().get(0).index()].copy();
+		} else {
+			memory = new Memory();
+			memory.any = ++version;
+		}
+
+		List<List<Object>> added = new ArrayList<>();
+
+		for(ListIterator<Compileable> it = b.instructions.listIterator(); it.hasNext(); ) {
+			Compileable c = it.next();
+			if(!(c instanceof Instruction)) {
+				continue;
+			}
+
+			Instruction instruction = (Instruction) c;
+			instruction.substituteTemporaries(substitute);
+
+			List<Object> key = key(instruction, memory);
+			if(key != null) {
+				Temporary existing = available.get(key);
+
+				if(existing != null) {
+					substitute.put(instruction.result(), existing);
+					it.remove();
+					continue;
+				}
+
+				available.put(key, instruction.result());
+				added.add(key);
+			}
+
+			SideEffects.Location written = SideEffects.writes(instruction);
+			if(written == SideEffects.ANY) {
+				memory.any = ++version;
+			} else if(written != null) {
+				memory.locations.put(written, ++version);
+			}
+		}
+
+		memoryAtEnd[b.index()] = memory;
+		return added;
+	}
+
+	/**
+	 * @return the key of the value computed by the instruction or null if the instruction
+	 * does not compute a value that can be reused
+	 */
+	private static List<Object> key(Instruction instruction, Memory memory) throws InvalidCompileOrderException {
+		List<Temporary> operands = instruction.operands();
+
+		if(instruction instanceof BinaryOperation) {
+			BinaryOperation.Operator operator = ((BinaryOperation) instruction).operator();
+			Temporary l = operands.get(0), r = operands.get(1);
+
+			if(operator.isCommutative() && System.identityHashCode(l) > System.identityHashCode(r)) {
+				Temporary t = l;
+				l = r;
+				r = t;
+			}
+			return Arrays.asList(BinaryOperation.class, operator, l, r);
+		}
+
+		if(instruction instanceof UnaryOperation) {
+			return Arrays.asList(UnaryOperation.class, ((UnaryOperation) instruction).operator(), operands.get(0));
+		}
+
+		if(instruction instanceof ArrayLength) {
+			// the length of an array never changes
+			return Arrays.asList(ArrayLength.class, operands.get(0));
+		}
+
+		SideEffects.Location read = SideEffects.reads(instruction);
+		if(read != null) {
+			List<Object> key = new ArrayList<>();
+			key.add(instruction.getClass());
+			key.add(read);
+			key.addAll(operands);
+			key.add(memory.any);
+			key.add(memory.locations.getOrDefault(read, 0));
+			return key;
+		}
+
+		return null;
+	}
+}
@@ -0,0 +1,265 @@
+package bytecode.optimization;
+
+import bytecode.*;
+
+import java.util.*;
+
+/**
+ * Replaces calls to small functions by a copy of their body
+ *
+ * Only calls whose target is known statically are inlined: static functions, constructors,
+ * final methods and member calls devirtualized by ClassHierarchyAnalysis. A member call traps
+ * on a null receiver and the copied body would not, so final methods are only inlined on
+ * receivers that cannot be null (see NonNullReferences). Functions are processed callees
+ * first, so the copied bodies are already optimized and have their own calls inlined. Calls
+ * within a cycle of the call graph are never inlined.
+ *
+ * The block containing the call is split after it. The copied blocks are laid out in
+ * between, each return becomes a jump to the second half, and the returned values are
+ * merged by a phi node there.
+ */
+public class Inlining {
+
+	private final BytecodeFile file;
+	private final CompilerOptions options;
+
+	private final Set<Function> compiled;
+	private final Set<Function> inProgress = new HashSet<>();
+	private final Set<Function> done = new HashSet<>();
+	private final Map<Function, Set<Function>> inlined = new HashMap<>();
+
+	public Inlining(BytecodeFile file) {
+		this.file = file;
+		this.options = file.options();
+		this.compiled = new HashSet<>(file.compiledFunctions());
+	}
+
+	/**
+	 * @return whether any function has been changed
+	 */
+	public boolean run() throws InvalidCompileOrderException {
+		if(options.inlineCalleeSize() == 0) {
+			return false;
+		}
+
+		boolean changed = false;
+		for(Function f : file.compiledFunctions()) {
+			changed |= visit(f);
+		}
+		return changed;
+	}
+
+	private boolean visit(Function f) throws InvalidCompileOrderException {
+		// functions taken from the cache are never inlined
+		if(!compiled.contains(f) || done.contains(f) || inProgress.contains(f)) {
+			return false;
+		}
+		inProgress.add(f);
+
+		boolean changed = false;
+		for(Block b : f.blocks()) {
+			for(Compileable c : b.instructions) {
+				Function target = target(c);
+				if(target != null) {
+					changed |= visit(target);
+				}
+			}
+		}
+
+		if(inlineCalls(f)) {
+			f.computeDominance();
+			f.optimize();
+			changed = true;
+		}
+
+		inProgress.remove(f);
+		done.add(f);
+		return changed;
+	}
+
+	/**
+	 * @return the functions whose bodies have been copied into each function
+	 */
+	public Map<Function, Set<Function>> inlined() {
+		return inlined;
+	}
+
+	/**
+	 * @return the function the instruction calls if it is known statically, otherwise null
+	 */
+	public static Function target(Compileable c) {
+		if(c instanceof Call) {
+			return ((Call) c).function();
+		}
+		if(c instanceof VoidCall) {
+			return ((VoidCall) c).function();
+		}
+		if(c instanceof MemberCall && ((MemberCall) c).function().isFinal()) {
+			return ((MemberCall) c).function();
+		}
+		if(c instanceof VoidMemberCall && ((VoidMemberCall) c).function().isFinal()) {
+			return ((VoidMemberCall) c).function();
+		}
+		return null;
+	}
+
+	private boolean inlineCalls(Function f) throws InvalidCompileOrderException {
+		int size = f.size();
+		boolean changed = false;
+		// computed again after each inlined call, which brings in new temporaries
+		NonNullReferences nonNull = null;
+
+		Deque<Block> worklist = new ArrayDeque<>(f.blocks());
+		while(!worklist.isEmpty()) {
+			Block b = worklist.poll();
+
+			for(int i = 0; i < b.instructions.size(); i++) {
+				Compileable c = b.instructions.get(i);
+				Function target = target(c);
+
+				if(target == null || !done.contains(target) || !isInlineable(target)) {
+					continue;
+				}
+
+				int targetSize = target.size();
+				if(targetSize > options.inlineCalleeSize() || size + targetSize > options.inlineCallerSize()) {
+					continue;
+				}
+
+				if(nonNull == null) {
+					nonNull = new NonNullReferences(f);
+				}
+				if(nonNull.hasNullableReceiver(b, i)) {
+					continue;
+				}
+
+				// the rest of the block is scanned once it has been moved behind the inlined code
+				worklist.push(inline(f, b, i, target));
+				inlined.computeIfAbsent(f, k -> new LinkedHashSet<>()).add(target);
+				nonNull = null;
+				size += targetSize;
+				changed = true;
+				break;
+			}
+		}
+
+		return changed;
+	}
+
+	/**
+	 * Inlines the call at the given position of the block
+	 *
+	 * @return the block holding the instructions that followed the call
+	 */
+	private Block inline(Function f, Block b, int position, Function target) throws InvalidCompileOrderException {
+		Instruction call = (Instruction) b.instructions.get(position);
+
+		Block continuation = new Block(f);
+		continuation.phiManager().computePhiNodes();
+
+		List<Compileable> tail = b.instructions.subList(position + 1, b.instructions.size());
+		continuation.instructions.addAll(tail);
+		tail.clear();
+		b.instructions.remove(position);
+		b.transferSuccessors(continuation);
+
+		// copies of the blocks and temporaries of the target
+		Map<Block, Block> blocks = new HashMap<>();
+		Map<Temporary, Temporary> temporaries = new HashMap<>();
+		List<Block> copies = new ArrayList<>();
+
+		for(Block original : target.blocks()) {
+			Block copy = new Block(f);
+			copy.phiManager().computePhiNodes();
+			blocks.put(original, copy);
+			copies.add(copy);
+
+			for(PhiNode phiNode : original.phiManager().computedPhiNodes()) {
+				temporaries.put(phiNode.result(), copy.createTemporary());
+			}
+			for(Compileable c : original.instructions) {
+				if(c instanceof Instruction && ((Instruction) c).result() != null) {
+					temporaries.put(((Instruction) c).result(), copy.createTemporary());
+				}
+			}
+		}
+
+		List<Temporary> arguments = call.operands();
+		for(int i = 0; i < arguments.size(); i++) {
+			temporaries.put(target.parameterTemporaries().get(i), arguments.get(i));
+		}
+
+		Map<Block, Temporary> returned = new HashMap<>();
+		for(Block original : target.blocks()) {
+			Block copy = blocks.get(original);
+
+			for(PhiNode phiNode : original.phiManager().computedPhiNodes()) {
+				copy.phiManager().addComputedPhiNode(phiNode.copy(temporaries, blocks));
+			}
+
+			for(Compileable c : original.instructions) {
+				if(c instanceof Return) {
+					List<Temporary> value = ((Return) c).operands();
+					returned.put(copy, value.isEmpty() ? null : temporaries.getOrDefault(value.get(0), value.get(0)));
+
+					if(copy != copies.get(copies.size() - 1)) {
+						copy.instructions.add(new Goto(continuation));
+					}
+					copy.addSuccessor(continuation);
+					break;
+				}
+
+				if(c instanceof Instruction) {
+					copy.instructions.add(((Instruction) c).copy(temporaries, blocks));
+				}
+			}
+
+			for(Block child : original.children()) {
+				copy.addSuccessor(blocks.get(child));
+			}
+		}
+
+		b.addSuccessor(copies.get(0));
+
+		List<Block> inserted = new ArrayList<>(copies);
+		inserted.add(continuation);
+		f.insertBlocks(b.index() + 1, inserted);
+
+		if(call.result() != null) {
+			if(returned.size() == 1) {
+				substitute(f, Collections.singletonMap(call.result(), returned.values().iterator().next()));
+			} else {
+				continuation.phiManager().addComputedPhiNode(new PhiNode(call.result(), returned));
+			}
+		}
+
+		return continuation;
+	}
+
+	/**
+	 * @return whether the function returns at all and its entry is not part of a loop
+	 */
+	public static boolean isInlineable(Function target) {
+		if(!target.initialBlock().parents().isEmpty()) {
+			return false;
+		}
+
+		for(Block b : target.blocks()) {
+			for(Compileable c : b.instructions) {
+				if(c instanceof Return) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static void substitute(Function f, Map<Temporary, Temporary> substitute) throws InvalidCompileOrderException {
+		for(Block b : f.blocks()) {
+			for(PhiNode phiNode : b.phiManager().computedPhiNodes()) {
+				phiNode.substituteTemporaries(substitute);
+			}
+			b.substituteTemporaries(substitute);
+		}
+	}
+}
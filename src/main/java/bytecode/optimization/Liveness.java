@@ -0,0 +1,77 @@
+package bytecode.optimization;
+
+import bytecode.*;
+
+import java.util.*;
+
+/**
+ * The temporaries live at the start and end of each block
+ *
+ * A phi node argument is used at the end of the block it comes from, the result of a phi
+ * node is defined at the start of its block. Neither is live at the start of the block of
+ * the phi node.
+ */
+public class Liveness {
+
+	private final Map<Block, Set<Temporary>> liveIn = new HashMap<>();
+	private final Map<Block, Set<Temporary>> liveOut = new HashMap<>();
+
+	public Liveness(Function function) throws InvalidCompileOrderException {
+		List<Block> blocks = function.blocks();
+		for(Block b : blocks) {
+			liveIn.put(b, new HashSet<>());
+			liveOut.put(b, new HashSet<>());
+		}
+
+		// backwards through the layout, which mostly visits successors first
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+
+			for(int i = blocks.size() - 1; i >= 0; i--) {
+				Block b = blocks.get(i);
+
+				Set<Temporary> out = new HashSet<>();
+				for(Block child : b.children()) {
+					out.addAll(liveIn.get(child));
+					for(PhiNode phiNode : child.phiManager().computedPhiNodes()) {
+						Temporary argument = phiNode.edges().get(b);
+						if(argument != null) {
+							out.add(argument);
+						}
+					}
+				}
+
+				Set<Temporary> in = new HashSet<>(out);
+				for(int j = b.instructions.size() - 1; j >= 0; j--) {
+					Compileable c = b.instructions.get(j);
+					if(c instanceof Instruction) {
+						in.remove(((Instruction) c).result());
+						in.addAll(((Instruction) c).operands());
+					}
+				}
+				for(PhiNode phiNode : b.phiManager().computedPhiNodes()) {
+					in.remove(phiNode.result());
+				}
+
+				changed |= liveOut.put(b, out).size() != out.size();
+				changed |= liveIn.put(b, in).size() != in.size();
+			}
+		}
+	}
+
+	/**
+	 * @return the temporaries live when entering the block, without its phi nodes
+	 */
+	public Set<Temporary> liveIn(Block b) {
+		return liveIn.get(b);
+	}
+
+	/**
+	 * @return the temporaries live when leaving the block, including the phi node arguments
+	 * it passes to its successors
+	 */
+	public Set<Temporary> liveOut(Block b) {
+		return liveOut.get(b);
+	}
+}
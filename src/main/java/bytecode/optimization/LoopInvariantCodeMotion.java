@@ -0,0 +1,228 @@
+package bytecode.optimization;
+
+import bytecode.*;
+import bytecode.dom.DominanceTree;
+
+import java.util.*;
+
+/**
+ * Moves loop invariant instructions into the preheader of their loop
+ *
+ * Every loop header first gets a preheader: a block that all edges entering the loop
+ * from outside go through. Inner loops are handled before the loops around them, so an
+ * instruction hoisted into an inner preheader can move on to the outer one.
+ *
+ * An instruction is invariant if none of its operands is defined in the loop. Pure
+ * instructions and loads of locations the loop never writes are hoisted. Instructions
+ * that may trap (division, loads through a reference, array lengths) are only hoisted
+ * from the header before anything observable happens in it, since the header is the only
+ * block that is known to execute whenever the loop is entered.
+ */
+public class LoopInvariantCodeMotion {
+
+	private final Function function;
+
+	public LoopInvariantCodeMotion(Function function) {
+		this.function = function;
+	}
+
+	/**
+	 * @return whether the function has been changed
+	 */
+	public boolean run() throws InvalidCompileOrderException {
+		boolean changed = insertPreheaders();
+		if(changed) {
+			function.computeDominance();
+		}
+
+		List<Loops.Loop> loops = new Loops(function).loops();
+		for(int i = loops.size() - 1; i >= 0; i--) {
+			changed |= hoist(loops.get(i));
+		}
+
+		return changed;
+	}
+
+	private boolean insertPreheaders() throws InvalidCompileOrderException {
+		DominanceTree dominanceTree = function.dominanceTree();
+
+		List<Block> headers = new ArrayList<>();
+		for(Block b : function.blocks()) {
+			for(Block p : b.parents()) {
+				if(dominanceTree.dominates(b, p)) {
+					headers.add(b);
+					break;
+				}
+			}
+		}
+
+		boolean changed = false;
+		for(Block header : headers) {
+			List<Block> entries = new ArrayList<>();
+			for(Block p : header.parents()) {
+				if(!dominanceTree.dominates(header, p) && !entries.contains(p)) {
+					entries.add(p);
+				}
+			}
+
+			if(entries.isEmpty()) {
+				// the header is the entry of the function
+				continue;
+			}
+
+			if(entries.size() == 1 && entries.get(0).children().size() == 1) {
+				// already has a preheader
+				continue;
+			}
+
+			insertPreheader(header, entries);
+			changed = true;
+		}
+
+		return changed;
+	}
+
+	private void insertPreheader(Block header, List<Block> entries) throws InvalidCompileOrderException {
+		List<Block> blocks = function.blocks();
+		int index = header.index();
+
+		Block preheader = new Block(function);
+		preheader.phiManager().computePhiNodes();
+
+		// the block laid out before the header falls through into the preheader from now on
+		if(index > 0) {
+			Block previous = blocks.get(index - 1);
+			if(previous.fallsThrough() && !entries.contains(previous)) {
+				previous.instructions.add(new Goto(header));
+			}
+		}
+
+		for(Block entry : entries) {
+			entry.replaceSuccessor(header, preheader);
+		}
+		preheader.addSuccessor(header);
+
+		for(PhiNode phiNode : header.phiManager().computedPhiNodes()) {
+			Map<Block, Temporary> incoming = new HashMap<>();
+			for(Block entry : entries) {
+				Temporary t = phiNode.edges().remove(entry);
+				if(t != null) {
+					incoming.put(entry, t);
+				}
+			}
+
+			if(new HashSet<>(incoming.values()).size() == 1) {
+				phiNode.edges().put(preheader, incoming.values().iterator().next());
+			} else {
+				PhiNode merged = new PhiNode(preheader.createTemporary(), incoming);
+				preheader.phiManager().addComputedPhiNode(merged);
+				phiNode.edges().put(preheader, merged.result());
+			}
+		}
+
+		function.insertBlocks(index, Collections.singletonList(preheader));
+	}
+
+	private boolean hoist(Loops.Loop loop) throws InvalidCompileOrderException {
+		List<Block> blocks = function.blocks();
+
+		Block preheader = null;
+		for(Block p : loop.header.parents()) {
+			if(!loop.contains(p)) {
+				if(preheader != null && preheader != p) {
+					return false;
+				}
+				preheader = p;
+			}
+		}
+		if(preheader == null || preheader.children().size() != 1) {
+			return false;
+		}
+
+		Set<Temporary> definedInLoop = new HashSet<>();
+		Set<SideEffects.Location> written = new HashSet<>();
+		for(int b = loop.body.nextSetBit(0); b >= 0; b = loop.body.nextSetBit(b + 1)) {
+			Block block = blocks.get(b);
+
+			for(PhiNode phiNode : block.phiManager().computedPhiNodes()) {
+				definedInLoop.add(phiNode.result());
+			}
+			for(Compileable c : block.instructions) {
+				if(c instanceof Instruction) {
+					Instruction instruction = (Instruction) c;
+					if(instruction.result() != null) {
+						definedInLoop.add(instruction.result());
+					}
+
+					SideEffects.Location location = SideEffects.writes(instruction);
+					if(location != null) {
+						written.add(location);
+					}
+				}
+			}
+		}
+
+		boolean changed = false;
+		boolean progress = true;
+		while(progress) {
+			progress = false;
+
+			for(int b = loop.body.nextSetBit(0); b >= 0; b = loop.body.nextSetBit(b + 1)) {
+				Block block = blocks.get(b);
+				boolean mayTrap = block == loop.header;
+
+				for(Iterator<Compileable> it = block.instructions.iterator(); it.hasNext(); ) {
+					Compileable c = it.next();
+					if(!(c instanceof Instruction)) {
+						continue;
+					}
+
+					Instruction instruction = (Instruction) c;
+					if(instruction.result() != null
+						&& isInvariant(instruction, definedInLoop)
+						&& isMovable(instruction, written, mayTrap)) {
+						it.remove();
+						preheader.instructions.add(preheader.endOfInstructions(), instruction);
+						definedInLoop.remove(instruction.result());
+						progress = true;
+						continue;
+					}
+
+					if(SideEffects.writes(instruction) != null || instruction instanceof SpecialCall) {
+						mayTrap = false;
+					}
+				}
+			}
+
+			changed |= progress;
+		}
+
+		return changed;
+	}
+
+	private static boolean isInvariant(Instruction instruction, Set<Temporary> definedInLoop) {
+		for(Temporary operand : instruction.operands()) {
+			if(definedInLoop.contains(operand)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param written locations written in the loop
+	 * @param mayTrap whether the instruction may be hoisted even if it traps
+	 */
+	private static boolean isMovable(Instruction instruction, Set<SideEffects.Location> written, boolean mayTrap) throws InvalidCompileOrderException {
+		if(!mayTrap && SideEffects.mayTrap(instruction)) {
+			return false;
+		}
+
+		if(SideEffects.isPure(instruction)) {
+			return true;
+		}
+
+		SideEffects.Location read = SideEffects.reads(instruction);
+		return read != null && !written.contains(read) && !written.contains(SideEffects.ANY);
+	}
+}
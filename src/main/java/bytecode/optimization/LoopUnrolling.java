@@ -0,0 +1,535 @@
+package bytecode.optimization;
+
+import bytecode.*;
+import bytecode.type.PrimitiveType;
+
+import java.util.*;
+
+/**
+ * Unrolls loops whose trip count is a constant
+ *
+ * Only loops shaped like the ones a for statement produces are handled: a preheader, a
+ * header holding the exit test, a single back edge and no other exit. The trip count is
+ * found by running the basic induction variable tested in the header from its constant
+ * start until the test fails.
+ *
+ * A loop whose iterations all fit into the size limit is replaced by that many copies of
+ * its body followed by a last copy of the header that leaves to the exit. Other loops get
+ * the given number of copies of their body chained behind each other, so the test only
+ * runs once per copy of the whole chain. The iterations left over when the trip count is
+ * not a multiple of the factor are peeled off in front of the loop.
+ */
+public class LoopUnrolling {
+
+	// the trip count is not searched beyond this
+	private static final int MAX_TRIP_COUNT = 1 << 20;
+
+	private final Function function;
+	private final CompilerOptions options;
+
+	// headers of loops that have been looked at, including their copies
+	private final Set<Block> visited = new HashSet<>();
+
+	private Map<Temporary, Instruction> definitions;
+	private Map<Temporary, Block> definingBlocks;
+
+	/**
+	 * A loop in the shape handled here, its blocks are laid out in one piece from the header on
+	 */
+	private static class Shape {
+		Block preheader, header, latch, body, exit;
+		List<Block> blocks = new ArrayList<>();
+	}
+
+	/**
+	 * The blocks copied for one iteration
+	 */
+	private static class Iteration {
+		List<Block> blocks = new ArrayList<>();
+		Block latch;
+
+		// values of the header phi nodes for the next iteration
+		Map<Temporary, Temporary> next = new HashMap<>();
+	}
+
+	public LoopUnrolling(Function function) {
+		this.function = function;
+		this.options = function.file.options();
+	}
+
+	/**
+	 * @return whether the function has been changed
+	 */
+	public boolean run() throws InvalidCompileOrderException {
+		if(options.unrollSize() == 0) {
+			return false;
+		}
+
+		boolean changed = false;
+
+		// the loops are found again after each change, inner loops first
+		while(true) {
+			Loops.Loop next = null;
+			List<Loops.Loop> loops = new Loops(function).loops();
+			for(int i = loops.size() - 1; i >= 0; i--) {
+				if(!visited.contains(loops.get(i).header)) {
+					next = loops.get(i);
+					break;
+				}
+			}
+
+			if(next == null) {
+				return changed;
+			}
+
+			visited.add(next.header);
+			if(unroll(next)) {
+				function.computeDominance();
+				changed = true;
+			}
+		}
+	}
+
+	private boolean unroll(Loops.Loop loop) throws InvalidCompileOrderException {
+		Shape shape = shape(loop);
+		if(shape == null) {
+			return false;
+		}
+
+		findDefinitions();
+		int tripCount = tripCount(shape);
+		if(tripCount < 0) {
+			return false;
+		}
+
+		int size = 0;
+		for(Block b : shape.blocks) {
+			size += b.countCompiledInstructions();
+		}
+
+		int factor = options.unrollFactor();
+		if((long) size * tripCount <= options.unrollSize()) {
+			unrollFully(shape, tripCount);
+			return true;
+		}
+		if(factor > 1 && tripCount >= factor && (long) size * (factor + tripCount % factor) <= options.unrollSize()) {
+			unrollPartially(shape, tripCount % factor, factor);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @return the loop if it has the shape handled here, otherwise null
+	 */
+	private Shape shape(Loops.Loop loop) throws InvalidCompileOrderException {
+		List<Block> blocks = function.blocks();
+		Shape shape = new Shape();
+		shape.header = loop.header;
+
+		int first = loop.header.index();
+		int last = first + loop.body.cardinality() - 1;
+		if(loop.body.nextSetBit(0) != first || loop.body.previousSetBit(blocks.size()) != last) {
+			return null;
+		}
+		shape.blocks.addAll(blocks.subList(first, last + 1));
+
+		for(Block p : loop.header.parents()) {
+			if(loop.contains(p)) {
+				if(shape.latch != null) {
+					return null;
+				}
+				shape.latch = p;
+			} else {
+				if(shape.preheader != null) {
+					return null;
+				}
+				shape.preheader = p;
+			}
+		}
+		if(shape.preheader == null || shape.preheader.children().size() != 1) {
+			return null;
+		}
+
+		List<Block> children = loop.header.children();
+		if(children.size() != 2 || children.get(0) == children.get(1)) {
+			return null;
+		}
+		for(Block child : children) {
+			if(loop.contains(child)) {
+				shape.body = child;
+			} else {
+				shape.exit = child;
+			}
+		}
+		if(shape.body == null || shape.exit == null) {
+			return null;
+		}
+
+		// the header is the only way out, and the latch jumps back to it
+		for(Block b : shape.blocks) {
+			if(b == loop.header) {
+				continue;
+			}
+			for(Block child : b.children()) {
+				if(!loop.contains(child)) {
+					return null;
+				}
+			}
+		}
+		if(shape.latch.children().size() != 1 && shape.latch != loop.header) {
+			return null;
+		}
+
+		// copies of the body are laid out behind the loop
+		if(blocks.get(last).fallsThrough()) {
+			return null;
+		}
+
+		return shape;
+	}
+
+	private void findDefinitions() throws InvalidCompileOrderException {
+		definitions = new HashMap<>();
+		definingBlocks = new HashMap<>();
+
+		for(Block b : function.blocks()) {
+			for(PhiNode phiNode : b.phiManager().computedPhiNodes()) {
+				definitions.put(phiNode.result(), phiNode);
+				definingBlocks.put(phiNode.result(), b);
+			}
+			for(Compileable c : b.instructions) {
+				if(c instanceof Instruction && ((Instruction) c).result() != null) {
+					definitions.put(((Instruction) c).result(), (Instruction) c);
+					definingBlocks.put(((Instruction) c).result(), b);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return how often the body of the loop runs, or -1 if that is not known
+	 */
+	private int tripCount(Shape shape) throws InvalidCompileOrderException {
+		ConditionalGoto branch = null;
+		for(Compileable c : shape.header.instructions) {
+			if(c instanceof ConditionalGoto) {
+				branch = (ConditionalGoto) c;
+			}
+		}
+		if(branch == null) {
+			return -1;
+		}
+
+		// the loop continues while the test has this value
+		boolean continues = branch.label() == shape.body;
+		Instruction test = definitions.get(branch.condition());
+		if(test instanceof UnaryOperation && ((UnaryOperation) test).operator() == UnaryOperation.Operator.not
+			&& definingBlocks.get(test.result()) == shape.header) {
+			continues = !continues;
+			test = definitions.get(test.operands().get(0));
+		}
+		if(!(test instanceof BinaryOperation) || definingBlocks.get(test.result()) != shape.header) {
+			return -1;
+		}
+
+		BinaryOperation comparison = (BinaryOperation) test;
+		Temporary l = comparison.operands().get(0), r = comparison.operands().get(1);
+		PhiNode variable = headerPhiNode(l, shape);
+		boolean variableLeft = variable != null;
+		if(variable == null) {
+			variable = headerPhiNode(r, shape);
+		}
+		Integer bound = intConstant(variableLeft ? r : l);
+		if(variable == null || bound == null) {
+			return -1;
+		}
+
+		Integer start = intConstant(variable.edges().get(shape.preheader));
+		Instruction increment = definitions.get(variable.edges().get(shape.latch));
+		if(start == null || !(increment instanceof BinaryOperation)) {
+			return -1;
+		}
+
+		BinaryOperation.Operator operator = ((BinaryOperation) increment).operator();
+		Temporary a = increment.operands().get(0), b = increment.operands().get(1);
+		Integer step;
+		if(operator == BinaryOperation.Operator.add && a == variable.result()) {
+			step = intConstant(b);
+		} else if(operator == BinaryOperation.Operator.add && b == variable.result()) {
+			step = intConstant(a);
+		} else if(operator == BinaryOperation.Operator.sub && a == variable.result()) {
+			step = intConstant(b);
+		} else {
+			return -1;
+		}
+		if(step == null) {
+			return -1;
+		}
+
+		// runs the variable the same way the vm would, including wrapping around
+		int value = start;
+		for(int count = 0; count <= MAX_TRIP_COUNT; count++) {
+			Object result = variableLeft
+				? comparison.operator().evaluate(PrimitiveType.INT, value, bound)
+				: comparison.operator().evaluate(PrimitiveType.INT, bound, value);
+			if(!(result instanceof Boolean)) {
+				return -1;
+			}
+			if((Boolean) result != continues) {
+				return count;
+			}
+			value = (Integer) operator.evaluate(PrimitiveType.INT, value, step);
+		}
+		return -1;
+	}
+
+	private PhiNode headerPhiNode(Temporary t, Shape shape) {
+		Instruction definition = definitions.get(t);
+		if(definition instanceof PhiNode && definingBlocks.get(t) == shape.header) {
+			return (PhiNode) definition;
+		}
+		return null;
+	}
+
+	private Integer intConstant(Temporary t) {
+		Instruction definition = definitions.get(t);
+		if(definition instanceof Const && ((Const<?>) definition).type == PrimitiveType.INT) {
+			return (Integer) ((Const<?>) definition).value;
+		}
+		return null;
+	}
+
+	/**
+	 * Replaces the loop by the given number of copies of its body and a last test
+	 */
+	private void unrollFully(Shape shape, int tripCount) throws InvalidCompileOrderException {
+		List<Block> blocks = function.blocks();
+		Block following = shape.blocks.get(shape.blocks.size() - 1).index() + 1 < blocks.size()
+			? blocks.get(shape.blocks.get(shape.blocks.size() - 1).index() + 1) : null;
+
+		Map<Temporary, Temporary> values = entryValues(shape);
+		List<Block> inserted = new ArrayList<>();
+
+		Block header = newBlock();
+		shape.preheader.replaceSuccessor(shape.header, header);
+
+		for(int i = 0; i < tripCount; i++) {
+			Block next = newBlock();
+			Iteration iteration = copyIteration(shape, values, header, next);
+			inserted.addAll(iteration.blocks);
+			values = iteration.next;
+			header = next;
+		}
+
+		// the test that fails, its values are the ones seen after the loop
+		Map<Temporary, Temporary> temporaries = new HashMap<>(values);
+		for(Compileable c : shape.header.instructions) {
+			if(c instanceof Instruction && ((Instruction) c).result() != null) {
+				temporaries.put(((Instruction) c).result(), header.createTemporary());
+			}
+		}
+		for(Compileable c : shape.header.instructions) {
+			if(c instanceof Instruction && !(c instanceof Goto) && !(c instanceof ConditionalGoto)) {
+				header.instructions.add(((Instruction) c).copy(temporaries, Collections.emptyMap()));
+			}
+		}
+		if(shape.exit != following) {
+			header.instructions.add(new Goto(shape.exit));
+		}
+		header.addSuccessor(shape.exit);
+		inserted.add(header);
+
+		for(PhiNode phiNode : shape.exit.phiManager().computedPhiNodes()) {
+			Temporary t = phiNode.edges().remove(shape.header);
+			if(t != null) {
+				phiNode.edges().put(header, temporaries.getOrDefault(t, t));
+			}
+		}
+
+		function.insertBlocks(shape.header.index(), inserted);
+		function.removeBlocks(new HashSet<>(shape.blocks));
+		removeJumpsToNext(inserted);
+
+		for(Block b : blocks) {
+			for(PhiNode phiNode : b.phiManager().computedPhiNodes()) {
+				phiNode.substituteTemporaries(temporaries);
+			}
+			b.substituteTemporaries(temporaries);
+		}
+	}
+
+	/**
+	 * Peels off the given number of iterations in front of the loop and chains copies of
+	 * the body so that it runs the given number of times per test
+	 */
+	private void unrollPartially(Shape shape, int remainder, int factor) throws InvalidCompileOrderException {
+		List<Block> peeled = new ArrayList<>();
+		if(remainder > 0) {
+			Map<Temporary, Temporary> values = entryValues(shape);
+			Block header = newBlock();
+			shape.preheader.replaceSuccessor(shape.header, header);
+
+			Iteration iteration = null;
+			for(int i = 0; i < remainder; i++) {
+				Block next = i == remainder - 1 ? shape.header : newBlock();
+				iteration = copyIteration(shape, values, header, next);
+				peeled.addAll(iteration.blocks);
+				values = iteration.next;
+				header = next;
+			}
+
+			for(PhiNode phiNode : shape.header.phiManager().computedPhiNodes()) {
+				phiNode.edges().remove(shape.preheader);
+				phiNode.edges().put(iteration.latch, values.get(phiNode.result()));
+			}
+		}
+
+		Map<Temporary, Temporary> values = new HashMap<>();
+		for(PhiNode phiNode : shape.header.phiManager().computedPhiNodes()) {
+			values.put(phiNode.result(), phiNode.edges().get(shape.latch));
+		}
+
+		List<Block> copies = new ArrayList<>();
+		Block first = newBlock(), header = first;
+
+		Iteration iteration = null;
+		for(int i = 1; i < factor; i++) {
+			Block next = i == factor - 1 ? shape.header : newBlock();
+			iteration = copyIteration(shape, values, header, next);
+			copies.addAll(iteration.blocks);
+			values = iteration.next;
+			header = next;
+		}
+		shape.latch.replaceSuccessor(shape.header, first);
+
+		for(PhiNode phiNode : shape.header.phiManager().computedPhiNodes()) {
+			phiNode.edges().remove(shape.latch);
+			phiNode.edges().put(iteration.latch, values.get(phiNode.result()));
+		}
+
+		Block last = shape.blocks.get(shape.blocks.size() - 1);
+		function.insertBlocks(last.index() + 1, copies);
+		function.insertBlocks(shape.header.index(), peeled);
+		removeJumpsToNext(copies);
+		removeJumpsToNext(peeled);
+	}
+
+	/**
+	 * Removes the jumps ending the given blocks that lead to the block laid out next, the
+	 * copies of the latch jump to the following iteration
+	 */
+	private void removeJumpsToNext(List<Block> inserted) throws InvalidCompileOrderException {
+		List<Block> blocks = function.blocks();
+		for(Block b : inserted) {
+			int last = b.instructions.size() - 1;
+			while(last >= 0 && !(b.instructions.get(last) instanceof Instruction)) {
+				last--;
+			}
+			if(last >= 0 && b.index() + 1 < blocks.size() && b.instructions.get(last) instanceof Goto
+				&& ((Goto) b.instructions.get(last)).label() == blocks.get(b.index() + 1)) {
+				b.instructions.remove(last);
+			}
+		}
+	}
+
+	/**
+	 * @return the values the header phi nodes have when entering the loop
+	 */
+	private static Map<Temporary, Temporary> entryValues(Shape shape) throws InvalidCompileOrderException {
+		Map<Temporary, Temporary> values = new HashMap<>();
+		for(PhiNode phiNode : shape.header.phiManager().computedPhiNodes()) {
+			values.put(phiNode.result(), phiNode.edges().get(shape.preheader));
+		}
+		return values;
+	}
+
+	/**
+	 * Copies the blocks of the loop for one iteration. The copy of the header leaves out the
+	 * test and continues with the body, the copy of the latch continues with the given block.
+	 *
+	 * @param values the values of the header phi nodes in this iteration
+	 * @param header the empty block that becomes the copy of the header
+	 * @param next where the iteration continues
+	 */
+	private Iteration copyIteration(Shape shape, Map<Temporary, Temporary> values, Block header, Block next) throws InvalidCompileOrderException {
+		Iteration iteration = new Iteration();
+		Map<Block, Block> blocks = new HashMap<>();
+		Map<Temporary, Temporary> temporaries = new HashMap<>(values);
+
+		for(Block original : shape.blocks) {
+			Block copy = original == shape.header ? header : newBlock();
+			if(original != shape.header) {
+				blocks.put(original, copy);
+			}
+			iteration.blocks.add(copy);
+
+			if(visited.contains(original)) {
+				visited.add(copy);
+			}
+
+			if(original != shape.header) {
+				for(PhiNode phiNode : original.phiManager().computedPhiNodes()) {
+					temporaries.put(phiNode.result(), copy.createTemporary());
+				}
+			}
+			for(Compileable c : original.instructions) {
+				if(c instanceof Instruction && ((Instruction) c).result() != null) {
+					temporaries.put(((Instruction) c).result(), copy.createTemporary());
+				}
+			}
+		}
+
+		// the back edge leads to the next iteration
+		blocks.put(shape.header, header);
+		Map<Block, Block> backEdge = new HashMap<>(blocks);
+		backEdge.put(shape.header, next);
+
+		for(int i = 0; i < shape.blocks.size(); i++) {
+			Block original = shape.blocks.get(i);
+			Block copy = iteration.blocks.get(i);
+
+			if(original == shape.header) {
+				for(Compileable c : original.instructions) {
+					if(c instanceof Instruction && !(c instanceof Goto) && !(c instanceof ConditionalGoto)) {
+						copy.instructions.add(((Instruction) c).copy(temporaries, blocks));
+					}
+				}
+
+				Block body = backEdge.get(shape.body);
+				if(i + 1 >= iteration.blocks.size() || iteration.blocks.get(i + 1) != body) {
+					copy.instructions.add(new Goto(body));
+				}
+				copy.addSuccessor(body);
+				continue;
+			}
+
+			for(PhiNode phiNode : original.phiManager().computedPhiNodes()) {
+				copy.phiManager().addComputedPhiNode(phiNode.copy(temporaries, blocks));
+			}
+			Map<Block, Block> targets = original == shape.latch ? backEdge : blocks;
+			for(Compileable c : original.instructions) {
+				if(c instanceof Instruction) {
+					copy.instructions.add(((Instruction) c).copy(temporaries, targets));
+				}
+			}
+			for(Block child : original.children()) {
+				copy.addSuccessor(targets.get(child));
+			}
+		}
+
+		iteration.latch = blocks.get(shape.latch);
+		for(PhiNode phiNode : shape.header.phiManager().computedPhiNodes()) {
+			Temporary t = phiNode.edges().get(shape.latch);
+			iteration.next.put(phiNode.result(), temporaries.getOrDefault(t, t));
+		}
+
+		return iteration;
+	}
+
+	private Block newBlock() throws InvalidCompileOrderException {
+		Block block = new Block(function);
+		block.phiManager().computePhiNodes();
+		return block;
+	}
+}
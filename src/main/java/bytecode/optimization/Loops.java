@@ -0,0 +1,87 @@
+package bytecode.optimization;
+
+import bytecode.Block;
+import bytecode.Function;
+import bytecode.InvalidCompileOrderException;
+import bytecode.dom.DominanceTree;
+
+import java.util.*;
+
+/**
+ * The natural loops of a function, found through back edges (edges whose target
+ * dominates their source). Loops sharing a header are merged into one.
+ */
+public class Loops {
+
+	public static class Loop {
+		public final Block header;
+
+		// indices of all blocks in the loop, including the header
+		public final BitSet body;
+
+		Loop(Block header, BitSet body) {
+			this.header = header;
+			this.body = body;
+		}
+
+		public boolean contains(Block b) throws InvalidCompileOrderException {
+			return body.get(b.index());
+		}
+	}
+
+	private final List<Loop> loops = new ArrayList<>();
+	private final BitSet inLoop;
+
+	public Loops(Function function) throws InvalidCompileOrderException {
+		List<Block> blocks = function.blocks();
+		DominanceTree dominanceTree = function.dominanceTree();
+
+		inLoop = new BitSet(blocks.size());
+
+		for(Block header : blocks) {
+			BitSet body = null;
+
+			for(Block p : header.parents()) {
+				if(!dominanceTree.dominates(header, p)) {
+					continue;
+				}
+
+				if(body == null) {
+					body = new BitSet(blocks.size());
+					body.set(header.index());
+				}
+
+				// everything that reaches the back edge without passing the header
+				Deque<Block> worklist = new ArrayDeque<>();
+				worklist.add(p);
+				while(!worklist.isEmpty()) {
+					Block b = worklist.poll();
+					if(body.get(b.index())) {
+						continue;
+					}
+					body.set(b.index());
+					worklist.addAll(b.parents());
+				}
+			}
+
+			if(body != null) {
+				loops.add(new Loop(header, body));
+				inLoop.or(body);
+			}
+		}
+
+		// a loop's body contains the bodies of all loops nested in it
+		loops.sort(Comparator.comparingInt((Loop loop) -> loop.body.cardinality()).reversed());
+	}
+
+	/**
+	 * @return all loops, outer loops before the loops nested in them
+	 */
+	public List<Loop> loops() {
+		return loops;
+	}
+
+	public boolean inLoop(Block b) throws InvalidCompileOrderException {
+		return inLoop.get(b.index());
+	}
+}
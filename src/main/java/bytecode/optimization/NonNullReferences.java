@@ -0,0 +1,110 @@
+package bytecode.optimization;
+
+import bytecode.*;
+import bytecode.dom.CHKDominanceTree;
+import bytecode.dom.DominanceTree;
+
+import java.util.*;
+
+/**
+ * The temporaries of a function that cannot hold null
+ *
+ * These are the receiver of member functions and constructors, the objects allocated in the
+ * function and the phi nodes that merge only such temporaries. A temporary also cannot be
+ * null after an instruction that traps on a null reference: a member call on it, a field
+ * access through it or the length of it as an array.
+ *
+ * A member call traps on a null receiver and a statically bound call does not. Member calls
+ * are therefore only turned into direct calls or inlined if their receiver cannot be null.
+ */
+public class NonNullReferences {
+
+	private final List<Block> blocks;
+	private final Block initialBlock;
+	private final Set<Temporary> nonNull = new HashSet<>();
+
+	// block index and position of the instructions trapping if the temporary is null
+	private final Map<Temporary, List<int[]>> dereferences = new HashMap<>();
+	// computed once a dereference has to be compared with a call in another block
+	private DominanceTree dominanceTree;
+
+	public NonNullReferences(Function function) throws InvalidCompileOrderException {
+		this.blocks = function.blocks();
+		this.initialBlock = function.initialBlock();
+
+		if(!function.isStatic || function.isConstructor()) {
+			nonNull.add(function.parameterTemporaries().get(0));
+		}
+
+		List<PhiNode> phiNodes = new ArrayList<>();
+		for(Block b : blocks) {
+			phiNodes.addAll(b.phiManager().computedPhiNodes());
+
+			for(int i = 0; i < b.instructions.size(); i++) {
+				Compileable c = b.instructions.get(i);
+				if(c instanceof Allocate) {
+					nonNull.add(((Allocate) c).result());
+				} else if(c instanceof MemberCall || c instanceof VoidMemberCall || c instanceof ObjectLoad ||
+				          c instanceof ObjectStore || c instanceof ArrayLength) {
+					Temporary reference = ((Instruction) c).operands().get(0);
+					dereferences.computeIfAbsent(reference, t -> new ArrayList<>()).add(new int[]{b.index(), i});
+				}
+			}
+		}
+
+		// phi nodes are assumed to be non-null until one of their operands is not, which
+		// also covers phi nodes merging each other in loops
+		for(PhiNode phiNode : phiNodes) {
+			nonNull.add(phiNode.result());
+		}
+		for(boolean changed = true; changed; ) {
+			changed = false;
+			for(PhiNode phiNode : phiNodes) {
+				if(nonNull.contains(phiNode.result()) && !nonNull.containsAll(phiNode.operands())) {
+					nonNull.remove(phiNode.result());
+					changed = true;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return whether the temporary cannot be null anywhere in the function
+	 */
+	public boolean contains(Temporary temporary) {
+		return nonNull.contains(temporary);
+	}
+
+	/**
+	 * @return whether the instruction at the given position of the block is a member call on a
+	 * receiver that may be null there
+	 */
+	public boolean hasNullableReceiver(Block b, int position) throws InvalidCompileOrderException {
+		Compileable c = b.instructions.get(position);
+		if(!(c instanceof MemberCall || c instanceof VoidMemberCall)) {
+			return false;
+		}
+
+		Temporary receiver = ((Instruction) c).operands().get(0);
+		if(nonNull.contains(receiver)) {
+			return false;
+		}
+
+		for(int[] dereference : dereferences.getOrDefault(receiver, Collections.emptyList())) {
+			if(dereference[0] == b.index()) {
+				if(dereference[1] < position) {
+					return false;
+				}
+				continue;
+			}
+
+			if(dominanceTree == null) {
+				dominanceTree = new CHKDominanceTree(initialBlock);
+			}
+			if(dominanceTree.dominates(blocks.get(dereference[0]), b)) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,263 @@
+package bytecode.optimization;
+
+import bytecode.*;
+import bytecode.dom.DominanceTree;
+import bytecode.frontier.DominanceFrontier;
+import bytecode.type.ObjectType;
+import bytecode.type.PrimitiveType;
+import bytecode.type.Type;
+
+import java.util.*;
+
+/**
+ * Replaces the fields of objects that do not escape the function by temporaries
+ *
+ * An allocated object escapes if its pointer is used by anything but a load or store of
+ * one of its fields: stored somewhere, returned, merged by a phi node, compared or passed
+ * to a call. Constructors are only seen through once they have been inlined. The fields of
+ * the remaining objects are turned into SSA values the same way local variables are: phi
+ * nodes are placed at the iterated dominance frontier of the stores, then the dominator
+ * tree below the allocation is walked to replace each load by the value reaching it. A
+ * field read before it is written gets the default value of its type.
+ *
+ * Replacing an object may make the objects stored in its fields non-escaping, so the
+ * analysis is repeated until nothing changes.
+ */
+public class ScalarReplacement {
+
+	private final Function function;
+	private final List<Block> blocks;
+
+	public ScalarReplacement(Function function) {
+		this.function = function;
+		this.blocks = function.blocks();
+	}
+
+	/**
+	 * @return whether the function has been changed
+	 */
+	public boolean run() throws InvalidCompileOrderException {
+		boolean changed = false;
+
+		while(true) {
+			Map<Allocate, Block> candidates = nonEscaping();
+			if(candidates.isEmpty()) {
+				return changed;
+			}
+
+			List<List<Block>> dominatorChildren = dominatorChildren();
+			Map<Temporary, Temporary> substitute = new HashMap<>();
+
+			for(Map.Entry<Allocate, Block> candidate : candidates.entrySet()) {
+				replace(candidate.getKey(), candidate.getValue(), dominatorChildren, substitute);
+			}
+
+			// a value reaching a load may itself be a load of another replaced object
+			for(Map.Entry<Temporary, Temporary> entry : substitute.entrySet()) {
+				Temporary t = entry.getValue();
+				while(substitute.containsKey(t)) {
+					t = substitute.get(t);
+				}
+				entry.setValue(t);
+			}
+
+			for(Block b : blocks) {
+				for(PhiNode phiNode : b.phiManager().computedPhiNodes()) {
+					phiNode.substituteTemporaries(substitute);
+				}
+				b.substituteTemporaries(substitute);
+			}
+
+			changed = true;
+		}
+	}
+
+	/**
+	 * @return the allocations whose pointer is only used to access their fields, with the
+	 * block containing them
+	 */
+	private Map<Allocate, Block> nonEscaping() throws InvalidCompileOrderException {
+		Map<Allocate, Block> allocations = new LinkedHashMap<>();
+		Set<Temporary> escaping = new HashSet<>();
+
+		for(Block b : blocks) {
+			for(PhiNode phiNode : b.phiManager().computedPhiNodes()) {
+				escaping.addAll(phiNode.edges().values());
+			}
+
+			for(Compileable c : b.instructions) {
+				if(c instanceof Allocate) {
+					allocations.put((Allocate) c, b);
+				} else if(c instanceof ObjectStore) {
+					escaping.add(((ObjectStore) c).operands().get(1));
+				} else if(c instanceof Instruction && !(c instanceof ObjectLoad)) {
+					escaping.addAll(((Instruction) c).operands());
+				}
+			}
+		}
+
+		allocations.keySet().removeIf(a -> escaping.contains(a.result()));
+		return allocations;
+	}
+
+	private List<List<Block>> dominatorChildren() throws InvalidCompileOrderException {
+		List<List<Block>> children = new ArrayList<>();
+		for(int i = 0; i < blocks.size(); i++) {
+			children.add(new ArrayList<>());
+		}
+		for(Block b : blocks) {
+			if(b.IDOM() != null) {
+				children.get(((Block) b.IDOM()).index()).add(b);
+			}
+		}
+		return children;
+	}
+
+	private void replace(Allocate allocation, Block allocationBlock, List<List<Block>> dominatorChildren,
+	                     Map<Temporary, Temporary> substitute) throws InvalidCompileOrderException {
+		DominanceTree dominanceTree = function.dominanceTree();
+		DominanceFrontier dominanceFrontier = function.dominanceFrontier();
+		Temporary ptr = allocation.result();
+
+		// all uses of the pointer are dominated by the allocation, so only its subtree is of interest
+		List<Block> subtree = new ArrayList<>();
+		Deque<Block> stack = new ArrayDeque<>();
+		stack.push(allocationBlock);
+		while(!stack.isEmpty()) {
+			Block b = stack.pop();
+			subtree.add(b);
+			List<Block> children = dominatorChildren.get(b.index());
+			for(int i = children.size() - 1; i >= 0; i--) {
+				stack.push(children.get(i));
+			}
+		}
+
+		Map<ObjectType.Field, BitSet> storingBlocks = new LinkedHashMap<>();
+		for(Block b : subtree) {
+			for(Compileable c : b.instructions) {
+				if(c instanceof ObjectStore && ((ObjectStore) c).operands().get(0) == ptr) {
+					storingBlocks.computeIfAbsent(field((ObjectStore) c), f -> new BitSet()).set(b.index());
+				}
+			}
+		}
+
+		// phi nodes by block index and field
+		Map<Integer, Map<ObjectType.Field, PhiNode>> phiNodes = new HashMap<>();
+		for(Map.Entry<ObjectType.Field, BitSet> entry : storingBlocks.entrySet()) {
+			BitSet placed = new BitSet();
+			Deque<Integer> worklist = new ArrayDeque<>();
+			worklist.add(allocationBlock.index());
+			entry.getValue().stream().forEach(worklist::add);
+
+			while(!worklist.isEmpty()) {
+				for(int y : dominanceFrontier.of(worklist.poll())) {
+					Block block = blocks.get(y);
+
+					// the object does not exist yet when entering blocks not below the allocation
+					if(placed.get(y) || block == allocationBlock || !dominanceTree.dominates(allocationBlock, block)) {
+						continue;
+					}
+
+					PhiNode phiNode = new PhiNode(block.createTemporary(), new HashMap<>());
+					block.phiManager().addComputedPhiNode(phiNode);
+					phiNodes.computeIfAbsent(y, k -> new HashMap<>()).put(entry.getKey(), phiNode);
+
+					placed.set(y);
+					worklist.add(y);
+				}
+			}
+		}
+
+		List<Compileable> defaults = new ArrayList<>();
+		Map<ObjectType.Field, Temporary> defaultValues = new HashMap<>();
+		java.util.function.Function<ObjectType.Field, Temporary> defaultValue = field ->
+			defaultValues.computeIfAbsent(field, f -> {
+				Const<?> c = defaultConst(allocationBlock.createTemporary(), f.type);
+				defaults.add(c);
+				return c.result();
+			});
+
+		// values of the fields at the end of each block, the subtree is in dominator preorder
+		Map<Block, Map<ObjectType.Field, Temporary>> valuesAtEnd = new HashMap<>();
+		int allocationIndex = -1;
+
+		for(Block b : subtree) {
+			Map<ObjectType.Field, Temporary> values = new HashMap<>();
+			ListIterator<Compileable> it = b.instructions.listIterator();
+
+			if(b == allocationBlock) {
+				while(it.next() != allocation) { }
+				it.remove();
+				allocationIndex = it.nextIndex();
+			} else {
+				values.putAll(valuesAtEnd.get((Block) b.IDOM()));
+				for(Map.Entry<ObjectType.Field, PhiNode> entry : phiNodes.getOrDefault(b.index(), Collections.emptyMap()).entrySet()) {
+					values.put(entry.getKey(), entry.getValue().result());
+				}
+			}
+
+			while(it.hasNext()) {
+				Compileable c = it.next();
+
+				if(c instanceof ObjectLoad && ((ObjectLoad) c).operands().get(0) == ptr) {
+					ObjectType.Field field = field((ObjectLoad) c);
+					Temporary value = values.get(field);
+					substitute.put(((ObjectLoad) c).result(), value != null ? value : defaultValue.apply(field));
+					it.remove();
+				} else if(c instanceof ObjectStore && ((ObjectStore) c).operands().get(0) == ptr) {
+					values.put(field((ObjectStore) c), ((ObjectStore) c).operands().get(1));
+					it.remove();
+				}
+			}
+
+			valuesAtEnd.put(b, values);
+		}
+
+		for(Map.Entry<Integer, Map<ObjectType.Field, PhiNode>> entry : phiNodes.entrySet()) {
+			Block block = blocks.get(entry.getKey());
+
+			for(Map.Entry<ObjectType.Field, PhiNode> phiNode : entry.getValue().entrySet()) {
+				for(Block p : block.parents()) {
+					Temporary value = valuesAtEnd.getOrDefault(p, Collections.emptyMap()).get(phiNode.getKey());
+					phiNode.getValue().edges().put(p, value != null ? value : defaultValue.apply(phiNode.getKey()));
+				}
+			}
+		}
+
+		allocationBlock.instructions.addAll(allocationIndex, defaults);
+	}
+
+	private static ObjectType.Field field(ObjectLoad load) throws InvalidCompileOrderException {
+		return load.objectType().getField(load.field());
+	}
+
+	private static ObjectType.Field field(ObjectStore store) throws InvalidCompileOrderException {
+		return store.objectType().getField(store.field());
+	}
+
+	/**
+	 * @return a const holding the value a field of the given type has after allocation
+	 */
+	private static Const<?> defaultConst(Temporary result, Type type) {
+		if(type == PrimitiveType.BOOL) {
+			return new Const<>(result, type, false);
+		} else if(type == PrimitiveType.BYTE) {
+			return new Const<>(result, type, (byte) 0);
+		} else if(type == PrimitiveType.CHAR) {
+			return new Const<>(result, type, (char) 0);
+		} else if(type == PrimitiveType.SHORT) {
+			return new Const<>(result, type, (short) 0);
+		} else if(type == PrimitiveType.INT) {
+			return new Const<>(result, type, 0);
+		} else if(type == PrimitiveType.LONG) {
+			return new Const<>(result, type, 0L);
+		} else if(type == PrimitiveType.FLOAT) {
+			return new Const<>(result, type, 0f);
+		} else if(type == PrimitiveType.DOUBLE) {
+			return new Const<>(result, type, 0d);
+		} else {
+			// references start out as null
+			return new Const<>(result, PrimitiveType.VOID, 0);
+		}
+	}
+}
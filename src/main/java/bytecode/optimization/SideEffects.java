@@ -0,0 +1,118 @@
+package bytecode.optimization;
+
+import bytecode.*;
+
+/**
+ * The memory locations instructions read and write
+ *
+ * A location is either a field, the elements of all arrays or a static field. Fields are told
+ * apart by name only, so equally named fields of different classes are assumed to alias.
+ * Calls may write any location, builtins and allocations write none.
+ */
+public final class SideEffects {
+
+	public static final Location ANY = new Location("any", "");
+	public static final Location ARRAY_ELEMENTS = new Location("array", "");
+
+	public static final class Location {
+		private final String kind;
+		private final String name;
+
+		private Location(String kind, String name) {
+			this.kind = kind;
+			this.name = name;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Location && ((Location) obj).kind.equals(kind) && ((Location) obj).name.equals(name);
+		}
+
+		@Override
+		public int hashCode() {
+			return kind.hashCode() * 31 + name.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return kind + " " + name;
+		}
+	}
+
+	private SideEffects() {}
+
+	private static Location field(String name) {
+		return new Location("field", name);
+	}
+
+	private static Location global(int index) {
+		return new Location("global", Integer.toString(index));
+	}
+
+	/**
+	 * @return whether the result only depends on the operands. Such instructions can be
+	 * moved as long as their operands stay available and they do not trap
+	 */
+	public static boolean isPure(Instruction instruction) {
+		return instruction instanceof Const
+			|| instruction instanceof BinaryOperation
+			|| instruction instanceof UnaryOperation
+			|| instruction instanceof ArrayLength;
+	}
+
+	/**
+	 * @return whether the vm may abort execution at this instruction, e.g. on a division by
+	 * zero, a null reference or an index out of bounds
+	 */
+	public static boolean mayTrap(Instruction instruction) {
+		if(instruction instanceof BinaryOperation) {
+			BinaryOperation.Operator operator = ((BinaryOperation) instruction).operator();
+			return operator == BinaryOperation.Operator.div || operator == BinaryOperation.Operator.mod;
+		}
+
+		return instruction instanceof ArrayLength
+			|| instruction instanceof ObjectLoad
+			|| instruction instanceof ObjectStore
+			|| instruction instanceof LoadIndex
+			|| instruction instanceof StoreIndex
+			|| instruction instanceof New;
+	}
+
+	/**
+	 * @return the location the instruction reads or null if it does not read memory that can change
+	 */
+	public static Location reads(Instruction instruction) throws InvalidCompileOrderException {
+		if(instruction instanceof ObjectLoad) {
+			return field(((ObjectLoad) instruction).field());
+		}
+		if(instruction instanceof LoadIndex) {
+			return ARRAY_ELEMENTS;
+		}
+		if(instruction instanceof LoadGlobal) {
+			return global(((LoadGlobal) instruction).index());
+		}
+		return null;
+	}
+
+	/**
+	 * @return the location the instruction writes, ANY or null if it does not write memory
+	 */
+	public static Location writes(Instruction instruction) {
+		if(instruction instanceof ObjectStore) {
+			return field(((ObjectStore) instruction).field());
+		}
+		if(instruction instanceof StoreIndex) {
+			return ARRAY_ELEMENTS;
+		}
+		if(instruction instanceof StoreGlobal) {
+			return global(((StoreGlobal) instruction).field().index);
+		}
+		if(instruction instanceof Call
+			|| instruction instanceof VoidCall
+			|| instruction instanceof MemberCall
+			|| instruction instanceof VoidMemberCall) {
+			return ANY;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,256 @@
+package bytecode.optimization;
+
+import bytecode.*;
+
+import java.util.*;
+
+/**
+ * Assigns the temporaries of a function to frame slots, temporaries that are never live at
+ * the same time share a slot
+ *
+ * Two temporaries interfere if one is defined while the other is live. A result that is
+ * never used still interferes with everything live after it, since the vm writes it anyway.
+ * The phi nodes of a block are written one after the other, so a phi node result also
+ * interferes with the arguments of the other phi nodes of its block, but not with its own.
+ * An argument naming the result of another phi node of the block is the value that result
+ * had in the predecessor, so phi nodes are reordered to read such results before they are
+ * written. Where they read each other's results, as the variables of a swap in a loop do,
+ * one of them is first copied by a phi node in the predecessors.
+ *
+ * In SSA form every temporary is live only in the part of the dominator tree below its
+ * definition, so assigning each definition the lowest free slot in dominator order needs no
+ * more slots than temporaries are live at any point. Where possible a phi node and its
+ * arguments get the same slot, which leaves the vm nothing to copy. The parameters keep the
+ * slots the arguments are passed in.
+ */
+public class SlotAllocation {
+
+	private final Function function;
+	private final Map<Temporary, Set<Temporary>> interference = new HashMap<>();
+
+	// phi node results and arguments that should get the same slot
+	private final Map<Temporary, Set<Temporary>> related = new HashMap<>();
+
+	public SlotAllocation(Function function) {
+		this.function = function;
+	}
+
+	/**
+	 * @return the number of slots used
+	 */
+	public int run() throws InvalidCompileOrderException {
+		for(Block b : function.blocks()) {
+			orderPhiNodes(b);
+		}
+
+		Liveness liveness = new Liveness(function);
+		for(Block b : function.blocks()) {
+			interfere(b, liveness.liveOut(b));
+		}
+
+		Map<Temporary, Integer> slots = new HashMap<>();
+		List<Temporary> parameters = function.parameterTemporaries();
+		for(int i = 0; i < parameters.size(); i++) {
+			slots.put(parameters.get(i), i);
+		}
+		int slotCount = parameters.size();
+
+		for(Temporary t : definitionOrder()) {
+			Set<Integer> taken = new HashSet<>();
+			for(Temporary other : interference.getOrDefault(t, Collections.emptySet())) {
+				Integer slot = slots.get(other);
+				if(slot != null) {
+					taken.add(slot);
+				}
+			}
+
+			// the lowest one, the related temporaries are not ordered
+			Integer slot = null;
+			for(Temporary other : related.getOrDefault(t, Collections.emptySet())) {
+				Integer preferred = slots.get(other);
+				if(preferred != null && !taken.contains(preferred) && (slot == null || preferred < slot)) {
+					slot = preferred;
+				}
+			}
+			if(slot == null) {
+				slot = 0;
+				while(taken.contains(slot)) {
+					slot++;
+				}
+			}
+
+			slots.put(t, slot);
+			slotCount = Math.max(slotCount, slot + 1);
+		}
+
+		for(Map.Entry<Temporary, Integer> entry : slots.entrySet()) {
+			entry.getKey().setIndex(entry.getValue());
+		}
+		return slotCount;
+	}
+
+	/**
+	 * Moves each phi node of the block in front of the phi nodes whose results it reads,
+	 * keeping the order of the others
+	 */
+	private static void orderPhiNodes(Block b) throws InvalidCompileOrderException {
+		List<PhiNode> phiNodes = b.phiManager().computedPhiNodes();
+		List<PhiNode> remaining = new ArrayList<>(phiNodes);
+		phiNodes.clear();
+
+		while(!remaining.isEmpty()) {
+			PhiNode next = null;
+			for(PhiNode phiNode : remaining) {
+				if(!isReadByOther(phiNode, remaining)) {
+					next = phiNode;
+					break;
+				}
+			}
+
+			if(next == null) {
+				// every remaining phi node is read by another one, the first is written last
+				next = remaining.get(0);
+				for(PhiNode reader : remaining) {
+					if(reader != next) {
+						copyInPredecessors(b, reader, next.result());
+					}
+				}
+			}
+			remaining.remove(next);
+			phiNodes.add(next);
+		}
+	}
+
+	/**
+	 * Makes the phi node read a copy of the result instead, taken at the end of the predecessor.
+	 * The copy is a phi node of the predecessor, which the block of the result dominates.
+	 */
+	private static void copyInPredecessors(Block b, PhiNode reader, Temporary result) throws InvalidCompileOrderException {
+		for(Map.Entry<Block, Temporary> edge : reader.edges().entrySet()) {
+			Block predecessor = edge.getKey();
+			if(edge.getValue() != result) {
+				continue;
+			}
+			if(predecessor == b) {
+				throw new InvalidCompileOrderException("The phi nodes of block " + b.index() + " read each other's results on its own edge");
+			}
+
+			Map<Block, Temporary> edges = new HashMap<>();
+			for(Block parent : predecessor.parents()) {
+				edges.put(parent, result);
+			}
+			Temporary copy = predecessor.createTemporary();
+			predecessor.phiManager().addComputedPhiNode(new PhiNode(copy, edges));
+			edge.setValue(copy);
+		}
+	}
+
+	private static boolean isReadByOther(PhiNode phiNode, List<PhiNode> phiNodes) {
+		for(PhiNode other : phiNodes) {
+			if(other != phiNode && other.edges().containsValue(phiNode.result())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void interfere(Block b, Set<Temporary> liveOut) throws InvalidCompileOrderException {
+		Set<Temporary> live = new HashSet<>(liveOut);
+
+		for(int i = b.instructions.size() - 1; i >= 0; i--) {
+			Compileable c = b.instructions.get(i);
+			if(!(c instanceof Instruction)) {
+				continue;
+			}
+
+			Temporary result = ((Instruction) c).result();
+			if(result != null) {
+				for(Temporary t : live) {
+					addEdge(result, t);
+				}
+				live.remove(result);
+			}
+			live.addAll(((Instruction) c).operands());
+		}
+
+		List<PhiNode> phiNodes = b.phiManager().computedPhiNodes();
+		for(PhiNode phiNode : phiNodes) {
+			Temporary result = phiNode.result();
+			for(Temporary t : live) {
+				addEdge(result, t);
+			}
+
+			for(PhiNode other : phiNodes) {
+				if(other == phiNode) {
+					for(Temporary argument : other.edges().values()) {
+						related.computeIfAbsent(result, k -> new HashSet<>()).add(argument);
+						related.computeIfAbsent(argument, k -> new HashSet<>()).add(result);
+					}
+					continue;
+				}
+
+				addEdge(result, other.result());
+				for(Temporary argument : other.edges().values()) {
+					addEdge(result, argument);
+				}
+			}
+		}
+	}
+
+	private void addEdge(Temporary a, Temporary b) {
+		if(a != b) {
+			interference.computeIfAbsent(a, k -> new HashSet<>()).add(b);
+			interference.computeIfAbsent(b, k -> new HashSet<>()).add(a);
+		}
+	}
+
+	/**
+	 * @return the results of all phi nodes and instructions, in dominator tree preorder
+	 */
+	private List<Temporary> definitionOrder() throws InvalidCompileOrderException {
+		List<Block> blocks = function.blocks();
+		List<List<Block>> dominatorChildren = new ArrayList<>();
+		for(int i = 0; i < blocks.size(); i++) {
+			dominatorChildren.add(new ArrayList<>());
+		}
+		for(Block b : blocks) {
+			if(b.IDOM() != null) {
+				dominatorChildren.get(((Block) b.IDOM()).index()).add(b);
+			}
+		}
+
+		List<Block> preorder = new ArrayList<>();
+		Deque<Block> stack = new ArrayDeque<>();
+		stack.push(function.initialBlock());
+		while(!stack.isEmpty()) {
+			Block b = stack.pop();
+			preorder.add(b);
+
+			List<Block> children = dominatorChildren.get(b.index());
+			for(int i = children.size() - 1; i >= 0; i--) {
+				stack.push(children.get(i));
+			}
+		}
+
+		// unreachable blocks are still written
+		Set<Block> visited = new HashSet<>(preorder);
+		for(Block b : blocks) {
+			if(!visited.contains(b)) {
+				preorder.add(b);
+			}
+		}
+
+		List<Temporary> order = new ArrayList<>();
+		for(Block b : preorder) {
+			for(PhiNode phiNode : b.phiManager().computedPhiNodes()) {
+				order.add(phiNode.result());
+			}
+			for(Compileable c : b.instructions) {
+				if(c instanceof Instruction && ((Instruction) c).result() != null) {
+					order.add(((Instruction) c).result());
+				}
+			}
+		}
+		return order;
+	}
+}
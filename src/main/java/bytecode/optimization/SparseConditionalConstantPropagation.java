@@ -0,0 +1,395 @@
+package bytecode.optimization;
+
+import bytecode.*;
+import bytecode.type.Type;
+
+import java.util.*;
+
+/**
+ * Constant Propagation with Conditional Branches (Wegman, Zadeck)
+ *
+ * Every temporary starts out as TOP and only ever moves down the lattice to a constant
+ * and then to BOTTOM. Blocks are only evaluated once an edge into them has been found
+ * to be executable, so constants that only reach a phi node over dead edges are still
+ * folded. Afterwards
+ * <ul>
+ *     <li>instructions and phi nodes with a constant result are replaced by a Const</li>
+ *     <li>conditional gotos with a constant condition become a goto or are removed</li>
+ *     <li>edges that are never taken and blocks that are never reached are removed</li>
+ * </ul>
+ */
+public class SparseConditionalConstantPropagation {
+
+	private static final int ENTRY = -1;
+
+	/**
+	 * Lattice value of a temporary
+	 */
+	private static class Value {
+		static final Value TOP = new Value(null, null);
+		static final Value BOTTOM = new Value(null, null);
+
+		final Type type;
+		final Object constant;
+
+		Value(Type type, Object constant) {
+			this.type = type;
+			this.constant = constant;
+		}
+
+		boolean isConstant() {
+			return this != TOP && this != BOTTOM;
+		}
+
+		Value meet(Value other) {
+			if(this == TOP) {
+				return other;
+			}
+			if(other == TOP) {
+				return this;
+			}
+			return equals(other) ? this : BOTTOM;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(this == obj) {
+				return true;
+			}
+			if(!(obj instanceof Value) || !isConstant() || !((Value) obj).isConstant()) {
+				return false;
+			}
+
+			Value other = (Value) obj;
+			return type.equals(other.type) && constant.equals(other.constant);
+		}
+
+		@Override
+		public int hashCode() {
+			return isConstant() ? constant.hashCode() : super.hashCode();
+		}
+	}
+
+	private final Function function;
+	private final List<Block> blocks;
+
+	private final Map<Temporary, Value> values = new HashMap<>();
+	private final Map<Temporary, List<Instruction>> users = new HashMap<>();
+	// instructions are keyed by identity, Const and PhiNode override equals
+	private final Map<Instruction, Block> containingBlock = new IdentityHashMap<>();
+
+	// blocks that have been evaluated at least once
+	private final BitSet reached;
+	// positions in the successor list of the executable edges out of each block
+	private final BitSet[] executableEdges;
+
+	private final Deque<int[]> flowWorklist = new ArrayDeque<>();
+	private final Deque<Instruction> ssaWorklist = new ArrayDeque<>();
+
+	public SparseConditionalConstantPropagation(Function function) {
+		this.function = function;
+		this.blocks = function.blocks();
+
+		reached = new BitSet(blocks.size());
+		executableEdges = new BitSet[blocks.size()];
+		for(int i = 0; i < blocks.size(); i++) {
+			executableEdges[i] = new BitSet(blocks.get(i).children().size());
+		}
+	}
+
+	/**
+	 * @return whether the function has been changed
+	 */
+	public boolean run() throws InvalidCompileOrderException {
+		collectDefinitionsAndUses();
+
+		flowWorklist.add(new int[]{ENTRY, 0});
+
+		while(!flowWorklist.isEmpty() || !ssaWorklist.isEmpty()) {
+			while(!flowWorklist.isEmpty()) {
+				int[] edge = flowWorklist.poll();
+				int from = edge[0];
+				int to = edge[1];
+
+				Block b = blocks.get(to);
+				if(from != ENTRY) {
+					int successor = blocks.get(from).children().indexOf(b);
+					if(executableEdges[from].get(successor)) {
+						continue;
+					}
+					executableEdges[from].set(successor);
+				}
+
+				for(PhiNode phiNode : b.phiManager().computedPhiNodes()) {
+					visitPhiNode(phiNode, b);
+				}
+
+				if(!reached.get(to)) {
+					reached.set(to);
+
+					for(Compileable c : b.instructions) {
+						if(c instanceof Instruction) {
+							visitInstruction((Instruction) c, b);
+						}
+					}
+					visitControlFlow(b);
+				}
+			}
+
+			while(!ssaWorklist.isEmpty()) {
+				Instruction instruction = ssaWorklist.poll();
+				Block b = containingBlock.get(instruction);
+
+				if(!reached.get(b.index())) {
+					continue;
+				}
+
+				if(instruction instanceof PhiNode) {
+					visitPhiNode((PhiNode) instruction, b);
+				} else {
+					visitInstruction(instruction, b);
+				}
+			}
+		}
+
+		return rewrite();
+	}
+
+	private void collectDefinitionsAndUses() throws InvalidCompileOrderException {
+		for(Block b : blocks) {
+			for(PhiNode phiNode : b.phiManager().computedPhiNodes()) {
+				collect(phiNode, b);
+			}
+			for(Compileable c : b.instructions) {
+				if(c instanceof Instruction) {
+					collect((Instruction) c, b);
+				}
+			}
+		}
+	}
+
+	private void collect(Instruction instruction, Block b) {
+		containingBlock.put(instruction, b);
+
+		if(instruction.result() != null) {
+			values.put(instruction.result(), Value.TOP);
+		}
+
+		for(Temporary operand : instruction.operands()) {
+			users.computeIfAbsent(operand, t -> new ArrayList<>()).add(instruction);
+		}
+	}
+
+	/**
+	 * @return the lattice value of the temporary; parameters and other temporaries
+	 * without a definition in this function are BOTTOM
+	 */
+	private Value value(Temporary temporary) {
+		return values.getOrDefault(temporary, Value.BOTTOM);
+	}
+
+	private void update(Temporary temporary, Value value) {
+		Value old = value(temporary);
+		if(old == Value.BOTTOM || old.equals(value)) {
+			return;
+		}
+
+		values.put(temporary, value);
+		ssaWorklist.addAll(users.getOrDefault(temporary, Collections.emptyList()));
+	}
+
+	private void visitPhiNode(PhiNode phiNode, Block b) throws InvalidCompileOrderException {
+		Value value = Value.TOP;
+		for(Map.Entry<Block, Temporary> edge : phiNode.edges().entrySet()) {
+			if(isExecutable(edge.getKey(), b)) {
+				value = value.meet(value(edge.getValue()));
+			}
+		}
+		update(phiNode.result(), value);
+	}
+
+	private void visitInstruction(Instruction instruction, Block b) throws InvalidCompileOrderException {
+		if(instruction instanceof ConditionalGoto) {
+			visitControlFlow(b);
+		} else if(instruction.result() != null) {
+			update(instruction.result(), evaluate(instruction));
+		}
+	}
+
+	private Value evaluate(Instruction instruction) {
+		if(instruction instanceof Const) {
+			Const<?> constant = (Const<?>) instruction;
+			return new Value(constant.type, constant.value);
+		}
+
+		if(instruction instanceof BinaryOperation) {
+			BinaryOperation operation = (BinaryOperation) instruction;
+			Value l = value(operation.operands().get(0));
+			Value r = value(operation.operands().get(1));
+
+			if(l == Value.BOTTOM || r == Value.BOTTOM) {
+				return Value.BOTTOM;
+			}
+			if(l == Value.TOP || r == Value.TOP) {
+				return Value.TOP;
+			}
+			if(!l.type.equals(r.type)) {
+				return Value.BOTTOM;
+			}
+
+			Object result = operation.operator().evaluate(l.type, l.constant, r.constant);
+			return result == null ? Value.BOTTOM : new Value(operation.operator().resultType(l.type), result);
+		}
+
+		if(instruction instanceof UnaryOperation) {
+			UnaryOperation operation = (UnaryOperation) instruction;
+			Value v = value(operation.operands().get(0));
+
+			if(!v.isConstant()) {
+				return v;
+			}
+
+			Object result = operation.operator().evaluate(v.type, v.constant);
+			return result == null ? Value.BOTTOM : new Value(v.type, result);
+		}
+
+		return Value.BOTTOM;
+	}
+
+	/**
+	 * Marks the edges out of the block that can be taken given the current conditions
+	 */
+	private void visitControlFlow(Block b) throws InvalidCompileOrderException {
+		for(Compileable c : b.instructions) {
+			if(c instanceof Return) {
+				return;
+			}
+
+			if(c instanceof Goto) {
+				markExecutable(b, ((Goto) c).label());
+				return;
+			}
+
+			if(c instanceof ConditionalGoto) {
+				ConditionalGoto conditionalGoto = (ConditionalGoto) c;
+				Value condition = value(conditionalGoto.condition());
+
+				if(condition == Value.TOP) {
+					// no edge is taken until the condition is known, the goto is visited again
+					// once it has been lowered
+					return;
+				} else if(condition == Value.BOTTOM) {
+					markExecutable(b, conditionalGoto.label());
+				} else if((Boolean) condition.constant) {
+					markExecutable(b, conditionalGoto.label());
+					return;
+				}
+			}
+		}
+
+		if(b.index() + 1 < blocks.size()) {
+			markExecutable(b, blocks.get(b.index() + 1));
+		}
+	}
+
+	private void markExecutable(Block from, Block to) throws InvalidCompileOrderException {
+		if(!isExecutable(from, to)) {
+			flowWorklist.add(new int[]{from.index(), to.index()});
+		}
+	}
+
+	private boolean isExecutable(Block from, Block to) throws InvalidCompileOrderException {
+		return executableEdges[from.index()].get(from.children().indexOf(to));
+	}
+
+	private boolean rewrite() throws InvalidCompileOrderException {
+		boolean changed = false;
+
+		for(Block b : blocks) {
+			if(!reached.get(b.index())) {
+				continue;
+			}
+
+			// phi nodes are kept by the phi manager, so the start of the instructions directly follows them
+			List<Compileable> constants = new ArrayList<>();
+			for(Iterator<PhiNode> it = b.phiManager().computedPhiNodes().iterator(); it.hasNext(); ) {
+				PhiNode phiNode = it.next();
+				Value value = value(phiNode.result());
+
+				if(value.isConstant()) {
+					it.remove();
+					constants.add(new Const<>(phiNode.result(), value.type, value.constant));
+				}
+			}
+			b.instructions.addAll(0, constants);
+			changed |= !constants.isEmpty();
+
+			boolean terminated = false;
+			for(ListIterator<Compileable> it = b.instructions.listIterator(); it.hasNext(); ) {
+				Compileable c = it.next();
+
+				if(terminated) {
+					// never executed
+					if(c instanceof Instruction) {
+						it.remove();
+						changed = true;
+					}
+					continue;
+				}
+
+				if(c instanceof BinaryOperation || c instanceof UnaryOperation) {
+					Temporary result = ((Instruction) c).result();
+					Value value = value(result);
+
+					if(value.isConstant()) {
+						it.set(new Const<>(result, value.type, value.constant));
+						changed = true;
+					}
+				} else if(c instanceof ConditionalGoto) {
+					ConditionalGoto conditionalGoto = (ConditionalGoto) c;
+					Value condition = value(conditionalGoto.condition());
+
+					if(condition.isConstant()) {
+						if((Boolean) condition.constant) {
+							it.set(new Goto(conditionalGoto.label()));
+							terminated = true;
+						} else {
+							it.remove();
+						}
+						changed = true;
+					}
+				} else if(c instanceof Goto || c instanceof Return) {
+					terminated = true;
+				}
+			}
+		}
+
+		for(Block b : blocks) {
+			if(!reached.get(b.index())) {
+				continue;
+			}
+
+			// positions shift as successors are removed, so the dead ones are collected first
+			List<Block> dead = new ArrayList<>();
+			for(Block child : b.children()) {
+				if(!isExecutable(b, child)) {
+					dead.add(child);
+				}
+			}
+			for(Block child : dead) {
+				b.removeSuccessor(child);
+				changed = true;
+			}
+		}
+
+		Set<Block> unreachable = new HashSet<>();
+		for(Block b : blocks) {
+			if(!reached.get(b.index())) {
+				unreachable.add(b);
+			}
+		}
+		function.removeBlocks(unreachable);
+
+		return changed || !unreachable.isEmpty();
+	}
+}
@@ -0,0 +1,480 @@
+package bytecode.optimization;
+
+import bytecode.*;
+import bytecode.type.PrimitiveType;
+
+import java.util.*;
+
+/**
+ * Replaces multiplications of induction variables by additions
+ *
+ * A basic induction variable is a phi node in a loop header whose value from the preheader
+ * is its start and whose value along every back edge is the phi node plus or minus a loop
+ * invariant step. A multiplication of such a variable by a loop invariant factor is a
+ * derived induction variable: it gets its own phi node starting at start * factor, which
+ * is advanced by step * factor next to the increment of the basic variable.
+ *
+ * If the basic variable is afterwards only used by its increment and the exit test in the
+ * header, the test is rewritten to compare the derived variable against the scaled bound
+ * instead (linear function test replacement), which leaves the basic variable dead. That is
+ * only done if start, step, bound and factor are constants and none of the values can
+ * overflow, since the multiplication wraps around where the comparison does not.
+ *
+ * Only int values are considered, floating point arithmetic does not distribute.
+ */
+public class StrengthReduction {
+
+	private static class InductionVariable {
+		final PhiNode phiNode;
+		final Temporary start;
+		final BinaryOperation increment;
+		final Temporary step;
+
+		InductionVariable(PhiNode phiNode, Temporary start, BinaryOperation increment, Temporary step) {
+			this.phiNode = phiNode;
+			this.start = start;
+			this.increment = increment;
+			this.step = step;
+		}
+	}
+
+	private final Function function;
+	private final List<Block> blocks;
+
+	private final Map<Temporary, Instruction> definitions = new HashMap<>();
+	private final Map<Temporary, Block> definingBlocks = new HashMap<>();
+	private final Set<Temporary> integers = new HashSet<>();
+
+	public StrengthReduction(Function function) {
+		this.function = function;
+		this.blocks = function.blocks();
+	}
+
+	/**
+	 * @return whether the function has been changed
+	 */
+	public boolean run() throws InvalidCompileOrderException {
+		for(Block b : blocks) {
+			for(PhiNode phiNode : b.phiManager().computedPhiNodes()) {
+				define(phiNode, b);
+			}
+			for(Compileable c : b.instructions) {
+				if(c instanceof Instruction && ((Instruction) c).result() != null) {
+					define((Instruction) c, b);
+				}
+			}
+		}
+		inferIntegers();
+
+		boolean changed = false;
+		List<Loops.Loop> loops = new Loops(function).loops();
+		for(int i = loops.size() - 1; i >= 0; i--) {
+			changed |= reduce(loops.get(i));
+		}
+		return changed;
+	}
+
+	private void define(Instruction instruction, Block b) {
+		definitions.put(instruction.result(), instruction);
+		definingBlocks.put(instruction.result(), b);
+	}
+
+	/**
+	 * Finds the temporaries holding ints: int constants, lengths, int parameters and the
+	 * arithmetic on and phi nodes of only those
+	 */
+	private void inferIntegers() {
+		for(int i = 0; i < function.parameters.size(); i++) {
+			if(function.parameters.get(i).type == PrimitiveType.INT) {
+				integers.add(function.parameterTemporaries().get(i));
+			}
+		}
+
+		// start optimistically with all candidates, since phi nodes and increments depend on each other
+		for(Instruction definition : definitions.values()) {
+			if((definition instanceof Const && ((Const<?>) definition).type == PrimitiveType.INT)
+				|| definition instanceof ArrayLength
+				|| definition instanceof PhiNode
+				|| isArithmetic(definition)) {
+				integers.add(definition.result());
+			}
+		}
+
+		boolean changed = true;
+		while(changed) {
+			changed = false;
+			for(Instruction definition : definitions.values()) {
+				if((definition instanceof PhiNode || isArithmetic(definition))
+					&& integers.contains(definition.result())
+					&& !integers.containsAll(definition.operands())) {
+					integers.remove(definition.result());
+					changed = true;
+				}
+			}
+		}
+	}
+
+	private static boolean isArithmetic(Instruction instruction) {
+		if(instruction instanceof BinaryOperation) {
+			BinaryOperation.Operator operator = ((BinaryOperation) instruction).operator();
+			return operator == BinaryOperation.Operator.add
+				|| operator == BinaryOperation.Operator.sub
+				|| operator == BinaryOperation.Operator.mul;
+		}
+		return instruction instanceof UnaryOperation && ((UnaryOperation) instruction).operator() == UnaryOperation.Operator.neg;
+	}
+
+	private boolean reduce(Loops.Loop loop) throws InvalidCompileOrderException {
+		Block preheader = null;
+		for(Block p : loop.header.parents()) {
+			if(!loop.contains(p)) {
+				if(preheader != null && preheader != p) {
+					return false;
+				}
+				preheader = p;
+			}
+		}
+		if(preheader == null || preheader.children().size() != 1) {
+			return false;
+		}
+
+		Set<Temporary> definedInLoop = new HashSet<>();
+		for(Map.Entry<Temporary, Block> entry : definingBlocks.entrySet()) {
+			if(loop.contains(entry.getValue())) {
+				definedInLoop.add(entry.getKey());
+			}
+		}
+
+		// induction variables by the phi node and by the incremented value
+		Map<Temporary, InductionVariable> inductionVariables = new HashMap<>();
+		for(PhiNode phiNode : loop.header.phiManager().computedPhiNodes()) {
+			InductionVariable variable = recognize(phiNode, loop, preheader, definedInLoop);
+			if(variable != null) {
+				inductionVariables.put(phiNode.result(), variable);
+				inductionVariables.put(variable.increment.result(), variable);
+			}
+		}
+		if(inductionVariables.isEmpty()) {
+			return false;
+		}
+
+		List<BinaryOperation> multiplications = new ArrayList<>();
+		for(int b = loop.body.nextSetBit(0); b >= 0; b = loop.body.nextSetBit(b + 1)) {
+			for(Compileable c : blocks.get(b).instructions) {
+				if(c instanceof BinaryOperation && ((BinaryOperation) c).operator() == BinaryOperation.Operator.mul) {
+					multiplications.add((BinaryOperation) c);
+				}
+			}
+		}
+
+		// derived variables by basic variable and factor, each one the phi node and the incremented value
+		Map<List<Object>, Temporary[]> derived = new LinkedHashMap<>();
+		Map<Temporary, Temporary> substitute = new HashMap<>();
+
+		for(BinaryOperation multiplication : multiplications) {
+			Temporary l = multiplication.operands().get(0), r = multiplication.operands().get(1);
+			if(!inductionVariables.containsKey(l)) {
+				Temporary swap = l;
+				l = r;
+				r = swap;
+			}
+
+			InductionVariable variable = inductionVariables.get(l);
+			if(variable == null || definedInLoop.contains(r) || !integers.contains(r)) {
+				continue;
+			}
+
+			List<Object> key = Arrays.asList(variable, r);
+			Temporary[] values = derived.get(key);
+			if(values == null) {
+				values = derive(variable, r, loop, preheader);
+				derived.put(key, values);
+			}
+
+			substitute.put(multiplication.result(), l == variable.phiNode.result() ? values[0] : values[1]);
+			Block block = definingBlocks.get(multiplication.result());
+			block.instructions.remove(indexOf(block, multiplication));
+		}
+
+		if(substitute.isEmpty()) {
+			return false;
+		}
+
+		for(Block b : blocks) {
+			for(PhiNode phiNode : b.phiManager().computedPhiNodes()) {
+				phiNode.substituteTemporaries(substitute);
+			}
+			b.substituteTemporaries(substitute);
+		}
+
+		for(Map.Entry<List<Object>, Temporary[]> entry : derived.entrySet()) {
+			replaceTest((InductionVariable) entry.getKey().get(0), (Temporary) entry.getKey().get(1), entry.getValue()[0], loop, preheader);
+		}
+
+		return true;
+	}
+
+	/**
+	 * @return the basic induction variable defined by the phi node or null if it is none
+	 */
+	private InductionVariable recognize(PhiNode phiNode, Loops.Loop loop, Block preheader, Set<Temporary> definedInLoop) throws InvalidCompileOrderException {
+		if(!integers.contains(phiNode.result())) {
+			return null;
+		}
+
+		Temporary start = null, next = null;
+		for(Map.Entry<Block, Temporary> edge : phiNode.edges().entrySet()) {
+			if(edge.getKey() == preheader) {
+				start = edge.getValue();
+			} else if(next == null || next == edge.getValue()) {
+				next = edge.getValue();
+			} else {
+				return null;
+			}
+		}
+
+		if(start == null || next == null || !(definitions.get(next) instanceof BinaryOperation) || !loop.contains(definingBlocks.get(next))) {
+			return null;
+		}
+
+		BinaryOperation increment = (BinaryOperation) definitions.get(next);
+		Temporary l = increment.operands().get(0), r = increment.operands().get(1);
+
+		if(increment.operator() == BinaryOperation.Operator.add && r == phiNode.result()) {
+			r = l;
+			l = phiNode.result();
+		} else if(increment.operator() != BinaryOperation.Operator.add && increment.operator() != BinaryOperation.Operator.sub) {
+			return null;
+		}
+
+		if(l != phiNode.result() || definedInLoop.contains(r) || !integers.contains(r)) {
+			return null;
+		}
+
+		return new InductionVariable(phiNode, start, increment, r);
+	}
+
+	/**
+	 * Creates the induction variable for the basic variable times the factor
+	 *
+	 * @return the phi node of the new variable and its incremented value
+	 */
+	private Temporary[] derive(InductionVariable variable, Temporary factor, Loops.Loop loop, Block preheader) throws InvalidCompileOrderException {
+		Temporary start = multiply(variable.start, factor, preheader);
+		Temporary step = multiply(variable.step, factor, preheader);
+
+		Block incrementBlock = definingBlocks.get(variable.increment.result());
+		Temporary value = loop.header.createTemporary();
+		Temporary next = incrementBlock.createTemporary();
+
+		Map<Block, Temporary> edges = new HashMap<>();
+		for(Block p : variable.phiNode.edges().keySet()) {
+			edges.put(p, p == preheader ? start : next);
+		}
+		PhiNode phiNode = new PhiNode(value, edges);
+		loop.header.phiManager().addComputedPhiNode(phiNode);
+		define(phiNode, loop.header);
+
+		BinaryOperation increment = new BinaryOperation(next, variable.increment.operator(), value, step);
+		incrementBlock.instructions.add(indexOf(incrementBlock, variable.increment) + 1, increment);
+		define(increment, incrementBlock);
+
+		integers.add(value);
+		integers.add(next);
+		return new Temporary[]{value, next};
+	}
+
+	/**
+	 * @return the product of two loop invariants, computed at the end of the preheader or folded
+	 */
+	private Temporary multiply(Temporary l, Temporary r, Block preheader) throws InvalidCompileOrderException {
+		Long lValue = intConstant(l), rValue = intConstant(r);
+		Instruction product;
+
+		if(lValue != null && rValue != null) {
+			// wraps around the same way the multiplication would
+			product = new Const<>(preheader.createTemporary(), PrimitiveType.INT, (int) (lValue * rValue));
+		} else {
+			product = new BinaryOperation(preheader.createTemporary(), BinaryOperation.Operator.mul, l, r);
+		}
+
+		preheader.instructions.add(preheader.endOfInstructions(), product);
+		define(product, preheader);
+		integers.add(product.result());
+		return product.result();
+	}
+
+	/**
+	 * Rewrites the exit test of the basic variable to use the derived one, if that is all the
+	 * basic variable is still needed for
+	 */
+	private void replaceTest(InductionVariable variable, Temporary factor, Temporary derived, Loops.Loop loop, Block preheader) throws InvalidCompileOrderException {
+		Long start = intConstant(variable.start), step = intConstant(variable.step), scale = intConstant(factor);
+		if(start == null || step == null || scale == null || scale <= 0 || step == 0) {
+			return;
+		}
+		if(variable.increment.operator() == BinaryOperation.Operator.sub) {
+			step = -step;
+		}
+
+		Temporary basic = variable.phiNode.result();
+		List<Instruction> users = users(basic);
+		List<Instruction> incrementUsers = users(variable.increment.result());
+
+		if(users.size() != 2 || !users.contains(variable.increment)
+			|| incrementUsers.size() != 1 || incrementUsers.get(0) != variable.phiNode) {
+			return;
+		}
+
+		Instruction test = users.get(0) == variable.increment ? users.get(1) : users.get(0);
+		if(!(test instanceof BinaryOperation) || definingBlocks.get(test.result()) != loop.header) {
+			return;
+		}
+
+		// the loop continues while basic <operator> bound
+		Boolean continues = continuesIf(test.result(), loop);
+		if(continues == null) {
+			return;
+		}
+
+		BinaryOperation.Operator operator = ((BinaryOperation) test).operator();
+		Temporary bound = test.operands().get(1);
+		if(test.operands().get(0) != basic) {
+			operator = mirror(operator);
+			bound = test.operands().get(0);
+		}
+		if(!continues) {
+			operator = negate(operator);
+		}
+
+		Long limit = intConstant(bound);
+		if(operator == null || limit == null) {
+			return;
+		}
+
+		// the range of the basic variable, including its last value that fails the test
+		long low, high;
+		if(step > 0 && operator == BinaryOperation.Operator.lt) {
+			low = start;
+			high = Math.max(start, limit - 1 + step);
+		} else if(step > 0 && operator == BinaryOperation.Operator.lte) {
+			low = start;
+			high = Math.max(start, limit + step);
+		} else if(step < 0 && operator == BinaryOperation.Operator.gt) {
+			low = Math.min(start, limit + 1 + step);
+			high = start;
+		} else if(step < 0 && operator == BinaryOperation.Operator.gte) {
+			low = Math.min(start, limit + step);
+			high = start;
+		} else {
+			return;
+		}
+
+		if(!fitsInt(low) || !fitsInt(high) || !fitsInt(low * scale) || !fitsInt(high * scale)) {
+			return;
+		}
+
+		Const<Integer> scaledBound = new Const<>(preheader.createTemporary(), PrimitiveType.INT, (int) (limit * scale));
+		preheader.instructions.add(preheader.endOfInstructions(), scaledBound);
+		define(scaledBound, preheader);
+
+		Map<Temporary, Temporary> substitute = new HashMap<>();
+		substitute.put(basic, derived);
+		substitute.put(bound, scaledBound.result());
+		test.substituteTemporaries(substitute);
+	}
+
+	/**
+	 * @return the value of the condition for which the loop is continued, or null if it is not
+	 * the exit test of the header
+	 */
+	private Boolean continuesIf(Temporary condition, Loops.Loop loop) throws InvalidCompileOrderException {
+		boolean value = true;
+
+		List<Instruction> users = users(condition);
+		if(users.size() == 1 && users.get(0) instanceof UnaryOperation
+			&& ((UnaryOperation) users.get(0)).operator() == UnaryOperation.Operator.not) {
+			value = false;
+			users = users(users.get(0).result());
+		}
+
+		if(users.size() != 1 || !(users.get(0) instanceof ConditionalGoto) || indexOf(loop.header, users.get(0)) < 0
+			|| new HashSet<>(loop.header.children()).size() != 2) {
+			return null;
+		}
+
+		Block target = ((ConditionalGoto) users.get(0)).label();
+		for(Block child : loop.header.children()) {
+			if(child != target && loop.contains(child) == loop.contains(target)) {
+				return null;
+			}
+		}
+
+		return loop.contains(target) == value;
+	}
+
+	private List<Instruction> users(Temporary t) throws InvalidCompileOrderException {
+		List<Instruction> users = new ArrayList<>();
+		for(Block b : blocks) {
+			for(PhiNode phiNode : b.phiManager().computedPhiNodes()) {
+				if(phiNode.edges().containsValue(t)) {
+					users.add(phiNode);
+				}
+			}
+			for(Compileable c : b.instructions) {
+				if(c instanceof Instruction && ((Instruction) c).operands().contains(t)) {
+					users.add((Instruction) c);
+				}
+			}
+		}
+		return users;
+	}
+
+	private static int indexOf(Block b, Instruction instruction) {
+		// by identity, some instructions override equals
+		for(int i = 0; i < b.instructions.size(); i++) {
+			if(b.instructions.get(i) == instruction) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the operator with swapped operands
+	 */
+	private static BinaryOperation.Operator mirror(BinaryOperation.Operator operator) {
+		switch(operator) {
+			case lt: return BinaryOperation.Operator.gt;
+			case lte: return BinaryOperation.Operator.gte;
+			case gt: return BinaryOperation.Operator.lt;
+			case gte: return BinaryOperation.Operator.lte;
+			default: return null;
+		}
+	}
+
+	private static BinaryOperation.Operator negate(BinaryOperation.Operator operator) {
+		if(operator == null) {
+			return null;
+		}
+		switch(operator) {
+			case lt: return BinaryOperation.Operator.gte;
+			case lte: return BinaryOperation.Operator.gt;
+			case gt: return BinaryOperation.Operator.lte;
+			case gte: return BinaryOperation.Operator.lt;
+			default: return null;
+		}
+	}
+
+	private static boolean fitsInt(long value) {
+		return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE;
+	}
+
+	private Long intConstant(Temporary t) {
+		Instruction definition = definitions.get(t);
+		if(definition instanceof Const && ((Const<?>) definition).type == PrimitiveType.INT) {
+			return ((Integer) ((Const<?>) definition).value).longValue();
+		}
+		return null;
+	}
+}
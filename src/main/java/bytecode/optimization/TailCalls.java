@@ -0,0 +1,84 @@
+package bytecode.optimization;
+
+import bytecode.*;
+
+import java.util.*;
+
+/**
+ * Marks the calls whose result is returned right away as tail calls, so the vm can reuse the
+ * frame of the caller for the callee
+ *
+ * This runs once all functions are optimized and inlined, nothing may be placed between a
+ * marked call and its return afterwards. Calls of the function itself have been turned into
+ * loops by TailRecursionElimination before.
+ */
+public class TailCalls {
+
+	private final Function function;
+
+	public TailCalls(Function function) {
+		this.function = function;
+	}
+
+	/**
+	 * @return whether any call has been marked
+	 */
+	public boolean run() throws InvalidCompileOrderException {
+		boolean changed = false;
+		for(Block b : function.blocks()) {
+			for(int i = 0; i < b.instructions.size(); i++) {
+				Compileable c = b.instructions.get(i);
+				if(c instanceof Call && returnsDirectly(b, i + 1, ((Call) c).result())) {
+					((Call) c).markTailCall();
+					changed = true;
+				} else if(c instanceof VoidCall && returnsDirectly(b, i + 1, null)) {
+					((VoidCall) c).markTailCall();
+					changed = true;
+				}
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * @param from the position in the block after the call
+	 * @param value the result of the call, null for a void call
+	 * @return whether the function returns the value from the given position on without
+	 * doing anything else, following jumps into blocks without phi nodes
+	 */
+	static boolean returnsDirectly(Block b, int from, Temporary value) throws InvalidCompileOrderException {
+		Set<Block> seen = new HashSet<>();
+
+		while(seen.add(b)) {
+			Block next = null;
+			for(int i = from; i < b.instructions.size() && next == null; i++) {
+				Compileable c = b.instructions.get(i);
+				if(c instanceof Return) {
+					List<Temporary> returned = ((Return) c).operands();
+					return value == null ? returned.isEmpty() : returned.size() == 1 && returned.get(0) == value;
+				}
+				if(c instanceof Goto) {
+					next = ((Goto) c).label();
+				} else if(c instanceof Instruction) {
+					return false;
+				}
+			}
+
+			if(next == null) {
+				// falls through
+				if(b.children().size() != 1) {
+					return false;
+				}
+				next = b.children().get(0);
+			}
+			if(!next.phiManager().computedPhiNodes().isEmpty()) {
+				return false;
+			}
+
+			b = next;
+			from = 0;
+		}
+
+		return false;
+	}
+}
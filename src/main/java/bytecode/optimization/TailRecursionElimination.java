@@ -0,0 +1,119 @@
+package bytecode.optimization;
+
+import bytecode.*;
+
+import java.util.*;
+
+/**
+ * Turns calls of a function to itself whose result is returned right away into jumps back
+ * to its start
+ *
+ * The instructions of the initial block move into a new loop header, which merges the
+ * parameters passed in with the arguments of each such call through phi nodes. The
+ * initial block is left empty, so the entry of the function stays outside the loop.
+ */
+public class TailRecursionElimination {
+
+	private final Function function;
+
+	public TailRecursionElimination(Function function) {
+		this.function = function;
+	}
+
+	/**
+	 * @return whether the function has been changed
+	 */
+	public boolean run() throws InvalidCompileOrderException {
+		if(tailCalls().isEmpty()) {
+			return false;
+		}
+
+		Block initial = function.initialBlock();
+		Block header = new Block(function);
+		header.phiManager().computePhiNodes();
+		header.instructions.addAll(initial.instructions);
+		initial.instructions.clear();
+		initial.transferSuccessors(header);
+		initial.addSuccessor(header);
+		function.insertBlocks(1, Collections.singletonList(header));
+
+		// the parameters are the phi nodes from now on
+		List<Temporary> parameters = function.parameterTemporaries();
+		Map<Temporary, Temporary> substitute = new HashMap<>();
+		List<PhiNode> phiNodes = new ArrayList<>();
+		for(Temporary parameter : parameters) {
+			PhiNode phiNode = new PhiNode(header.createTemporary(), new HashMap<>());
+			phiNode.edges().put(initial, parameter);
+			substitute.put(parameter, phiNode.result());
+			phiNodes.add(phiNode);
+		}
+		for(Block b : function.blocks()) {
+			for(PhiNode phiNode : b.phiManager().computedPhiNodes()) {
+				phiNode.substituteTemporaries(substitute);
+			}
+			b.substituteTemporaries(substitute);
+		}
+
+		for(Map.Entry<Block, Integer> tailCall : tailCalls().entrySet()) {
+			Block b = tailCall.getKey();
+			List<Temporary> arguments = ((Instruction) b.instructions.get(tailCall.getValue())).operands();
+			for(int i = 0; i < phiNodes.size(); i++) {
+				phiNodes.get(i).edges().put(b, arguments.get(i));
+			}
+
+			b.instructions.subList(tailCall.getValue(), b.instructions.size()).clear();
+			b.instructions.add(new Goto(header));
+			for(Block child : new ArrayList<>(b.children())) {
+				b.removeSuccessor(child);
+			}
+			b.addSuccessor(header);
+		}
+
+		for(PhiNode phiNode : phiNodes) {
+			header.phiManager().addComputedPhiNode(phiNode);
+		}
+
+		removeUnreachable();
+		return true;
+	}
+
+	/**
+	 * @return the blocks ending in a tail call of the function itself, with the position of the call
+	 */
+	private Map<Block, Integer> tailCalls() throws InvalidCompileOrderException {
+		Map<Block, Integer> tailCalls = new LinkedHashMap<>();
+		for(Block b : function.blocks()) {
+			for(int i = 0; i < b.instructions.size(); i++) {
+				Compileable c = b.instructions.get(i);
+				if(c instanceof Call && ((Call) c).function() == function && TailCalls.returnsDirectly(b, i + 1, ((Call) c).result())) {
+					tailCalls.put(b, i);
+					break;
+				}
+				if(c instanceof VoidCall && ((VoidCall) c).function() == function && TailCalls.returnsDirectly(b, i + 1, null)) {
+					tailCalls.put(b, i);
+					break;
+				}
+			}
+		}
+		return tailCalls;
+	}
+
+	/**
+	 * Removes the blocks only reachable through the returns that have been replaced
+	 */
+	private void removeUnreachable() throws InvalidCompileOrderException {
+		Block initial = function.initialBlock();
+		while(true) {
+			Set<Block> unreachable = new HashSet<>();
+			for(Block b : function.blocks()) {
+				if(b != initial && b.parents().isEmpty()) {
+					unreachable.add(b);
+				}
+			}
+			if(unreachable.isEmpty()) {
+				return;
+			}
+			function.removeBlocks(unreachable);
+		}
+	}
+}
@@ -198,16 +198,23 @@ public class ObjectType extends Type {
 			throw new InvalidCompileOrderException("Cannot fetch initializers unless fields have been sorted first");
 		}
 
-		return new HashMap<>(fields.stream().collect(Collectors.toMap(
+		// keep declaration order so initializers run in the order they were written
+		return fields.stream().collect(Collectors.toMap(
 				java.util.function.Function.identity(),
-				f -> f.initializer
-		)));
+				f -> f.initializer,
+				(a, b) -> a,
+				LinkedHashMap::new
+		));
 	}
 
 
 	public short getFieldIndex(String name) throws InvalidCompileOrderException {
+		return getField(name).index;
+	}
+
+	public Field getField(String name) throws InvalidCompileOrderException {
 		// iterate reverse because if a subclass has a field the same name as a field
-		// in the superclass we need to return the index of the field in the subclass
+		// in the superclass we need to return the field of the subclass
 
 		List<Field> fields = getFields();
 		ListIterator<Field> fieldListIterator = fields.listIterator(fields.size());
@@ -215,7 +222,7 @@ public class ObjectType extends Type {
 		while(fieldListIterator.hasPrevious()) {
 			Field f = fieldListIterator.previous();
 			if(name.equals(f.name)) {
-				return f.index;
+				return f;
 			}
 		}
 
@@ -0,0 +1,230 @@
+package stream;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records what is written to it in little endian, so that it can be replayed to another
+ * output later, annotations included
+ *
+ * The annotations are kept together with the number of bytes written before them, which
+ * places them the same way when replayed.
+ */
+public class RecordingOutput implements AnnotatedDataOutput {
+
+	private enum Kind { ANNOTATE, PREFIX, SECTION, HR }
+
+	private static class Mark {
+		final Kind kind;
+		final int offset;
+		final String text;
+
+		Mark(Kind kind, int offset, String text) {
+			this.kind = kind;
+			this.offset = offset;
+			this.text = text;
+		}
+	}
+
+	private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+	private final LittleEndianOutputStream out = new LittleEndianOutputStream(bytes);
+	private final List<Mark> marks = new ArrayList<>();
+
+	/**
+	 * Writes everything recorded to the given output, as if it had been written there directly
+	 */
+	public void replay(AnnotatedDataOutput dos) throws IOException {
+		byte[] recorded = bytes.toByteArray();
+		int written = 0;
+		for(Mark mark : marks) {
+			dos.write(recorded, written, mark.offset - written);
+			written = mark.offset;
+
+			switch(mark.kind) {
+				case ANNOTATE:
+					dos.annotate(mark.text);
+					break;
+				case PREFIX:
+					dos.prefix(mark.text);
+					break;
+				case SECTION:
+					dos.section(mark.text);
+					break;
+				case HR:
+					dos.hr();
+					break;
+			}
+		}
+		dos.write(recorded, written, recorded.length - written);
+	}
+
+	/**
+	 * Stores the recording, to be restored by read()
+	 */
+	public void save(DataOutput dos) throws IOException {
+		dos.writeInt(bytes.size());
+		dos.write(bytes.toByteArray());
+
+		dos.writeInt(marks.size());
+		for(Mark mark : marks) {
+			dos.writeByte(mark.kind.ordinal());
+			dos.writeInt(mark.offset);
+			dos.writeUTF(mark.text);
+		}
+	}
+
+	public static RecordingOutput read(DataInput dis) throws IOException {
+		RecordingOutput recording = new RecordingOutput();
+
+		int length = dis.readInt();
+		if(length < 0) {
+			throw new IOException("Malformed recording");
+		}
+
+		byte[] recorded = new byte[length];
+		dis.readFully(recorded);
+		recording.bytes.write(recorded);
+
+		int count = dis.readInt();
+		for(int i = 0; i < count; i++) {
+			int kind = dis.readUnsignedByte();
+			int offset = dis.readInt();
+			String text = dis.readUTF();
+			if(kind >= Kind.values().length || offset < 0 || offset > recorded.length) {
+				throw new IOException("Malformed recording");
+			}
+			recording.marks.add(new Mark(Kind.values()[kind], offset, text));
+		}
+
+		return recording;
+	}
+
+	private void mark(Kind kind, String text) {
+		// printed the same either way
+		marks.add(new Mark(kind, bytes.size(), String.valueOf(text)));
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+	}
+
+	@Override
+	public void write(byte[] b) throws IOException {
+		out.write(b);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+	}
+
+	@Override
+	public void writeBoolean(boolean v) throws IOException {
+		out.writeBoolean(v);
+	}
+
+	@Override
+	public void writeByte(int v) throws IOException {
+		out.writeByte(v);
+	}
+
+	@Override
+	public void writeShort(int v) throws IOException {
+		out.writeShort(v);
+	}
+
+	@Override
+	public void writeChar(int v) throws IOException {
+		out.writeChar(v);
+	}
+
+	@Override
+	public void writeInt(int v) throws IOException {
+		out.writeInt(v);
+	}
+
+	@Override
+	public void writeLong(long v) throws IOException {
+		out.writeLong(v);
+	}
+
+	@Override
+	public void writeFloat(float v) throws IOException {
+		out.writeFloat(v);
+	}
+
+	@Override
+	public void writeDouble(double v) throws IOException {
+		out.writeDouble(v);
+	}
+
+	@Override
+	public void writeBytes(String s) throws IOException {
+		out.writeBytes(s);
+	}
+
+	@Override
+	public void writeChars(String s) throws IOException {
+		out.writeChars(s);
+	}
+
+	@Override
+	public void writeUTF(String s) throws IOException {
+		out.writeUTF(s);
+	}
+
+	public void writeUTFPlain(String s) throws IOException {
+		out.writeUTFPlain(s);
+	}
+
+	@Override
+	public void writeByte(int b, String s) throws IOException {
+		writeByte(b);
+		annotate(s);
+	}
+
+	@Override
+	public void writeShort(int v, String s) throws IOException {
+		writeShort(v);
+		annotate(s);
+	}
+
+	@Override
+	public void writeUTF(String v, String s) throws IOException {
+		writeUTF(v);
+		annotate(s);
+	}
+
+	@Override
+	public void writeUTFPlain(String v, String s) throws IOException {
+		writeUTFPlain(v);
+		annotate(s);
+	}
+
+	@Override
+	public void annotate(String s) {
+		mark(Kind.ANNOTATE, s);
+	}
+
+	@Override
+	public void prefix(String s) {
+		mark(Kind.PREFIX, s);
+	}
+
+	@Override
+	public void section(String s) {
+		mark(Kind.SECTION, s);
+	}
+
+	@Override
+	public void hr() {
+		mark(Kind.HR, "");
+	}
+
+	@Override
+	public String toAnnotatedBytecode() {
+		throw new UnsupportedOperationException("Replay the recording to an output first");
+	}
+}
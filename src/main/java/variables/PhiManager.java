@@ -41,9 +41,26 @@ public class PhiManager {
 				computedPhiNodes.add(compute);
 			}
 		}
+
+		// phi nodes created directly (e.g. by lazy binary operations) are managed here as well
+		for(Iterator<Compileable> it = block.instructions.iterator(); it.hasNext(); ) {
+			Compileable c = it.next();
+			if(c instanceof PhiNode) {
+				computedPhiNodes.add((PhiNode) c);
+				it.remove();
+			}
+		}
+
 		hasComputed = true;
 	}
 
+	/**
+	 * Adds a phi node to the computed ones, e.g. for blocks created after phi nodes have been computed
+	 */
+	public void addComputedPhiNode(PhiNode phiNode) {
+		computedPhiNodes.add(phiNode);
+	}
+
 	public int numberPhiNodes(int index) throws InvalidCompileOrderException {
 		if(!hasComputed) {
 			throw new InvalidCompileOrderException("Cannot number temporaries before phi nodes have been computed");
@@ -78,7 +95,7 @@ public class PhiManager {
 		return phiNodes.get(variableName).result();
 	}
 
-	public Iterable<PhiNode> computedPhiNodes() throws InvalidCompileOrderException {
+	public List<PhiNode> computedPhiNodes() throws InvalidCompileOrderException {
 		if(!hasComputed) {
 			throw new InvalidCompileOrderException("Must compute phi nodes before iterating over them");
 		}
@@ -1,7 +1,9 @@
 package visitors;
 
 import bytecode.*;
+import com.github.javaparser.ast.expr.BinaryExpr;
 import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.UnaryExpr;
 import com.github.javaparser.ast.stmt.*;
 import com.github.javaparser.ast.visitor.GenericVisitorAdapter;
 
@@ -29,12 +31,12 @@ public class BlockVisitor extends GenericVisitorAdapter<Block,Block> {
 	// todo fix block parents
 	@Override
 	public Block visit(IfStmt n, Block context) {
-		ExpressionResult condition = n.getCondition().accept(new ExpressionVisitor(), context);
-		context = condition.block;
-
-		Block elze = new Block(context), elzeOut = null, thenOut = null;
+		Block then = new Block(context.function), elzeOut = null, thenOut = null;
 		ArrayList<Block> parentsForPostif = new ArrayList<>();
 
+		context.instructions.add(new Comment("if:"));
+		Block elze = branch(n.getCondition(), true, then, context);
+
 		if(n.getElseStmt().isPresent()) {
 
 			elzeOut = n.getElseStmt().get().accept(new ExpressionVisitor(), elze).block;
@@ -44,17 +46,13 @@ public class BlockVisitor extends GenericVisitorAdapter<Block,Block> {
 
 		parentsForPostif.add(elzeOut);
 
-		Block then = new Block(context);
 		thenOut = n.getThenStmt().accept(new ExpressionVisitor(), then).block;
 		parentsForPostif.add(thenOut);
 
 		Block postif = new Block(context.function, parentsForPostif);
-		If i = new If(condition.temporary, context, then, elze, postif);
 
 		elzeOut.instructions.add(new Goto(postif));
 
-		context.instructions.addAll(i.flatten());
-
 		return postif;
 	}
 
@@ -67,24 +65,12 @@ public class BlockVisitor extends GenericVisitorAdapter<Block,Block> {
 		Block loopHeader = jumpTarget;
 		loopHeader.instructions.add(new Comment("begin of while-loopHeader"));
 
-		// parse condition
-		ExpressionResult conditionResult = n.getCondition().accept(new ExpressionVisitor(), loopHeader);
-		loopHeader = conditionResult.block;
-
-		Temporary condition = conditionResult.temporary;
-
-		// negate result
-		Temporary notCondition = loopHeader.createTemporary();
-		loopHeader.instructions.add(new UnaryOperation(notCondition, UnaryOperation.Operator.not, condition));
-
-		// if condition == false (that is, the negation is true) jump to the loop end (see later)
-		ConditionalGoto conditionalGoto = new ConditionalGoto(notCondition, loopHeader, null);
-		loopHeader.instructions.add(conditionalGoto);
-
-		loopHeader.instructions.add(new Comment("end of while-loopHeader"));
+		// the post-loop-block, its parents are the blocks of the condition jumping here
+		Block afterLoopLabel = new Block(context.function);
 
-		// new context is the loop body (new block)
-		Block loopBody = conditionalGoto.elze;
+		// if the condition is false jump to the loop end, otherwise continue with the loop body
+		Block loopBody = branch(n.getCondition(), false, afterLoopLabel, loopHeader);
+		loopBody.instructions.add(new Comment("end of while-loopHeader"));
 
 		loopBody = n.getBody().accept(new ExpressionVisitor(), loopBody).block;
 
@@ -92,10 +78,6 @@ public class BlockVisitor extends GenericVisitorAdapter<Block,Block> {
 		jumpTarget.createCycle(loopBody);
 		loopBody.instructions.add(new Goto(jumpTarget));
 
-		// now this is the post-loop-block. It's only parent is the loopHeader
-		Block afterLoopLabel = new Block(loopHeader);
-		// and the conditional goto in the loop header will jump here
-		conditionalGoto.setThen(afterLoopLabel);
 		afterLoopLabel.instructions.add(new Comment("end of while-loop"));
 
 		return afterLoopLabel;
@@ -113,19 +95,10 @@ public class BlockVisitor extends GenericVisitorAdapter<Block,Block> {
 
 
 		Block context = loopHeader;
-		ConditionalGoto conditionalGoto = null;
+		Block afterLoopLabel = null;
 		if(n.getCompare().isPresent()) {
-			ExpressionResult conditionResult = n.getCompare().get().accept(new ExpressionVisitor(), loopHeader);
-			Temporary condition = conditionResult.temporary;
-
-			Block conditionResultBlock = conditionResult.block;
-
-			Temporary notCondition = conditionResultBlock.createTemporary();
-			conditionResultBlock.instructions.add(new UnaryOperation(notCondition, UnaryOperation.Operator.not, condition));
-
-			conditionalGoto = new ConditionalGoto(notCondition, conditionResultBlock, null);
-			loopHeader.instructions.add(conditionalGoto);
-			context = conditionalGoto.elze;
+			afterLoopLabel = new Block(arg.function);
+			context = branch(n.getCompare().get(), false, afterLoopLabel, loopHeader);
 		}
 		context.instructions.add(new Comment("end of for-loopHeader"));
 
@@ -138,9 +111,8 @@ public class BlockVisitor extends GenericVisitorAdapter<Block,Block> {
 		loopHeader.createCycle(loopOut);
 		loopOut.instructions.add(new Goto(loopHeader));
 
-		Block afterLoopLabel = new Block(loopHeader);
-		if(conditionalGoto != null) {
-			conditionalGoto.setThen(afterLoopLabel);
+		if(afterLoopLabel == null) {
+			afterLoopLabel = new Block(loopHeader);
 		}
 		afterLoopLabel.instructions.add(new Comment("end of for-loop"));
 
@@ -149,4 +121,66 @@ public class BlockVisitor extends GenericVisitorAdapter<Block,Block> {
 //		arg.instructions.add(afterLoop);
 		return afterLoopLabel;
 	}
+
+	/**
+	 * Evaluates the condition and jumps to the target if it has the given value. The operands
+	 * of && and || jump on their own, so their values are never combined into a boolean.
+	 *
+	 * The target has to be created without parents, it gets one for each jump to it. As the
+	 * last one is added after the block continuing behind the jump, the target is laid out
+	 * after that block.
+	 *
+	 * @return the block execution continues with if the condition does not have the value
+	 */
+	private Block branch(Expression condition, boolean jumpIf, Block target, Block context) {
+		while(condition.isEnclosedExpr()) {
+			condition = condition.asEnclosedExpr().getInner();
+		}
+
+		if(condition.isUnaryExpr() && condition.asUnaryExpr().getOperator() == UnaryExpr.Operator.LOGICAL_COMPLEMENT) {
+			return branch(condition.asUnaryExpr().getExpression(), !jumpIf, target, context);
+		}
+
+		if(condition.isBinaryExpr() && (condition.asBinaryExpr().getOperator() == BinaryExpr.Operator.AND ||
+		                                condition.asBinaryExpr().getOperator() == BinaryExpr.Operator.OR)) {
+			BinaryExpr binaryExpr = condition.asBinaryExpr();
+			boolean and = binaryExpr.getOperator() == BinaryExpr.Operator.AND;
+
+			// a && b is false as soon as one of them is, a || b true as soon as one of them is
+			if(and != jumpIf) {
+				Block right = branch(binaryExpr.getLeft(), jumpIf, target, context);
+				return branch(binaryExpr.getRight(), jumpIf, target, right);
+			}
+
+			// otherwise the left operand can only decide not to jump
+			Block decided = new Block(context.function);
+			Block right = branch(binaryExpr.getLeft(), !jumpIf, decided, context);
+			addEdge(branch(binaryExpr.getRight(), jumpIf, target, right), decided);
+			return decided;
+		}
+
+		ExpressionResult conditionResult = condition.accept(new ExpressionVisitor(), context);
+		context = conditionResult.block;
+
+		Temporary value = conditionResult.temporary;
+		if(!jumpIf) {
+			value = context.createTemporary();
+			context.instructions.add(new UnaryOperation(value, UnaryOperation.Operator.not, conditionResult.temporary));
+		}
+
+		ConditionalGoto conditionalGoto = new ConditionalGoto(value, context, target);
+		context.instructions.add(conditionalGoto);
+		addEdge(context, target);
+
+		return conditionalGoto.elze;
+	}
+
+	/**
+	 * Adds the edge to a block that has been created without parents
+	 */
+	private static void addEdge(Block from, Block to) {
+		from.children().add(to);
+		to.parents().add(from);
+		to.localManager().addAllAlive(from.localManager().getAllAlive());
+	}
 }
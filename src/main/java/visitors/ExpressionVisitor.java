@@ -10,8 +10,6 @@ import com.github.javaparser.resolution.UnsolvedSymbolException;
 import com.github.javaparser.resolution.types.ResolvedPrimitiveType;
 import com.github.javaparser.resolution.types.ResolvedType;
 import com.github.javaparser.resolution.types.ResolvedVoidType;
-import com.github.javaparser.symbolsolver.javaparsermodel.JavaParserFacade;
-import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
 import exceptions.*;
 
 import java.util.ArrayList;
@@ -64,12 +62,12 @@ public class ExpressionVisitor extends GenericVisitorAdapter<ExpressionResult, B
 		boolean isStaticAssignment = false;
 
 		//-- first check out the LHS
-		if(target instanceof NameExpr && !target.asNameExpr().resolve().isField()) {
+		if(target instanceof NameExpr && !resolution(context).declaration(target.asNameExpr()).isField()) {
 			// ignore, nothing to do for the LHS
 			field = target.asNameExpr().getNameAsString();
-		} else if(target instanceof NameExpr && target.asNameExpr().resolve().isField()) {
+		} else if(target instanceof NameExpr && resolution(context).declaration(target.asNameExpr()).isField()) {
 			// of format x = y; where x is a field of this
-			String classNameOfSurroundingClass = JavaParserFacade.get(new ReflectionTypeSolver()).getTypeOfThisIn(target).asReferenceType().getId();
+			String classNameOfSurroundingClass = resolution(context).typeOfThisIn(target).asReferenceType().getId();
 			objectType = context.function.file.typeSystem().findType(classNameOfSurroundingClass);
 			field = target.asNameExpr().getNameAsString();
 
@@ -85,7 +83,7 @@ public class ExpressionVisitor extends GenericVisitorAdapter<ExpressionResult, B
 			context = ptrResult.block;
 			ptrTemporary = ptrResult.temporary;
 
-			ResolvedType resolvedType = target.asFieldAccessExpr().getScope().calculateResolvedType();
+			ResolvedType resolvedType = resolution(context).type(target.asFieldAccessExpr().getScope());
 			String className = resolvedType.asReferenceType().getId();
 
 			field = target.asFieldAccessExpr().getNameAsString();
@@ -119,7 +117,7 @@ public class ExpressionVisitor extends GenericVisitorAdapter<ExpressionResult, B
 		} else {
 			ExpressionResult loadedLHS;
 			// load/calculate LHS
-			if(target instanceof NameExpr && !target.asNameExpr().resolve().isField()) {
+			if(target instanceof NameExpr && !resolution(context).declaration(target.asNameExpr()).isField()) {
 				loadedLHS = target.asNameExpr().accept(this, context);
 			} else if(target instanceof ArrayAccessExpr) {
 				LoadIndex load = new LoadIndex(context.createTemporary(), idxTemporary, ptrTemporary);
@@ -157,7 +155,7 @@ public class ExpressionVisitor extends GenericVisitorAdapter<ExpressionResult, B
 		}
 
 		//-- and at last assign
-		if(target instanceof NameExpr && !target.asNameExpr().resolve().isField()) {
+		if(target instanceof NameExpr && !resolution(context).declaration(target.asNameExpr()).isField()) {
 			// simple variables, that are not member variables
 
 			context.localManager().writeByName(((NameExpr) target).getNameAsString(), combinedRHS.temporary);
@@ -273,9 +271,9 @@ public class ExpressionVisitor extends GenericVisitorAdapter<ExpressionResult, B
 
 	public ExpressionResult visit(NameExpr n, Block f) {
 		// todo check if the name is actually a field (of `this`)
-		if(n.resolve().isField()) {
+		if(resolution(f).declaration(n).isField()) {
 
-			String nameOfSurroundingClass = JavaParserFacade.get(new ReflectionTypeSolver()).getTypeOfThisIn(n).asReferenceType().getId();
+			String nameOfSurroundingClass = resolution(f).typeOfThisIn(n).asReferenceType().getId();
 			ObjectType objectType = f.function.file.typeSystem().findType(nameOfSurroundingClass);
 
 			Instruction load;
@@ -297,7 +295,7 @@ public class ExpressionVisitor extends GenericVisitorAdapter<ExpressionResult, B
 
 	@Override
 	public ExpressionResult visit(FieldAccessExpr n, Block context) {
-		ResolvedType resolvedType = n.getScope().calculateResolvedType();
+		ResolvedType resolvedType = resolution(context).type(n.getScope());
 
 		if(resolvedType.isArray() && n.getNameAsString().equals("length")) {
 			ExpressionResult scopeResult = n.getScope().accept(this, context);
@@ -414,7 +412,7 @@ public class ExpressionVisitor extends GenericVisitorAdapter<ExpressionResult, B
 		String functionName = n.getNameAsString();
 		List<Type> argumentTypes = new ArrayList<>();
 		for(Expression expression : n.getArguments()) {
-			argumentTypes.add(context.function.file.typeSystem().getVariableType(expression.calculateResolvedType()));
+			argumentTypes.add(context.function.file.typeSystem().getVariableType(resolution(context).type(expression)));
 		}
 
 		Temporary thisArgument = null;
@@ -422,16 +420,16 @@ public class ExpressionVisitor extends GenericVisitorAdapter<ExpressionResult, B
 		String classNameOfCallee;
 		if(n.getScope().isPresent()) {
 			try {
-				classNameOfCallee = n.getScope().get().calculateResolvedType().asReferenceType().getQualifiedName();
+				classNameOfCallee = resolution(context).type(n.getScope().get()).asReferenceType().getQualifiedName();
 			} catch(UnsolvedSymbolException e) {
 				if(n.getScope().get().isNameExpr() && n.getScope().get().asNameExpr().getNameAsString().equals("VirtualMachine")) {
-					classNameOfCallee = JavaParserFacade.get(new ReflectionTypeSolver()).getTypeOfThisIn(n).asReferenceType().getQualifiedName();
+					classNameOfCallee = resolution(context).typeOfThisIn(n).asReferenceType().getQualifiedName();
 				} else {
 					throw e;
 				}
 			}
 		} else {
-			classNameOfCallee = JavaParserFacade.get(new ReflectionTypeSolver()).getTypeOfThisIn(n).asReferenceType().getQualifiedName();
+			classNameOfCallee = resolution(context).typeOfThisIn(n).asReferenceType().getQualifiedName();
 		}
 
 		ObjectType objectType = context.function.file.typeSystem().findType(classNameOfCallee);
@@ -482,7 +480,7 @@ public class ExpressionVisitor extends GenericVisitorAdapter<ExpressionResult, B
 		com.github.javaparser.resolution.types.ResolvedType type = null;
 
 		try {
-			type = JavaParserFacade.get(new ReflectionTypeSolver()).getType(n);
+			type = resolution(context).type(n);
 		} catch(Exception e) {
 			/* ignore */
 		}
@@ -528,7 +526,7 @@ public class ExpressionVisitor extends GenericVisitorAdapter<ExpressionResult, B
 
 		for(Expression e : n.getArguments()) {
 			ExpressionResult r = e.accept(this, context);
-			argumentTypes.add(context.function.file.typeSystem().getVariableType(e.calculateResolvedType()));
+			argumentTypes.add(context.function.file.typeSystem().getVariableType(resolution(context).type(e)));
 			arguments.add(r.temporary);
 			context = r.block;
 		}
@@ -619,7 +617,7 @@ public class ExpressionVisitor extends GenericVisitorAdapter<ExpressionResult, B
 			throw new RuntimeException("Cannot deduce type from empty initializer");
 		}
 
-		Type elementType = Type.getVariableType(n.getValues().get(0).calculateResolvedType(), context.function.file.typeSystem());
+		Type elementType = Type.getVariableType(resolution(context).type(n.getValues().get(0)), context.function.file.typeSystem());
 
 		Temporary sizeTemporary = context.createTemporary();
 		context.instructions.add(new Const(sizeTemporary, PrimitiveType.INT, elements.size()));
@@ -695,7 +693,7 @@ public class ExpressionVisitor extends GenericVisitorAdapter<ExpressionResult, B
 
 		for(Expression e : n.getArguments()) {
 			ExpressionResult r = e.accept(this, context);
-			argumentTypes.add(context.function.file.typeSystem().getVariableType(e.calculateResolvedType()));
+			argumentTypes.add(context.function.file.typeSystem().getVariableType(resolution(context).type(e)));
 			arguments.add(r.temporary);
 			context = r.block;
 		}
@@ -722,4 +720,8 @@ public class ExpressionVisitor extends GenericVisitorAdapter<ExpressionResult, B
 
 		return new ExpressionResult(null, context);
 	}
+
+	private static Resolution resolution(Block context) {
+		return context.function.resolution();
+	}
 }
@@ -0,0 +1,74 @@
+package visitors;
+
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.resolution.UnsolvedSymbolException;
+import com.github.javaparser.resolution.declarations.ResolvedValueDeclaration;
+import com.github.javaparser.resolution.types.ResolvedType;
+import com.github.javaparser.symbolsolver.javaparsermodel.JavaParserFacade;
+import com.github.javaparser.symbolsolver.model.resolution.SymbolReference;
+import com.github.javaparser.symbolsolver.model.resolution.TypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
+
+/**
+ * Resolves names and types of the syntax tree while functions are compiled
+ *
+ * The symbol solver caches what it resolves in a JavaParserFacade, and keeps one facade per
+ * type solver in an unsynchronized static map it reads from all over. Resolutions are
+ * therefore only created, used and released while holding the lock of this class, which
+ * Function.build() takes while it walks the syntax tree. The optimizations run without it.
+ */
+public class Resolution {
+
+	private final TypeSolver typeSolver = new ReflectionTypeSolver();
+	private JavaParserFacade facade;
+
+	public Resolution() {
+		synchronized(Resolution.class) {
+			this.facade = JavaParserFacade.get(typeSolver);
+		}
+	}
+
+	/**
+	 * Drops the facades of all resolutions like releaseAll(), and continues with a new one.
+	 * A resolution kept across compiles would otherwise hold on to every syntax tree it saw.
+	 */
+	public void release() {
+		synchronized(Resolution.class) {
+			JavaParserFacade.clearInstances();
+			facade = JavaParserFacade.get(typeSolver);
+		}
+	}
+
+	/**
+	 * Drops the facades of all resolutions, and with them their caches of the syntax trees
+	 */
+	public static synchronized void releaseAll() {
+		JavaParserFacade.clearInstances();
+	}
+
+	/**
+	 * @return the declaration the name refers to, like NameExpr.resolve()
+	 */
+	public ResolvedValueDeclaration declaration(NameExpr n) {
+		SymbolReference<? extends ResolvedValueDeclaration> reference = facade.solve(n);
+		if(!reference.isSolved()) {
+			throw new UnsolvedSymbolException("Unable to find the value declaration corresponding to " + n);
+		}
+		return reference.getCorrespondingDeclaration();
+	}
+
+	/**
+	 * @return the type of the expression, like Expression.calculateResolvedType()
+	 */
+	public ResolvedType type(Node n) {
+		return facade.getType(n);
+	}
+
+	/**
+	 * @return the type `this` has at the given node
+	 */
+	public ResolvedType typeOfThisIn(Node n) {
+		return facade.getTypeOfThisIn(n);
+	}
+}
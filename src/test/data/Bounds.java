@@ -0,0 +1,46 @@
+class Bounds {
+	static int ascending(int[] a) {
+		int s = 0;
+		for(int i = 0; i < a.length; i++) {
+			s = s + a[i];
+		}
+		return s;
+	}
+
+	static int inclusive(int[] a) {
+		int s = 0;
+		for(int i = 0; i <= a.length; i++) {
+			s = s + a[i];
+		}
+		return s;
+	}
+
+	static int descending(int[] a) {
+		int s = 0;
+		for(int i = a.length - 1; i >= 0; i--) {
+			s = s + a[i];
+		}
+		return s;
+	}
+
+	static void offset(int n) {
+		int[] a = new int[n];
+		for(int i = 0; i + 1 < n; i++) {
+			a[i + 1] = a[i];
+		}
+	}
+
+	static void otherSize(int n, int m) {
+		int[] a = new int[n];
+		for(int i = 0; i < m; i++) {
+			a[i] = i;
+		}
+	}
+
+	public static void main(String[] args) {
+		int[] a = new int[4];
+		offset(4);
+		otherSize(4, 3);
+		int r = ascending(a) + descending(a);
+	}
+}
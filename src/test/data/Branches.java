@@ -0,0 +1,33 @@
+class Branches {
+	static int folded(int a) {
+		boolean debug = false;
+		if(debug) {
+			a = a * 3;
+		}
+		return a;
+	}
+
+	static int loop(int a) {
+		boolean debug = false;
+		if(debug) {
+			while(a < 100) {
+				a = a * 3;
+			}
+		}
+		return a;
+	}
+
+	static int taken(int a) {
+		boolean always = true;
+		if(always) {
+			a = a + 1;
+		} else {
+			a = a * 3;
+		}
+		return a;
+	}
+
+	public static void main(String[] args) {
+		int r = folded(1) + loop(2) + taken(3);
+	}
+}
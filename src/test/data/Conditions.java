@@ -0,0 +1,33 @@
+class Conditions {
+	static int and(int a, int b) {
+		if(a > 0 && b > 0) {
+			return 1;
+		}
+		return 0;
+	}
+
+	static int or(int a, int b) {
+		int s = 0;
+		while(a > s || b > s) {
+			s = s + 1;
+		}
+		return s;
+	}
+
+	static int negated(int a, int b) {
+		if(!(a > 0 || b > 0)) {
+			return 1;
+		}
+		return 0;
+	}
+
+	static boolean value(int a, int b) {
+		boolean c = a > 0 && b > 0;
+		return c;
+	}
+
+	public static void main(String[] args) {
+		int r = and(1, 2) + or(3, 4) + negated(5, 6);
+		boolean v = value(7, 8);
+	}
+}
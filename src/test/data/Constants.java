@@ -0,0 +1,36 @@
+class Constants {
+	static int folded(int x) {
+		int a = 3;
+		int b = a * 4;
+		if(b > 10) {
+			x = x + 1;
+		} else {
+			x = x - 1;
+		}
+		return x;
+	}
+
+	static int deadEdge(int n) {
+		int c = 1;
+		int i = 0;
+		while(i < n) {
+			if(c != 1) {
+				c = 2;
+			}
+			i = i + 1;
+		}
+		return c;
+	}
+
+	static int varying(int x) {
+		int c = 1;
+		if(x > 0) {
+			c = 2;
+		}
+		return c;
+	}
+
+	public static void main(String[] args) {
+		int r = folded(1) + deadEdge(3) + varying(2);
+	}
+}
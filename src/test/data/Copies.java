@@ -0,0 +1,58 @@
+class Copies {
+	static int recomputed(int n) {
+		int x = n * 2;
+		for(int i = 0; i < n; i++) {
+			x = n * 2;
+		}
+		return x;
+	}
+
+	static int equal(int n) {
+		int x = 0;
+		int y = 0;
+		for(int i = 0; i < n; i++) {
+			int c = i * 2;
+			x = c;
+			y = c;
+		}
+		return x - y;
+	}
+
+	static int varying(int n) {
+		int x = 0;
+		for(int i = 0; i < n; i++) {
+			x = x + i;
+		}
+		return x;
+	}
+
+	static int id(int v) {
+		return v;
+	}
+
+	// once id is inlined, the phi node of y takes the phi node of x from the loop
+	static int lost(int n) {
+		int x = 0;
+		int y = 0;
+		for(int i = 0; i < n; i++) {
+			y = id(x);
+			x = x + 1;
+		}
+		return y;
+	}
+
+	static int swap(int n) {
+		int a = 1;
+		int b = 2;
+		for(int i = 0; i < n; i++) {
+			int t = id(a);
+			a = id(b);
+			b = id(t);
+		}
+		return a * 10 + b;
+	}
+
+	public static void main(String[] args) {
+		int r = recomputed(2) + equal(3) + varying(4) + lost(5) + swap(1);
+	}
+}
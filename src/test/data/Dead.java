@@ -0,0 +1,31 @@
+class Dead {
+	static int g;
+
+	static int unused(int a, int b) {
+		int x = a * b;
+		int y = a + b;
+		return y;
+	}
+
+	static int trapping(int a, int b) {
+		int x = a / b;
+		return a;
+	}
+
+	static void stored(int a) {
+		int x = a - 1;
+		g = x;
+	}
+
+	static int deadPhi(int a, int c) {
+		int x = 0;
+		if(c > 0) {
+			x = a * 2;
+		}
+		return a;
+	}
+
+	public static void main(String[] args) {
+		stored(unused(1, 2) + trapping(3, 4) + deadPhi(5, 6));
+	}
+}
@@ -0,0 +1,36 @@
+class Point {
+	int x;
+	int y;
+
+	Point(int x, int y) {
+		this.x = x;
+		this.y = y;
+	}
+}
+
+class Escape {
+	static Point kept;
+
+	static int local(int a) {
+		Point p = new Point(a, 2);
+		return p.x + p.y;
+	}
+
+	static int branches(int a, int b) {
+		Point p = new Point(a, 2);
+		if(b > 0) {
+			p.x = b;
+		}
+		return p.x * p.y;
+	}
+
+	static int escapes(int a) {
+		Point p = new Point(a, 1);
+		kept = p;
+		return p.x;
+	}
+
+	public static void main(String[] args) {
+		int r = local(1) + branches(2, 3) + escapes(4);
+	}
+}
@@ -0,0 +1,46 @@
+class Fusion {
+	static int less(int a, int b) {
+		if(a < b) {
+			return a;
+		}
+		return b;
+	}
+
+	static int loop(int n) {
+		int s = 0;
+		while(s < n) {
+			s = s + 2;
+		}
+		return s;
+	}
+
+	static double halves(double n) {
+		double s = 0.0;
+		while(s < n) {
+			s = s + 0.5;
+		}
+		return s;
+	}
+
+	static int notEqual(int a, int b) {
+		int s = 0;
+		while(a != s) {
+			s = s + b;
+		}
+		return s;
+	}
+
+	static boolean reused(int a, int b) {
+		boolean c = a < b;
+		if(c) {
+			a = b;
+		}
+		return c;
+	}
+
+	public static void main(String[] args) {
+		int r = less(1, 2) + loop(3) + notEqual(4, 1);
+		double h = halves(2.0);
+		boolean c = reused(5, 6);
+	}
+}
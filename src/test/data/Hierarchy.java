@@ -0,0 +1,49 @@
+class Shape {
+	int area() {
+		return 0;
+	}
+}
+
+class Square extends Shape {
+	int side;
+
+	int area() {
+		return side * side;
+	}
+}
+
+class Hierarchy {
+	int v;
+
+	int value() {
+		return v;
+	}
+
+	static int onParameter(Hierarchy h) {
+		return h.value();
+	}
+
+	static int afterLoad(Hierarchy h) {
+		int x = h.v;
+		return h.value() + x;
+	}
+
+	static int onAllocated() {
+		Hierarchy h = new Hierarchy();
+		return h.value();
+	}
+
+	int onThis() {
+		return value();
+	}
+
+	static int polymorphic() {
+		Shape s = new Square();
+		return s.area();
+	}
+
+	public static void main(String[] args) {
+		Hierarchy h = new Hierarchy();
+		int r = onParameter(h) + afterLoad(h) + onAllocated() + h.onThis() + polymorphic();
+	}
+}
@@ -0,0 +1,44 @@
+class Inline {
+	int f;
+
+	Inline() {
+		f = 2;
+	}
+
+	static int square(int x) {
+		return x * x;
+	}
+
+	final int get() {
+		return f;
+	}
+
+	static int direct(int a) {
+		return square(a) + 1;
+	}
+
+	static int onParameter(Inline o) {
+		return o.get();
+	}
+
+	static int onAllocated() {
+		Inline o = new Inline();
+		return o.get();
+	}
+
+	int onThis() {
+		return get() + 1;
+	}
+
+	static int recursive(int n) {
+		if(n > 0) {
+			return recursive(n - 1);
+		}
+		return 0;
+	}
+
+	public static void main(String[] args) {
+		Inline o = new Inline();
+		int r = direct(2) + onParameter(o) + onAllocated() + o.onThis() + recursive(3);
+	}
+}
@@ -0,0 +1,49 @@
+class Invariants {
+	int f;
+
+	static int hoisted(int a, int b, int n) {
+		int s = 0;
+		int i = 0;
+		while(i < n) {
+			s = s + a * b;
+			i = i + 1;
+		}
+		return s;
+	}
+
+	static int variant(int a, int n) {
+		int s = 0;
+		int i = 0;
+		while(i < n) {
+			s = s + a * i;
+			i = i + 1;
+		}
+		return s;
+	}
+
+	static int division(int a, int b, int n) {
+		int s = 0;
+		int i = 0;
+		while(i < n) {
+			if(i > 2) {
+				s = s + a / b;
+			}
+			i = i + 1;
+		}
+		return s;
+	}
+
+	static int stored(Invariants o, int n) {
+		int i = 0;
+		while(i < n) {
+			o.f = o.f + 1;
+			i = i + 1;
+		}
+		return i;
+	}
+
+	public static void main(String[] args) {
+		Invariants o = new Invariants();
+		int r = hoisted(1, 2, 3) + variant(4, 5) + division(6, 2, 7) + stored(o, 8);
+	}
+}
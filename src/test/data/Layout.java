@@ -0,0 +1,24 @@
+class Layout {
+	static int early(int a, int n) {
+		if(a < 0) {
+			return 0;
+		}
+		int s = 0;
+		for(int i = 0; i < n; i++) {
+			s = s + a;
+		}
+		return s;
+	}
+
+	static int rarely(int a, int n) {
+		int s = 1;
+		while(s < n) {
+			s = s * a + 1;
+		}
+		return s - 5;
+	}
+
+	public static void main(String[] args) {
+		int r = early(1, 2) + rarely(3, 0);
+	}
+}
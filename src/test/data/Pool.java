@@ -0,0 +1,32 @@
+class Pool {
+	static int loop(int n) {
+		int s = 0;
+		int i = 0;
+		while(i < n) {
+			s = s + 7;
+			i = i + 1;
+		}
+		return s;
+	}
+
+	static int single(int x) {
+		int y = 5;
+		if(x > 0) {
+			x = x + y;
+		}
+		return x;
+	}
+
+	static int shared(int x) {
+		if(x > 0) {
+			x = x + 9;
+		} else {
+			x = x - 9;
+		}
+		return x;
+	}
+
+	public static void main(String[] args) {
+		int r = loop(3) + single(1) + shared(2);
+	}
+}
@@ -0,0 +1,51 @@
+class Slots {
+	static int chain(int a, int b) {
+		int c = a * b;
+		int d = c - a;
+		int e = d * c;
+		int f = e + b;
+		return f * a;
+	}
+
+	static int fibonacci(int a, int b, int n) {
+		for(int i = 0; i < n; i++) {
+			int t = a + b;
+			a = b * 2;
+			b = t;
+		}
+		return a - b;
+	}
+
+	static int id(int v) {
+		return v;
+	}
+
+	// once id is inlined, the phi node of y takes the phi node of x from the loop
+	static int previous(int n) {
+		int x = 0;
+		int y = 0;
+		for(int i = 0; i < n; i++) {
+			y = id(x);
+			x = x + 1;
+		}
+		return y;
+	}
+
+	// the phi nodes of a, b and c each take another one from the loop
+	static int rotate(int n) {
+		int a = 1;
+		int b = 2;
+		int c = 3;
+		for(int i = 0; i < n; i++) {
+			int t = id(a);
+			a = id(b);
+			b = id(c);
+			c = id(t);
+		}
+		return a * 100 + b * 10 + c;
+	}
+
+	public static void main(String[] args) {
+		int r = chain(2, 3) + fibonacci(1, 2, 3) + previous(5) + rotate(1);
+	}
+}
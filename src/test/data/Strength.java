@@ -0,0 +1,37 @@
+class Strength {
+	static int scaled(int a, int n) {
+		int s = 0;
+		for(int i = 0; i < n; i++) {
+			s = s + i * a;
+		}
+		return s;
+	}
+
+	static int replaced() {
+		int s = 0;
+		for(int i = 0; i < 10; i++) {
+			s = s + i * 4;
+		}
+		return s;
+	}
+
+	static int overflowing() {
+		int s = 0;
+		for(int i = 0; i < 1000000000; i++) {
+			s = s + i * 4;
+		}
+		return s;
+	}
+
+	static int variantFactor(int n) {
+		int s = 1;
+		for(int i = 0; i < n; i++) {
+			s = s + i * s;
+		}
+		return s;
+	}
+
+	public static void main(String[] args) {
+		int r = scaled(3, 4) + replaced() + overflowing() + variantFactor(5);
+	}
+}
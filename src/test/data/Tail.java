@@ -0,0 +1,27 @@
+class Tail {
+	static int sum(int n, int acc) {
+		if(n == 0) {
+			return acc;
+		}
+		return sum(n - 1, acc + n);
+	}
+
+	static int factorial(int n) {
+		if(n == 0) {
+			return 1;
+		}
+		return n * factorial(n - 1);
+	}
+
+	static int delegate(int n) {
+		return sum(n, 0);
+	}
+
+	static int used(int n) {
+		return sum(n, 0) + 1;
+	}
+
+	public static void main(String[] args) {
+		int r = sum(5, 0) + factorial(5) + delegate(3) + used(4);
+	}
+}
@@ -0,0 +1,29 @@
+class Unroll {
+	static int full(int a) {
+		int s = 1;
+		for(int i = 0; i < 4; i++) {
+			s = s * a + i;
+		}
+		return s;
+	}
+
+	static int partial(int a) {
+		int s = 1;
+		for(int i = 0; i < 10; i++) {
+			s = s * a + i;
+		}
+		return s;
+	}
+
+	static int unknown(int a, int n) {
+		int s = 1;
+		for(int i = 0; i < n; i++) {
+			s = s * a + i;
+		}
+		return s;
+	}
+
+	public static void main(String[] args) {
+		int r = full(2) + partial(3) + unknown(4, 5);
+	}
+}
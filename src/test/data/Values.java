@@ -0,0 +1,39 @@
+class Values {
+	int f;
+
+	static int redundant(int a, int b) {
+		int x = a * b;
+		int y = a * b;
+		return x + y;
+	}
+
+	static int dominated(int a, int b, int c) {
+		int x = a - b;
+		if(c > 0) {
+			c = a - b;
+		}
+		return x + c;
+	}
+
+	static int siblings(int a, int b, int c) {
+		if(c > 0) {
+			c = a * b;
+		} else {
+			c = a * b + 1;
+		}
+		return c;
+	}
+
+	static int loads(Values o) {
+		int x = o.f;
+		int y = o.f;
+		o.f = 3;
+		int z = o.f;
+		return x + y + z;
+	}
+
+	public static void main(String[] args) {
+		Values o = new Values();
+		int r = redundant(1, 2) + dominated(3, 4, 5) + siblings(6, 7, 8) + loads(o);
+	}
+}
@@ -0,0 +1,74 @@
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class TestCompiler {
+
+	private static final File DATA = new File("src/test/data");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+	private int run(String... args) throws Exception {
+		return Compiler.run(args, folder.getRoot(), new PrintStream(new ByteArrayOutputStream()), new PrintStream(err));
+	}
+
+	/**
+	 * Copies a source of the test data into the directory of the temporary folder
+	 */
+	private void source(String directory, String name) throws IOException {
+		File target = new File(folder.getRoot(), directory);
+		assertTrue(target.isDirectory() || target.mkdirs());
+		Files.copy(new File(DATA, name + ".java").toPath(), new File(target, name + ".java").toPath());
+	}
+
+	private byte[] bytes(String path) throws IOException {
+		return Files.readAllBytes(new File(folder.getRoot(), path).toPath());
+	}
+
+	@Test
+	public void batchMatchesSingleFiles() throws Exception {
+		String[] names = {"Copies", "Fusion", "Inline", "Slots"};
+		for(String name : names) {
+			source("src", name);
+		}
+
+		assertEquals(err.toString(), 0, run("--threads", "4", "--out-dir", "out", "src"));
+		for(String name : names) {
+			assertEquals(err.toString(), 0, run("src/" + name + ".java", name + ".cij"));
+			assertArrayEquals(name, bytes(name + ".cij"), bytes("out/" + name + ".java.cij"));
+		}
+	}
+
+	@Test
+	public void batchCompilesTheOthersWhenOneFails() throws Exception {
+		source("src", "F");
+		source("src", "Slots");
+
+		assertEquals(1, run("--out-dir", "out", "src/F.java", "src/Slots.java"));
+		assertTrue(err.toString(), err.toString().contains("F.java"));
+		assertTrue(err.toString(), err.toString().contains("1 of 2 files failed to compile"));
+		assertFalse(new File(folder.getRoot(), "out/F.java.cij").exists());
+		assertTrue(bytes("out/Slots.java.cij").length > 0);
+	}
+
+	@Test
+	public void batchRejectsSourcesOfTheSameName() throws Exception {
+		source("a", "Slots");
+		source("b", "Slots");
+
+		assertEquals(1, run("--out-dir", "out", "a", "b"));
+		assertTrue(err.toString(), err.toString().contains("would both be compiled to Slots.java.cij"));
+		assertFalse(new File(folder.getRoot(), "out").exists());
+	}
+}
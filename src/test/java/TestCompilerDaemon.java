@@ -0,0 +1,117 @@
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+
+import static org.junit.Assert.*;
+
+public class TestCompilerDaemon {
+
+	private static final File DATA = new File("src/test/data");
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+	private String home;
+	private CompilerDaemon daemon;
+	private Thread serving;
+
+	@Before
+	public void startDaemon() throws Exception {
+		home = System.getProperty("user.home");
+		System.setProperty("user.home", folder.newFolder("home").getPath());
+
+		daemon = new CompilerDaemon(0, CompilerDaemon.tokenDirectory(), new PrintStream(new ByteArrayOutputStream()), 500);
+		serving = new Thread(() -> {
+			try {
+				daemon.serve();
+			} catch(IOException e) {
+				throw new RuntimeException(e);
+			}
+		});
+		serving.start();
+
+		File src = folder.newFolder("src");
+		Files.copy(new File(DATA, "Slots.java").toPath(), new File(src, "Slots.java").toPath());
+	}
+
+	@After
+	public void stopDaemon() throws Exception {
+		daemon.close();
+		serving.join();
+		System.setProperty("user.home", home);
+	}
+
+	private int run(String... args) throws Exception {
+		return Compiler.run(args, folder.getRoot(), new PrintStream(new ByteArrayOutputStream()), new PrintStream(err));
+	}
+
+	private File tokenFile() {
+		return new File(CompilerDaemon.tokenDirectory(), "daemon-" + daemon.port());
+	}
+
+	private byte[] bytes(String path) throws IOException {
+		return Files.readAllBytes(new File(folder.getRoot(), path).toPath());
+	}
+
+	@Test
+	public void connectMatchesLocalCompile() throws Exception {
+		String port = String.valueOf(daemon.port());
+
+		assertEquals(err.toString(), 0, run("src/Slots.java", "local.cij"));
+		for(int i = 0; i < 2; i++) {
+			assertEquals(err.toString(), 0, run("--connect", port, "src/Slots.java", "remote.cij"));
+			assertArrayEquals(bytes("local.cij"), bytes("remote.cij"));
+		}
+	}
+
+	@Test
+	public void tokenIsReadableByOwnerOnly() throws Exception {
+		if(!tokenFile().toPath().getFileSystem().supportedFileAttributeViews().contains("posix")) {
+			return;
+		}
+		assertEquals(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE),
+		             Files.getPosixFilePermissions(tokenFile().toPath()));
+	}
+
+	@Test
+	public void connectWithWrongTokenIsRejected() throws Exception {
+		Files.write(tokenFile().toPath(), "wrong".getBytes("UTF-8"));
+
+		assertEquals(1, run("--connect", String.valueOf(daemon.port()), "src/Slots.java", "remote.cij"));
+		assertTrue(err.toString(), err.toString().contains("did not accept"));
+		assertFalse(new File(folder.getRoot(), "remote.cij").exists());
+	}
+
+	@Test
+	public void connectWithoutTokenIsRejected() throws Exception {
+		assertTrue(tokenFile().delete());
+
+		assertEquals(1, run("--connect", String.valueOf(daemon.port()), "src/Slots.java", "remote.cij"));
+		assertTrue(err.toString(), err.toString().contains("no token"));
+		assertFalse(new File(folder.getRoot(), "remote.cij").exists());
+	}
+
+	@Test
+	public void idleConnectionIsDropped() throws Exception {
+		try(Socket idle = new Socket(InetAddress.getLoopbackAddress(), daemon.port())) {
+			idle.setSoTimeout(10_000);
+			assertEquals(-1, idle.getInputStream().read());
+		}
+
+		assertEquals(err.toString(), 0, run("--connect", String.valueOf(daemon.port()), "src/Slots.java", "remote.cij"));
+	}
+}
@@ -0,0 +1,113 @@
+package bytecode;
+
+import bytecode.optimization.BlockLayout;
+import bytecode.optimization.BlockProfile;
+import bytecode.optimization.Loops;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static bytecode.BinaryOperation.Operator.*;
+import static bytecode.TestSources.*;
+import static org.junit.Assert.*;
+
+public class TestBlockLayout {
+
+	/**
+	 * @return the blocks the instructions of the block continue with: the targets of its jumps
+	 * and the block following it in the layout if it falls through
+	 */
+	private static Set<Block> targets(Function f, Block b) {
+		Set<Block> targets = new HashSet<>();
+		for(Compileable c : b.instructions) {
+			if(c instanceof Goto) {
+				targets.add(((Goto) c).label());
+			} else if(c instanceof ConditionalGoto) {
+				targets.add(((ConditionalGoto) c).label());
+			} else if(c instanceof ComparisonGoto) {
+				targets.add(((ComparisonGoto) c).label());
+			}
+		}
+		if(b.fallsThrough()) {
+			List<Block> blocks = f.blocks();
+			int next = blocks.indexOf(b) + 1;
+			assertTrue(f.name() + ": block " + next + " falls off the end", next < blocks.size());
+			targets.add(blocks.get(next));
+		}
+		return targets;
+	}
+
+	@Test
+	public void jumpsMatchControlFlowGraph() throws Exception {
+		for(BytecodeFile file : corpus(new CompilerOptions())) {
+			for(Function f : file.functions()) {
+				for(Block b : f.blocks()) {
+					assertEquals(f.name() + ": block " + b.index(), new HashSet<>(b.children()), targets(f, b));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void movesEarlyReturnBehindLoop() throws Exception {
+		Function f = function(unoptimized("Layout"), "early");
+		new BlockLayout(f).run();
+
+		Block early = null;
+		for(Block b : f.blocks()) {
+			for(Compileable c : b.instructions) {
+				if(c instanceof Return && definition(f, ((Return) c).operands().get(0)) instanceof Const) {
+					early = b;
+				}
+			}
+		}
+		assertNotNull(early);
+
+		Loops.Loop loop = new Loops(f).loops().get(0);
+		assertTrue(early.index() > loop.body.previousSetBit(f.blocks().size()));
+	}
+
+	/**
+	 * @return the index of the block holding the only operation of the operator
+	 */
+	private static int index(Function f, BinaryOperation.Operator operator) throws Exception {
+		List<Block> blocks = blocks(f, operator);
+		assertEquals(1, blocks.size());
+		return blocks.get(0).index();
+	}
+
+	@Test
+	public void followsProfile() throws Exception {
+		// without a profile the loop header falls through to the body
+		Function f = function(compile("Layout"), "rarely");
+		int body = index(f, mul), exit = index(f, sub);
+		assertEquals(1, instructions(f, ComparisonGoto.class).size());
+		int header = -1;
+		for(Block b : f.blocks()) {
+			if(b.instructions.contains(instructions(f, ComparisonGoto.class).get(0))) {
+				header = b.index();
+			}
+		}
+		assertEquals(header + 1, body);
+		assertTrue(exit > body);
+
+		// a profile of a run that never entered the loop
+		File file = File.createTempFile("layout", ".profile");
+		file.deleteOnExit();
+		try(Writer writer = new FileWriter(file)) {
+			writer.write(f.index() + " " + header + " 100\n");
+			writer.write(f.index() + " " + body + " 0\n");
+			writer.write(f.index() + " " + exit + " 100\n");
+		}
+
+		CompilerOptions options = new CompilerOptions();
+		options.setBlockProfile(BlockProfile.read(file));
+		Function profiled = function(compile("Layout", options), "rarely");
+		assertTrue(index(profiled, sub) < index(profiled, mul));
+	}
+}
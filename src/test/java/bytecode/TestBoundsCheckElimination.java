@@ -0,0 +1,64 @@
+package bytecode;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static bytecode.TestSources.*;
+import static org.junit.Assert.*;
+
+public class TestBoundsCheckElimination {
+
+	/**
+	 * @return for each array access of the optimized function in layout order whether it is
+	 * still checked. The pass runs last, after the expressions of conditions and indices have
+	 * been unified.
+	 */
+	private static List<Boolean> checked(String name) throws Exception {
+		Function f = function(compile("Bounds"), name);
+
+		List<Boolean> checked = new ArrayList<>();
+		for(Instruction instruction : instructions(f)) {
+			if(instruction instanceof LoadIndex) {
+				checked.add(((LoadIndex) instruction).isBoundsChecked());
+			} else if(instruction instanceof StoreIndex) {
+				checked.add(((StoreIndex) instruction).isBoundsChecked());
+			}
+		}
+		assertFalse(checked.isEmpty());
+		return checked;
+	}
+
+	private static void assertAll(boolean expected, List<Boolean> checked) {
+		for(boolean c : checked) {
+			assertEquals(expected, c);
+		}
+	}
+
+	@Test
+	public void provesIndexBelowLength() throws Exception {
+		assertAll(false, checked("ascending"));
+	}
+
+	@Test
+	public void keepsCheckUpToLength() throws Exception {
+		assertAll(true, checked("inclusive"));
+	}
+
+	@Test
+	public void provesDescendingIndex() throws Exception {
+		assertAll(false, checked("descending"));
+	}
+
+	@Test
+	public void provesOffsetBelowCreationSize() throws Exception {
+		// i + 1 < n bounds both i + 1 and i by the size a has been created with
+		assertAll(false, checked("offset"));
+	}
+
+	@Test
+	public void keepsCheckAgainstOtherSize() throws Exception {
+		assertAll(true, checked("otherSize"));
+	}
+}
@@ -0,0 +1,84 @@
+package bytecode;
+
+import bytecode.optimization.BranchFusion;
+import org.junit.Test;
+import stream.LittleEndianOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import static bytecode.BinaryOperation.Operator.*;
+import static bytecode.TestSources.*;
+import static org.junit.Assert.*;
+
+public class TestBranchFusion {
+
+	private static Function run(String name) throws Exception {
+		Function f = function(unoptimized("Fusion"), name);
+		new BranchFusion(f).run();
+		return f;
+	}
+
+	/**
+	 * @return the opcode of the only fused jump of the function
+	 */
+	private static int opcode(Function f) throws Exception {
+		List<ComparisonGoto> jumps = instructions(f, ComparisonGoto.class);
+		assertEquals(1, jumps.size());
+		assertTrue(instructions(f, ConditionalGoto.class).isEmpty());
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		jumps.get(0).writeToStream(new LittleEndianOutputStream(out));
+		return out.toByteArray()[0] & 0xff;
+	}
+
+	private static int negations(Function f) throws Exception {
+		int count = 0;
+		for(UnaryOperation operation : instructions(f, UnaryOperation.class)) {
+			if(operation.operator() == UnaryOperation.Operator.not) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Test
+	public void fusesComparison() throws Exception {
+		Function f = run("less");
+		assertEquals(Opcodes.IF_LT, opcode(f));
+		assertEquals(0, count(f, lt));
+	}
+
+	@Test
+	public void foldsNegationIntoOppositeComparisonOnIntegers() throws Exception {
+		assertEquals(1, negations(function(unoptimized("Fusion"), "loop")));
+
+		Function f = run("loop");
+		assertEquals(Opcodes.IF_GTE, opcode(f));
+		assertEquals(0, negations(f));
+	}
+
+	@Test
+	public void foldsNegationIntoNegatedJumpOnDoubles() throws Exception {
+		assertEquals(1, negations(function(unoptimized("Fusion"), "halves")));
+
+		Function f = run("halves");
+		// not the opposite comparison, which differs for NaN
+		assertEquals(Opcodes.IF_NOT_LT, opcode(f));
+		assertEquals(0, negations(f));
+	}
+
+	@Test
+	public void swapsNegatedEquality() throws Exception {
+		Function f = run("notEqual");
+		assertEquals(Opcodes.IF_EQ, opcode(f));
+		assertEquals(0, negations(f));
+	}
+
+	@Test
+	public void keepsComparisonUsedElsewhere() throws Exception {
+		Function f = run("reused");
+		assertTrue(instructions(f, ComparisonGoto.class).isEmpty());
+		assertEquals(1, count(f, lt));
+	}
+}
@@ -0,0 +1,52 @@
+package bytecode;
+
+import bytecode.optimization.ClassHierarchyAnalysis;
+import org.junit.Test;
+
+import static bytecode.TestSources.*;
+import static org.junit.Assert.*;
+
+public class TestClassHierarchyAnalysis {
+
+	private static Function run(String name) throws Exception {
+		BytecodeFile file = unoptimized("Hierarchy");
+		new ClassHierarchyAnalysis(file).run();
+		return function(file, name);
+	}
+
+	private static void assertDevirtualized(Function f) throws Exception {
+		assertTrue(instructions(f, MemberCall.class).isEmpty());
+		assertEquals(1, instructions(f, Call.class).size());
+	}
+
+	private static void assertDispatched(Function f) throws Exception {
+		assertEquals(1, instructions(f, MemberCall.class).size());
+		assertTrue(instructions(f, Call.class).isEmpty());
+	}
+
+	@Test
+	public void devirtualizesCallOnAllocatedObject() throws Exception {
+		assertDevirtualized(run("onAllocated"));
+	}
+
+	@Test
+	public void devirtualizesCallOnThis() throws Exception {
+		assertDevirtualized(run("onThis"));
+	}
+
+	@Test
+	public void devirtualizesCallAfterDereference() throws Exception {
+		// the field load has trapped already if the parameter is null
+		assertDevirtualized(run("afterLoad"));
+	}
+
+	@Test
+	public void keepsNullCheckOfReceiver() throws Exception {
+		assertDispatched(run("onParameter"));
+	}
+
+	@Test
+	public void keepsPolymorphicCall() throws Exception {
+		assertDispatched(run("polymorphic"));
+	}
+}
@@ -0,0 +1,86 @@
+package bytecode;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static bytecode.BinaryOperation.Operator.*;
+import static bytecode.TestSources.*;
+import static org.junit.Assert.*;
+
+public class TestConditions {
+
+	/**
+	 * @return the blocks comparing with greater than, which are the operands of the condition
+	 */
+	private static List<Block> operands(Function f) {
+		List<Block> blocks = blocks(f, gt);
+		assertEquals(2, blocks.size());
+		return blocks;
+	}
+
+	private static int negations(Function f) throws Exception {
+		int count = 0;
+		for(UnaryOperation operation : instructions(f, UnaryOperation.class)) {
+			if(operation.operator() == UnaryOperation.Operator.not) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Fails unless each operand of the condition jumps on its own, the second one only
+	 * evaluated if the first one did not decide the outcome
+	 */
+	private static void assertShortCircuit(Function f) throws Exception {
+		assertEquals(2, instructions(f, ConditionalGoto.class).size());
+
+		List<Block> operands = operands(f);
+		assertNotSame(operands.get(0), operands.get(1));
+		assertEquals(1, operands.get(1).parents().size());
+		assertSame(operands.get(0), operands.get(1).parents().get(0));
+
+		// the outcome is never materialized as a boolean
+		for(Const<?> c : instructions(f, Const.class)) {
+			assertFalse(c.value instanceof Boolean);
+		}
+	}
+
+	@Test
+	public void branchesOnAnd() throws Exception {
+		Function f = function(unoptimized("Conditions"), "and");
+		assertShortCircuit(f);
+		assertTrue(instructions(f, PhiNode.class).isEmpty());
+	}
+
+	@Test
+	public void branchesOnOr() throws Exception {
+		Function f = function(unoptimized("Conditions"), "or");
+		assertShortCircuit(f);
+		// the only phi node is the loop variable
+		assertEquals(1, instructions(f, PhiNode.class).size());
+	}
+
+	@Test
+	public void foldsNegationIntoJumps() throws Exception {
+		Function f = function(unoptimized("Conditions"), "negated");
+		assertShortCircuit(f);
+		assertTrue(instructions(f, PhiNode.class).isEmpty());
+		// the negation only changes which operand jumps on which outcome
+		assertEquals(negations(function(unoptimized("Conditions"), "and")), negations(f));
+	}
+
+	@Test
+	public void materializesValue() throws Exception {
+		Function f = function(unoptimized("Conditions"), "value");
+		assertEquals(1, instructions(f, PhiNode.class).size());
+		int booleans = 0;
+		for(Const<?> c : instructions(f, Const.class)) {
+			if(c.value instanceof Boolean) {
+				booleans++;
+			}
+		}
+		assertEquals(2, booleans);
+	}
+}
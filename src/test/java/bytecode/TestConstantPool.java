@@ -0,0 +1,69 @@
+package bytecode;
+
+import bytecode.optimization.ConstantPool;
+import bytecode.optimization.Loops;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static bytecode.TestSources.*;
+import static org.junit.Assert.*;
+
+public class TestConstantPool {
+
+	private static Function run(String name) throws Exception {
+		Function f = function(unoptimized("Pool"), name);
+		new ConstantPool(f).run();
+		return f;
+	}
+
+	/**
+	 * @return the blocks holding a const of the value
+	 */
+	private static List<Block> blocksOf(Function f, int value) {
+		List<Block> blocks = new ArrayList<>();
+		for(Block b : f.blocks()) {
+			for(Compileable c : b.instructions) {
+				if(c instanceof Const && ((Const<?>) c).value.equals(value)) {
+					blocks.add(b);
+				}
+			}
+		}
+		return blocks;
+	}
+
+	@Test
+	public void hoistsOutOfUsingLoop() throws Exception {
+		Function f = function(unoptimized("Pool"), "loop");
+		Loops loops = new Loops(f);
+		assertTrue(loops.inLoop(blocksOf(f, 7).get(0)));
+
+		new ConstantPool(f).run();
+		List<Block> blocks = blocksOf(f, 7);
+		assertEquals(1, blocks.size());
+		assertFalse(loops.inLoop(blocks.get(0)));
+	}
+
+	@Test
+	public void leavesSingleBlockConstant() throws Exception {
+		Function f = function(unoptimized("Pool"), "single");
+		Block before = blocksOf(f, 5).get(0);
+
+		new ConstantPool(f).run();
+		assertEquals(1, blocksOf(f, 5).size());
+		assertSame(before, blocksOf(f, 5).get(0));
+	}
+
+	@Test
+	public void sharesDuplicates() throws Exception {
+		Function f = function(unoptimized("Pool"), "shared");
+		List<Block> before = blocksOf(f, 9);
+		assertEquals(2, before.size());
+
+		Function pooled = run("shared");
+		List<Block> after = blocksOf(pooled, 9);
+		assertEquals(1, after.size());
+		assertSame(pooled.initialBlock(), after.get(0));
+	}
+}
@@ -0,0 +1,54 @@
+package bytecode;
+
+import bytecode.optimization.ControlFlowSimplification;
+import org.junit.Test;
+
+import static bytecode.BinaryOperation.Operator.*;
+import static bytecode.TestSources.*;
+import static org.junit.Assert.*;
+
+public class TestControlFlowSimplification {
+
+	/**
+	 * Runs the pass on the unoptimized function, where the constant conditions are still consts
+	 */
+	private static Function run(String name) throws Exception {
+		Function f = function(unoptimized("Branches"), name);
+		new ControlFlowSimplification(f).run();
+		return f;
+	}
+
+	private static void assertAllReachable(Function f) throws Exception {
+		for(Block b : f.blocks()) {
+			assertTrue("block " + b.index(), b == f.initialBlock() || !b.parents().isEmpty());
+		}
+	}
+
+	@Test
+	public void removesBlockOfFalseBranch() throws Exception {
+		Function f = run("folded");
+		assertEquals(0, count(f, mul));
+		assertTrue(instructions(f, ConditionalGoto.class).isEmpty());
+		assertAllReachable(f);
+	}
+
+	/**
+	 * The blocks of the loop still lead into each other once the branch to it is folded
+	 */
+	@Test
+	public void removesLoopThatIsNeverEntered() throws Exception {
+		Function f = run("loop");
+		assertEquals(0, count(f, mul));
+		assertAllReachable(f);
+	}
+
+	@Test
+	public void removesElseOfTrueBranch() throws Exception {
+		Function f = run("taken");
+		assertEquals(0, count(f, mul));
+		assertEquals(1, count(f, add));
+		assertAllReachable(f);
+		// everything left runs in sequence
+		assertEquals(1, f.blocks().size());
+	}
+}
@@ -0,0 +1,75 @@
+package bytecode;
+
+import bytecode.optimization.ConstantPool;
+import bytecode.optimization.CopyPropagation;
+import bytecode.optimization.GlobalValueNumbering;
+import org.junit.Test;
+
+import java.util.List;
+
+import static bytecode.TestSources.*;
+import static org.junit.Assert.*;
+
+public class TestCopyPropagation {
+
+	/**
+	 * Runs the pass after the constants have been pooled and the values numbered, which leaves
+	 * phi nodes merging the same value
+	 */
+	private static Function run(String name) throws Exception {
+		Function f = function(unoptimized("Copies"), name);
+		new ConstantPool(f).run();
+		new GlobalValueNumbering(f).run();
+		new CopyPropagation(f).run();
+		return f;
+	}
+
+	private static int phiNodes(Function f) throws Exception {
+		return instructions(f, PhiNode.class).size();
+	}
+
+	@Test
+	public void removesPhiNodeOfSingleValue() throws Exception {
+		assertEquals(2, phiNodes(function(unoptimized("Copies"), "recomputed")));
+
+		Function f = run("recomputed");
+		assertEquals(1, phiNodes(f));
+		// the value computed before the loop is returned directly
+		Return ret = instructions(f, Return.class).get(0);
+		Instruction returned = definition(f, ret.operands().get(0));
+		assertTrue(returned instanceof BinaryOperation);
+	}
+
+	@Test
+	public void mergesEqualPhiNodes() throws Exception {
+		assertEquals(3, phiNodes(function(unoptimized("Copies"), "equal")));
+
+		Function f = run("equal");
+		assertEquals(2, phiNodes(f));
+		List<BinaryOperation> subtractions = instructions(f, BinaryOperation.class);
+		for(BinaryOperation operation : subtractions) {
+			if(operation.operator() == BinaryOperation.Operator.sub) {
+				assertSame(operation.operands().get(0), operation.operands().get(1));
+			}
+		}
+	}
+
+	/**
+	 * Once the inlined copies are replaced, phi nodes of the loop read the results of other
+	 * ones, which must still hold their values from the previous iteration
+	 */
+	@Test
+	public void keepsValuesFromPreviousIteration() throws Exception {
+		for(BytecodeFile file : new BytecodeFile[]{unoptimized("Copies"), compile("Copies")}) {
+			for(int n = 0; n < 4; n++) {
+				assertEquals(Math.max(n - 1, 0), execute(function(file, "lost"), n));
+				assertEquals(n % 2 == 0 ? 12 : 21, execute(function(file, "swap"), n));
+			}
+		}
+	}
+
+	@Test
+	public void keepsVaryingPhiNodes() throws Exception {
+		assertEquals(2, phiNodes(run("varying")));
+	}
+}
@@ -0,0 +1,47 @@
+package bytecode;
+
+import bytecode.optimization.DeadCodeElimination;
+import org.junit.Test;
+
+import static bytecode.BinaryOperation.Operator.*;
+import static bytecode.TestSources.*;
+import static org.junit.Assert.*;
+
+public class TestDeadCodeElimination {
+
+	private static Function run(String name) throws Exception {
+		Function f = function(unoptimized("Dead"), name);
+		new DeadCodeElimination(f).run();
+		return f;
+	}
+
+	@Test
+	public void removesUnusedOperation() throws Exception {
+		assertEquals(1, count(function(unoptimized("Dead"), "unused"), mul));
+
+		Function f = run("unused");
+		assertEquals(0, count(f, mul));
+		assertEquals(1, count(f, add));
+	}
+
+	@Test
+	public void keepsTrappingOperation() throws Exception {
+		assertEquals(1, count(run("trapping"), div));
+	}
+
+	@Test
+	public void keepsOperandsOfStores() throws Exception {
+		Function f = run("stored");
+		assertEquals(1, count(f, sub));
+		assertEquals(1, instructions(f, StoreGlobal.class).size());
+	}
+
+	@Test
+	public void removesUnusedPhiNode() throws Exception {
+		assertEquals(1, instructions(function(unoptimized("Dead"), "deadPhi"), PhiNode.class).size());
+
+		Function f = run("deadPhi");
+		assertTrue(instructions(f, PhiNode.class).isEmpty());
+		assertEquals(0, count(f, mul));
+	}
+}
@@ -0,0 +1,140 @@
+package bytecode;
+
+import bytecode.dom.DominanceTree;
+import bytecode.frontier.DominanceFrontier;
+import org.junit.Test;
+import visitors.Resolution;
+
+import java.util.*;
+
+import static bytecode.TestSources.corpus;
+import static org.junit.Assert.*;
+
+public class TestDominanceFrontier {
+
+	private static List<BytecodeFile> files() throws Exception {
+		CompilerOptions options = new CompilerOptions();
+		// the optimizations change the control flow graph after dominance has been computed
+		options.setOptimize(false);
+		return corpus(options);
+	}
+
+	/**
+	 * @return DF(x) straight from its definition: the blocks y with a parent that x dominates,
+	 * which x does not strictly dominate, in ascending order
+	 */
+	private static List<Integer> definition(Function f, Block x) throws InvalidCompileOrderException {
+		DominanceTree tree = f.dominanceTree();
+		List<Integer> frontier = new ArrayList<>();
+		for(Block y : f.blocks()) {
+			boolean strictlyDominated = x != y && tree.dominates(x, y);
+			if(strictlyDominated) {
+				continue;
+			}
+			for(Block p : y.parents()) {
+				if(tree.dominates(x, p)) {
+					frontier.add(y.index());
+					break;
+				}
+			}
+		}
+		return frontier;
+	}
+
+	private static List<Integer> list(int[] frontier) {
+		List<Integer> list = new ArrayList<>();
+		for(int y : frontier) {
+			list.add(y);
+		}
+		return list;
+	}
+
+	/**
+	 * Phi placement visits DF(x) in the order of() returns it, which decides the incoming edge
+	 * each phi node is created with and thereby the bytecode. Matching the definition in
+	 * ascending order is what keeps the output identical to the dense frontiers.
+	 */
+	@Test
+	public void frontiersMatchDefinition() throws Exception {
+		for(BytecodeFile file : files()) {
+			for(Function f : file.functions()) {
+				f.computeDominance();
+				DominanceFrontier frontier = f.dominanceFrontier();
+				for(Block x : f.blocks()) {
+					assertEquals(f.name() + ": DF(" + x.index() + ")", definition(f, x), list(frontier.of(x.index())));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void phiNodesAtIteratedFrontiers() throws Exception {
+		for(BytecodeFile file : files()) {
+			for(Function compiled : file.functions()) {
+				Function f = compiled.uncompiledCopy();
+				try {
+					f.build(new Resolution());
+				} finally {
+					Resolution.releaseAll();
+				}
+				f.run(Function.Stage.REDUNDANT_LOADS);
+				f.run(Function.Stage.DOMINANCE);
+
+				// the blocks with a phi node for each variable before and after placement
+				Map<String, Set<Block>> before = phiBlocks(f);
+				f.run(Function.Stage.PHI_PLACEMENT);
+				Map<String, Set<Block>> after = phiBlocks(f);
+
+				for(String variable : after.keySet()) {
+					Set<Block> expected = new HashSet<>(before.get(variable));
+					expected.addAll(iteratedFrontier(f, variable));
+					assertEquals(f.name() + ": " + variable, expected, after.get(variable));
+				}
+			}
+		}
+	}
+
+	private static Map<String, Set<Block>> phiBlocks(Function f) {
+		Set<String> variables = new TreeSet<>();
+		for(Block b : f.blocks()) {
+			variables.addAll(b.localManager().written().keySet());
+		}
+
+		Map<String, Set<Block>> phiBlocks = new HashMap<>();
+		for(String variable : variables) {
+			Set<Block> blocks = new HashSet<>();
+			for(Block b : f.blocks()) {
+				if(b.phiManager().temporaryForVariable(variable) != null) {
+					blocks.add(b);
+				}
+			}
+			phiBlocks.put(variable, blocks);
+		}
+		return phiBlocks;
+	}
+
+	/**
+	 * @return DF+ of the blocks assigning the variable, from the definition of DF
+	 */
+	private static Set<Block> iteratedFrontier(Function f, String variable) throws InvalidCompileOrderException {
+		Deque<Block> worklist = new ArrayDeque<>();
+		for(Block b : f.blocks()) {
+			if(b.localManager().written().containsKey(variable)) {
+				worklist.add(b);
+			}
+		}
+
+		Set<Block> frontier = new HashSet<>();
+		Set<Block> visited = new HashSet<>(worklist);
+		while(!worklist.isEmpty()) {
+			for(int y : definition(f, worklist.poll())) {
+				Block block = f.blocks().get(y);
+				frontier.add(block);
+				if(visited.add(block)) {
+					worklist.add(block);
+				}
+			}
+		}
+		return frontier;
+	}
+}
@@ -0,0 +1,109 @@
+package bytecode;
+
+import bytecode.dom.DominanceTree;
+import bytecode.dom.N2DominanceTree;
+import bytecode.dom.Node;
+import com.github.javaparser.ast.CompilationUnit;
+import org.junit.Test;
+import stream.LittleEndianOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class TestDominanceTree {
+
+	private static final File DATA = new File("src/test/data");
+
+	private static BytecodeFile compile(File source, DominanceTree.Algorithm algorithm) throws Exception {
+		return compile(source, algorithm, true);
+	}
+
+	private static BytecodeFile compile(File source, DominanceTree.Algorithm algorithm, boolean optimize) throws Exception {
+		CompilationUnit cu = TestSources.parse(source);
+		CompilerOptions options = new CompilerOptions();
+		options.setDominanceAlgorithm(algorithm);
+		options.setOptimize(optimize);
+		return new BytecodeFile(new File(source.getName() + ".cij"), cu, options);
+	}
+
+	private static byte[] bytes(BytecodeFile file) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		file.writeToStream(new LittleEndianOutputStream(out));
+		return out.toByteArray();
+	}
+
+	private static File[] sources() {
+		File[] sources = DATA.listFiles((dir, name) -> name.endsWith(".java"));
+		assertNotNull(sources);
+		Arrays.sort(sources);
+		return sources;
+	}
+
+	@Test
+	public void sameBytecodeForAllAlgorithms() throws Exception {
+		for(File source : sources()) {
+			BytecodeFile reference;
+			try {
+				reference = compile(source, DominanceTree.Algorithm.N2);
+			} catch(RuntimeException e) {
+				// sources the compiler does not support must fail the same way
+				try {
+					compile(source, DominanceTree.Algorithm.COOPER_HARVEY_KENNEDY);
+					fail(source + " only compiles with the cooper-harvey-kennedy dominance tree");
+				} catch(RuntimeException expected) {
+					assertEquals(e.getClass(), expected.getClass());
+				}
+				continue;
+			}
+
+			BytecodeFile chk = compile(source, DominanceTree.Algorithm.COOPER_HARVEY_KENNEDY);
+			assertArrayEquals(source.getName(), bytes(reference), bytes(chk));
+		}
+	}
+
+	@Test
+	public void sameImmediateDominators() throws Exception {
+		for(File source : sources()) {
+			BytecodeFile chk;
+			try {
+				// the optimizations change the control flow graph after dominance has been computed
+				chk = compile(source, DominanceTree.Algorithm.COOPER_HARVEY_KENNEDY, false);
+			} catch(RuntimeException e) {
+				// sources the compiler does not support must fail the same way
+				try {
+					compile(source, DominanceTree.Algorithm.N2, false);
+					fail(source + " only compiles with the n2 dominance tree");
+				} catch(RuntimeException expected) {
+					assertEquals(e.getClass(), expected.getClass());
+				}
+				continue;
+			}
+
+			for(Function f : chk.functions()) {
+				Map<Block, Node> idoms = new HashMap<>();
+				List<Block> blocks = new ArrayList<>();
+				for(ListIterator<Block> it = f.initialBlock().blockIterator(); it.hasNext(); ) {
+					Block b = it.next();
+					blocks.add(b);
+					idoms.put(b, b.IDOM());
+				}
+
+				DominanceTree n2 = new N2DominanceTree(f.initialBlock());
+				for(Block b : blocks) {
+					assertSame(source.getName() + ": " + f.name(), b.IDOM(), idoms.get(b));
+				}
+
+				DominanceTree reference = DominanceTree.Algorithm.COOPER_HARVEY_KENNEDY.compute(f.initialBlock());
+				for(Block b : blocks) {
+					for(Block other : blocks) {
+						assertEquals(n2.dominates(other, b), reference.dominates(other, b));
+					}
+				}
+			}
+		}
+	}
+}
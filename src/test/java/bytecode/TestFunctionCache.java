@@ -0,0 +1,208 @@
+package bytecode;
+
+import com.github.javaparser.ast.CompilationUnit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static bytecode.TestSources.*;
+import static org.junit.Assert.*;
+
+public class TestFunctionCache {
+
+	// p.get() is bound statically only once make() is inlined into f()
+	private static final String FACTORY = "class P {\n" +
+	                                      "\tint get() {\n\t\treturn 5;\n\t}\n" +
+	                                      "\tstatic P make() {\n\t\treturn new P();\n\t}\n" +
+	                                      "\tstatic int f() {\n\t\tP p = make();\n\t\treturn p.get();\n\t}\n" +
+	                                      "\tpublic static void main(String[] args) {\n\t\tint r = f();\n\t}\n" +
+	                                      "}\n";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private CompilerOptions cached() throws Exception {
+		return cached(64 * 1024 * 1024);
+	}
+
+	private CompilerOptions cached(long maxSize) throws Exception {
+		CompilerOptions options = new CompilerOptions();
+		options.setFunctionCache(new FunctionCache(folder.getRoot(), maxSize));
+		return options;
+	}
+
+	private static String source(String name) throws Exception {
+		return new String(Files.readAllBytes(new File(DATA, name + ".java").toPath()), StandardCharsets.UTF_8);
+	}
+
+	private Set<File> entries() {
+		File[] entries = folder.getRoot().listFiles((dir, name) -> name.endsWith(".fn"));
+		assertNotNull(entries);
+		return new HashSet<>(Arrays.asList(entries));
+	}
+
+	private static long size(Set<File> entries) {
+		return entries.stream().mapToLong(File::length).sum();
+	}
+
+	private static void setLastModified(Set<File> entries, long time) {
+		for(File entry : entries) {
+			assertTrue(entry.setLastModified(time));
+		}
+	}
+
+	/**
+	 * Compiles the changed source with and without the cache filled by the original one, and
+	 * asserts that no function of the changed source is taken from the cache
+	 */
+	private void assertLayoutChangeMisses(String original, String changed) throws Exception {
+		new BytecodeFile(new File("Hierarchy.cij"), parseText(original), cached());
+		Set<File> before = entries();
+		assertFalse(before.isEmpty());
+
+		BytecodeFile uncached = new BytecodeFile(new File("Hierarchy.cij"), parseText(changed), new CompilerOptions());
+		BytecodeFile reusing = new BytecodeFile(new File("Hierarchy.cij"), parseText(changed), cached());
+		assertArrayEquals(bytes(uncached), bytes(reusing));
+
+		Set<File> after = entries();
+		assertTrue(after.containsAll(before));
+		assertEquals(before.size() * 2, after.size());
+	}
+
+	/**
+	 * The first compile fills the cache and the second takes all functions from it, neither
+	 * may differ from a compile without the cache
+	 */
+	@Test
+	public void sameBytecodeFromCache() throws Exception {
+		List<BytecodeFile> uncached = corpus(new CompilerOptions());
+		List<BytecodeFile> filling = corpus(cached());
+		String[] entries = folder.getRoot().list();
+		assertNotNull(entries);
+		assertTrue(entries.length > 0);
+		List<BytecodeFile> reusing = corpus(cached());
+
+		assertEquals(uncached.size(), filling.size());
+		assertEquals(uncached.size(), reusing.size());
+		for(int i = 0; i < uncached.size(); i++) {
+			assertArrayEquals(bytes(uncached.get(i)), bytes(filling.get(i)));
+			assertArrayEquals(bytes(uncached.get(i)), bytes(reusing.get(i)));
+		}
+	}
+
+	/**
+	 * direct() inlines square(), so changing square() must not leave the old body in direct().
+	 * The cache hashes the tokens of a function, so the change is made to the source text.
+	 */
+	@Test
+	public void changedCalleeRecompilesCallers() throws Exception {
+		new BytecodeFile(new File("Inline.cij"), parse("Inline"), cached());
+
+		String source = new String(Files.readAllBytes(new File(DATA, "Inline.java").toPath()), StandardCharsets.UTF_8);
+		CompilationUnit changed = parseText(source.replace("return x * x;", "return x + x;"));
+
+		BytecodeFile uncached = new BytecodeFile(new File("Inline.cij"), changed, new CompilerOptions());
+		BytecodeFile reusing = new BytecodeFile(new File("Inline.cij"), changed, cached());
+		assertArrayEquals(bytes(uncached), bytes(reusing));
+		assertEquals(0, count(function(reusing, "direct"), BinaryOperation.Operator.mul));
+	}
+
+	/**
+	 * Reading an entry makes it recently used, so once the limit is exceeded the entries of
+	 * the file that was compiled in between are removed rather than those read again
+	 */
+	@Test
+	public void evictsLeastRecentlyUsed() throws Exception {
+		new BytecodeFile(new File("Slots.cij"), parse("Slots"), cached());
+		Set<File> slots = entries();
+		new BytecodeFile(new File("Copies.cij"), parse("Copies"), cached());
+		Set<File> copies = entries();
+		copies.removeAll(slots);
+		assertFalse(slots.isEmpty());
+		assertFalse(copies.isEmpty());
+
+		// without the read, the entries of Slots would be the least recently used
+		long now = System.currentTimeMillis();
+		setLastModified(slots, now - 200_000);
+		setLastModified(copies, now - 100_000);
+		new BytecodeFile(new File("Slots.cij"), parse("Slots"), cached());
+
+		// the size of the entries of Inline, measured in a cache of its own
+		File inlineCache = folder.newFolder("inline");
+		CompilerOptions measuring = new CompilerOptions();
+		measuring.setFunctionCache(new FunctionCache(inlineCache, 64 * 1024 * 1024));
+		new BytecodeFile(new File("Inline.cij"), parse("Inline"), measuring);
+		File[] inlineEntries = inlineCache.listFiles((dir, name) -> name.endsWith(".fn"));
+		assertNotNull(inlineEntries);
+		assertTrue(inlineEntries.length > 0);
+		Set<File> inline = new HashSet<>(Arrays.asList(inlineEntries));
+
+		new BytecodeFile(new File("Inline.cij"), parse("Inline"), cached(size(slots) + size(inline)));
+
+		Set<File> kept = entries();
+		assertTrue(kept.containsAll(slots));
+		for(File entry : copies) {
+			assertFalse(entry.getName(), kept.contains(entry));
+		}
+		assertEquals(slots.size() + inline.size(), kept.size());
+	}
+
+	/**
+	 * The functions are unchanged, but v moves to another index, which afterLoad() reads
+	 */
+	@Test
+	public void fieldOrderChangeMisses() throws Exception {
+		String source = source("Hierarchy");
+		assertLayoutChangeMisses(source.replace("\tint v;\n", "\tint v;\n\tint w;\n"),
+		                         source.replace("\tint v;\n", "\tint w;\n\tint v;\n"));
+	}
+
+	/**
+	 * The functions are unchanged, but area() moves to another vtable slot, which the call in
+	 * polymorphic() names
+	 */
+	@Test
+	public void vtableChangeMisses() throws Exception {
+		String source = source("Hierarchy");
+		String perimeter = "\tint perimeter() {\n\t\treturn 0;\n\t}\n";
+		String shape = "class Shape {\n";
+		assertLayoutChangeMisses(source.replace("\t\treturn 0;\n\t}\n}", "\t\treturn 0;\n\t}\n" + perimeter + "}"),
+		                         source.replace(shape, shape + perimeter));
+	}
+
+	/**
+	 * p.get() only becomes a direct call, which can be inlined, once make() is inlined and
+	 * shows p not to be null, so changing get() must not leave the old body in f()
+	 */
+	@Test
+	public void changedDevirtualizedCalleeRecompilesCallers() throws Exception {
+		new BytecodeFile(new File("P.cij"), parseText(FACTORY), cached());
+
+		String changed = FACTORY.replace("return 5;", "return 6;");
+		BytecodeFile uncached = new BytecodeFile(new File("P.cij"), parseText(changed), new CompilerOptions());
+		BytecodeFile reusing = new BytecodeFile(new File("P.cij"), parseText(changed), cached());
+		assertArrayEquals(bytes(uncached), bytes(reusing));
+	}
+
+	/**
+	 * The other way round, f() changes and get() is taken from the cache, it must still be
+	 * inlined into f() like without the cache
+	 */
+	@Test
+	public void changedCallerInlinesCachedDevirtualizedCallee() throws Exception {
+		new BytecodeFile(new File("P.cij"), parseText(FACTORY), cached());
+
+		String changed = FACTORY.replace("return p.get();", "return p.get() + 1;");
+		BytecodeFile uncached = new BytecodeFile(new File("P.cij"), parseText(changed), new CompilerOptions());
+		BytecodeFile reusing = new BytecodeFile(new File("P.cij"), parseText(changed), cached());
+		assertArrayEquals(bytes(uncached), bytes(reusing));
+	}
+}
@@ -0,0 +1,47 @@
+package bytecode;
+
+import bytecode.optimization.GlobalValueNumbering;
+import org.junit.Test;
+
+import static bytecode.BinaryOperation.Operator.*;
+import static bytecode.TestSources.*;
+import static org.junit.Assert.*;
+
+public class TestGlobalValueNumbering {
+
+	private static Function run(String name, BinaryOperation.Operator operator, int before) throws Exception {
+		Function f = function(unoptimized("Values"), name);
+		assertEquals(before, count(f, operator));
+		new GlobalValueNumbering(f).run();
+		return f;
+	}
+
+	@Test
+	public void removesRedundantOperation() throws Exception {
+		Function f = run("redundant", mul, 2);
+		assertEquals(1, count(f, mul));
+		assertEquals(1, count(f, add));
+	}
+
+	@Test
+	public void removesOperationInDominatedBlock() throws Exception {
+		Function f = run("dominated", sub, 2);
+		assertEquals(1, count(f, sub));
+	}
+
+	@Test
+	public void keepsOperationsOfSiblingBlocks() throws Exception {
+		Function f = run("siblings", mul, 2);
+		assertEquals(2, count(f, mul));
+	}
+
+	@Test
+	public void reloadsAfterStore() throws Exception {
+		Function f = function(unoptimized("Values"), "loads");
+		assertEquals(3, instructions(f, ObjectLoad.class).size());
+
+		new GlobalValueNumbering(f).run();
+		assertEquals(2, instructions(f, ObjectLoad.class).size());
+		assertEquals(1, instructions(f, ObjectStore.class).size());
+	}
+}
@@ -0,0 +1,53 @@
+package bytecode;
+
+import bytecode.optimization.Inlining;
+import org.junit.Test;
+
+import static bytecode.BinaryOperation.Operator.*;
+import static bytecode.TestSources.*;
+import static org.junit.Assert.*;
+
+public class TestInlining {
+
+	/**
+	 * @return the file with only the inlining done, without devirtualizing member calls first
+	 */
+	private static BytecodeFile inlined() throws Exception {
+		BytecodeFile file = unoptimized("Inline");
+		new Inlining(file).run();
+		return file;
+	}
+
+	@Test
+	public void inlinesStaticCall() throws Exception {
+		Function f = function(inlined(), "direct");
+		assertTrue(instructions(f, Call.class).isEmpty());
+		assertEquals(1, count(f, mul));
+	}
+
+	@Test
+	public void inlinesFinalMethodOnAllocatedObject() throws Exception {
+		Function f = function(inlined(), "onAllocated");
+		assertTrue(instructions(f, MemberCall.class).isEmpty());
+	}
+
+	@Test
+	public void inlinesFinalMethodOnThis() throws Exception {
+		Function f = function(inlined(), "onThis");
+		assertTrue(instructions(f, MemberCall.class).isEmpty());
+		assertEquals(1, instructions(f, ObjectLoad.class).size());
+	}
+
+	@Test
+	public void keepsNullCheckOfReceiver() throws Exception {
+		// the call traps if the parameter is null, the inlined load would not
+		Function f = function(inlined(), "onParameter");
+		assertEquals(1, instructions(f, MemberCall.class).size());
+	}
+
+	@Test
+	public void keepsRecursiveCall() throws Exception {
+		Function f = function(inlined(), "recursive");
+		assertEquals(1, instructions(f, Call.class).size());
+	}
+}
@@ -0,0 +1,63 @@
+package bytecode;
+
+import bytecode.optimization.LoopInvariantCodeMotion;
+import bytecode.optimization.Loops;
+import org.junit.Test;
+
+import java.util.List;
+
+import static bytecode.BinaryOperation.Operator.*;
+import static bytecode.TestSources.*;
+import static org.junit.Assert.*;
+
+public class TestLoopInvariantCodeMotion {
+
+	private static Function run(String name) throws Exception {
+		Function f = function(unoptimized("Invariants"), name);
+		new LoopInvariantCodeMotion(f).run();
+		return f;
+	}
+
+	private static boolean inLoop(Function f, BinaryOperation.Operator operator) throws Exception {
+		List<Block> blocks = blocks(f, operator);
+		assertEquals(1, blocks.size());
+		return new Loops(f).inLoop(blocks.get(0));
+	}
+
+	@Test
+	public void hoistsInvariantOperation() throws Exception {
+		assertTrue(inLoop(function(unoptimized("Invariants"), "hoisted"), mul));
+
+		Function f = run("hoisted");
+		assertFalse(inLoop(f, mul));
+		// the sum and the counter depend on the loop
+		Loops loops = new Loops(f);
+		for(Block b : blocks(f, add)) {
+			assertTrue(loops.inLoop(b));
+		}
+	}
+
+	@Test
+	public void keepsOperationOnInductionVariable() throws Exception {
+		assertTrue(inLoop(run("variant"), mul));
+	}
+
+	@Test
+	public void keepsDivisionOutsideOfHeader() throws Exception {
+		assertTrue(inLoop(run("division"), div));
+	}
+
+	@Test
+	public void keepsLoadOfWrittenField() throws Exception {
+		Function f = run("stored");
+		assertEquals(1, instructions(f, ObjectLoad.class).size());
+		Loops loops = new Loops(f);
+		for(Block b : f.blocks()) {
+			for(Compileable c : b.instructions) {
+				if(c instanceof ObjectLoad) {
+					assertTrue(loops.inLoop(b));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package bytecode;
+
+import bytecode.optimization.LoopUnrolling;
+import bytecode.optimization.Loops;
+import org.junit.Test;
+
+import static bytecode.BinaryOperation.Operator.*;
+import static bytecode.TestSources.*;
+import static org.junit.Assert.*;
+
+public class TestLoopUnrolling {
+
+	private static Function run(String name) throws Exception {
+		return run(name, new CompilerOptions().unrollSize());
+	}
+
+	private static Function run(String name, int unrollSize) throws Exception {
+		CompilerOptions options = new CompilerOptions();
+		options.setOptimize(false);
+		options.setUnrollSize(unrollSize);
+		Function f = function(compile("Unroll", options), name);
+		new LoopUnrolling(f).run();
+		return f;
+	}
+
+	@Test
+	public void unrollsFully() throws Exception {
+		Function f = run("full");
+		assertTrue(new Loops(f).loops().isEmpty());
+		// one copy of the body for each iteration
+		assertEquals(4, count(f, mul));
+	}
+
+	@Test
+	public void unrollsPartially() throws Exception {
+		// eleven instructions an iteration: ten copies do not fit, six do
+		Function f = run("partial", 80);
+		assertEquals(1, new Loops(f).loops().size());
+		// the two iterations left over by a factor of four are peeled off in front of the loop
+		assertEquals(6, count(f, mul));
+		Loops loops = new Loops(f);
+		int inLoop = 0;
+		for(Block b : blocks(f, mul)) {
+			if(loops.inLoop(b)) {
+				inLoop++;
+			}
+		}
+		assertEquals(4, inLoop);
+	}
+
+	@Test
+	public void keepsLoopWithUnknownTripCount() throws Exception {
+		Function f = run("unknown");
+		assertEquals(1, new Loops(f).loops().size());
+		assertEquals(1, count(f, mul));
+	}
+}
@@ -0,0 +1,37 @@
+package bytecode;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static bytecode.TestSources.*;
+import static org.junit.Assert.*;
+
+public class TestParallelCompilation {
+
+	private static List<BytecodeFile> corpusOn(int threads) throws Exception {
+		CompilerOptions options = new CompilerOptions();
+		options.setThreads(threads);
+		return corpus(options);
+	}
+
+	/**
+	 * The functions are compiled in the order threads pick them up, which must not leak into
+	 * the numbering of temporaries, functions or types
+	 */
+	@Test
+	public void sameBytecodeOnAnyNumberOfThreads() throws Exception {
+		List<BytecodeFile> sequential = corpusOn(1);
+		List<BytecodeFile> parallel = corpusOn(4);
+
+		assertEquals(sequential.size(), parallel.size());
+		for(int i = 0; i < sequential.size(); i++) {
+			assertArrayEquals(bytes(sequential.get(i)), bytes(parallel.get(i)));
+		}
+	}
+
+	@Test
+	public void defaultsToOneThreadPerProcessor() {
+		assertEquals(Runtime.getRuntime().availableProcessors(), new CompilerOptions().threads());
+	}
+}
@@ -0,0 +1,42 @@
+package bytecode;
+
+import org.junit.Test;
+
+import static bytecode.TestSources.*;
+import static org.junit.Assert.*;
+
+/**
+ * Objects only become non-escaping once their constructor has been inlined, so the functions
+ * are taken from the fully optimized file
+ */
+public class TestScalarReplacement {
+
+	private static Function compiled(String name) throws Exception {
+		return function(compile("Escape"), name);
+	}
+
+	private static void assertReplaced(Function f) throws Exception {
+		assertTrue(instructions(f, Allocate.class).isEmpty());
+		assertTrue(instructions(f, ObjectLoad.class).isEmpty());
+		assertTrue(instructions(f, ObjectStore.class).isEmpty());
+	}
+
+	@Test
+	public void replacesLocalObject() throws Exception {
+		assertReplaced(compiled("local"));
+	}
+
+	@Test
+	public void mergesFieldsByPhiNode() throws Exception {
+		Function f = compiled("branches");
+		assertReplaced(f);
+		assertEquals(1, instructions(f, PhiNode.class).size());
+	}
+
+	@Test
+	public void keepsEscapingObject() throws Exception {
+		Function f = compiled("escapes");
+		assertEquals(1, instructions(f, Allocate.class).size());
+		assertEquals(1, instructions(f, StoreGlobal.class).size());
+	}
+}
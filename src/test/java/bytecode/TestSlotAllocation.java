@@ -0,0 +1,134 @@
+package bytecode;
+
+import bytecode.optimization.Liveness;
+import org.junit.Test;
+
+import java.util.*;
+
+import static bytecode.TestSources.*;
+import static org.junit.Assert.*;
+
+public class TestSlotAllocation {
+
+	/**
+	 * @return the results of all phi nodes and instructions
+	 */
+	private static List<Temporary> results(Function f) throws Exception {
+		List<Temporary> results = new ArrayList<>();
+		for(Instruction instruction : instructions(f)) {
+			if(instruction.result() != null) {
+				results.add(instruction.result());
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Fails if a result is written to the slot of a temporary that is still live after it.
+	 * The phi nodes of a block are written one after the other, each one before the
+	 * arguments of the ones after it are read.
+	 */
+	private static void assertNoLiveSlotOverwritten(Function f) throws Exception {
+		Liveness liveness = new Liveness(f);
+		for(Block b : f.blocks()) {
+			Set<Temporary> live = new HashSet<>(liveness.liveOut(b));
+			for(int i = b.instructions.size() - 1; i >= 0; i--) {
+				if(!(b.instructions.get(i) instanceof Instruction)) {
+					continue;
+				}
+				Instruction instruction = (Instruction) b.instructions.get(i);
+				if(instruction.result() != null) {
+					live.remove(instruction.result());
+					assertNotOverwritten(f, instruction.result(), live);
+				}
+				live.addAll(instruction.operands());
+			}
+
+			List<PhiNode> phiNodes = b.phiManager().computedPhiNodes();
+			for(int i = 0; i < phiNodes.size(); i++) {
+				Set<Temporary> read = new HashSet<>(live);
+				read.remove(phiNodes.get(i).result());
+				for(int j = i + 1; j < phiNodes.size(); j++) {
+					read.addAll(phiNodes.get(j).operands());
+				}
+				assertNotOverwritten(f, phiNodes.get(i).result(), read);
+			}
+		}
+	}
+
+	private static void assertNotOverwritten(Function f, Temporary result, Set<Temporary> live) throws Exception {
+		for(Temporary t : live) {
+			assertNotEquals(f.name() + ": " + result + " overwrites " + t, t.index(), result.index());
+		}
+	}
+
+	@Test
+	public void keepsLiveTemporariesApart() throws Exception {
+		for(BytecodeFile file : corpus(new CompilerOptions())) {
+			for(Function f : file.functions()) {
+				assertNoLiveSlotOverwritten(f);
+			}
+		}
+	}
+
+	@Test
+	public void keepsParameterSlots() throws Exception {
+		List<Temporary> parameters = function(compile("Slots"), "fibonacci").parameterTemporaries();
+		for(int i = 0; i < parameters.size(); i++) {
+			assertEquals(i, parameters.get(i).index());
+		}
+	}
+
+	@Test
+	public void sharesSlotsInStraightLineCode() throws Exception {
+		Function f = function(compile("Slots"), "chain");
+		Set<Integer> slots = new HashSet<>();
+		for(Temporary result : results(f)) {
+			slots.add(result.index());
+		}
+		// each intermediate value is dead once the next one is computed
+		assertTrue(slots.size() < results(f).size());
+	}
+
+	@Test
+	public void numbersResultsInOrderWithoutOptimizations() throws Exception {
+		Function f = function(unoptimized("Slots"), "fibonacci");
+		List<Temporary> results = results(f);
+		int parameters = f.parameterTemporaries().size();
+		for(int i = 0; i < results.size(); i++) {
+			assertEquals(parameters + i, results.get(i).index());
+		}
+	}
+
+	@Test
+	public void readsPhiNodeResultsBeforeTheyAreWritten() throws Exception {
+		BytecodeFile file = compile("Slots");
+		assertPhiNodesReadBeforeWritten(function(file, "previous"));
+		assertPhiNodesReadBeforeWritten(function(file, "rotate"));
+	}
+
+	private static void assertPhiNodesReadBeforeWritten(Function f) throws Exception {
+		assertNoLiveSlotOverwritten(f);
+
+		boolean readsOtherPhiNode = false;
+		for(Block b : f.blocks()) {
+			List<PhiNode> phiNodes = b.phiManager().computedPhiNodes();
+			for(int i = 0; i < phiNodes.size(); i++) {
+				for(int j = 0; j < phiNodes.size(); j++) {
+					if(i != j && phiNodes.get(i).edges().containsValue(phiNodes.get(j).result())) {
+						assertTrue(f.name() + ": " + phiNodes.get(i) + " reads a result already written", i < j);
+						readsOtherPhiNode = true;
+					}
+				}
+			}
+		}
+		assertTrue(readsOtherPhiNode);
+	}
+
+	@Test
+	public void writesFormatVersion() throws Exception {
+		byte[] bytes = bytes(compile("Slots"));
+		assertEquals(Opcodes.MAGIC, (bytes[0] & 0xff) | (bytes[1] & 0xff) << 8);
+		assertEquals(Opcodes.FORMAT_VERSION, (bytes[2] & 0xff) | (bytes[3] & 0xff) << 8);
+	}
+}
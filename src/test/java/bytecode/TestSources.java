@@ -0,0 +1,262 @@
+package bytecode;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParseStart;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.Providers;
+import com.github.javaparser.ast.CompilationUnit;
+import bytecode.type.InvalidTypeException;
+import bytecode.type.PrimitiveType;
+import bytecode.type.Type;
+import stream.LittleEndianOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compiles the sources of src/test/data for the tests of the passes. A pass is tested by
+ * running it on the unoptimized functions of a source and inspecting the instructions it leaves.
+ */
+final class TestSources {
+
+	static final File DATA = new File("src/test/data");
+
+	// sources the compiler rejects, with or without optimizations
+	static final Set<String> UNSUPPORTED = new HashSet<>(Arrays.asList("Benchmark", "F"));
+
+	private TestSources() {
+	}
+
+	static CompilationUnit parse(String name) throws IOException {
+		return parse(new File(DATA, name + ".java"));
+	}
+
+	static CompilationUnit parse(File source) throws IOException {
+		return parseText(new String(Files.readAllBytes(source.toPath()), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Parses like the compiler does, with a parser of its own and without a symbol resolver,
+	 * the names are resolved through visitors.Resolution
+	 */
+	static CompilationUnit parseText(String source) {
+		ParseResult<CompilationUnit> parsed = new JavaParser(new ParserConfiguration()).parse(ParseStart.COMPILATION_UNIT, Providers.provider(source));
+		assertTrue(parsed.getProblems().toString(), parsed.isSuccessful());
+		return parsed.getResult().get();
+	}
+
+	/**
+	 * @return all sources of the corpus the compiler accepts, compiled with the options
+	 */
+	static List<BytecodeFile> corpus(CompilerOptions options) throws Exception {
+		File[] sources = DATA.listFiles((dir, name) -> name.endsWith(".java"));
+		assertNotNull(sources);
+		Arrays.sort(sources);
+
+		List<BytecodeFile> files = new ArrayList<>();
+		for(File source : sources) {
+			String name = source.getName().substring(0, source.getName().length() - ".java".length());
+			try {
+				files.add(compile(name, options));
+				assertFalse(name + " compiles", UNSUPPORTED.contains(name));
+			} catch(InvalidTypeException e) {
+				assertTrue(name + ": " + e, UNSUPPORTED.contains(name));
+			}
+		}
+		return files;
+	}
+
+	static BytecodeFile compile(String name, CompilerOptions options) throws Exception {
+		return new BytecodeFile(new File(name + ".cij"), parse(name), options);
+	}
+
+	static BytecodeFile compile(String name) throws Exception {
+		return compile(name, new CompilerOptions());
+	}
+
+	/**
+	 * @return the file compiled to SSA form, without any of the optimizations
+	 */
+	static BytecodeFile unoptimized(String name) throws Exception {
+		CompilerOptions options = new CompilerOptions();
+		options.setOptimize(false);
+		return compile(name, options);
+	}
+
+	static Function function(BytecodeFile file, String name) {
+		for(Function f : file.functions()) {
+			if(f.name().equals(name)) {
+				return f;
+			}
+		}
+		fail("No function " + name);
+		return null;
+	}
+
+	/**
+	 * @return the instructions of all blocks in layout order, the phi nodes of each block
+	 * before its other instructions
+	 */
+	static List<Instruction> instructions(Function f) throws InvalidCompileOrderException {
+		List<Instruction> instructions = new ArrayList<>();
+		for(Block b : f.blocks()) {
+			instructions.addAll(b.phiManager().computedPhiNodes());
+			for(Compileable c : b.instructions) {
+				if(c instanceof Instruction) {
+					instructions.add((Instruction) c);
+				}
+			}
+		}
+		return instructions;
+	}
+
+	static <T> List<T> instructions(Function f, Class<T> type) throws InvalidCompileOrderException {
+		List<T> instructions = new ArrayList<>();
+		for(Instruction instruction : instructions(f)) {
+			if(type.isInstance(instruction)) {
+				instructions.add(type.cast(instruction));
+			}
+		}
+		return instructions;
+	}
+
+	/**
+	 * @return the blocks holding operations of the operator, in layout order
+	 */
+	static List<Block> blocks(Function f, BinaryOperation.Operator operator) {
+		List<Block> blocks = new ArrayList<>();
+		for(Block b : f.blocks()) {
+			for(Compileable c : b.instructions) {
+				if(c instanceof BinaryOperation && ((BinaryOperation) c).operator() == operator) {
+					blocks.add(b);
+				}
+			}
+		}
+		return blocks;
+	}
+
+	static int count(Function f, BinaryOperation.Operator operator) throws InvalidCompileOrderException {
+		int count = 0;
+		for(BinaryOperation operation : instructions(f, BinaryOperation.class)) {
+			if(operation.operator() == operator) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the instruction defining the temporary, null for parameters
+	 */
+	static Instruction definition(Function f, Temporary temporary) throws InvalidCompileOrderException {
+		for(Instruction instruction : instructions(f)) {
+			if(instruction.result() == temporary) {
+				return instruction;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Runs the function the way the vm does: each result is written to its slot, the phi nodes
+	 * of a block one after the other, and a block that does not end in a jump falls through to
+	 * the next one. Only constants, arithmetic, jumps and static calls are supported.
+	 *
+	 * @return the returned value, null for functions without one
+	 */
+	static Object execute(Function f, Object... arguments) throws InvalidCompileOrderException {
+		Map<Integer, Object> slots = new HashMap<>();
+		for(int i = 0; i < arguments.length; i++) {
+			slots.put(f.parameterTemporaries().get(i).index(), arguments[i]);
+		}
+
+		Block previous = null;
+		Block b = f.blocks().get(0);
+		while(true) {
+			for(PhiNode phiNode : b.phiManager().computedPhiNodes()) {
+				slots.put(phiNode.result().index(), slots.get(phiNode.edges().get(previous).index()));
+			}
+
+			Block next = b.index() + 1 < f.blocks().size() ? f.blocks().get(b.index() + 1) : null;
+			for(Compileable c : b.instructions) {
+				if(c instanceof Const) {
+					slots.put(((Const<?>) c).result().index(), ((Const<?>) c).value);
+				} else if(c instanceof BinaryOperation) {
+					BinaryOperation operation = (BinaryOperation) c;
+					List<Object> operands = values(slots, operation.operands());
+					slots.put(operation.result().index(),
+					          operation.operator().evaluate(type(operands.get(0)), operands.get(0), operands.get(1)));
+				} else if(c instanceof UnaryOperation) {
+					UnaryOperation operation = (UnaryOperation) c;
+					Object operand = values(slots, operation.operands()).get(0);
+					slots.put(operation.result().index(), operation.operator().evaluate(type(operand), operand));
+				} else if(c instanceof Call) {
+					Call call = (Call) c;
+					slots.put(call.result().index(), execute(call.function(), values(slots, call.operands()).toArray()));
+				} else if(c instanceof Return) {
+					List<Object> operands = values(slots, ((Return) c).operands());
+					return operands.isEmpty() ? null : operands.get(0);
+				} else if(c instanceof Goto) {
+					next = ((Goto) c).label();
+					break;
+				} else if(c instanceof ConditionalGoto) {
+					if((Boolean) slots.get(((ConditionalGoto) c).condition().index())) {
+						next = ((ConditionalGoto) c).label();
+						break;
+					}
+				} else if(c instanceof ComparisonGoto) {
+					ComparisonGoto jump = (ComparisonGoto) c;
+					List<Object> operands = values(slots, jump.operands());
+					Object holds = jump.operator().evaluate(type(operands.get(0)), operands.get(0), operands.get(1));
+					if((Boolean) holds != jump.isNegated()) {
+						next = jump.label();
+						break;
+					}
+				} else if(c instanceof Instruction) {
+					fail("Cannot execute " + c);
+				}
+			}
+
+			assertNotNull(f.name() + " runs past its last block", next);
+			previous = b;
+			b = next;
+		}
+	}
+
+	private static List<Object> values(Map<Integer, Object> slots, List<Temporary> temporaries) throws InvalidCompileOrderException {
+		List<Object> values = new ArrayList<>();
+		for(Temporary t : temporaries) {
+			values.add(slots.get(t.index()));
+		}
+		return values;
+	}
+
+	private static Type type(Object value) {
+		if(value instanceof Boolean) {
+			return PrimitiveType.BOOL;
+		} else if(value instanceof Integer) {
+			return PrimitiveType.INT;
+		} else if(value instanceof Long) {
+			return PrimitiveType.LONG;
+		} else if(value instanceof Float) {
+			return PrimitiveType.FLOAT;
+		} else if(value instanceof Double) {
+			return PrimitiveType.DOUBLE;
+		}
+		fail("Cannot execute on " + value);
+		return null;
+	}
+
+	static byte[] bytes(BytecodeFile file) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		file.writeToStream(new LittleEndianOutputStream(out));
+		return out.toByteArray();
+	}
+}
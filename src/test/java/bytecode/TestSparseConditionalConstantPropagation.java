@@ -0,0 +1,54 @@
+package bytecode;
+
+import bytecode.optimization.SparseConditionalConstantPropagation;
+import org.junit.Test;
+
+import java.util.List;
+
+import static bytecode.TestSources.*;
+import static org.junit.Assert.*;
+
+public class TestSparseConditionalConstantPropagation {
+
+	private static Function run(String name) throws Exception {
+		Function f = function(unoptimized("Constants"), name);
+		new SparseConditionalConstantPropagation(f).run();
+		return f;
+	}
+
+	private static Object returned(Function f) throws Exception {
+		List<Return> returns = instructions(f, Return.class);
+		assertEquals(1, returns.size());
+		Instruction definition = definition(f, returns.get(0).operands().get(0));
+		return definition instanceof Const ? ((Const<?>) definition).value : null;
+	}
+
+	@Test
+	public void foldsConstantBranch() throws Exception {
+		Function f = function(unoptimized("Constants"), "folded");
+		assertEquals(1, instructions(f, ConditionalGoto.class).size());
+		int blocks = f.blocks().size();
+
+		assertTrue(new SparseConditionalConstantPropagation(f).run());
+		assertTrue(instructions(f, ConditionalGoto.class).isEmpty());
+		assertTrue(f.blocks().size() < blocks);
+		// a * 4 and b > 10 are constants, x - 1 is never reached
+		assertEquals(1, instructions(f, BinaryOperation.class).size());
+	}
+
+	@Test
+	public void ignoresConstantsOverDeadEdges() throws Exception {
+		Function f = run("deadEdge");
+		assertEquals(1, returned(f));
+		// the loop condition depends on the parameter
+		assertEquals(1, instructions(f, ConditionalGoto.class).size());
+	}
+
+	@Test
+	public void keepsVaryingValues() throws Exception {
+		Function f = run("varying");
+		assertNull(returned(f));
+		assertEquals(1, instructions(f, ConditionalGoto.class).size());
+		assertEquals(1, instructions(f, PhiNode.class).size());
+	}
+}
@@ -0,0 +1,80 @@
+package bytecode;
+
+import bytecode.optimization.LoopInvariantCodeMotion;
+import bytecode.optimization.Loops;
+import bytecode.optimization.StrengthReduction;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static bytecode.BinaryOperation.Operator.*;
+import static bytecode.TestSources.*;
+import static org.junit.Assert.*;
+
+public class TestStrengthReduction {
+
+	/**
+	 * Runs the pass after the one before it in the pipeline, which hoists the constant steps
+	 * out of the loops
+	 */
+	private static Function run(String name) throws Exception {
+		Function f = function(unoptimized("Strength"), name);
+		new LoopInvariantCodeMotion(f).run();
+		new StrengthReduction(f).run();
+		return f;
+	}
+
+	private static boolean mulInLoop(Function f) throws Exception {
+		Loops loops = new Loops(f);
+		for(Block b : blocks(f, mul)) {
+			if(loops.inLoop(b)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the constant the exit test of the loop compares against
+	 */
+	private static Object bound(Function f) throws Exception {
+		List<BinaryOperation> tests = new ArrayList<>();
+		for(BinaryOperation operation : instructions(f, BinaryOperation.class)) {
+			if(operation.operator() == lt) {
+				tests.add(operation);
+			}
+		}
+		assertEquals(1, tests.size());
+		Instruction bound = definition(f, tests.get(0).operands().get(1));
+		assertTrue(bound instanceof Const);
+		return ((Const<?>) bound).value;
+	}
+
+	@Test
+	public void replacesMultiplicationByAddition() throws Exception {
+		assertTrue(mulInLoop(function(unoptimized("Strength"), "scaled")));
+
+		Function f = run("scaled");
+		// only the start and the step of the derived variable are multiplied, in the preheader
+		assertFalse(mulInLoop(f));
+		assertEquals(2, count(f, mul));
+	}
+
+	@Test
+	public void replacesExitTest() throws Exception {
+		assertEquals(40, bound(run("replaced")));
+	}
+
+	@Test
+	public void keepsExitTestThatMayOverflow() throws Exception {
+		Function f = run("overflowing");
+		assertFalse(mulInLoop(f));
+		assertEquals(1000000000, bound(f));
+	}
+
+	@Test
+	public void keepsMultiplicationByVariantFactor() throws Exception {
+		assertTrue(mulInLoop(run("variantFactor")));
+	}
+}
@@ -0,0 +1,56 @@
+package bytecode;
+
+import bytecode.optimization.Loops;
+import bytecode.optimization.TailCalls;
+import bytecode.optimization.TailRecursionElimination;
+import org.junit.Test;
+
+import java.util.List;
+
+import static bytecode.TestSources.*;
+import static org.junit.Assert.*;
+
+public class TestTailRecursionElimination {
+
+	private static Function eliminate(String name) throws Exception {
+		Function f = function(unoptimized("Tail"), name);
+		if(new TailRecursionElimination(f).run()) {
+			f.computeDominance();
+		}
+		return f;
+	}
+
+	private static Call call(String name) throws Exception {
+		Function f = function(unoptimized("Tail"), name);
+		new TailCalls(f).run();
+		List<Call> calls = instructions(f, Call.class);
+		assertEquals(1, calls.size());
+		return calls.get(0);
+	}
+
+	@Test
+	public void turnsSelfTailCallIntoLoop() throws Exception {
+		Function f = eliminate("sum");
+		assertTrue(instructions(f, Call.class).isEmpty());
+		assertEquals(1, new Loops(f).loops().size());
+		// the entry of the function stays outside of the loop
+		assertFalse(new Loops(f).inLoop(f.initialBlock()));
+	}
+
+	@Test
+	public void keepsSelfCallWithPendingMultiplication() throws Exception {
+		Function f = eliminate("factorial");
+		assertEquals(1, instructions(f, Call.class).size());
+		assertTrue(new Loops(f).loops().isEmpty());
+	}
+
+	@Test
+	public void marksCallReturnedRightAway() throws Exception {
+		assertTrue(call("delegate").isTailCall());
+	}
+
+	@Test
+	public void keepsCallWhoseResultIsUsed() throws Exception {
+		assertFalse(call("used").isTailCall());
+	}
+}